@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.util.Blob;
+import net.named_data.jndn.util.MemoryContentCache;
+
+/**
+ * Measure the throughput of MemoryContentCache.add from many producer threads
+ * while one thread answers interests with onInterest, as a producer does when
+ * it signs Data packets on many cores. This compares calling add directly
+ * (which does not wait for the other threads) with funnelling every add through
+ * one lock, which an application had to do before add was thread-safe.
+ */
+public class TestContentCacheContentionBenchmark {
+  /**
+   * A NullFace does not connect and discards the packets which are sent.
+   */
+  private static class NullFace extends Face {
+    public NullFace() { super("localhost"); }
+
+    public void
+    send(ByteBuffer encoding) {}
+  }
+
+  private static double
+  getNowSeconds()
+  {
+    return System.currentTimeMillis() / 1000.0;
+  }
+
+  /**
+   * Run nProducers threads which add Data packets for the duration while this
+   * thread calls onInterest, and print the rates.
+   * @param nProducers The number of producer threads.
+   * @param useOneLock If true, each producer calls add while holding one
+   * shared lock.
+   * @param durationSeconds The duration of the run.
+   */
+  private static void
+  benchmark(int nProducers, final boolean useOneLock, double durationSeconds)
+    throws InterruptedException
+  {
+    final Face face = new NullFace();
+    final MemoryContentCache cache = new MemoryContentCache(face);
+    // Bound the memory so that a long run doesn't fill the heap.
+    cache.setMaxEntries(100000);
+    final Object oneLock = new Object();
+    final AtomicBoolean isRunning = new AtomicBoolean(true);
+    final AtomicLong nAdded = new AtomicLong();
+    final Blob content = new Blob(new byte[1000]);
+    final Name prefix = new Name("/ndn/ucla.edu/benchmark");
+
+    Thread[] producers = new Thread[nProducers];
+    for (int t = 0; t < nProducers; ++t) {
+      final Name threadPrefix = new Name(prefix).append("p" + t);
+      producers[t] = new Thread(new Runnable() {
+        public void run() {
+          long segment = 0;
+          while (isRunning.get()) {
+            Data data = new Data(new Name(threadPrefix).appendSegment(segment));
+            data.setContent(content);
+            if (useOneLock) {
+              synchronized (oneLock) {
+                cache.add(data);
+              }
+            }
+            else
+              cache.add(data);
+            ++segment;
+            nAdded.incrementAndGet();
+          }
+        }
+      });
+    }
+
+    double start = getNowSeconds();
+    for (int t = 0; t < nProducers; ++t)
+      producers[t].start();
+
+    // Answer interests for the most recent segments of the first producer.
+    long nInterests = 0;
+    Name interestPrefix = new Name(prefix).append("p0");
+    while (getNowSeconds() - start < durationSeconds) {
+      Interest interest = new Interest(interestPrefix);
+      interest.setChildSelector(1);
+      if (useOneLock) {
+        synchronized (oneLock) {
+          cache.onInterest(prefix, interest, face, 0, null);
+        }
+      }
+      else
+        cache.onInterest(prefix, interest, face, 0, null);
+      ++nInterests;
+    }
+
+    isRunning.set(false);
+    for (int t = 0; t < nProducers; ++t)
+      producers[t].join();
+    double duration = getNowSeconds() - start;
+
+    System.out.println((useOneLock ? "one lock  " : "concurrent") +
+      " producers " + nProducers + ": add Hz, onInterest Hz: " +
+      (long)(nAdded.get() / duration) + ", " + (long)(nInterests / duration));
+  }
+
+  public static void
+  main(String[] args)
+  {
+    Logger.getLogger("").setLevel(Level.OFF);
+    int[] nProducersList = new int[] { 1, 2, 4, 8, 16 };
+    try {
+      // Warm up so that the JIT has compiled the cache.
+      benchmark(4, false, 2);
+
+      for (int i = 0; i < nProducersList.length; ++i) {
+        benchmark(nProducersList[i], true, 3);
+        benchmark(nProducersList[i], false, 3);
+      }
+    } catch (InterruptedException ex) {
+      System.out.println("Interrupted: " + ex);
+    }
+  }
+}
@@ -0,0 +1,222 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.InterestFilter;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.Node;
+import net.named_data.jndn.OnInterestCallback;
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.encoding.ElementReader;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.transport.TcpTransport;
+import net.named_data.jndn.util.Blob;
+
+/**
+ * Measure the bytes allocated on the receive path for each incoming packet,
+ * from the ElementReader which finds the element boundaries through decoding
+ * and dispatching to an interest filter. This uses the HotSpot
+ * com.sun.management.ThreadMXBean to get the bytes allocated by this thread,
+ * so it compares the default mode with Face.setReusePackets and
+ * Face.setLazyDecode. The steady state of the ElementReader and of the reuse
+ * modes must allocate at most MAX_STEADY_STATE_BYTES_PER_PACKET (which allows
+ * for the one buffer duplicate per read), otherwise this exits with status 1.
+ */
+public class TestReceiveAllocationBenchmark {
+  private static final double MAX_STEADY_STATE_BYTES_PER_PACKET = 8;
+
+  private static double
+  getNowSeconds()
+  {
+    return System.currentTimeMillis() / 1000.0;
+  }
+
+  private static long
+  getAllocatedBytes()
+  {
+    return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean())
+      .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * Make a buffer with nPackets encoded packets, as if they were received in
+   * one read from the socket.
+   * @param nPackets The number of packets.
+   * @param useData If true, encode Data packets, else Interest packets.
+   * @return The buffer.
+   */
+  private static ByteBuffer
+  makeInput(int nPackets, boolean useData)
+  {
+    ByteBuffer input = ByteBuffer.allocate(nPackets * 2000);
+    for (int i = 0; i < nPackets; ++i) {
+      Name name = new Name("/ndn/ucla.edu/benchmark/data").appendSegment(i);
+      Blob encoding;
+      if (useData) {
+        Data data = new Data(name);
+        data.setContent(new Blob(new byte[1000]));
+        data.getMetaInfo().setFreshnessPeriod(5000);
+        encoding = data.wireEncode();
+      }
+      else {
+        Interest interest = new Interest(name, 4000);
+        interest.setMustBeFresh(true);
+        encoding = interest.wireEncode();
+      }
+      input.put(encoding.buf());
+    }
+
+    input.flip();
+    return input;
+  }
+
+  /**
+   * Feed the input to the reader nIterations times and return the number of
+   * bytes allocated per packet.
+   */
+  private static double
+  benchmarkAllocatedBytesPerPacket
+    (ElementReader reader, ByteBuffer input, int nPacketsPerInput,
+     int nIterations, double[] duration) throws EncodingException
+  {
+    // Warm up so that the JIT has compiled the receive path.
+    for (int i = 0; i < nIterations; ++i)
+      reader.onReceivedData(input);
+
+    double start = getNowSeconds();
+    long startBytes = getAllocatedBytes();
+    for (int i = 0; i < nIterations; ++i)
+      reader.onReceivedData(input);
+    long allocatedBytes = getAllocatedBytes() - startBytes;
+    duration[0] = getNowSeconds() - start;
+
+    return (double)allocatedBytes / ((double)nIterations * nPacketsPerInput);
+  }
+
+  /**
+   * Benchmark the Node and return the number of bytes allocated per packet.
+   */
+  private static double
+  benchmarkNode
+    (String mode, boolean useData, boolean reusePackets, boolean lazyDecode)
+    throws EncodingException
+  {
+    final int nPacketsPerInput = 100;
+    final int nIterations = 20000;
+    ByteBuffer input = makeInput(nPacketsPerInput, useData);
+
+    // The node doesn't connect because the benchmark doesn't send.
+    Node node = new Node
+      (new TcpTransport(), new TcpTransport.ConnectionInfo("localhost"));
+    node.setReusePackets(reusePackets);
+    node.setLazyDecode(lazyDecode);
+    final int[] nInterests = new int[] { 0 };
+    node.setInterestFilter
+      (new InterestFilter(new Name("/ndn")), new OnInterestCallback() {
+        public void onInterest
+          (Name prefix, Interest interest, Face face, long interestFilterId,
+           InterestFilter filter) {
+          ++nInterests[0];
+        }
+      }, null);
+
+    double[] duration = new double[1];
+    double bytesPerPacket = benchmarkAllocatedBytesPerPacket
+      (new ElementReader(node), input, nPacketsPerInput, nIterations, duration);
+    int nPackets = nIterations * nPacketsPerInput;
+    System.out.println("Receive " + (useData ? "data    " : "interest") + " " +
+      mode + ": bytes allocated per packet, Hz: " + bytesPerPacket + ", " +
+      (nPackets / duration[0]));
+    return bytesPerPacket;
+  }
+
+  /**
+   * Benchmark the ElementReader only and return the number of bytes allocated
+   * per packet.
+   */
+  private static double
+  benchmarkElementReader() throws EncodingException
+  {
+    final int nPacketsPerInput = 100;
+    final int nIterations = 20000;
+    ByteBuffer input = makeInput(nPacketsPerInput, true);
+
+    // Only find the element boundaries.
+    ElementReader reader = new ElementReader(new ElementListener() {
+      public void onReceivedElement(ByteBuffer element) {}
+    });
+    double[] duration = new double[1];
+    double bytesPerPacket = benchmarkAllocatedBytesPerPacket
+      (reader, input, nPacketsPerInput, nIterations, duration);
+    int nPackets = nIterations * nPacketsPerInput;
+    System.out.println("ElementReader only: bytes allocated per packet, Hz: " +
+      bytesPerPacket + ", " + (nPackets / duration[0]));
+    return bytesPerPacket;
+  }
+
+  /**
+   * Check that bytesPerPacket is within MAX_STEADY_STATE_BYTES_PER_PACKET.
+   * @return True if OK, false if it allocated too much.
+   */
+  private static boolean
+  checkSteadyState(String what, double bytesPerPacket)
+  {
+    if (bytesPerPacket <= MAX_STEADY_STATE_BYTES_PER_PACKET)
+      return true;
+
+    System.out.println("FAIL: " + what + " allocates " + bytesPerPacket +
+      " bytes per packet, more than " + MAX_STEADY_STATE_BYTES_PER_PACKET);
+    return false;
+  }
+
+  public static void
+  main(String[] args)
+  {
+    Logger.getLogger("").setLevel(Level.OFF);
+    boolean ok = true;
+    try {
+      ok &= checkSteadyState("ElementReader", benchmarkElementReader());
+      for (int i = 0; i < 2; ++i) {
+        boolean useData = (i == 1);
+        String packetType = useData ? "Data" : "Interest";
+        benchmarkNode("default     ", useData, false, false);
+        ok &= checkSteadyState
+          (packetType + " reuse",
+           benchmarkNode("reuse       ", useData, true, false));
+        ok &= checkSteadyState
+          (packetType + " reuse + lazy",
+           benchmarkNode("reuse + lazy", useData, true, true));
+      }
+    } catch (EncodingException e) {
+      System.out.println("Error: " + e);
+      ok = false;
+    }
+
+    if (!ok)
+      System.exit(1);
+  }
+}
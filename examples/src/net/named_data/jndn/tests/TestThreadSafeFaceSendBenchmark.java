@@ -0,0 +1,170 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.ThreadSafeFace;
+import net.named_data.jndn.transport.TcpTransport;
+import net.named_data.jndn.util.Blob;
+
+/**
+ * Measure the cost of the copy in ThreadSafeFace.send(ByteBuffer), which must
+ * copy because the I/O thread sends after the call returns, compared to
+ * send(Blob) which sends the immutable buffer without copying. This sends to a
+ * local socket which a thread drains, and prints the bytes allocated on the
+ * calling thread for each packet and the rate. The ByteBuffer is direct, like
+ * a MemoryContentCache slab chunk.
+ */
+public class TestThreadSafeFaceSendBenchmark {
+  private static double
+  getNowSeconds()
+  {
+    return System.currentTimeMillis() / 1000.0;
+  }
+
+  private static long
+  getAllocatedBytes()
+  {
+    return ((com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean())
+      .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * Send nBatches batches of nPacketsPerBatch packets, waiting after each batch
+   * until the peer received it so that the outbound buffer does not fill.
+   * @param useBlob If true, call send(Blob), else send(ByteBuffer).
+   * @param nReceived The count of bytes received by the peer.
+   * @param allocatedBytes Set allocatedBytes[0] to the bytes allocated by this
+   * thread for each packet.
+   * @return The number of packets per second.
+   */
+  private static double
+  benchmark
+    (ThreadSafeFace face, Blob encoding, boolean useBlob, int nBatches,
+     int nPacketsPerBatch, AtomicLong nReceived, double[] allocatedBytes)
+    throws IOException, InterruptedException
+  {
+    ByteBuffer directEncoding = ByteBuffer.allocateDirect(encoding.size());
+    directEncoding.put(encoding.buf());
+    directEncoding.flip();
+
+    long allocated = 0;
+    double start = getNowSeconds();
+    for (int batch = 0; batch < nBatches; ++batch) {
+      long expected = nReceived.get() + (long)nPacketsPerBatch * encoding.size();
+      long startBytes = getAllocatedBytes();
+      for (int i = 0; i < nPacketsPerBatch; ++i) {
+        if (useBlob)
+          face.send(encoding);
+        else
+          face.send(directEncoding);
+      }
+      allocated += getAllocatedBytes() - startBytes;
+
+      while (nReceived.get() < expected)
+        Thread.sleep(1);
+    }
+    double duration = getNowSeconds() - start;
+
+    int nPackets = nBatches * nPacketsPerBatch;
+    allocatedBytes[0] = (double)allocated / nPackets;
+    return nPackets / duration;
+  }
+
+  public static void
+  main(String[] args)
+  {
+    Logger.getLogger("").setLevel(Level.OFF);
+    try {
+      ServerSocketChannel server = ServerSocketChannel.open();
+      server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+      ThreadSafeFace face = new ThreadSafeFace
+        (new TcpTransport(), new TcpTransport.ConnectionInfo
+         ("127.0.0.1", server.socket().getLocalPort()));
+      // Express an Interest so that the face connects.
+      face.expressInterest
+        (new Interest(new Name("/connect"), 10), (OnData)null, (OnTimeout)null);
+      final SocketChannel peer = server.accept();
+
+      // Drain the socket in a thread and count the bytes.
+      final AtomicLong nReceived = new AtomicLong();
+      Thread drainer = new Thread(new Runnable() {
+        public void run() {
+          ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+          try {
+            while (true) {
+              buffer.clear();
+              int n = peer.read(buffer);
+              if (n < 0)
+                break;
+              nReceived.addAndGet(n);
+            }
+          } catch (IOException ex) {
+            // The socket is closed.
+          }
+        }
+      });
+      drainer.setDaemon(true);
+      drainer.start();
+      // Wait for the connect Interest.
+      Thread.sleep(100);
+
+      Data data = new Data(new Name("/ndn/ucla.edu/benchmark/data"));
+      data.setContent(new Blob(new byte[1000]));
+      Blob encoding = data.wireEncode();
+
+      final int nBatches = 1000;
+      final int nPacketsPerBatch = 1000;
+      double[] allocatedBytes = new double[1];
+      for (int i = 0; i < 2; ++i) {
+        // The first round warms up the JIT.
+        double rate = benchmark
+          (face, encoding, false, nBatches, nPacketsPerBatch, nReceived,
+           allocatedBytes);
+        System.out.println("send(ByteBuffer): bytes allocated per packet, Hz: " +
+          allocatedBytes[0] + ", " + rate);
+        rate = benchmark
+          (face, encoding, true, nBatches, nPacketsPerBatch, nReceived,
+           allocatedBytes);
+        System.out.println("send(Blob):       bytes allocated per packet, Hz: " +
+          allocatedBytes[0] + ", " + rate);
+      }
+
+      face.shutdown();
+      peer.close();
+      server.close();
+    } catch (Exception e) {
+      System.out.println("Error: " + e);
+    }
+  }
+}
@@ -21,8 +21,12 @@ package net.named_data.jndn;
 
 import java.nio.ByteBuffer;
 import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.TlvWireFormat;
 import net.named_data.jndn.encoding.WireFormat;
+import net.named_data.jndn.encoding.tlv.TlvDecoder;
 import net.named_data.jndn.util.Blob;
+import net.named_data.jndn.util.BorrowedBlob;
+import net.named_data.jndn.util.BorrowedSignedBlob;
 import net.named_data.jndn.util.ChangeCounter;
 import net.named_data.jndn.util.ChangeCountable;
 import net.named_data.jndn.util.SignedBlob;
@@ -66,7 +70,7 @@ public class Data implements ChangeCountable, SignatureHolder {
 
     name_.set(new Name(data.getName()));
     metaInfo_.set(new MetaInfo(data.getMetaInfo()));
-    content_ = data.content_;
+    content_ = data.getContent();
     setDefaultWireEncoding(data.defaultWireEncoding_, null);
   }
 
@@ -121,10 +125,73 @@ public class Data implements ChangeCountable, SignatureHolder {
   public void
   wireDecode(Blob input, WireFormat wireFormat) throws EncodingException
   {
+    wireDecode(input, wireFormat, true);
+  }
+
+  /**
+   * Decode the input using a particular wire format and update this Data. If
+   * wireFormat is the default wire format, also set the defaultWireEncoding
+   * field another pointer to the input Blob. If copy is false, the fields such
+   * as the content and the name components are read-only slices of the input
+   * Blob instead of copies, which avoids copying the bytes of a large packet
+   * again. (Since a Blob is immutable, the slices are safe, but they keep the
+   * whole input in memory as long as any field is used.)
+   * @param input The input Blob to decode.  This reads from buf().position() to
+   * buf().limit(), but does not change the position.
+   * @param wireFormat A WireFormat object used to decode the input.
+   * @param copy If true, copy the bytes of each decoded field. If false, the
+   * decoded fields share the bytes of input.
+   * @throws EncodingException For invalid encoding.
+   */
+  public final void
+  wireDecode(Blob input, WireFormat wireFormat, boolean copy)
+    throws EncodingException
+  {
+    lazyInput_ = null;
+    lazyWireFormat_ = null;
     int[] signedPortionBeginOffset = new int[1];
     int[] signedPortionEndOffset = new int[1];
     wireFormat.decodeData
-      (this, input.buf(), signedPortionBeginOffset, signedPortionEndOffset);
+      (this, input.buf(), signedPortionBeginOffset, signedPortionEndOffset,
+       copy);
+
+    if (wireFormat == WireFormat.getDefaultWireFormat())
+      // This is the default wire encoding.
+      setDefaultWireEncoding
+        (new SignedBlob(input, signedPortionBeginOffset[0],
+         signedPortionEndOffset[0]), WireFormat.getDefaultWireFormat());
+    else
+      setDefaultWireEncoding(new SignedBlob(), null);
+  }
+
+  /**
+   * Decode only the name from the input using a particular wire format, and
+   * keep the input so that the other fields (the MetaInfo, content and
+   * signature) are decoded from it when they are first accessed. This is much
+   * faster for an application which only looks at the name of most packets.
+   * If wireFormat is the default wire format, also set the defaultWireEncoding
+   * field another pointer to the input Blob, so that wireEncode() of an
+   * unmodified Data returns the input without decoding or encoding the other
+   * fields. The name components and the lazily decoded fields are read-only
+   * slices of the input.
+   * Note that this only checks the encoding of the name. If the other fields
+   * have an invalid encoding, the method which first accesses them throws an
+   * Error.
+   * @param input The input Blob to decode.  This reads from buf().position() to
+   * buf().limit(), but does not change the position.
+   * @param wireFormat A WireFormat object used to decode the input.
+   * @throws EncodingException For invalid encoding of the name.
+   */
+  public final void
+  wireDecodeLazy(Blob input, WireFormat wireFormat) throws EncodingException
+  {
+    int[] signedPortionBeginOffset = new int[1];
+    int[] signedPortionEndOffset = new int[1];
+    wireFormat.decodeDataName
+      (getName(), input.buf(), signedPortionBeginOffset, signedPortionEndOffset,
+       false);
+    lazyInput_ = input;
+    lazyWireFormat_ = wireFormat;
 
     if (wireFormat == WireFormat.getDefaultWireFormat())
       // This is the default wire encoding.
@@ -135,6 +202,19 @@ public class Data implements ChangeCountable, SignatureHolder {
       setDefaultWireEncoding(new SignedBlob(), null);
   }
 
+  /**
+   * Decode only the name from the input using the default wire format
+   * WireFormat.getDefaultWireFormat(). See wireDecodeLazy(input, wireFormat).
+   * @param input The input Blob to decode.  This reads from buf().position() to
+   * buf().limit(), but does not change the position.
+   * @throws EncodingException For invalid encoding of the name.
+   */
+  public final void
+  wireDecodeLazy(Blob input) throws EncodingException
+  {
+    wireDecodeLazy(input, WireFormat.getDefaultWireFormat());
+  }
+
   /**
    * Decode the input using the default wire format
    * WireFormat.getDefaultWireFormat() and update this Data. Also set the
@@ -180,16 +260,91 @@ public class Data implements ChangeCountable, SignatureHolder {
   }
 
   public final Signature
-  getSignature() { return (Signature)signature_.get(); }
+  getSignature()
+  {
+    decodeLazyFields();
+    return (Signature)signature_.get();
+  }
 
   public final Name
   getName() { return (Name)name_.get(); }
 
   public final MetaInfo
-  getMetaInfo() { return (MetaInfo)metaInfo_.get(); }
+  getMetaInfo()
+  {
+    decodeLazyFields();
+    return (MetaInfo)metaInfo_.get();
+  }
 
   public final Blob
-  getContent() { return content_; }
+  getContent()
+  {
+    decodeLazyFields();
+    return content_;
+  }
+
+  /**
+   * Decode the input in NDN-TLV into this Data which the Node reuses for
+   * each received packet (see Face.setReusePackets). Unlike wireDecode, this
+   * does not allocate once this Data has decoded a packet with the same
+   * structure, because the name components, content and signature value are
+   * BorrowedBlob objects which are pointed to the new input. So the fields are
+   * only valid until the next call and while the bytes of input are valid.
+   * @param input The input buffer to decode. This reads from position() to
+   * limit(), but does not change the position.
+   * @param decoder The TlvDecoder to reset to the input.
+   * @param signedPortionBeginOffset An array to use for the offset of the
+   * beginning of the signed portion.
+   * @param signedPortionEndOffset An array to use for the offset of the end of
+   * the signed portion.
+   * @param lazy If true, only decode the name as in wireDecodeLazy, and decode
+   * the other fields from the borrowed input when first accessed.
+   * @throws EncodingException For invalid encoding.
+   */
+  final void
+  wireDecodeBorrowed
+    (ByteBuffer input, TlvDecoder decoder, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset, boolean lazy) throws EncodingException
+  {
+    TlvWireFormat wireFormat = TlvWireFormat.get();
+    decoder.reset(input);
+    if (lazy) {
+      wireFormat.decodeDataNameBorrowed
+        (getName(), decoder, signedPortionBeginOffset, signedPortionEndOffset);
+      if (borrowedLazyInput_ == null)
+        borrowedLazyInput_ = new BorrowedBlob();
+      borrowedLazyInput_.borrow(input, input.position(), input.limit());
+      lazyInput_ = borrowedLazyInput_;
+      lazyWireFormat_ = wireFormat;
+    }
+    else {
+      lazyInput_ = null;
+      lazyWireFormat_ = null;
+      wireFormat.decodeDataBorrowed
+        (this, decoder, signedPortionBeginOffset, signedPortionEndOffset);
+    }
+
+    if (wireFormat == WireFormat.getDefaultWireFormat()) {
+      // This is the default wire encoding.
+      if (borrowedWireEncoding_ == null)
+        borrowedWireEncoding_ = new BorrowedSignedBlob();
+      borrowedWireEncoding_.borrow
+        (input, input.position(), input.limit(), signedPortionBeginOffset[0],
+         signedPortionEndOffset[0]);
+      setDefaultWireEncoding
+        (borrowedWireEncoding_, WireFormat.getDefaultWireFormat());
+    }
+    else
+      setDefaultWireEncoding(new SignedBlob(), null);
+  }
+
+  /**
+   * Check if this Data was decoded by wireDecodeLazy and the fields other than
+   * the name have not been decoded yet.
+   * @return True if the other fields are not decoded yet.
+   */
+  public final boolean
+  isLazy() { return lazyInput_ != null; }
 
   /**
    * Get the incoming face ID of the local control header.
@@ -233,6 +388,8 @@ public class Data implements ChangeCountable, SignatureHolder {
   public final Data
   setSignature(Signature signature)
   {
+    // Decode the lazy fields first so that they don't replace this value.
+    decodeLazyFields();
     try {
       signature_.set(signature == null ?
         new Sha256WithRsaSignature() : (Signature)signature.clone());
@@ -270,6 +427,7 @@ public class Data implements ChangeCountable, SignatureHolder {
   public final Data
   setMetaInfo(MetaInfo metaInfo)
   {
+    decodeLazyFields();
     metaInfo_.set(metaInfo == null ? new MetaInfo() : new MetaInfo(metaInfo));
     ++changeCount_;
     return this;
@@ -278,6 +436,7 @@ public class Data implements ChangeCountable, SignatureHolder {
   public final Data
   setContent(Blob content)
   {
+    decodeLazyFields();
     content_ = (content == null ? new Blob() : content);
     ++changeCount_;
     return this;
@@ -301,6 +460,15 @@ public class Data implements ChangeCountable, SignatureHolder {
     return this;
   }
 
+  /**
+   * An internal library method to get the LocalControlHeader of an incoming
+   * packet. The application should not call this.
+   * @return The LocalControlHeader, which should not be modified.
+   * @note This is an experimental feature. This API may change in the future.
+   */
+  final LocalControlHeader
+  getLocalControlHeader() { return localControlHeader_; }
+
   /**
    * Get the change count, which is incremented each time this object
    * (or a child object) is changed.
@@ -331,6 +499,33 @@ public class Data implements ChangeCountable, SignatureHolder {
     getDefaultWireEncodingChangeCount_ = getChangeCount();
   }
 
+  /**
+   * If this was decoded by wireDecodeLazy, decode the fields other than the
+   * name from lazyInput_. This does not change the name or the change count,
+   * so the default wire encoding stays valid.
+   */
+  private void
+  decodeLazyFields()
+  {
+    if (lazyInput_ == null)
+      return;
+
+    Data data = new Data();
+    try {
+      // The input is an immutable Blob, so the fields can share its bytes.
+      data.wireDecode(lazyInput_, lazyWireFormat_, false);
+    } catch (EncodingException ex) {
+      throw new Error
+        ("Data: Error decoding the lazily decoded fields: " + ex.getMessage());
+    }
+    lazyInput_ = null;
+    lazyWireFormat_ = null;
+
+    signature_.set(data.getSignature());
+    metaInfo_.set(data.getMetaInfo());
+    content_ = data.content_;
+  }
+
   private final ChangeCounter signature_ =
     new ChangeCounter(new Sha256WithRsaSignature());
   private final ChangeCounter name_ = new ChangeCounter(new Name());
@@ -342,4 +537,11 @@ public class Data implements ChangeCountable, SignatureHolder {
   private WireFormat defaultWireEncodingFormat_;
   private long getDefaultWireEncodingChangeCount_ = 0;
   private long changeCount_ = 0;
+  private Blob lazyInput_ = null; /**< The input given to wireDecodeLazy, or
+    * null if the fields are decoded. */
+  private WireFormat lazyWireFormat_ = null;
+  // The objects which wireDecodeBorrowed reuses for each packet. They are null
+  //   until the first call.
+  private BorrowedBlob borrowedLazyInput_ = null;
+  private BorrowedSignedBlob borrowedWireEncoding_ = null;
 }
@@ -0,0 +1,423 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn;
+
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.named_data.jndn.impl.DeadlineHeap;
+import net.named_data.jndn.transport.Transport;
+import net.named_data.jndn.util.Common;
+
+/**
+ * An EventLoop owns one thread and one Selector which process the events for
+ * any number of faces. Each ThreadSafeFace which uses the EventLoop is pinned
+ * to it: its requests run as tasks on the loop thread, the channel of its
+ * transport is registered with the loop's Selector, and the loop wakes up for
+ * the next interest timeout of any of its faces. Use an EventLoopGroup to
+ * spread many faces over a fixed number of loops.
+ */
+public class EventLoop {
+  /**
+   * Create a new EventLoop and start its thread. The thread is a daemon thread
+   * so it does not keep the application alive, but you should call shutdown()
+   * when you are done with it.
+   * @throws IOException If the Selector can't be opened.
+   */
+  public EventLoop() throws IOException
+  {
+    selector_ = Selector.open();
+    thread_ = new Thread(new Runnable() {
+      public void run() {
+        loop();
+      }
+    }, "EventLoop-" + threadCount_.incrementAndGet());
+    thread_.setDaemon(true);
+    thread_.start();
+  }
+
+  /**
+   * Check if the current thread is the thread of this loop.
+   * @return True if called from the loop thread.
+   */
+  public final boolean
+  inEventLoop() { return Thread.currentThread() == thread_; }
+
+  /**
+   * Check if this loop is still running.
+   * @return False if shutdown() has been called.
+   */
+  public final boolean
+  isRunning() { return isRunning_; }
+
+  /**
+   * Run the task on the loop thread after the tasks which were already
+   * submitted. This can be called from any thread. If the task throws an
+   * exception, it is logged.
+   * @param task The task to run.
+   */
+  public final void
+  execute(Runnable task)
+  {
+    taskQueue_.add(task);
+    // Only wake the loop thread once until it drains the queue again.
+    if (!inEventLoop() && isWakeupPending_.compareAndSet(false, true))
+      selector_.wakeup();
+  }
+
+  /**
+   * Stop the loop thread. This shuts down the Node of each face which is still
+   * registered and closes the Selector. Tasks which have not yet run are
+   * dropped. If this is not called from the loop thread, wait for the loop
+   * thread to finish.
+   */
+  public void
+  shutdown()
+  {
+    isRunning_ = false;
+    selector_.wakeup();
+    if (!inEventLoop()) {
+      try {
+        thread_.join();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Get the number of faces registered with this loop. This should only be
+   * called from the loop thread.
+   * @return The number of faces.
+   */
+  public final int
+  getFaceCount() { return entries_.size(); }
+
+  /**
+   * An Entry holds the state for a Node which is registered with this loop.
+   * It is in deadlineHeap_ if the Node has a pending interest with a timeout.
+   */
+  private static class Entry extends DeadlineHeap.Item {
+    public Entry(Node node)
+    {
+      node_ = node;
+    }
+
+    public final Node node_;
+    public SelectableChannel channel_ = null;
+    public SelectionKey key_ = null;
+    public boolean isPolled_ = false;
+    public boolean isInBatch_ = false;
+  }
+
+  /**
+   * Register the node so that the loop processes its events. This must be
+   * called from the loop thread.
+   * @param node The Node of a ThreadSafeFace.
+   */
+  final void
+  register(Node node)
+  {
+    if (entries_.containsKey(node))
+      return;
+
+    Entry entry = new Entry(node);
+    entries_.put(node, entry);
+    update(entry);
+  }
+
+  /**
+   * Unregister the node so that the loop no longer processes its events. This
+   * does not shut down the Node. This must be called from the loop thread.
+   * @param node The Node given to register.
+   */
+  final void
+  unregister(Node node)
+  {
+    Entry entry = (Entry)entries_.remove(node);
+    if (entry == null)
+      return;
+
+    if (entry.key_ != null)
+      entry.key_.cancel();
+    if (entry.isPolled_)
+      polledEntries_.remove(entry);
+    deadlineHeap_.remove(entry);
+  }
+
+  /**
+   * Run the task on the loop thread, then update the registration of the node
+   * since the task may have connected its transport or changed its pending
+   * interests. The packets which the tasks of one loop turn send through the
+   * node are batched and written together after the tasks run. This can be
+   * called from any thread.
+   * @param node The Node which the task uses.
+   * @param task The task to run.
+   */
+  final void
+  execute(final Node node, final Runnable task)
+  {
+    execute(new Runnable() {
+      public void run() {
+        Entry entry = (Entry)entries_.get(node);
+        if (entry != null && !entry.isInBatch_) {
+          node.beginBatch();
+          entry.isInBatch_ = true;
+          batchEntries_.add(entry);
+        }
+
+        try {
+          task.run();
+        } finally {
+          entry = (Entry)entries_.get(node);
+          if (entry != null)
+            update(entry);
+        }
+      }
+    });
+  }
+
+  private void
+  loop()
+  {
+    while (isRunning_) {
+      // Clear the flag before draining the queue so that a task submitted
+      //   after this will wake up the select below.
+      isWakeupPending_.set(false);
+      runTasks();
+      endBatches();
+
+      try {
+        long waitMilliseconds = getWaitMilliseconds();
+        if (waitMilliseconds > 0)
+          selector_.select(waitMilliseconds);
+        else
+          selector_.selectNow();
+      } catch (IOException ex) {
+        Logger.getLogger(EventLoop.class.getName()).log
+          (Level.SEVERE, "Error in select", ex);
+      }
+
+      Iterator keys = selector_.selectedKeys().iterator();
+      while (keys.hasNext()) {
+        SelectionKey key = (SelectionKey)keys.next();
+        keys.remove();
+        processEvents((Entry)key.attachment());
+      }
+
+      for (int i = polledEntries_.size() - 1; i >= 0; --i)
+        processEvents((Entry)polledEntries_.get(i));
+
+      // Process each node which has an interest that timed out. processEvents
+      //   moves the entry to its next timeout which is later than now.
+      double now = Common.getNowMilliseconds();
+      while (true) {
+        Entry entry = (Entry)deadlineHeap_.pollExpired(now);
+        if (entry == null)
+          break;
+        processEvents(entry);
+      }
+    }
+
+    Object[] entries = entries_.values().toArray();
+    for (int i = 0; i < entries.length; ++i) {
+      Node node = ((Entry)entries[i]).node_;
+      unregister(node);
+      node.shutdown();
+    }
+    try {
+      selector_.close();
+    } catch (IOException ex) {
+    }
+  }
+
+  private void
+  runTasks()
+  {
+    while (true) {
+      Runnable task = (Runnable)taskQueue_.poll();
+      if (task == null)
+        break;
+
+      try {
+        task.run();
+      } catch (Throwable ex) {
+        Logger.getLogger(EventLoop.class.getName()).log
+          (Level.SEVERE, "Error in a task on the event loop", ex);
+      }
+    }
+  }
+
+  /**
+   * End the batch of each node which a task started, which writes the packets
+   * that the tasks sent.
+   */
+  private void
+  endBatches()
+  {
+    for (int i = 0; i < batchEntries_.size(); ++i) {
+      Entry entry = (Entry)batchEntries_.get(i);
+      entry.isInBatch_ = false;
+      try {
+        entry.node_.endBatch();
+      } catch (Throwable ex) {
+        Logger.getLogger(EventLoop.class.getName()).log
+          (Level.SEVERE, "Error sending a batch", ex);
+      }
+      if (entries_.containsKey(entry.node_))
+        // Select for writing if the transport couldn't send everything.
+        update(entry);
+    }
+    batchEntries_.clear();
+  }
+
+  /**
+   * Get how long select can block before the next interest timeout.
+   * @return The time in milliseconds, or 0 to not block.
+   */
+  private long
+  getWaitMilliseconds()
+  {
+    if (!taskQueue_.isEmpty())
+      return 0;
+
+    long waitMilliseconds = MAX_WAIT_MILLISECONDS;
+    if (polledEntries_.size() > 0)
+      waitMilliseconds = POLL_INTERVAL_MILLISECONDS;
+
+    Entry entry = (Entry)deadlineHeap_.peek();
+    if (entry != null) {
+      // Round up so that the interest has timed out when we wake up.
+      long untilTimeout = (long)Math.ceil
+        (entry.getDeadlineMilliseconds() - Common.getNowMilliseconds());
+      waitMilliseconds = Math.min(waitMilliseconds, untilTimeout);
+    }
+
+    return waitMilliseconds;
+  }
+
+  private void
+  processEvents(Entry entry)
+  {
+    if (!entries_.containsKey(entry.node_))
+      // A callback unregistered the node.
+      return;
+
+    try {
+      entry.node_.processEvents();
+    } catch (Throwable ex) {
+      Logger.getLogger(EventLoop.class.getName()).log
+        (Level.SEVERE, "Error in processEvents", ex);
+    }
+
+    if (entries_.containsKey(entry.node_))
+      update(entry);
+  }
+
+  /**
+   * Register the node's current channel with the Selector for reading, and
+   * for writing if the transport has buffered data (or poll it if the
+   * transport is not selectable), and move the entry in deadlineHeap_ to the
+   * node's next interest timeout.
+   */
+  private void
+  update(Entry entry)
+  {
+    Transport transport = entry.node_.getTransport();
+    boolean isConnected = transport.getIsConnected();
+    SelectableChannel channel =
+      isConnected ? transport.getSelectableChannel() : null;
+
+    int interestOps = SelectionKey.OP_READ;
+    if (channel != null && transport.hasPendingWrites())
+      // Wake up to flush the outbound buffer when the channel is writable.
+      interestOps |= SelectionKey.OP_WRITE;
+
+    if (channel != entry.channel_) {
+      // The transport connected or reconnected with a new channel.
+      if (entry.key_ != null) {
+        entry.key_.cancel();
+        entry.key_ = null;
+      }
+      entry.channel_ = channel;
+      if (channel != null) {
+        try {
+          entry.key_ = channel.register(selector_, interestOps, entry);
+        } catch (IOException ex) {
+          Logger.getLogger(EventLoop.class.getName()).log
+            (Level.SEVERE, "Error registering the channel", ex);
+          entry.channel_ = null;
+        }
+      }
+    }
+    else if (entry.key_ != null && entry.key_.isValid() &&
+             entry.key_.interestOps() != interestOps)
+      entry.key_.interestOps(interestOps);
+
+    // A connected transport which is not selectable has to be polled.
+    boolean isPolled = isConnected && entry.key_ == null;
+    if (isPolled != entry.isPolled_) {
+      if (isPolled)
+        polledEntries_.add(entry);
+      else
+        polledEntries_.remove(entry);
+      entry.isPolled_ = isPolled;
+    }
+
+    deadlineHeap_.remove(entry);
+    double nextTimeout = entry.node_.getNextTimeoutMilliseconds();
+    if (nextTimeout >= 0.0)
+      deadlineHeap_.add(entry, nextTimeout);
+  }
+
+  /**
+   * The maximum time that the loop blocks in select. It is woken up earlier by
+   * incoming data, interest timeouts and new tasks.
+   */
+  private static final long MAX_WAIT_MILLISECONDS = 1000;
+  /**
+   * The maximum time that the loop blocks if a transport is not selectable.
+   */
+  private static final long POLL_INTERVAL_MILLISECONDS = 10;
+  private static final AtomicInteger threadCount_ = new AtomicInteger();
+
+  private final Selector selector_;
+  private final Thread thread_;
+  private volatile boolean isRunning_ = true;
+  private final AtomicBoolean isWakeupPending_ = new AtomicBoolean(false);
+  // Use ConcurrentLinkedQueue, HashMap and ArrayList without generics so it
+  // works with older Java compilers.
+  private final ConcurrentLinkedQueue taskQueue_ =
+    new ConcurrentLinkedQueue(); // of Runnable
+  // The following are only used on the loop thread.
+  private final HashMap entries_ = new HashMap(); // of Node => Entry
+  private final ArrayList polledEntries_ = new ArrayList(); // of Entry
+  private final ArrayList batchEntries_ = new ArrayList(); // of Entry
+  private final DeadlineHeap deadlineHeap_ = new DeadlineHeap();
+}
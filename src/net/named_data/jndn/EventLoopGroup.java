@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.named_data.jndn.transport.Transport;
+
+/**
+ * An EventLoopGroup holds a fixed number of EventLoop objects and assigns new
+ * faces to them in round-robin order, so that many faces can share a small
+ * number of threads. Each face stays pinned to the loop it was assigned.
+ */
+public class EventLoopGroup {
+  /**
+   * Create an EventLoopGroup with the given number of loops and start their
+   * threads.
+   * @param nEventLoops The number of loops, which must be at least 1.
+   * @throws IOException If a Selector can't be opened.
+   */
+  public EventLoopGroup(int nEventLoops) throws IOException
+  {
+    if (nEventLoops < 1)
+      throw new Error("EventLoopGroup: nEventLoops must be at least 1");
+
+    eventLoops_ = new EventLoop[nEventLoops];
+    for (int i = 0; i < nEventLoops; ++i)
+      eventLoops_[i] = new EventLoop();
+  }
+
+  /**
+   * Create an EventLoopGroup with one loop for each available processor and
+   * start their threads.
+   * @throws IOException If a Selector can't be opened.
+   */
+  public EventLoopGroup() throws IOException
+  {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * Get the next loop in round-robin order.
+   * @return The EventLoop.
+   */
+  public final EventLoop
+  next()
+  {
+    int i = nextIndex_.getAndIncrement() % eventLoops_.length;
+    if (i < 0)
+      // The counter wrapped around.
+      i += eventLoops_.length;
+    return eventLoops_[i];
+  }
+
+  /**
+   * Get the number of loops in this group.
+   * @return The number of loops.
+   */
+  public final int
+  size() { return eventLoops_.length; }
+
+  /**
+   * Get the loop at the given index.
+   * @param i The index of the loop, from 0 to size() - 1.
+   * @return The EventLoop.
+   */
+  public final EventLoop
+  get(int i) { return eventLoops_[i]; }
+
+  /**
+   * Create a new ThreadSafeFace which uses the next loop in this group.
+   * @param transport A Transport object used for communication.
+   * @param connectionInfo A Transport.ConnectionInfo to be used to connect to
+   * the transport.
+   * @param callbackExecutor The Executor used to call callbacks such as onData
+   * and onInterest. If null, call the callbacks on the loop thread, in which
+   * case the callbacks should not block since they delay the other faces on
+   * the same loop.
+   * @return The new ThreadSafeFace.
+   */
+  public final ThreadSafeFace
+  newFace
+    (Transport transport, Transport.ConnectionInfo connectionInfo,
+     Executor callbackExecutor)
+  {
+    return new ThreadSafeFace
+      (transport, connectionInfo, next(), callbackExecutor);
+  }
+
+  /**
+   * Shut down all the loops in this group, which also shuts down their faces.
+   */
+  public void
+  shutdown()
+  {
+    for (int i = 0; i < eventLoops_.length; ++i)
+      eventLoops_[i].shutdown();
+  }
+
+  private final EventLoop[] eventLoops_;
+  private final AtomicInteger nextIndex_ = new AtomicInteger();
+}
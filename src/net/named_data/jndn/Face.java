@@ -21,6 +21,8 @@ package net.named_data.jndn;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
 import net.named_data.jndn.encoding.EncodingException;
 import net.named_data.jndn.encoding.WireFormat;
 import net.named_data.jndn.security.KeyChain;
@@ -29,6 +31,8 @@ import net.named_data.jndn.transport.TcpTransport;
 import net.named_data.jndn.transport.Transport;
 import net.named_data.jndn.util.Blob;
 import net.named_data.jndn.util.Common;
+import net.named_data.jndn.util.Promise;
+import net.named_data.jndn.util.RttEstimator;
 
 /**
  * The Face class provides the main methods for NDN communication.
@@ -127,7 +131,7 @@ public class Face {
   expressInterest
     (Interest interest, OnData onData, OnTimeout onTimeout) throws IOException
   {
-    return node_.expressInterest
+    return expressInterest
       (interest, onData, onTimeout, WireFormat.getDefaultWireFormat());
   }
 
@@ -149,7 +153,7 @@ public class Face {
   expressInterest
     (Interest interest, OnData onData, WireFormat wireFormat) throws IOException
   {
-    return node_.expressInterest(interest, onData, null, wireFormat);
+    return expressInterest(interest, onData, null, wireFormat);
   }
 
   /**
@@ -169,7 +173,7 @@ public class Face {
   public long
   expressInterest(Interest interest, OnData onData) throws IOException
   {
-    return node_.expressInterest
+    return expressInterest
       (interest, onData, null, WireFormat.getDefaultWireFormat());
   }
 
@@ -215,7 +219,7 @@ public class Face {
     else
       interest.setInterestLifetimeMilliseconds(4000.0);
 
-    return node_.expressInterest(interest, onData, onTimeout, wireFormat);
+    return expressInterest(interest, onData, onTimeout, wireFormat);
   }
 
   /**
@@ -406,6 +410,129 @@ public class Face {
       (name, null, onData, null, WireFormat.getDefaultWireFormat());
   }
 
+  /**
+   * Send each Interest in the list through the transport as in
+   * expressInterest, but write all the encoded interests to the transport
+   * together so that a TcpTransport needs only one gathering write for the
+   * whole list.
+   * @param interests The list of Interest objects to send. This copies each
+   * Interest.
+   * @param onData  When a matching data packet is received, this calls
+   * onData.onData(interest, data) where interest is the interest from the list
+   * and data is the received Data object.
+   * @param onTimeout If an interest times out according to its interest
+   * lifetime, this calls onTimeout.onTimeout(interest). If onTimeout is null,
+   * this does not use it.
+   * @param wireFormat A WireFormat object used to encode the message.
+   * @return An array of the pending interest IDs, in the same order as
+   * interests, which can be used with removePendingInterest.
+   * @throws IOException For I/O error in sending the interests.
+   * @throws Error If an encoded interest size exceeds getMaxNdnPacketSize().
+   */
+  public long[]
+  expressInterests
+    (List interests, OnData onData, OnTimeout onTimeout, WireFormat wireFormat)
+    throws IOException
+  {
+    long[] pendingInterestIds = new long[interests.size()];
+    node_.beginBatch();
+    try {
+      for (int i = 0; i < interests.size(); ++i)
+        pendingInterestIds[i] = node_.expressInterest
+          ((Interest)interests.get(i), onData, onTimeout, wireFormat);
+    }
+    finally {
+      node_.endBatch();
+    }
+
+    return pendingInterestIds;
+  }
+
+  /**
+   * Send each Interest in the list through the transport, writing them
+   * together. This uses the default WireFormat.getDefaultWireFormat(). See
+   * expressInterests(interests, onData, onTimeout, wireFormat) for details.
+   * @param interests The list of Interest objects to send. This copies each
+   * Interest.
+   * @param onData  When a matching data packet is received, this calls
+   * onData.onData(interest, data).
+   * @param onTimeout If an interest times out, this calls
+   * onTimeout.onTimeout(interest). If onTimeout is null, this does not use it.
+   * @return An array of the pending interest IDs, in the same order as
+   * interests.
+   * @throws IOException For I/O error in sending the interests.
+   * @throws Error If an encoded interest size exceeds getMaxNdnPacketSize().
+   */
+  public final long[]
+  expressInterests(List interests, OnData onData, OnTimeout onTimeout)
+    throws IOException
+  {
+    return expressInterests
+      (interests, onData, onTimeout, WireFormat.getDefaultWireFormat());
+  }
+
+  /**
+   * Send the Interest through the transport and return a Promise which is
+   * completed with the matching Data packet. If the interest times out, the
+   * Promise is completed exceptionally with a
+   * java.util.concurrent.TimeoutException. Cancelling the Promise removes the
+   * pending interest. The Promise is completed from the thread which calls the
+   * OnData or OnTimeout callbacks (the processEvents thread, or the callback
+   * Executor of a ThreadSafeFace).
+   * @param interest The Interest to send.  This copies the Interest.
+   * @param wireFormat A WireFormat object used to encode the message.
+   * @return A Promise whose value is the received Data object.
+   * @throws IOException For I/O error in sending the interest.
+   * @throws Error If the encoded interest size exceeds getMaxNdnPacketSize().
+   */
+  public Promise
+  expressInterestAsync(Interest interest, WireFormat wireFormat)
+    throws IOException
+  {
+    final Promise promise = new Promise();
+    final long pendingInterestId = expressInterest
+      (interest,
+       new OnData() {
+         public void onData(Interest interest, Data data) {
+           if (node_.getReusePackets())
+             // The promise keeps the data, so don't complete with a borrowed
+             // object.
+             data = Node.detachData(data);
+           promise.complete(data);
+         }
+       },
+       new OnTimeout() {
+         public void onTimeout(Interest interest) {
+           promise.completeExceptionally(new TimeoutException
+             ("Interest timed out: " + interest.getName().toUri()));
+         }
+       },
+       wireFormat);
+
+    promise.setOnCancel(new Promise.OnCancel() {
+      public void onCancel() {
+        removePendingInterest(pendingInterestId);
+      }
+    });
+    return promise;
+  }
+
+  /**
+   * Send the Interest through the transport and return a Promise which is
+   * completed with the matching Data packet. This uses the default
+   * WireFormat.getDefaultWireFormat(). See expressInterestAsync(interest,
+   * wireFormat) for details.
+   * @param interest The Interest to send.  This copies the Interest.
+   * @return A Promise whose value is the received Data object.
+   * @throws IOException For I/O error in sending the interest.
+   * @throws Error If the encoded interest size exceeds getMaxNdnPacketSize().
+   */
+  public Promise
+  expressInterestAsync(Interest interest) throws IOException
+  {
+    return expressInterestAsync(interest, WireFormat.getDefaultWireFormat());
+  }
+
   /**
    * Remove the pending interest entry with the pendingInterestId from the
    * pending interest table. This does not affect another pending interest with
@@ -520,10 +647,50 @@ public class Face {
     (Name prefix, OnInterestCallback onInterest,
      OnRegisterFailed onRegisterFailed, ForwardingFlags flags,
      WireFormat wireFormat) throws IOException, SecurityException
+  {
+    return registerPrefix
+      (prefix, onInterest, onRegisterFailed, null, flags, wireFormat);
+  }
+
+  /**
+   * Register prefix with the connected NDN hub and call onInterest when a
+   * matching interest is received. This is the same as registerPrefix above,
+   * but also calls onRegisterSuccess when the forwarder confirms the
+   * registration.
+   * @param prefix A Name for the prefix to register. This copies the Name.
+   * @param onInterest (optional) If not null, this creates an interest filter
+   * from prefix so that when an Interest is received which matches the filter,
+   * this calls
+   * onInterest.onInterest(prefix, interest, face, interestFilterId, filter).
+   * The onInterest callback should supply the Data with face.putData().
+   * NOTE: You must not change the prefix or filter objects - if you need to
+   * change them then make a copy.
+   * If onInterest is null, it is ignored and you must call setInterestFilter.
+   * @param onRegisterFailed If register prefix fails for any reason, this
+   * calls onRegisterFailed.onRegisterFailed(prefix).
+   * @param onRegisterSuccess (optional) When the forwarder confirms the
+   * registration, this calls
+   * onRegisterSuccess.onRegisterSuccess(prefix, registeredPrefixId). If null,
+   * this does not use it.
+   * @param flags The flags for finer control of which interests are forwarded
+   * to the application.
+   * @param wireFormat A WireFormat object used to encode the message.
+   * @return The registered prefix ID which can be used with
+   * removeRegisteredPrefix.
+   * @throws IOException For I/O error in sending the registration request.
+   * @throws SecurityException If signing a command interest for NFD and cannot
+   * find the private key for the certificateName.
+   */
+  public long
+  registerPrefix
+    (Name prefix, OnInterestCallback onInterest,
+     OnRegisterFailed onRegisterFailed, OnRegisterSuccess onRegisterSuccess,
+     ForwardingFlags flags, WireFormat wireFormat)
+    throws IOException, SecurityException
   {
     return node_.registerPrefix
-      (prefix, onInterest, onRegisterFailed, flags, wireFormat,
-       commandKeyChain_, commandCertificateName_, this);
+      (prefix, onInterest, onRegisterFailed, onRegisterSuccess, flags,
+       wireFormat, commandKeyChain_, commandCertificateName_, this);
   }
 
   /**
@@ -620,6 +787,79 @@ public class Face {
        WireFormat.getDefaultWireFormat());
   }
 
+  /**
+   * Register prefix with the connected NDN hub and return a Promise which is
+   * completed when the forwarder confirms the registration. See registerPrefix
+   * for details. If the registration fails, the Promise is completed
+   * exceptionally with an IOException. Cancelling the Promise removes the
+   * registered prefix.
+   * @param prefix A Name for the prefix to register. This copies the Name.
+   * @param onInterest (optional) If not null, this creates an interest filter
+   * from prefix so that when an Interest is received which matches the filter,
+   * this calls
+   * onInterest.onInterest(prefix, interest, face, interestFilterId, filter).
+   * @param flags The flags for finer control of which interests are forwarded
+   * to the application.
+   * @param wireFormat A WireFormat object used to encode the message.
+   * @return A Promise whose value is the registered prefix ID as a Long, which
+   * can be used with removeRegisteredPrefix.
+   * @throws IOException For I/O error in sending the registration request.
+   * @throws SecurityException If signing a command interest for NFD and cannot
+   * find the private key for the certificateName.
+   */
+  public Promise
+  registerPrefixAsync
+    (Name prefix, OnInterestCallback onInterest, ForwardingFlags flags,
+     WireFormat wireFormat) throws IOException, SecurityException
+  {
+    final Promise promise = new Promise();
+    final long registeredPrefixId = registerPrefix
+      (prefix, onInterest,
+       new OnRegisterFailed() {
+         public void onRegisterFailed(Name prefix) {
+           promise.completeExceptionally(new IOException
+             ("Register prefix failed: " + prefix.toUri()));
+         }
+       },
+       new OnRegisterSuccess() {
+         public void onRegisterSuccess(Name prefix, long registeredPrefixId) {
+           promise.complete(new Long(registeredPrefixId));
+         }
+       },
+       flags, wireFormat);
+
+    promise.setOnCancel(new Promise.OnCancel() {
+      public void onCancel() {
+        removeRegisteredPrefix(registeredPrefixId);
+      }
+    });
+    return promise;
+  }
+
+  /**
+   * Register prefix with the connected NDN hub and return a Promise which is
+   * completed when the forwarder confirms the registration. This uses the
+   * default ForwardingFlags and WireFormat.getDefaultWireFormat(). See
+   * registerPrefixAsync(prefix, onInterest, flags, wireFormat) for details.
+   * @param prefix A Name for the prefix to register. This copies the Name.
+   * @param onInterest (optional) If not null, this creates an interest filter
+   * from prefix so that when an Interest is received which matches the filter,
+   * this calls
+   * onInterest.onInterest(prefix, interest, face, interestFilterId, filter).
+   * @return A Promise whose value is the registered prefix ID as a Long.
+   * @throws IOException For I/O error in sending the registration request.
+   * @throws SecurityException If signing a command interest for NFD and cannot
+   * find the private key for the certificateName.
+   */
+  public Promise
+  registerPrefixAsync(Name prefix, OnInterestCallback onInterest)
+    throws IOException, SecurityException
+  {
+    return registerPrefixAsync
+      (prefix, onInterest, new ForwardingFlags(),
+       WireFormat.getDefaultWireFormat());
+  }
+
   /**
    * @deprecated Use registerPrefix where onInterest is an OnInterestCallback
    * (which is passed this Face for calling putData) instead of the deprecated
@@ -644,9 +884,8 @@ public class Face {
         }
       };
 
-    return node_.registerPrefix
-      (prefix, onInterestCallback, onRegisterFailed, flags, wireFormat,
-       commandKeyChain_, commandCertificateName_, this);
+    return registerPrefix
+      (prefix, onInterestCallback, onRegisterFailed, flags, wireFormat);
   }
 
   /**
@@ -742,7 +981,7 @@ public class Face {
   public long
   setInterestFilter(Name prefix, OnInterestCallback onInterest)
   {
-    return node_.setInterestFilter(new InterestFilter(prefix), onInterest, this);
+    return setInterestFilter(new InterestFilter(prefix), onInterest);
   }
 
   /**
@@ -781,7 +1020,7 @@ public class Face {
   public void
   putData(Data data) throws IOException
   {
-    node_.putData(data, WireFormat.getDefaultWireFormat());
+    putData(data, WireFormat.getDefaultWireFormat());
   }
 
   /**
@@ -792,11 +1031,14 @@ public class Face {
   public void
   send(Blob encoding) throws IOException
   {
-    node_.send(encoding.buf());
+    send(encoding.buf());
   }
 
   /**
-   * Send the encoded packet out through the face.
+   * Send the encoded packet out through the face. The caller may change the
+   * bytes after this returns. If the transport can write the packet now, this
+   * writes directly from the buffer (which can be a direct ByteBuffer) without
+   * copying. Otherwise the transport copies the part which it must keep.
    * @param encoding The array of bytes for the encoded packet to send.  This
    * reads from position() to limit(), but does not change the position.
    * @throws Error If the encoded packet size exceeds getMaxNdnPacketSize().
@@ -804,7 +1046,174 @@ public class Face {
   public void
   send(ByteBuffer encoding) throws IOException
   {
-    node_.send(encoding);
+    node_.sendTransient(encoding);
+  }
+
+  /**
+   * Get the metrics of this Face, such as the number of interests sent and the
+   * histogram of the round-trip time of interests. The counters are updated
+   * without locks and can be read from any thread.
+   * @return The FaceMetrics.
+   */
+  public final FaceMetrics
+  getMetrics() { return node_.getMetrics(); }
+
+  /**
+   * Set whether expressInterest derives the interest lifetime and the local
+   * timeout from the measured round-trip time. In this mode, the round-trip
+   * time of each satisfied interest updates an RttEstimator for the name prefix
+   * without the last component of the interest name (see getRttEstimator), so
+   * that the segments of an object share an estimator. When an interest is
+   * expressed, its local timeout (when onTimeout is called) is the estimator's
+   * retransmission timeout (RTO), or the interest lifetime if it is shorter.
+   * If the interest lifetime is not set, it is set to the RTO. Each timeout
+   * doubles the RTO. This lets the application retransmit a lost interest
+   * after about one round-trip time instead of after the full lifetime.
+   * Following Karn's algorithm, there is no round-trip time sample for an
+   * interest which re-expresses the name of an interest that timed out or is
+   * still pending, since the Data may answer the other one. This can be called
+   * from any thread.
+   * @param adaptiveInterestLifetime True for adaptive lifetimes. The default is
+   * false.
+   */
+  public final void
+  setAdaptiveInterestLifetime(boolean adaptiveInterestLifetime)
+  {
+    node_.setAdaptiveInterestLifetime(adaptiveInterestLifetime);
+  }
+
+  /**
+   * Check if expressInterest uses adaptive lifetimes. See
+   * setAdaptiveInterestLifetime.
+   * @return True for adaptive lifetimes.
+   */
+  public final boolean
+  getAdaptiveInterestLifetime() { return node_.getAdaptiveInterestLifetime(); }
+
+  /**
+   * Get the RttEstimator which setAdaptiveInterestLifetime uses for the
+   * interest name.
+   * @param interestName The interest name. The estimator is for the prefix
+   * without the last component.
+   * @return The RttEstimator, or null if no interest with the prefix has been
+   * expressed in adaptive mode.
+   */
+  public final RttEstimator
+  getRttEstimator(Name interestName)
+  {
+    return node_.getRttEstimator(interestName, false);
+  }
+
+  /**
+   * Set whether to decode incoming Interest and Data packets in zero-copy
+   * mode. Normally each decoded field such as the content, the signature value
+   * and each name component is copied from the received packet. In zero-copy
+   * mode, the received packet is copied once into an immutable Blob and the
+   * decoded fields are read-only slices of it, which halves the memory traffic
+   * for large Data packets. However, a field which the application keeps (for
+   * example a name component) keeps the whole packet in memory. This can be
+   * called from any thread.
+   * @param zeroCopyDecode True for zero-copy mode, false to copy each field.
+   * The default is false.
+   */
+  public final void
+  setZeroCopyDecode(boolean zeroCopyDecode)
+  {
+    node_.setZeroCopyDecode(zeroCopyDecode);
+  }
+
+  /**
+   * Check if incoming packets are decoded in zero-copy mode. See
+   * setZeroCopyDecode.
+   * @return True for zero-copy mode.
+   */
+  public final boolean
+  getZeroCopyDecode() { return node_.getZeroCopyDecode(); }
+
+  /**
+   * Set whether to decode incoming Interest and Data packets lazily. In lazy
+   * mode, only the name is decoded before the packet is dispatched to the
+   * interest filters or pending interests. The other fields are decoded from
+   * the retained wire encoding when they are first accessed (see
+   * Data.wireDecodeLazy and Interest.wireDecodeLazy), so packets which are
+   * dropped or only checked by name are never fully decoded, and wireEncode()
+   * of an unmodified packet returns the received bytes. Lazy mode implies
+   * zero-copy decoding (see setZeroCopyDecode). This can be called from any
+   * thread.
+   * @param lazyDecode True to decode lazily. The default is false.
+   */
+  public final void
+  setLazyDecode(boolean lazyDecode)
+  {
+    node_.setLazyDecode(lazyDecode);
+  }
+
+  /**
+   * Check if incoming packets are decoded lazily. See setLazyDecode.
+   * @return True if decoded lazily.
+   */
+  public final boolean
+  getLazyDecode() { return node_.getLazyDecode(); }
+
+  /**
+   * Set whether to decode incoming TLV Interest and Data packets into Interest
+   * and Data objects which are reused for each packet, so that the receive
+   * path doesn't allocate a new packet object, structure decoder and copy of
+   * the wire encoding for each packet. In this mode, the Interest passed to
+   * onInterest and the Data passed to onData are borrowed: they and their
+   * fields such as the name components and content are only valid until the
+   * callback returns (or until it calls processEvents). A callback which keeps
+   * the packet or one of its fields must copy it, for example with
+   * data2.wireDecode(data.wireEncode().buf()) which copies the bytes. Note that
+   * new Name(name) is not a copy of a borrowed name since it shares the
+   * borrowed name components, which are reset in place by the next packet.
+   * The callbacks of expressInterestAsync and of a ThreadSafeFace with a
+   * callback Executor receive a copy, and
+   * MemoryContentCache.storePendingInterest stores a copy. Other library
+   * helpers which keep the received packets, such as SegmentFetcher, should
+   * not be used in this mode. This can be combined with setLazyDecode. This
+   * can be called from any thread.
+   * @param reusePackets True to reuse the packet objects. The default is
+   * false.
+   */
+  public final void
+  setReusePackets(boolean reusePackets)
+  {
+    node_.setReusePackets(reusePackets);
+  }
+
+  /**
+   * Check if incoming packets are decoded into reused objects. See
+   * setReusePackets.
+   * @return True if reusing the packet objects.
+   */
+  public final boolean
+  getReusePackets() { return node_.getReusePackets(); }
+
+  /**
+   * Check if the transport can accept more packets without its outbound
+   * buffer growing beyond its high-water mark (see
+   * TcpTransport.setHighWaterMark). A producer which sends many packets should
+   * stop sending when this returns false and resume when the OnWritable
+   * callback given to setOnWritable is called, instead of blocking in send.
+   * @return True if writable.
+   */
+  public boolean
+  isWritable()
+  {
+    return node_.isWritable();
+  }
+
+  /**
+   * Set the callback which is called when the face becomes writable again
+   * after isWritable() returned false or a send filled the outbound buffer.
+   * The callback is called from processEvents.
+   * @param onWritable The OnWritable callback, or null for none.
+   */
+  public void
+  setOnWritable(OnWritable onWritable)
+  {
+    node_.setOnWritable(onWritable);
   }
 
   /**
@@ -812,10 +1221,12 @@ public class Face {
    * onInterest or onTimeout. This returns immediately if there is no data to
    * receive. This blocks while calling the callbacks. You should repeatedly
    * call this from an event loop, with calls to sleep as needed so that the
-   * loop doesn’t use 100% of the CPU. Since processEvents modifies the pending
+   * loop doesn’t use 100% of the CPU, or call processEvents(timeoutMilliseconds)
+   * which blocks until there is data to receive. Since processEvents modifies the pending
    * interest table, your application should make sure that it calls
    * processEvents in the same thread as expressInterest (which also modifies
-   * the pending interest table).
+   * the pending interest table). To use a face from multiple threads, use
+   * ThreadSafeFace which processes events on its own I/O thread.
    * This may throw an exception for reading data or in the callback for
    * processing the data. If you call this from an main event loop, you may want
    * to catch and log/disregard all exceptions.
@@ -826,6 +1237,25 @@ public class Face {
     // Just call Node's processEvents.
     node_.processEvents();
   }
+
+  /**
+   * Block until there is data to receive or the next pending interest times
+   * out, but no longer than timeoutMilliseconds, then process events the same
+   * as processEvents(). This waits on a Selector for the transport's socket, so
+   * an event loop which calls this does not need to sleep and does not use CPU
+   * while idle. If the Transport is not selectable, this waits at most a short
+   * polling interval.
+   * @param timeoutMilliseconds The maximum time to block in milliseconds. If
+   * this is zero or negative, this does not block and is the same as
+   * processEvents().
+   * @throws IOException For I/O error.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  processEvents(long timeoutMilliseconds) throws IOException, EncodingException
+  {
+    node_.processEvents(timeoutMilliseconds);
+  }
   
   /**
    * Check if the face is local based on the current connection through the
@@ -857,7 +1287,7 @@ public class Face {
   public static int
   getMaxNdnPacketSize() { return Common.MAX_NDN_PACKET_SIZE; }
 
-  private Node node_;
+  Node node_;
   KeyChain commandKeyChain_ = null;
   Name commandCertificateName_ = new Name();
 }
@@ -0,0 +1,447 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import net.named_data.jndn.util.Histogram;
+
+/**
+ * FaceMetrics holds the counters of a Face, such as the number of interests
+ * sent and data packets received, and histograms of the round-trip time from
+ * expressing an interest to receiving its data. Get it with Face.getMetrics().
+ * The Face updates the counters with atomic operations and no locks, so any
+ * thread can read them while the Face is running. The metrics can be exported
+ * through JMX with registerMBean, or as text in the Prometheus exposition
+ * format with toPrometheusText.
+ */
+public class FaceMetrics implements FaceMetricsMBean {
+  /**
+   * Get the number of interests sent by expressInterest, not counting the
+   * timers of callLater.
+   * @return The number of interests.
+   */
+  public final long
+  getInterestsSent() { return interestsSent_.get(); }
+
+  /**
+   * Get the number of interests received for the interest filters.
+   * @return The number of interests.
+   */
+  public final long
+  getInterestsReceived() { return interestsReceived_.get(); }
+
+  /**
+   * Get the number of data packets sent by putData.
+   * @return The number of data packets.
+   */
+  public final long
+  getDataSent() { return dataSent_.get(); }
+
+  /**
+   * Get the number of data packets received, including unsolicited data.
+   * @return The number of data packets.
+   */
+  public final long
+  getDataReceived() { return dataReceived_.get(); }
+
+  /**
+   * Get the number of pending interests which timed out.
+   * @return The number of timeouts.
+   */
+  public final long
+  getTimeouts() { return timeouts_.get(); }
+
+  /**
+   * Get the number of received data packets which did not match a pending
+   * interest.
+   * @return The number of data packets.
+   */
+  public final long
+  getUnsolicitedData() { return unsolicitedData_.get(); }
+
+  /**
+   * Get the number of bytes of the packets given to the transport to send.
+   * @return The number of bytes.
+   */
+  public final long
+  getBytesSent() { return bytesSent_.get(); }
+
+  /**
+   * Get the number of bytes of the packets received from the transport.
+   * @return The number of bytes.
+   */
+  public final long
+  getBytesReceived() { return bytesReceived_.get(); }
+
+  /**
+   * Get the number of entries in the pending interest table.
+   * @return The number of pending interests.
+   */
+  public final long
+  getPendingInterestCount() { return pendingInterestCount_.get(); }
+
+  /**
+   * Get the largest number of entries which the pending interest table has had.
+   * @return The high-water mark.
+   */
+  public final long
+  getPendingInterestHighWaterMark()
+  {
+    return pendingInterestHighWaterMark_.get();
+  }
+
+  /**
+   * Get the histogram of the round-trip time in milliseconds from expressing an
+   * interest to receiving its data, for all interests.
+   * @return The Histogram.
+   */
+  public final Histogram
+  getRttHistogram() { return rttHistogram_; }
+
+  /**
+   * Get the number of round-trip times recorded in getRttHistogram().
+   * @return The number of data packets which satisfied an interest.
+   */
+  public final long
+  getRttCount() { return rttHistogram_.getCount(); }
+
+  /**
+   * Get the mean of getRttHistogram().
+   * @return The mean round-trip time in milliseconds.
+   */
+  public final double
+  getRttMeanMilliseconds() { return rttHistogram_.getMean(); }
+
+  /**
+   * Get the median of getRttHistogram(), estimated from its buckets.
+   * @return The median round-trip time in milliseconds.
+   */
+  public final double
+  getRttMedianMilliseconds() { return rttHistogram_.getPercentile(50); }
+
+  /**
+   * Get the 99th percentile of getRttHistogram(), estimated from its buckets.
+   * @return The 99th percentile round-trip time in milliseconds.
+   */
+  public final double
+  getRtt99thPercentileMilliseconds()
+  {
+    return rttHistogram_.getPercentile(99);
+  }
+
+  /**
+   * Also record the round-trip time of interests under the prefix in a separate
+   * histogram. If an interest name is under more than one added prefix, use the
+   * longest. If the prefix is already added, do nothing. To keep the receive
+   * path fast, you should only add a few prefixes, such as the prefixes
+   * registered by the application.
+   * @param prefix The name prefix. This makes a copy of the Name.
+   */
+  public final synchronized void
+  addRttPrefix(Name prefix)
+  {
+    if (getRttHistogram(prefix) != null)
+      return;
+
+    // Copy the array so that the receive path can read it without a lock.
+    PrefixHistogram[] prefixHistograms =
+      new PrefixHistogram[prefixHistograms_.length + 1];
+    System.arraycopy
+      (prefixHistograms_, 0, prefixHistograms, 0, prefixHistograms_.length);
+    prefixHistograms[prefixHistograms_.length] =
+      new PrefixHistogram(new Name(prefix));
+    prefixHistograms_ = prefixHistograms;
+  }
+
+  /**
+   * Get the round-trip time histogram for the prefix given to addRttPrefix.
+   * @param prefix The name prefix.
+   * @return The Histogram, or null if the prefix was not added.
+   */
+  public final Histogram
+  getRttHistogram(Name prefix)
+  {
+    PrefixHistogram[] prefixHistograms = prefixHistograms_;
+    for (int i = 0; i < prefixHistograms.length; ++i) {
+      if (prefixHistograms[i].prefix_.equals(prefix))
+        return prefixHistograms[i].histogram_;
+    }
+
+    return null;
+  }
+
+  /**
+   * Set the name of this Face which is used as the "face" label in
+   * toPrometheusText, so that the metrics of more than one Face can be exported
+   * together.
+   * @param name The name. If empty, don't use a label.
+   */
+  public final void
+  setName(String name) { name_ = name; }
+
+  /**
+   * Get the name given to setName.
+   * @return The name, or "" if not set.
+   */
+  public final String
+  getName() { return name_; }
+
+  /**
+   * Register this with the platform MBeanServer so that the counters can be
+   * read through JMX. To remove it, call
+   * ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName).
+   * @param objectName The JMX object name, for example
+   * "net.named_data.jndn:type=FaceMetrics,name=myFace".
+   * @return The ObjectName.
+   * @throws JMException If the name is malformed or already registered.
+   */
+  public final ObjectName
+  registerMBean(String objectName) throws JMException
+  {
+    ObjectName name = new ObjectName(objectName);
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+    return name;
+  }
+
+  /**
+   * Get a snapshot of the metrics in the Prometheus text exposition format.
+   * Each metric name starts with "ndn_face_".
+   * @return The text.
+   */
+  public final String
+  toPrometheusText()
+  {
+    StringBuffer result = new StringBuffer();
+    String labels = (name_.length() == 0 ?
+      "" : "face=\"" + escapeLabelValue(name_) + "\"");
+
+    appendMetric(result, "interests_sent_total", "counter",
+      "Interests sent.", labels, getInterestsSent());
+    appendMetric(result, "interests_received_total", "counter",
+      "Interests received.", labels, getInterestsReceived());
+    appendMetric(result, "data_sent_total", "counter",
+      "Data packets sent.", labels, getDataSent());
+    appendMetric(result, "data_received_total", "counter",
+      "Data packets received.", labels, getDataReceived());
+    appendMetric(result, "timeouts_total", "counter",
+      "Pending interests which timed out.", labels, getTimeouts());
+    appendMetric(result, "unsolicited_data_total", "counter",
+      "Data packets which did not match a pending interest.", labels,
+      getUnsolicitedData());
+    appendMetric(result, "bytes_sent_total", "counter",
+      "Bytes sent to the transport.", labels, getBytesSent());
+    appendMetric(result, "bytes_received_total", "counter",
+      "Bytes received from the transport.", labels, getBytesReceived());
+    appendMetric(result, "pending_interests", "gauge",
+      "Entries in the pending interest table.", labels,
+      getPendingInterestCount());
+    appendMetric(result, "pending_interests_high_water_mark", "gauge",
+      "The most entries the pending interest table has had.", labels,
+      getPendingInterestHighWaterMark());
+
+    result.append("# HELP ndn_face_rtt_milliseconds ")
+      .append("Round-trip time from interest to data.\n");
+    result.append("# TYPE ndn_face_rtt_milliseconds histogram\n");
+    appendHistogram(result, "ndn_face_rtt_milliseconds", labels, rttHistogram_);
+
+    PrefixHistogram[] prefixHistograms = prefixHistograms_;
+    if (prefixHistograms.length > 0) {
+      result.append("# HELP ndn_face_prefix_rtt_milliseconds ")
+        .append("Round-trip time from interest to data by name prefix.\n");
+      result.append("# TYPE ndn_face_prefix_rtt_milliseconds histogram\n");
+      for (int i = 0; i < prefixHistograms.length; ++i) {
+        String prefixLabels = (labels.length() == 0 ? "" : labels + ",") +
+          "prefix=\"" + escapeLabelValue(prefixHistograms[i].prefix_.toUri()) +
+          "\"";
+        appendHistogram
+          (result, "ndn_face_prefix_rtt_milliseconds", prefixLabels,
+           prefixHistograms[i].histogram_);
+      }
+    }
+
+    return result.toString();
+  }
+
+  /**
+   * Count an interest sent by expressInterest.
+   * @param nBytes The number of bytes in the encoding.
+   */
+  final void
+  recordInterestSent(int nBytes)
+  {
+    interestsSent_.incrementAndGet();
+    bytesSent_.addAndGet(nBytes);
+  }
+
+  /**
+   * Count a data packet sent by putData.
+   * @param nBytes The number of bytes in the encoding.
+   */
+  final void
+  recordDataSent(int nBytes)
+  {
+    dataSent_.incrementAndGet();
+    bytesSent_.addAndGet(nBytes);
+  }
+
+  /**
+   * Count the bytes of another packet sent through the transport.
+   * @param nBytes The number of bytes.
+   */
+  final void
+  recordBytesSent(int nBytes) { bytesSent_.addAndGet(nBytes); }
+
+  /**
+   * Count the bytes of an element received from the transport.
+   * @param nBytes The number of bytes.
+   */
+  final void
+  recordBytesReceived(int nBytes) { bytesReceived_.addAndGet(nBytes); }
+
+  final void
+  recordInterestReceived() { interestsReceived_.incrementAndGet(); }
+
+  /**
+   * Count a received data packet.
+   * @param nPendingInterests The number of pending interests which it
+   * satisfied. If 0, also count it as unsolicited.
+   */
+  final void
+  recordDataReceived(int nPendingInterests)
+  {
+    dataReceived_.incrementAndGet();
+    if (nPendingInterests == 0)
+      unsolicitedData_.incrementAndGet();
+  }
+
+  final void
+  recordTimeout() { timeouts_.incrementAndGet(); }
+
+  /**
+   * Set the number of pending interests and update the high-water mark.
+   * @param count The number of entries in the pending interest table.
+   */
+  final void
+  setPendingInterestCount(int count)
+  {
+    pendingInterestCount_.set(count);
+    while (true) {
+      long highWaterMark = pendingInterestHighWaterMark_.get();
+      if (count <= highWaterMark ||
+          pendingInterestHighWaterMark_.compareAndSet(highWaterMark, count))
+        break;
+    }
+  }
+
+  /**
+   * Record the round-trip time of an interest in the histogram for all
+   * interests and in the histogram of the longest added prefix of its name.
+   * @param interestName The name of the interest.
+   * @param rttMilliseconds The round-trip time in milliseconds.
+   */
+  final void
+  recordRtt(Name interestName, double rttMilliseconds)
+  {
+    rttHistogram_.record(rttMilliseconds);
+
+    PrefixHistogram[] prefixHistograms = prefixHistograms_;
+    PrefixHistogram longest = null;
+    for (int i = 0; i < prefixHistograms.length; ++i) {
+      PrefixHistogram prefixHistogram = prefixHistograms[i];
+      if ((longest == null ||
+           prefixHistogram.prefix_.size() > longest.prefix_.size()) &&
+          prefixHistogram.prefix_.match(interestName))
+        longest = prefixHistogram;
+    }
+    if (longest != null)
+      longest.histogram_.record(rttMilliseconds);
+  }
+
+  private static class PrefixHistogram {
+    public PrefixHistogram(Name prefix)
+    {
+      prefix_ = prefix;
+    }
+
+    public final Name prefix_;
+    public final Histogram histogram_ = new Histogram();
+  }
+
+  private static void
+  appendMetric
+    (StringBuffer result, String name, String type, String help,
+     String labels, long value)
+  {
+    result.append("# HELP ndn_face_").append(name).append(" ").append(help)
+      .append("\n");
+    result.append("# TYPE ndn_face_").append(name).append(" ").append(type)
+      .append("\n");
+    result.append("ndn_face_").append(name);
+    if (labels.length() > 0)
+      result.append("{").append(labels).append("}");
+    result.append(" ").append(value).append("\n");
+  }
+
+  private static void
+  appendHistogram
+    (StringBuffer result, String name, String labels, Histogram histogram)
+  {
+    String labelsPrefix = (labels.length() == 0 ? "" : labels + ",");
+    long cumulative = 0;
+    for (int i = 0; i < histogram.getBucketCount(); ++i) {
+      cumulative += histogram.getBucketValueCount(i);
+      double upperBound = histogram.getUpperBound(i);
+      result.append(name).append("_bucket{").append(labelsPrefix)
+        .append("le=\"")
+        .append(Double.isInfinite(upperBound) ? "+Inf" : "" + upperBound)
+        .append("\"} ").append(cumulative).append("\n");
+    }
+
+    String braceLabels = (labels.length() == 0 ? "" : "{" + labels + "}");
+    result.append(name).append("_sum").append(braceLabels).append(" ")
+      .append(histogram.getSum()).append("\n");
+    result.append(name).append("_count").append(braceLabels).append(" ")
+      .append(cumulative).append("\n");
+  }
+
+  private static String
+  escapeLabelValue(String value)
+  {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"")
+      .replace("\n", "\\n");
+  }
+
+  private final AtomicLong interestsSent_ = new AtomicLong();
+  private final AtomicLong interestsReceived_ = new AtomicLong();
+  private final AtomicLong dataSent_ = new AtomicLong();
+  private final AtomicLong dataReceived_ = new AtomicLong();
+  private final AtomicLong timeouts_ = new AtomicLong();
+  private final AtomicLong unsolicitedData_ = new AtomicLong();
+  private final AtomicLong bytesSent_ = new AtomicLong();
+  private final AtomicLong bytesReceived_ = new AtomicLong();
+  private final AtomicLong pendingInterestCount_ = new AtomicLong();
+  private final AtomicLong pendingInterestHighWaterMark_ = new AtomicLong();
+  private final Histogram rttHistogram_ = new Histogram();
+  private volatile PrefixHistogram[] prefixHistograms_ = new PrefixHistogram[0];
+  private volatile String name_ = "";
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn;
+
+/**
+ * FaceMetricsMBean is the JMX management interface of FaceMetrics. See
+ * FaceMetrics.registerMBean.
+ */
+public interface FaceMetricsMBean {
+  long getInterestsSent();
+
+  long getInterestsReceived();
+
+  long getDataSent();
+
+  long getDataReceived();
+
+  long getTimeouts();
+
+  long getUnsolicitedData();
+
+  long getBytesSent();
+
+  long getBytesReceived();
+
+  long getPendingInterestCount();
+
+  long getPendingInterestHighWaterMark();
+
+  long getRttCount();
+
+  double getRttMeanMilliseconds();
+
+  double getRttMedianMilliseconds();
+
+  double getRtt99thPercentileMilliseconds();
+}
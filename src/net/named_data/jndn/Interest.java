@@ -21,8 +21,12 @@ package net.named_data.jndn;
 
 import java.nio.ByteBuffer;
 import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.TlvWireFormat;
 import net.named_data.jndn.encoding.WireFormat;
+import net.named_data.jndn.encoding.tlv.TlvDecoder;
 import net.named_data.jndn.util.Blob;
+import net.named_data.jndn.util.BorrowedBlob;
+import net.named_data.jndn.util.BorrowedSignedBlob;
 import net.named_data.jndn.util.ChangeCountable;
 import net.named_data.jndn.util.ChangeCounter;
 import net.named_data.jndn.util.SignedBlob;
@@ -64,6 +68,7 @@ public class Interest implements ChangeCountable {
   public
   Interest(Interest interest)
   {
+    interest.decodeLazyFields();
     name_.set(new Name(interest.getName()));
     minSuffixComponents_ = interest.minSuffixComponents_;
     maxSuffixComponents_ = interest.maxSuffixComponents_;
@@ -151,6 +156,8 @@ public class Interest implements ChangeCountable {
   public final void
   wireDecode(ByteBuffer input, WireFormat wireFormat) throws EncodingException
   {
+    lazyInput_ = null;
+    lazyWireFormat_ = null;
     int[] signedPortionBeginOffset = new int[1];
     int[] signedPortionEndOffset = new int[1];
     wireFormat.decodeInterest
@@ -158,9 +165,12 @@ public class Interest implements ChangeCountable {
 
     if (wireFormat == WireFormat.getDefaultWireFormat())
       // This is the default wire encoding.
+      // The copy starts at 0, so adjust the offsets for input.position().
       setDefaultWireEncoding
-        (new SignedBlob(input, true, signedPortionBeginOffset[0],
-         signedPortionEndOffset[0]), WireFormat.getDefaultWireFormat());
+        (new SignedBlob(input, true,
+         signedPortionBeginOffset[0] - input.position(),
+         signedPortionEndOffset[0] - input.position()),
+         WireFormat.getDefaultWireFormat());
     else
       setDefaultWireEncoding(new SignedBlob(), null);
   }
@@ -189,10 +199,32 @@ public class Interest implements ChangeCountable {
   public final void
   wireDecode(Blob input, WireFormat wireFormat) throws EncodingException
   {
+    wireDecode(input, wireFormat, true);
+  }
+
+  /**
+   * Decode the input using a particular wire format and update this Interest.
+   * If wireFormat is the default wire format, also set the defaultWireEncoding
+   * field another pointer to the input Blob. If copy is false, the fields such
+   * as the name components and the nonce are read-only slices of the input
+   * Blob instead of copies.
+   * @param input The input blob to decode.
+   * @param wireFormat A WireFormat object used to decode the input.
+   * @param copy If true, copy the bytes of each decoded field. If false, the
+   * decoded fields share the bytes of input.
+   * @throws EncodingException For invalid encoding.
+   */
+  public final void
+  wireDecode(Blob input, WireFormat wireFormat, boolean copy)
+    throws EncodingException
+  {
+    lazyInput_ = null;
+    lazyWireFormat_ = null;
     int[] signedPortionBeginOffset = new int[1];
     int[] signedPortionEndOffset = new int[1];
     wireFormat.decodeInterest
-      (this, input.buf(), signedPortionBeginOffset, signedPortionEndOffset);
+      (this, input.buf(), signedPortionBeginOffset, signedPortionEndOffset,
+       copy);
 
     if (wireFormat == WireFormat.getDefaultWireFormat())
       // This is the default wire encoding.
@@ -203,6 +235,124 @@ public class Interest implements ChangeCountable {
       setDefaultWireEncoding(new SignedBlob(), null);
   }
 
+  /**
+   * Decode only the name from the input using a particular wire format, and
+   * keep the input so that the other fields (the selectors, nonce, scope and
+   * interest lifetime) are decoded from it when they are first accessed. This
+   * is much faster for an application which only looks at the name of most
+   * packets. If wireFormat is the default wire format, also set the
+   * defaultWireEncoding field another pointer to the input Blob, so that
+   * wireEncode() of an unmodified Interest returns the input without decoding
+   * or encoding the other fields. The name components and the lazily decoded
+   * fields are read-only slices of the input.
+   * Note that this only checks the encoding of the name. If the other fields
+   * have an invalid encoding, the method which first accesses them throws an
+   * Error.
+   * @param input The input Blob to decode.
+   * @param wireFormat A WireFormat object used to decode the input.
+   * @throws EncodingException For invalid encoding of the name.
+   */
+  public final void
+  wireDecodeLazy(Blob input, WireFormat wireFormat) throws EncodingException
+  {
+    int[] signedPortionBeginOffset = new int[1];
+    int[] signedPortionEndOffset = new int[1];
+    wireFormat.decodeInterestName
+      (getName(), input.buf(), signedPortionBeginOffset, signedPortionEndOffset,
+       false);
+    lazyInput_ = input;
+    lazyWireFormat_ = wireFormat;
+    // The nonce will be decoded later, so set getNonceChangeCount_ now so that
+    //   getNonce() won't clear it.
+    getNonceChangeCount_ = getChangeCount();
+
+    if (wireFormat == WireFormat.getDefaultWireFormat())
+      // This is the default wire encoding.
+      setDefaultWireEncoding
+        (new SignedBlob(input, signedPortionBeginOffset[0],
+         signedPortionEndOffset[0]), WireFormat.getDefaultWireFormat());
+    else
+      setDefaultWireEncoding(new SignedBlob(), null);
+  }
+
+  /**
+   * Decode only the name from the input using the default wire format
+   * WireFormat.getDefaultWireFormat(). See wireDecodeLazy(input, wireFormat).
+   * @param input The input Blob to decode.
+   * @throws EncodingException For invalid encoding of the name.
+   */
+  public final void
+  wireDecodeLazy(Blob input) throws EncodingException
+  {
+    wireDecodeLazy(input, WireFormat.getDefaultWireFormat());
+  }
+
+  /**
+   * Decode the input in NDN-TLV into this Interest which the Node reuses for
+   * each received packet (see Face.setReusePackets). Unlike wireDecode, this
+   * does not allocate once this Interest has decoded a packet with the same
+   * structure, because the name components and the nonce are BorrowedBlob
+   * objects which are pointed to the new input. So the fields are only valid
+   * until the next call and while the bytes of input are valid.
+   * @param input The input buffer to decode. This reads from position() to
+   * limit(), but does not change the position.
+   * @param decoder The TlvDecoder to reset to the input.
+   * @param signedPortionBeginOffset An array to use for the offset of the
+   * beginning of the signed portion.
+   * @param signedPortionEndOffset An array to use for the offset of the end of
+   * the signed portion.
+   * @param lazy If true, only decode the name as in wireDecodeLazy, and decode
+   * the other fields from the borrowed input when first accessed.
+   * @throws EncodingException For invalid encoding.
+   */
+  final void
+  wireDecodeBorrowed
+    (ByteBuffer input, TlvDecoder decoder, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset, boolean lazy) throws EncodingException
+  {
+    TlvWireFormat wireFormat = TlvWireFormat.get();
+    decoder.reset(input);
+    if (lazy) {
+      wireFormat.decodeInterestNameBorrowed
+        (getName(), decoder, signedPortionBeginOffset, signedPortionEndOffset);
+      if (borrowedLazyInput_ == null)
+        borrowedLazyInput_ = new BorrowedBlob();
+      borrowedLazyInput_.borrow(input, input.position(), input.limit());
+      lazyInput_ = borrowedLazyInput_;
+      lazyWireFormat_ = wireFormat;
+      // The nonce will be decoded later, so set getNonceChangeCount_ now so
+      //   that getNonce() won't clear it.
+      getNonceChangeCount_ = getChangeCount();
+    }
+    else {
+      lazyInput_ = null;
+      lazyWireFormat_ = null;
+      wireFormat.decodeInterestBorrowed
+        (this, decoder, signedPortionBeginOffset, signedPortionEndOffset);
+    }
+
+    if (wireFormat == WireFormat.getDefaultWireFormat()) {
+      // This is the default wire encoding.
+      if (borrowedWireEncoding_ == null)
+        borrowedWireEncoding_ = new BorrowedSignedBlob();
+      borrowedWireEncoding_.borrow
+        (input, input.position(), input.limit(), signedPortionBeginOffset[0],
+         signedPortionEndOffset[0]);
+      setDefaultWireEncoding
+        (borrowedWireEncoding_, WireFormat.getDefaultWireFormat());
+    }
+    else
+      setDefaultWireEncoding(new SignedBlob(), null);
+  }
+
+  /**
+   * Check if this Interest was decoded by wireDecodeLazy and the fields other
+   * than the name have not been decoded yet.
+   * @return True if the other fields are not decoded yet.
+   */
+  public final boolean
+  isLazy() { return lazyInput_ != null; }
+
   /**
    * Decode the input using the default wire format
    * WireFormat.getDefaultWireFormat() and update this Interest.
@@ -226,6 +376,7 @@ public class Interest implements ChangeCountable {
   public final String
   toUri()
   {
+    decodeLazyFields();
     StringBuffer selectors = new StringBuffer();
 
     if (minSuffixComponents_ >= 0)
@@ -269,10 +420,18 @@ public class Interest implements ChangeCountable {
   getName() { return (Name)name_.get(); }
 
   public final int
-  getMinSuffixComponents() { return minSuffixComponents_; }
+  getMinSuffixComponents()
+  {
+    decodeLazyFields();
+    return minSuffixComponents_;
+  }
 
   public final int
-  getMaxSuffixComponents() { return maxSuffixComponents_; }
+  getMaxSuffixComponents()
+  {
+    decodeLazyFields();
+    return maxSuffixComponents_;
+  }
 
   /**
    * @deprecated The Interest publisherPublicKeyDigest is deprecated.  If you
@@ -282,23 +441,40 @@ public class Interest implements ChangeCountable {
   public final PublisherPublicKeyDigest
   getPublisherPublicKeyDigest()
   {
+    decodeLazyFields();
     return (PublisherPublicKeyDigest)publisherPublicKeyDigest_.get();
   }
 
   public final KeyLocator
-  getKeyLocator() { return (KeyLocator)keyLocator_.get(); }
+  getKeyLocator()
+  {
+    decodeLazyFields();
+    return (KeyLocator)keyLocator_.get();
+  }
 
   public final Exclude
-  getExclude() { return (Exclude)exclude_.get(); }
+  getExclude()
+  {
+    decodeLazyFields();
+    return (Exclude)exclude_.get();
+  }
 
   public final int
-  getChildSelector() { return childSelector_; }
+  getChildSelector()
+  {
+    decodeLazyFields();
+    return childSelector_;
+  }
 
   /**
    * @deprecated Use getMustBeFresh.
    */
   public final int
-  getAnswerOriginKind() { return answerOriginKind_; }
+  getAnswerOriginKind()
+  {
+    decodeLazyFields();
+    return answerOriginKind_;
+  }
 
   /**
    * Get the must be fresh flag. If not specified, the default is true.
@@ -307,6 +483,7 @@ public class Interest implements ChangeCountable {
   public final boolean
   getMustBeFresh()
   {
+    decodeLazyFields();
     if (answerOriginKind_ < 0)
       return true;
     else
@@ -314,10 +491,18 @@ public class Interest implements ChangeCountable {
   }
 
   public final int
-  getScope() { return scope_; }
+  getScope()
+  {
+    decodeLazyFields();
+    return scope_;
+  }
 
   public final double
-  getInterestLifetimeMilliseconds() { return interestLifetimeMilliseconds_; }
+  getInterestLifetimeMilliseconds()
+  {
+    decodeLazyFields();
+    return interestLifetimeMilliseconds_;
+  }
 
   /**
    * Return the nonce value from the incoming interest.  If you change any of
@@ -327,6 +512,7 @@ public class Interest implements ChangeCountable {
   public final Blob
   getNonce()
   {
+    decodeLazyFields();
     if (getNonceChangeCount_ != getChangeCount()) {
       // The values have changed, so the existing nonce is invalidated.
       nonce_ = new Blob();
@@ -381,6 +567,7 @@ public class Interest implements ChangeCountable {
   public final Interest
   setMinSuffixComponents(int minSuffixComponents)
   {
+    decodeLazyFields();
     minSuffixComponents_ = minSuffixComponents;
     ++changeCount_;
     return this;
@@ -395,6 +582,7 @@ public class Interest implements ChangeCountable {
   public final Interest
   setMaxSuffixComponents(int maxSuffixComponents)
   {
+    decodeLazyFields();
     maxSuffixComponents_ = maxSuffixComponents;
     ++changeCount_;
     return this;
@@ -408,6 +596,7 @@ public class Interest implements ChangeCountable {
   public final Interest
   setChildSelector(int childSelector)
   {
+    decodeLazyFields();
     childSelector_ = childSelector;
     ++changeCount_;
     return this;
@@ -419,6 +608,7 @@ public class Interest implements ChangeCountable {
   public final Interest
   setAnswerOriginKind(int answerOriginKind)
   {
+    decodeLazyFields();
     answerOriginKind_ = answerOriginKind;
     ++changeCount_;
     return this;
@@ -433,6 +623,7 @@ public class Interest implements ChangeCountable {
   public final Interest
   setMustBeFresh(boolean mustBeFresh)
   {
+    decodeLazyFields();
     if (answerOriginKind_ < 0) {
       // It is is already the default where MustBeFresh is true.
       if (!mustBeFresh) {
@@ -461,6 +652,7 @@ public class Interest implements ChangeCountable {
   public final Interest
   setScope(int scope)
   {
+    decodeLazyFields();
     scope_ = scope;
     ++changeCount_;
     return this;
@@ -475,6 +667,7 @@ public class Interest implements ChangeCountable {
   public final Interest
   setInterestLifetimeMilliseconds(double interestLifetimeMilliseconds)
   {
+    decodeLazyFields();
     interestLifetimeMilliseconds_ = interestLifetimeMilliseconds;
     ++changeCount_;
     return this;
@@ -487,6 +680,7 @@ public class Interest implements ChangeCountable {
   public final Interest
   setNonce(Blob nonce)
   {
+    decodeLazyFields();
     nonce_ = (nonce == null ? new Blob() : nonce);
     // Set getNonceChangeCount_ so that the next call to getNonce() won't
     //   clear nonce_.
@@ -506,6 +700,7 @@ public class Interest implements ChangeCountable {
   public final Interest
   setKeyLocator(KeyLocator keyLocator)
   {
+    decodeLazyFields();
     keyLocator_.set(keyLocator == null ? new KeyLocator() : new KeyLocator(keyLocator));
     ++changeCount_;
     return this;
@@ -522,6 +717,7 @@ public class Interest implements ChangeCountable {
   public final Interest
   setExclude(Exclude exclude)
   {
+    decodeLazyFields();
     exclude_.set(exclude == null ? new Exclude() : new Exclude(exclude));
     ++changeCount_;
     return this;
@@ -543,6 +739,15 @@ public class Interest implements ChangeCountable {
     // Don't update changeCount_ since this doesn't affect the wire encoding.
   }
 
+  /**
+   * An internal library method to get the LocalControlHeader of an incoming
+   * packet. The application should not call this.
+   * @return The LocalControlHeader, which should not be modified.
+   * @note This is an experimental feature. This API may change in the future.
+   */
+  final LocalControlHeader
+  getLocalControlHeader() { return localControlHeader_; }
+
   /**
    * Check if this Interest's name matches the given name (using Name.match)
    * and the given name also conforms to the interest selectors.
@@ -552,6 +757,7 @@ public class Interest implements ChangeCountable {
   public final boolean
   matchesName(Name name)
   {
+    decodeLazyFields();
     if (!getName().match(name))
       return false;
 
@@ -627,6 +833,41 @@ public class Interest implements ChangeCountable {
     getDefaultWireEncodingChangeCount_ = getChangeCount();
   }
 
+  /**
+   * If this was decoded by wireDecodeLazy, decode the fields other than the
+   * name from lazyInput_. This does not change the name or the change count,
+   * so the default wire encoding and the nonce stay valid.
+   */
+  private void
+  decodeLazyFields()
+  {
+    if (lazyInput_ == null)
+      return;
+
+    Interest interest = new Interest();
+    try {
+      // The input is an immutable Blob, so the fields can share its bytes.
+      interest.wireDecode(lazyInput_, lazyWireFormat_, false);
+    } catch (EncodingException ex) {
+      throw new Error
+        ("Interest: Error decoding the lazily decoded fields: " +
+         ex.getMessage());
+    }
+    lazyInput_ = null;
+    lazyWireFormat_ = null;
+
+    minSuffixComponents_ = interest.minSuffixComponents_;
+    maxSuffixComponents_ = interest.maxSuffixComponents_;
+    publisherPublicKeyDigest_.set(interest.getPublisherPublicKeyDigest());
+    keyLocator_.set(interest.getKeyLocator());
+    exclude_.set(interest.getExclude());
+    childSelector_ = interest.childSelector_;
+    answerOriginKind_ = interest.answerOriginKind_;
+    scope_ = interest.scope_;
+    interestLifetimeMilliseconds_ = interest.interestLifetimeMilliseconds_;
+    nonce_ = interest.nonce_;
+  }
+
   private final ChangeCounter name_ = new ChangeCounter(new Name());
   private int minSuffixComponents_ = -1;
   private int maxSuffixComponents_ = -1;
@@ -648,4 +889,11 @@ public class Interest implements ChangeCountable {
   private WireFormat defaultWireEncodingFormat_;
   private long getDefaultWireEncodingChangeCount_ = 0;
   private long changeCount_ = 0;
+  private Blob lazyInput_ = null; /**< The input given to wireDecodeLazy, or
+    * null if the fields are decoded. */
+  private WireFormat lazyWireFormat_ = null;
+  // The objects which wireDecodeBorrowed reuses for each packet. They are null
+  //   until the first call.
+  private BorrowedBlob borrowedLazyInput_ = null;
+  private BorrowedSignedBlob borrowedWireEncoding_ = null;
 }
@@ -24,6 +24,7 @@ import java.util.ArrayList;
 import net.named_data.jndn.encoding.EncodingException;
 import net.named_data.jndn.encoding.WireFormat;
 import net.named_data.jndn.util.Blob;
+import net.named_data.jndn.util.BorrowedBlob;
 import net.named_data.jndn.util.ChangeCountable;
 import net.named_data.jndn.encoding.tlv.TlvEncoder;
 
@@ -518,6 +519,31 @@ public class Name implements ChangeCountable, Comparable {
     return this;
   }
 
+  /**
+   * Append a component whose value is a BorrowedBlob, and return the
+   * BorrowedBlob so that the caller can point it to the value in a received
+   * packet. To avoid allocating for each packet, this reuses the Component
+   * which an earlier call created for the same index, so only use this for a
+   * Name which is decoded again for each received packet (see
+   * Face.setReusePackets). The caller must call borrow on the returned
+   * BorrowedBlob before using the component.
+   * @return The BorrowedBlob of the appended component.
+   */
+  public final BorrowedBlob
+  appendBorrowed()
+  {
+    int index = components_.size();
+    if (borrowedComponents_ == null)
+      borrowedComponents_ = new ArrayList();
+    while (borrowedComponents_.size() <= index)
+      borrowedComponents_.add(new Component(new BorrowedBlob()));
+
+    Component component = (Component)borrowedComponents_.get(index);
+    components_.add(component);
+    ++changeCount_;
+    return (BorrowedBlob)component.getValue();
+  }
+
   public final Name
   append(Name name)
   {
@@ -1081,6 +1107,9 @@ public class Name implements ChangeCountable, Comparable {
 
   // Use ArrayList without generics so it works with older Java compilers.
   private final ArrayList components_;
+  // The components created by appendBorrowed, by index. The list is null
+  //   until the first call.
+  private ArrayList borrowedComponents_ = null; // of Component
   private long changeCount_ = 0;
   private boolean haveHashCode_ = false;
   private int hashCode_;
@@ -30,29 +30,35 @@ import java.security.SignatureException;
 import java.security.spec.InvalidKeySpecException;
 import java.security.spec.PKCS8EncodedKeySpec;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.named_data.jndn.encoding.BinaryXml;
 import net.named_data.jndn.encoding.BinaryXmlDecoder;
 import net.named_data.jndn.encoding.BinaryXmlWireFormat;
-import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.encoding.BorrowedElementListener;
 import net.named_data.jndn.encoding.EncodingException;
 import net.named_data.jndn.encoding.TlvWireFormat;
 import net.named_data.jndn.encoding.WireFormat;
 import net.named_data.jndn.encoding.tlv.Tlv;
 import net.named_data.jndn.encoding.tlv.TlvDecoder;
+import net.named_data.jndn.impl.InterestFilterTable;
+import net.named_data.jndn.impl.PendingInterestTable;
 import net.named_data.jndn.security.KeyChain;
 import net.named_data.jndn.security.SecurityException;
 import net.named_data.jndn.transport.Transport;
 import net.named_data.jndn.util.Blob;
 import net.named_data.jndn.util.CommandInterestGenerator;
 import net.named_data.jndn.util.Common;
+import net.named_data.jndn.util.RttEstimator;
 import net.named_data.jndn.util.SignedBlob;
 
 /**
  * The Node class implements internal functionality for the Face class.
  */
-public class Node implements ElementListener {
+public class Node implements BorrowedElementListener {
   /**
    * Create a new Node for communication with an NDN hub with the given
    * Transport object and connectionInfo.
@@ -86,14 +92,58 @@ public class Node implements ElementListener {
   expressInterest
     (Interest interest, OnData onData, OnTimeout onTimeout,
      WireFormat wireFormat) throws IOException
+  {
+    long pendingInterestId =
+      PendingInterestTable.Entry.getNextPendingInterestId();
+    expressInterest
+      (pendingInterestId, new Interest(interest), onData, onTimeout,
+       wireFormat);
+
+    return pendingInterestId;
+  }
+
+  /**
+   * Do the work of expressInterest using a pendingInterestId which the caller
+   * already got from PendingInterestTable.Entry.getNextPendingInterestId().
+   * This is used by ThreadSafeFace which needs to return the ID before the
+   * interest is sent from its I/O thread.
+   * @param pendingInterestId The ID for the new pending interest entry.
+   * @param interest The Interest to send, which the caller has already copied.
+   * This does not make a copy.
+   * @param onData  This calls onData.onData when a matching data packet is
+   * received.
+   * @param onTimeout This calls onTimeout.onTimeout if the interest times out.
+   * If onTimeout is null, this does not use it.
+   * @param wireFormat A WireFormat object used to encode the message.
+   * @throws IOException For I/O error in sending the interest.
+   * @throws Error If the encoded interest size exceeds getMaxNdnPacketSize().
+   */
+  public final void
+  expressInterest
+    (long pendingInterestId, Interest interest, OnData onData,
+     OnTimeout onTimeout, WireFormat wireFormat) throws IOException
   {
     // TODO: Properly check if we are already connected to the expected host.
     if (!transport_.getIsConnected())
       transport_.connect(connectionInfo_, this);
 
-    long pendingInterestId = PendingInterest.getNextPendingInterestId();
-    pendingInterestTable_.add(new PendingInterest
-      (pendingInterestId, new Interest(interest), onData, onTimeout));
+    double timeoutMilliseconds = interest.getInterestLifetimeMilliseconds();
+    if (adaptiveInterestLifetime_ && !timeoutPrefix_.match(interest.getName())) {
+      // Use the retransmission timeout as the local timeout, and as the
+      //   lifetime if the application didn't set it.
+      double rto = getRttEstimator(interest.getName(), true)
+        .getRetransmissionTimeout();
+      if (timeoutMilliseconds < 0) {
+        interest.setInterestLifetimeMilliseconds(rto);
+        timeoutMilliseconds = rto;
+      }
+      else
+        timeoutMilliseconds = Math.min(timeoutMilliseconds, rto);
+    }
+
+    pendingInterestTable_.add
+      (pendingInterestId, interest, onData, onTimeout, timeoutMilliseconds);
+    metrics_.setPendingInterestCount(pendingInterestTable_.size());
 
     // Special case: For timeoutPrefix_ we don't actually send the interest.
     if (!timeoutPrefix_.match(interest.getName())) {
@@ -102,9 +152,9 @@ public class Node implements ElementListener {
         throw new Error
           ("The encoded interest size exceeds the maximum limit getMaxNdnPacketSize()");
       transport_.send(encoding.buf());
+      metrics_.recordInterestSent(encoding.size());
+      checkWritable();
     }
-    
-    return pendingInterestId;
   }
 
   /**
@@ -117,21 +167,12 @@ public class Node implements ElementListener {
   public final void
   removePendingInterest(long pendingInterestId)
   {
-    int count = 0;
-    // Go backwards through the list so we can remove entries.
-    // Remove all entries even though pendingInterestId should be unique.
-    for (int i = pendingInterestTable_.size() - 1; i >= 0; --i) {
-      if (((PendingInterest)pendingInterestTable_.get(i)).getPendingInterestId
-           () == pendingInterestId) {
-        ++count;
-        pendingInterestTable_.remove(i);
-      }
-    }
-
-    if (count == 0)
+    if (pendingInterestTable_.remove(pendingInterestId) == null)
       Logger.getLogger(Node.class.getName()).log
         (Level.WARNING, "removePendingInterest: Didn't find pendingInterestId {0}",
          pendingInterestId);
+    else
+      metrics_.setPendingInterestCount(pendingInterestTable_.size());
   }
 
   /**
@@ -151,8 +192,12 @@ public class Node implements ElementListener {
     (Interest interest, KeyChain keyChain, Name certificateName,
      WireFormat wireFormat) throws SecurityException
   {
-    commandInterestGenerator_.generate
-      (interest, keyChain, certificateName, wireFormat);
+    // The generator keeps the last timestamp, so synchronize in case a
+    //   ThreadSafeFace calls this from an application thread.
+    synchronized (commandInterestGenerator_) {
+      commandInterestGenerator_.generate
+        (interest, keyChain, certificateName, wireFormat);
+    }
   }
 
   /**
@@ -167,6 +212,9 @@ public class Node implements ElementListener {
    * @param onRegisterFailed This calls onRegisterFailed.onRegisterFailed(prefix)
    * if failed to retrieve the connected hub's ID or failed to register the
    * prefix.
+   * @param onRegisterSuccess (optional) If not null, this calls
+   * onRegisterSuccess.onRegisterSuccess(prefix, registeredPrefixId) when the
+   * forwarder confirms the registration.
    * @param flags The flags for finer control of which interests are forwarded
    * to the application.
    * @param wireFormat A WireFormat object used to encode the message.
@@ -184,39 +232,86 @@ public class Node implements ElementListener {
   public final long
   registerPrefix
     (Name prefix, OnInterestCallback onInterest, OnRegisterFailed onRegisterFailed,
-     ForwardingFlags flags, WireFormat wireFormat, KeyChain commandKeyChain,
+     OnRegisterSuccess onRegisterSuccess, ForwardingFlags flags,
+     WireFormat wireFormat, KeyChain commandKeyChain,
      Name commandCertificateName, Face face) throws IOException, SecurityException
   {
     // Get the registeredPrefixId now so we can return it to the caller.
     long registeredPrefixId = RegisteredPrefix.getNextRegisteredPrefixId();
+    registerPrefix
+      (registeredPrefixId, prefix, onInterest, onRegisterFailed,
+       onRegisterSuccess, flags, wireFormat, commandKeyChain,
+       commandCertificateName, face);
 
+    return registeredPrefixId;
+  }
+
+  /**
+   * Do the work of registerPrefix using a registeredPrefixId which the caller
+   * already got from getNextEntryId(). This is used by ThreadSafeFace which
+   * needs to return the ID before the registration is sent from its I/O thread.
+   * @param registeredPrefixId The ID for the new registered prefix entry.
+   * @param prefix A Name for the prefix to register. This copies the Name.
+   * @param onInterest (optional) If not null, this creates an interest filter
+   * from prefix so that when an Interest is received which matches the filter,
+   * this calls
+   * onInterest.onInterest(prefix, interest, face, interestFilterId, filter).
+   * @param onRegisterFailed This calls onRegisterFailed.onRegisterFailed(prefix)
+   * if failed to retrieve the connected hub's ID or failed to register the
+   * prefix.
+   * @param onRegisterSuccess (optional) If not null, this calls
+   * onRegisterSuccess.onRegisterSuccess(prefix, registeredPrefixId) when the
+   * forwarder confirms the registration.
+   * @param flags The flags for finer control of which interests are forwarded
+   * to the application.
+   * @param wireFormat A WireFormat object used to encode the message.
+   * @param commandKeyChain The KeyChain object for signing interests.  If null,
+   * assume we are connected to a legacy NDNx forwarder.
+   * @param commandCertificateName The certificate name for signing interests.
+   * @param face The face which is passed to the onInterest callback. If
+   * onInterest is null, this is ignored.
+   * @throws IOException For I/O error in sending the registration request.
+   * @throws SecurityException If signing a command interest for NFD and cannot
+   * find the private key for the certificateName.
+   */
+  public final void
+  registerPrefix
+    (long registeredPrefixId, Name prefix, OnInterestCallback onInterest,
+     OnRegisterFailed onRegisterFailed, OnRegisterSuccess onRegisterSuccess,
+     ForwardingFlags flags, WireFormat wireFormat, KeyChain commandKeyChain,
+     Name commandCertificateName, Face face) throws IOException, SecurityException
+  {
     // If we have an _ndndId, we know we already connected to NDNx.
     if (ndndId_.size() != 0 || commandKeyChain == null) {
       // Assume we are connected to a legacy NDNx server.
+      addRegisteredPrefix(registeredPrefixId, prefix, onInterest, face);
 
       if (ndndId_.size() == 0) {
         // First fetch the ndndId of the connected hub.
         NdndIdFetcher fetcher = new NdndIdFetcher
           (new NdndIdFetcher.Info
             (this, registeredPrefixId, prefix, onInterest, onRegisterFailed,
-             flags, wireFormat, face));
+             onRegisterSuccess, flags, wireFormat, face));
         // We send the interest using the given wire format so that the hub
         //   receives (and sends) in the application's desired wire format.
-        expressInterest(ndndIdFetcherInterest_, fetcher, fetcher, wireFormat);
+        try {
+          expressInterest(ndndIdFetcherInterest_, fetcher, fetcher, wireFormat);
+        } catch (IOException ex) {
+          removeRegisteredPrefix(registeredPrefixId);
+          throw ex;
+        }
       }
       else
         registerPrefixHelper
           (registeredPrefixId, new Name(prefix), onInterest, onRegisterFailed,
-           flags, wireFormat, face);
+           onRegisterSuccess, flags, wireFormat, face);
     }
     else
       // The application set the KeyChain for signing NFD interests.
       nfdRegisterPrefix
         (registeredPrefixId, new Name(prefix), onInterest,
-         onRegisterFailed, flags, commandKeyChain, commandCertificateName,
-         wireFormat, face);
-
-    return registeredPrefixId;
+         onRegisterFailed, onRegisterSuccess, flags, commandKeyChain,
+         commandCertificateName, wireFormat, face);
   }
 
   /**
@@ -271,14 +366,33 @@ public class Node implements ElementListener {
   setInterestFilter
     (InterestFilter filter, OnInterestCallback onInterest, Face face)
   {
-    long interestFilterId = InterestFilterEntry.getNextInterestFilterId();
-    interestFilterTable_.add
-      (new InterestFilterEntry
-       (interestFilterId, new InterestFilter(filter), onInterest, face));
+    long interestFilterId = getNextEntryId();
+    setInterestFilter
+      (interestFilterId, new InterestFilter(filter), onInterest, face);
 
     return interestFilterId;
   }
 
+  /**
+   * Do the work of setInterestFilter using an interestFilterId which the caller
+   * already got from getNextEntryId().
+   * @param interestFilterId The ID for the new interest filter entry.
+   * @param filterCopy The InterestFilter which the caller has already copied.
+   * This does not make a copy.
+   * @param onInterest When an Interest is received which matches the filter,
+   * this calls
+   * onInterest.onInterest(prefix, interest, face, interestFilterId, filter).
+   * @param face The face which is passed to the onInterest callback.
+   */
+  public final void
+  setInterestFilter
+    (long interestFilterId, InterestFilter filterCopy,
+     OnInterestCallback onInterest, Face face)
+  {
+    interestFilterTable_.setInterestFilter
+      (interestFilterId, filterCopy, onInterest, face);
+  }
+
   /**
    * Remove the interest filter entry which has the interestFilterId from the
    * interest filter table. This does not affect another interest filter with
@@ -289,18 +403,7 @@ public class Node implements ElementListener {
   public final void
   unsetInterestFilter(long interestFilterId)
   {
-    int count = 0;
-    // Go backwards through the list so we can remove entries.
-    // Remove all entries even though interestFilterId should be unique.
-    for (int i = (int)interestFilterTable_.size() - 1; i >= 0; --i) {
-      if (((InterestFilterEntry)interestFilterTable_.get(i)).getInterestFilterId()
-            == interestFilterId) {
-        ++count;
-        interestFilterTable_.remove(i);
-      }
-    }
-
-    if (count == 0)
+    if (!interestFilterTable_.unsetInterestFilter(interestFilterId))
       Logger.getLogger(Node.class.getName()).log
         (Level.WARNING, "unsetInterestFilter: Didn't find interestFilterId {0}",
          interestFilterId);
@@ -321,13 +424,30 @@ public class Node implements ElementListener {
       throw new Error
         ("The encoded Data packet size exceeds the maximum limit getMaxNdnPacketSize()");
 
+    putData(encoding);
+  }
+
+  /**
+   * Send the already encoded Data packet out through the transport and count
+   * it in the metrics as a Data packet sent. ThreadSafeFace calls this from
+   * the I/O thread after encoding on the calling thread.
+   * @param encoding The encoded Data packet. The caller has already checked
+   * that the size does not exceed getMaxNdnPacketSize().
+   */
+  final void
+  putData(Blob encoding) throws IOException
+  {
     transport_.send(encoding.buf());
+    metrics_.recordDataSent(encoding.size());
+    checkWritable();
   }
 
   /**
    * Send the encoded packet out through the transport.
    * @param encoding The array of bytes for the encoded packet to send.  This
-   * reads from position() to limit(), but does not change the position.
+   * reads from position() to limit(), but does not change the position. The
+   * transport may keep the buffer until it is written (in a batch or when the
+   * connection is slow), so you must not change the bytes.
    * @throws Error If the encoded packet size exceeds getMaxNdnPacketSize().
    */
   public final void
@@ -337,7 +457,179 @@ public class Node implements ElementListener {
       throw new Error
         ("The encoded packet size exceeds the maximum limit getMaxNdnPacketSize()");
 
+    int nBytes = encoding.remaining();
     transport_.send(encoding);
+    metrics_.recordBytesSent(nBytes);
+    checkWritable();
+  }
+
+  /**
+   * Send the encoded packet out through the transport with
+   * Transport.sendTransient, so that the caller may change or reuse the bytes
+   * after this returns.
+   * @param encoding The array of bytes for the encoded packet to send.  This
+   * reads from position() to limit(), but does not change the position.
+   * @throws Error If the encoded packet size exceeds getMaxNdnPacketSize().
+   */
+  public final void
+  sendTransient(ByteBuffer encoding) throws IOException
+  {
+    if (encoding.remaining() > getMaxNdnPacketSize())
+      throw new Error
+        ("The encoded packet size exceeds the maximum limit getMaxNdnPacketSize()");
+
+    int nBytes = encoding.remaining();
+    transport_.sendTransient(encoding);
+    metrics_.recordBytesSent(nBytes);
+    checkWritable();
+  }
+
+  /**
+   * Get the metrics of this node.
+   * @return The FaceMetrics.
+   */
+  public final FaceMetrics
+  getMetrics() { return metrics_; }
+
+  /**
+   * Set whether expressInterest derives the interest lifetime and the local
+   * timeout from the RttEstimator of the interest name prefix. See
+   * Face.setAdaptiveInterestLifetime.
+   * @param adaptiveInterestLifetime True for adaptive lifetimes.
+   */
+  public final void
+  setAdaptiveInterestLifetime(boolean adaptiveInterestLifetime)
+  {
+    adaptiveInterestLifetime_ = adaptiveInterestLifetime;
+  }
+
+  /**
+   * Check if expressInterest uses adaptive lifetimes.
+   * @return True for adaptive lifetimes.
+   */
+  public final boolean
+  getAdaptiveInterestLifetime() { return adaptiveInterestLifetime_; }
+
+  /**
+   * Get the RttEstimator for the interest name. The estimators are kept by the
+   * name prefix without the last component of the interest name, so that the
+   * interests for the segments of the same object (or the same version) share
+   * an estimator. Only the most recently used MAX_RTT_ESTIMATORS estimators
+   * are kept.
+   * @param interestName The interest name.
+   * @param create If true and there is no estimator for the prefix, create
+   * one.
+   * @return The RttEstimator, or null if there is none and create is false.
+   */
+  public final RttEstimator
+  getRttEstimator(Name interestName, boolean create)
+  {
+    Name prefix = interestName.size() == 0 ?
+      interestName : interestName.getPrefix(-1);
+    synchronized (rttEstimators_) {
+      RttEstimator estimator = (RttEstimator)rttEstimators_.get(prefix);
+      if (estimator == null && create) {
+        estimator = new RttEstimator();
+        rttEstimators_.put(prefix, estimator);
+      }
+      return estimator;
+    }
+  }
+
+  /**
+   * Set whether to decode incoming packets in zero-copy mode. See
+   * Face.setZeroCopyDecode.
+   * @param zeroCopyDecode True for zero-copy mode.
+   */
+  public final void
+  setZeroCopyDecode(boolean zeroCopyDecode) { zeroCopyDecode_ = zeroCopyDecode; }
+
+  /**
+   * Check if incoming packets are decoded in zero-copy mode.
+   * @return True for zero-copy mode.
+   */
+  public final boolean
+  getZeroCopyDecode() { return zeroCopyDecode_; }
+
+  /**
+   * Set whether to decode incoming packets lazily. See Face.setLazyDecode.
+   * @param lazyDecode True to decode lazily.
+   */
+  public final void
+  setLazyDecode(boolean lazyDecode) { lazyDecode_ = lazyDecode; }
+
+  /**
+   * Check if incoming packets are decoded lazily.
+   * @return True if decoded lazily.
+   */
+  public final boolean
+  getLazyDecode() { return lazyDecode_; }
+
+  /**
+   * Set whether to decode incoming TLV packets into reused Interest and Data
+   * objects. See Face.setReusePackets.
+   * @param reusePackets True to reuse the packet objects.
+   */
+  public final void
+  setReusePackets(boolean reusePackets) { reusePackets_ = reusePackets; }
+
+  /**
+   * Check if incoming packets are decoded into reused objects.
+   * @return True if reusing the packet objects.
+   */
+  public final boolean
+  getReusePackets() { return reusePackets_; }
+
+  /**
+   * Check if the transport can accept more packets without its outbound
+   * buffer growing beyond the high-water mark. If this returns false, the
+   * OnWritable callback given to setOnWritable is called when the buffer has
+   * drained.
+   * @return True if writable.
+   */
+  public final boolean
+  isWritable()
+  {
+    return checkWritable();
+  }
+
+  /**
+   * Set the callback which processEvents calls when the transport becomes
+   * writable again after isWritable() returned false or a send filled the
+   * outbound buffer.
+   * @param onWritable The OnWritable callback, or null for none.
+   */
+  public final void
+  setOnWritable(OnWritable onWritable) { onWritable_ = onWritable; }
+
+  /**
+   * Start a batch so that the packets sent until the matching endBatch are
+   * written to the transport together. Batches can be nested.
+   */
+  public final void
+  beginBatch() { transport_.beginBatch(); }
+
+  /**
+   * End a batch started by beginBatch. If this ends the outermost batch, write
+   * the queued packets.
+   * @throws IOException For I/O error.
+   */
+  public final void
+  endBatch() throws IOException { transport_.endBatch(); }
+
+  /**
+   * Check if the transport is writable. If not, remember to call onWritable_
+   * when it is.
+   * @return True if writable.
+   */
+  private boolean
+  checkWritable()
+  {
+    if (transport_.isWritable())
+      return true;
+
+    isOnWritablePending_ = true;
+    return false;
   }
 
   /**
@@ -356,26 +648,92 @@ public class Node implements ElementListener {
   public final void
   processEvents() throws IOException, EncodingException
   {
-    transport_.processEvents();
-
-    // Check for PIT entry timeouts. Go backwards through the list so we can
-    //   remove entries.
-    double nowMilliseconds = Common.getNowMilliseconds();
-    for (int i = pendingInterestTable_.size() - 1; i >= 0; --i) {
-      if (((PendingInterest)pendingInterestTable_.get(i)).isTimedOut
-            (nowMilliseconds)) {
-        // Save the PendingInterest and remove it from the PIT.  Then call the callback.
-        PendingInterest pendingInterest =
-          (PendingInterest)pendingInterestTable_.get(i);
-        pendingInterestTable_.remove(i);
-        pendingInterest.callTimeout();
-
-        // Refresh now since the timeout callback might have delayed.
-        nowMilliseconds = Common.getNowMilliseconds();
+    // Write the packets sent by the callbacks (e.g. putData from onInterest)
+    //   together at the end.
+    transport_.beginBatch();
+    try {
+      transport_.processEvents();
+
+      // Check for PIT entry timeouts. The entries are removed from the PIT
+      //   before calling the callbacks.
+      ArrayList timedOutEntries = takeResultList();
+      try {
+        pendingInterestTable_.extractTimedOutEntries
+          (Common.getNowMilliseconds(), timedOutEntries);
+        if (timedOutEntries.size() > 0)
+          metrics_.setPendingInterestCount(pendingInterestTable_.size());
+        for (int i = 0; i < timedOutEntries.size(); ++i) {
+          PendingInterestTable.Entry entry =
+            (PendingInterestTable.Entry)timedOutEntries.get(i);
+          // Don't count the timers of callLater.
+          if (!timeoutPrefix_.match(entry.getInterest().getName())) {
+            metrics_.recordTimeout();
+            if (adaptiveInterestLifetime_)
+              getRttEstimator(entry.getInterest().getName(), true).backoff();
+          }
+          entry.callTimeout();
+        }
+      } finally {
+        returnResultList(timedOutEntries);
       }
     }
+    finally {
+      transport_.endBatch();
+    }
+
+    if (isOnWritablePending_ && transport_.isWritable()) {
+      isOnWritablePending_ = false;
+      if (onWritable_ != null)
+        onWritable_.onWritable();
+    }
   }
 
+  /**
+   * Block until there is data to receive, the next pending interest times out,
+   * wakeup() is called or timeoutMilliseconds elapses, then process events the
+   * same as processEvents(). If there is already data to receive, this does
+   * not block.
+   * @param timeoutMilliseconds The maximum time to block in milliseconds. If
+   * this is zero or negative, this does not block.
+   * @throws IOException For I/O error.
+   * @throws EncodingException For invalid encoding.
+   */
+  public final void
+  processEvents(long timeoutMilliseconds) throws IOException, EncodingException
+  {
+    long waitMilliseconds = timeoutMilliseconds;
+    double nextTimeout = pendingInterestTable_.getNextTimeoutMilliseconds();
+    if (nextTimeout >= 0.0) {
+      // Round up so that the interest has timed out when we wake up.
+      long untilTimeout = (long)Math.ceil
+        (nextTimeout - Common.getNowMilliseconds());
+      waitMilliseconds = Math.min(waitMilliseconds, untilTimeout);
+    }
+
+    if (waitMilliseconds > 0)
+      transport_.waitForEvents(waitMilliseconds);
+
+    processEvents();
+  }
+
+  /**
+   * Get the earliest time when a pending interest times out.
+   * @return The time in milliseconds according to Common.getNowMilliseconds,
+   * or -1 if no pending interest has a timeout.
+   */
+  public final double
+  getNextTimeoutMilliseconds()
+  {
+    return pendingInterestTable_.getNextTimeoutMilliseconds();
+  }
+
+  /**
+   * Make a thread which is blocked in processEvents(timeoutMilliseconds)
+   * return immediately. This can be called from any thread.
+   */
+  public final void
+  wakeup() { transport_.wakeup(); }
+
   public final Transport
   getTransport() { return transport_; }
 
@@ -384,8 +742,11 @@ public class Node implements ElementListener {
 
   public final void onReceivedElement(ByteBuffer element) throws EncodingException
   {
+    metrics_.recordBytesReceived(element.remaining());
+
     LocalControlHeader localControlHeader = null;
-    if (element.get(0) == Tlv.LocalControlHeader_LocalControlHeader) {
+    if (element.get(element.position()) ==
+        Tlv.LocalControlHeader_LocalControlHeader) {
       // Decode the LocalControlHeader and replace element with the payload.
       localControlHeader = new LocalControlHeader();
       localControlHeader.wireDecode(element, TlvWireFormat.get());
@@ -398,18 +759,65 @@ public class Node implements ElementListener {
     // The type codes for TLV Interest and Data packets are chosen to not
     //   conflict with the first byte of a binary XML packet, so we can
     //   just look at the first byte.
-    if (element.get(0) == Tlv.Interest || element.get(0) == Tlv.Data) {
-      TlvDecoder decoder = new TlvDecoder(element);
-      if (decoder.peekType(Tlv.Interest, element.remaining())) {
-        interest = new Interest();
-        interest.wireDecode(element, TlvWireFormat.get());
+    int type = element.get(element.position());
+    if (type == Tlv.Interest || type == Tlv.Data) {
+      // The element is only valid during this call. In zero-copy or lazy mode,
+      //   copy it once here so that the decoded fields can be slices of the
+      //   copy. When reusing packets, the borrowed packet is only valid during
+      //   this call, so its fields borrow the bytes of the element itself
+      //   without allocating.
+      Blob elementCopy = null;
+      if (!reusePackets_ && (zeroCopyDecode_ || lazyDecode_))
+        elementCopy = new Blob(element, true);
+
+      // We already checked the first byte, so we don't need a TlvDecoder to
+      //   peek the type.
+      if (type == Tlv.Interest) {
+        if (reusePackets_) {
+          interest = reusedInterest_;
+          if (localControlHeader == null &&
+              (interest.getIncomingFaceId() != -1 ||
+               interest.getNextHopFaceId() != -1))
+            // Clear the header of the previous packet.
+            interest.setLocalControlHeader(null);
+        }
+        else
+          interest = new Interest();
+
+        if (reusePackets_)
+          interest.wireDecodeBorrowed
+            (element, reusedDecoder_, reusedSignedPortionBeginOffset_,
+             reusedSignedPortionEndOffset_, lazyDecode_);
+        else if (lazyDecode_)
+          interest.wireDecodeLazy(elementCopy, TlvWireFormat.get());
+        else if (elementCopy != null)
+          interest.wireDecode(elementCopy, TlvWireFormat.get(), false);
+        else
+          interest.wireDecode(element, TlvWireFormat.get());
 
         if (localControlHeader != null)
           interest.setLocalControlHeader(localControlHeader);
       }
-      else if (decoder.peekType(Tlv.Data, element.remaining())) {
-        data = new Data();
-        data.wireDecode(element, TlvWireFormat.get());
+      else {
+        if (reusePackets_) {
+          data = reusedData_;
+          if (localControlHeader == null && data.getIncomingFaceId() != -1)
+            // Clear the header of the previous packet.
+            data.setLocalControlHeader(null);
+        }
+        else
+          data = new Data();
+
+        if (reusePackets_)
+          data.wireDecodeBorrowed
+            (element, reusedDecoder_, reusedSignedPortionBeginOffset_,
+             reusedSignedPortionEndOffset_, lazyDecode_);
+        else if (lazyDecode_)
+          data.wireDecodeLazy(elementCopy, TlvWireFormat.get());
+        else if (elementCopy != null)
+          data.wireDecode(elementCopy, TlvWireFormat.get(), false);
+        else
+          data.wireDecode(element, TlvWireFormat.get());
 
         if (localControlHeader != null)
           data.setLocalControlHeader(localControlHeader);
@@ -431,24 +839,133 @@ public class Node implements ElementListener {
     // Now process as Interest or Data.
     if (interest != null) {
       // Call all interest filter callbacks which match.
-      for (int i = 0; i < interestFilterTable_.size(); ++i) {
-        InterestFilterEntry entry =
-          (InterestFilterEntry)interestFilterTable_.get(i);
-        if (entry.getFilter().doesMatch(interest.getName()))
+      metrics_.recordInterestReceived();
+      ArrayList matchedFilters = takeResultList();
+      ArrayList nodes = takeResultList();
+      try {
+        interestFilterTable_.getMatchedFilters
+          (interest.getName(), matchedFilters, nodes);
+        for (int i = 0; i < matchedFilters.size(); ++i) {
+          InterestFilterTable.Entry entry =
+            (InterestFilterTable.Entry)matchedFilters.get(i);
           entry.getOnInterest().onInterest
            (entry.getFilter().getPrefix(), interest, entry.getFace(),
             entry.getInterestFilterId(), entry.getFilter());
+        }
+      } finally {
+        returnResultList(nodes);
+        returnResultList(matchedFilters);
       }
     }
     else if (data != null) {
-      ArrayList pitEntries = new ArrayList();
-      extractEntriesForExpressedInterest(data.getName(), pitEntries);
-      for (int i = 0; i < pitEntries.size(); ++i) {
-        PendingInterest pendingInterest = (PendingInterest)pitEntries.get(i);
-        pendingInterest.getOnData().onData(pendingInterest.getInterest(), data);
+      ArrayList pitEntries = takeResultList();
+      ArrayList nodes = takeResultList();
+      try {
+        pendingInterestTable_.extractEntriesForExpressedInterest
+          (data.getName(), pitEntries, nodes);
+        metrics_.recordDataReceived(pitEntries.size());
+        if (pitEntries.size() > 0) {
+          metrics_.setPendingInterestCount(pendingInterestTable_.size());
+          long now = System.nanoTime();
+          for (int i = 0; i < pitEntries.size(); ++i) {
+            PendingInterestTable.Entry pendingInterest =
+              (PendingInterestTable.Entry)pitEntries.get(i);
+            if (pendingInterest.isRetransmission())
+              // Karn's algorithm: The Data may answer another transmission.
+              continue;
+            double rttMilliseconds =
+              (now - pendingInterest.getExpressTimeNanoseconds()) / 1e6;
+            metrics_.recordRtt
+              (pendingInterest.getInterest().getName(), rttMilliseconds);
+            if (adaptiveInterestLifetime_)
+              getRttEstimator(pendingInterest.getInterest().getName(), true)
+                .addMeasurement(rttMilliseconds);
+          }
+        }
+
+        for (int i = 0; i < pitEntries.size(); ++i) {
+          PendingInterestTable.Entry pendingInterest =
+            (PendingInterestTable.Entry)pitEntries.get(i);
+          pendingInterest.getOnData().onData
+            (pendingInterest.getInterest(), data);
+        }
+      } finally {
+        returnResultList(nodes);
+        returnResultList(pitEntries);
       }
     }
   }
+
+  /**
+   * Get a scratch list for the matched entries of a received packet or the
+   * timed-out entries, reusing a cached list which is not already in use by an
+   * outer call (if a callback calls processEvents).
+   * @return An empty ArrayList.
+   */
+  private ArrayList
+  takeResultList()
+  {
+    int size = freeResultLists_.size();
+    if (size == 0)
+      return new ArrayList();
+
+    return (ArrayList)freeResultLists_.remove(size - 1);
+  }
+
+  /**
+   * Clear the list from takeResultList and keep it to be reused.
+   * @param list The list from takeResultList.
+   */
+  private void
+  returnResultList(ArrayList list)
+  {
+    list.clear();
+    freeResultLists_.add(list);
+  }
+
+  /**
+   * Make a copy of the borrowed Data which was passed to a callback in
+   * reuse-packets mode (see Face.setReusePackets), so that it can be kept
+   * after the callback returns. This copies the wire encoding, so the copy
+   * does not share the bytes of the received packet.
+   * @param data The borrowed Data.
+   * @return A new Data object.
+   */
+  static Data
+  detachData(Data data)
+  {
+    Data copy = new Data();
+    try {
+      copy.wireDecode
+        (data.wireEncode(TlvWireFormat.get()).buf(), TlvWireFormat.get());
+    } catch (EncodingException ex) {
+      // We don't expect this to happen since the data was already decoded.
+      throw new Error("Node.detachData: Error decoding the data: " + ex);
+    }
+    copy.setLocalControlHeader(data.getLocalControlHeader());
+    return copy;
+  }
+
+  /**
+   * Make a copy of the borrowed Interest which was passed to a callback in
+   * reuse-packets mode. See detachData.
+   * @param interest The borrowed Interest.
+   * @return A new Interest object.
+   */
+  public static Interest
+  detachInterest(Interest interest)
+  {
+    Interest copy = new Interest();
+    try {
+      copy.wireDecode
+        (interest.wireEncode(TlvWireFormat.get()).buf(), TlvWireFormat.get());
+    } catch (EncodingException ex) {
+      // We don't expect this to happen since the interest was already decoded.
+      throw new Error("Node.detachInterest: Error decoding the interest: " + ex);
+    }
+    copy.setLocalControlHeader(interest.getLocalControlHeader());
+    return copy;
+  }
   
   /**
    * Check if the face is local based on the current connection through the
@@ -472,6 +989,15 @@ public class Node implements ElementListener {
     catch (IOException e) {}
   }
 
+  /**
+   * Get the next unique ID for registerPrefix or setInterestFilter. The two
+   * tables use the same pool of IDs so that an ID won't be confused when
+   * removing entries. This is thread-safe.
+   * @return The next ID.
+   */
+  public static long
+  getNextEntryId() { return RegisteredPrefix.getNextRegisteredPrefixId(); }
+
   /**
    * Get the practical limit of the size of a network-layer packet. If a packet
    * is larger than this, the library or application MAY drop it.
@@ -480,84 +1006,6 @@ public class Node implements ElementListener {
   public static int
   getMaxNdnPacketSize() { return Common.MAX_NDN_PACKET_SIZE; }
 
-  private static class PendingInterest {
-    public PendingInterest
-      (long pendingInterestId, Interest interest, OnData onData,
-       OnTimeout onTimeout)
-    {
-      pendingInterestId_ = pendingInterestId;
-      interest_ = interest;
-      onData_ = onData;
-      onTimeout_ = onTimeout;
-
-      // Set up timeoutTime_.
-      if (interest_.getInterestLifetimeMilliseconds() >= 0.0)
-        timeoutTimeMilliseconds_ = Common.getNowMilliseconds() +
-          interest_.getInterestLifetimeMilliseconds();
-      else
-        // No timeout.
-        timeoutTimeMilliseconds_ = -1.0;
-    }
-
-    /**
-     * Get the next unique pending interest ID.
-     * @return The next ID.
-     */
-    public static long
-    getNextPendingInterestId() { return ++lastPendingInterestId_; }
-
-    /**
-     * Get the pendingInterestId given to the constructor.
-     * @return The pendingInterestId.
-     */
-    public long
-    getPendingInterestId() { return pendingInterestId_; }
-
-    public Interest
-    getInterest() { return interest_; }
-
-    public OnData
-    getOnData() { return onData_; }
-
-    /**
-     * Check if this interest is timed out.
-     * @param nowMilliseconds The current time in milliseconds from
-     * Common.getNowMilliseconds.
-     * @return True if this interest timed out, otherwise false.
-     */
-    public boolean
-    isTimedOut(double nowMilliseconds)
-    {
-      return timeoutTimeMilliseconds_ >= 0.0 &&
-             nowMilliseconds >= timeoutTimeMilliseconds_;
-    }
-
-    /**
-     * Call onTimeout_ (if defined). This ignores exceptions from the
-     * onTimeout_.
-     */
-    public void
-    callTimeout()
-    {
-      if (onTimeout_ != null) {
-        // Ignore all exceptions.
-        try {
-          onTimeout_.onTimeout(interest_);
-        }
-        catch (Throwable e) { }
-      }
-    }
-
-    private final Interest interest_;
-    private static long lastPendingInterestId_; /**< A class variable used to get the next unique ID. */
-    private final long pendingInterestId_; /**< A unique identifier for this entry so it can be deleted */
-    private final OnData onData_;
-    private final OnTimeout onTimeout_;
-    private final double timeoutTimeMilliseconds_; /**< The time when the interest
-     * times out in milliseconds according to Common.getNowMilliseconds, or -1
-     * for no timeout. */
-  }
-
   /**
    * A RegisteredPrefix holds a registeredPrefixId and information necessary
    * to remove the registration later. It optionally holds a related
@@ -586,7 +1034,7 @@ public class Node implements ElementListener {
      * @return The next ID.
      */
     public static long
-    getNextRegisteredPrefixId() { return ++lastRegisteredPrefixId_; }
+    getNextRegisteredPrefixId() { return lastRegisteredPrefixId_.incrementAndGet(); }
 
     /**
      * Get the registeredPrefixId given to the constructor.
@@ -609,78 +1057,12 @@ public class Node implements ElementListener {
     public final long
     getRelatedInterestFilterId() { return relatedInterestFilterId_; }
 
-    private static long lastRegisteredPrefixId_; /**< A class variable used to get the next unique ID. */
+    private static final AtomicLong lastRegisteredPrefixId_ = new AtomicLong(); /**< A class variable used to get the next unique ID. */
     private final long registeredPrefixId_; /**< A unique identifier for this entry so it can be deleted */
     private final Name prefix_;
     private final long relatedInterestFilterId_;
   }
 
-  /**
-   * An InterestFilterEntry holds an interestFilterId, an InterestFilter and the
-   * OnInterestCallback with its related Face.
-   */
-  private static class InterestFilterEntry {
-    /**
-     * Create a new InterestFilterEntry with the given values.
-     * @param interestFilterId The ID from getNextInterestFilterId().
-     * @param filter The InterestFilter for this entry.
-     * @param onInterest The callback to call.
-     * @param face The face on which was called registerPrefix or
-     * setInterestFilter which is passed to the onInterest callback.
-     */
-    public InterestFilterEntry
-      (long interestFilterId, InterestFilter filter, 
-       OnInterestCallback onInterest, Face face)
-    {
-      interestFilterId_ = interestFilterId;
-      filter_ = filter;
-      onInterest_ = onInterest;
-      face_ = face;
-    }
-
-    /**
-     * Get the next interest filter ID. This just calls
-     * RegisteredPrefix.getNextRegisteredPrefixId() so that IDs come from the
-     * same pool and won't be confused when removing entries from the two tables.
-     * @return The next ID.
-     */
-    public static long
-    getNextInterestFilterId() { return RegisteredPrefix.getNextRegisteredPrefixId(); }
-
-    /**
-     * Get the interestFilterId given to the constructor.
-     * @return The interestFilterId.
-     */
-    public final long
-    getInterestFilterId() { return interestFilterId_; }
-
-    /**
-     * Get the InterestFilter given to the constructor.
-     * @return The InterestFilter.
-     */
-    public final InterestFilter
-    getFilter() { return filter_; }
-
-    /**
-     * Get the OnInterestCallback given to the constructor.
-     * @return The OnInterestCallback.
-     */
-    public final OnInterestCallback
-    getOnInterest() { return onInterest_; }
-
-    /**
-     * Get the Face given to the constructor.
-     * @return The Face.
-     */
-    public final Face
-    getFace() { return face_; }
-
-    private final long interestFilterId_; /**< A unique identifier for this entry so it can be deleted */
-    private final InterestFilter filter_;
-    private final OnInterestCallback onInterest_;
-    private final Face face_;
-  }
-
   private static class NdndIdFetcher implements OnData, OnTimeout
   {
     public NdndIdFetcher(Info info)
@@ -702,6 +1084,8 @@ public class Node implements ElementListener {
           ndndIdData.getContent().buf().get(0) != 0x30) {
         Logger.getLogger(Node.class.getName()).log(Level.INFO,
           "Register prefix failed: The content returned when fetching the NDNx ID does not appear to be a public key");
+        // Remove the interest filter and entry which registerPrefix added.
+        info_.node_.removeRegisteredPrefix(info_.registeredPrefixId_);
         info_.onRegisterFailed_.onRegisterFailed(info_.prefix_);
         return;
       }
@@ -715,8 +1099,8 @@ public class Node implements ElementListener {
       info_.node_.ndndId_ = new Blob(digest);
       info_.node_.registerPrefixHelper
         (info_.registeredPrefixId_, info_.prefix_, info_.onInterest_,
-         info_.onRegisterFailed_, info_.flags_, info_.wireFormat_,
-         info_.face_);
+         info_.onRegisterFailed_, info_.onRegisterSuccess_, info_.flags_,
+         info_.wireFormat_, info_.face_);
     }
 
     /**
@@ -728,6 +1112,8 @@ public class Node implements ElementListener {
     {
       Logger.getLogger(Node.class.getName()).log(Level.INFO,
         "Register prefix failed: Timeout fetching the NDNx ID");
+      // Remove the interest filter and entry which registerPrefix added.
+      info_.node_.removeRegisteredPrefix(info_.registeredPrefixId_);
       info_.onRegisterFailed_.onRegisterFailed(info_.prefix_);
     }
 
@@ -742,6 +1128,7 @@ public class Node implements ElementListener {
        * @param prefix This copies the Name.
        * @param onInterest
        * @param onRegisterFailed
+       * @param onRegisterSuccess
        * @param flags
        * @param wireFormat
        * @param face The face which is passed to the onInterest callback. If
@@ -749,14 +1136,15 @@ public class Node implements ElementListener {
        */
       public Info
         (Node node, long registeredPrefixId, Name prefix, OnInterestCallback onInterest,
-         OnRegisterFailed onRegisterFailed, ForwardingFlags flags,
-         WireFormat wireFormat, Face face)
+         OnRegisterFailed onRegisterFailed, OnRegisterSuccess onRegisterSuccess,
+         ForwardingFlags flags, WireFormat wireFormat, Face face)
       {
         node_ = node;
         registeredPrefixId_ = registeredPrefixId;
         prefix_ = new Name(prefix);
         onInterest_ = onInterest;
         onRegisterFailed_ = onRegisterFailed;
+        onRegisterSuccess_ = onRegisterSuccess;
         flags_ = flags;
         wireFormat_ = wireFormat;
         face_ = face;
@@ -767,6 +1155,7 @@ public class Node implements ElementListener {
       public final Name prefix_;
       public final OnInterestCallback onInterest_;
       public final OnRegisterFailed onRegisterFailed_;
+      public final OnRegisterSuccess onRegisterSuccess_;
       public final ForwardingFlags flags_;
       public final WireFormat wireFormat_;
       public final Face face_;
@@ -817,6 +1206,9 @@ public class Node implements ElementListener {
         Logger.getLogger(Node.class.getName()).log(Level.INFO, 
           "Register prefix succeeded with the NFD forwarder for prefix {0}",
           info_.prefix_.toUri());
+        if (info_.onRegisterSuccess_ != null)
+          info_.onRegisterSuccess_.onRegisterSuccess
+            (info_.prefix_, info_.registeredPrefixId_);
       }
       else {
         Name expectedName = new Name("/ndnx/.../selfreg");
@@ -834,6 +1226,9 @@ public class Node implements ElementListener {
         Logger.getLogger(Node.class.getName()).log(Level.INFO,
           "Register prefix succeeded with the NDNx forwarder for prefix {0}",
           info_.prefix_.toUri());
+        if (info_.onRegisterSuccess_ != null)
+          info_.onRegisterSuccess_.onRegisterSuccess
+            (info_.prefix_, info_.registeredPrefixId_);
       }
     }
 
@@ -850,12 +1245,11 @@ public class Node implements ElementListener {
         // The application set the commandKeyChain, but we may be connected to NDNx.
         if (info_.node_.ndndId_.size() == 0) {
           // First fetch the ndndId of the connected hub.
-          // Pass 0 for registeredPrefixId since the entry was already added to
-          //   registeredPrefixTable_ on the first try.
           NdndIdFetcher fetcher = new NdndIdFetcher
             (new NdndIdFetcher.Info
-              (info_.node_, 0, info_.prefix_, info_.onInterest_,
-               info_.onRegisterFailed_, info_.flags_, info_.wireFormat_,
+              (info_.node_, info_.registeredPrefixId_, info_.prefix_,
+               info_.onInterest_, info_.onRegisterFailed_,
+               info_.onRegisterSuccess_, info_.flags_, info_.wireFormat_,
                info_.face_));
           // We send the interest using the given wire format so that the hub
           // receives (and sends) in the application's desired wire format.
@@ -873,11 +1267,11 @@ public class Node implements ElementListener {
           }
         }
         else
-          // Pass 0 for registeredPrefixId since the entry was already added to
-          //   registeredPrefixTable_ on the first try.
           info_.node_.registerPrefixHelper
-            (0, new Name(info_.prefix_), info_.onInterest_, info_.onRegisterFailed_,
-             info_.flags_, info_.wireFormat_, info_.face_);
+            (info_.registeredPrefixId_, new Name(info_.prefix_),
+             info_.onInterest_, info_.onRegisterFailed_,
+             info_.onRegisterSuccess_, info_.flags_, info_.wireFormat_,
+             info_.face_);
       }
       else {
         // An NDNx command was sent because there is no commandKeyChain, so we
@@ -894,9 +1288,12 @@ public class Node implements ElementListener {
       /**
        *
        * @param node
+       * @param registeredPrefixId The registered prefix ID which is passed to
+       * onRegisterSuccess.
        * @param prefix
        * @param onInterest
        * @param onRegisterFailed
+       * @param onRegisterSuccess
        * @param flags
        * @param wireFormat
        * @param isNfdCommand
@@ -905,14 +1302,17 @@ public class Node implements ElementListener {
        * we remove NdndIdFetcher.
        */
       public Info
-        (Node node, Name prefix, OnInterestCallback onInterest,
-         OnRegisterFailed onRegisterFailed, ForwardingFlags flags,
+        (Node node, long registeredPrefixId, Name prefix,
+         OnInterestCallback onInterest, OnRegisterFailed onRegisterFailed,
+         OnRegisterSuccess onRegisterSuccess, ForwardingFlags flags,
          WireFormat wireFormat, boolean isNfdCommand, Face face)
       {
         node_ = node;
+        registeredPrefixId_ = registeredPrefixId;
         prefix_ = prefix;
         onInterest_ = onInterest;
         onRegisterFailed_ = onRegisterFailed;
+        onRegisterSuccess_ = onRegisterSuccess;
         flags_ = flags;
         wireFormat_ = wireFormat;
         isNfdCommand_ = isNfdCommand;
@@ -920,9 +1320,11 @@ public class Node implements ElementListener {
       }
 
       public final Node node_;
+      public final long registeredPrefixId_;
       public final Name prefix_;
       public final OnInterestCallback onInterest_;
       public final OnRegisterFailed onRegisterFailed_;
+      public final OnRegisterSuccess onRegisterSuccess_;
       public final ForwardingFlags flags_;
       public final WireFormat wireFormat_;
       public final boolean isNfdCommand_;
@@ -1116,37 +1518,15 @@ public class Node implements ElementListener {
     }
   }
 
-  /**
-   * Find all entries from pendingInterestTable_ where the name conforms to the
-   * entry's interest selectors, remove the entries from the table and add to
-   * the entries list.
-   * @param name The name to find the interest for (from the incoming data
-   * packet).
-   * @param entries Add matching entries from pendingInterestTable_.  The caller
-   * should pass in an empty ArrayList.
-   */
-  private void
-  extractEntriesForExpressedInterest(Name name, ArrayList entries)
-  {
-    // Go backwards through the list so we can remove entries.
-    for (int i = pendingInterestTable_.size() - 1; i >= 0; --i) {
-      if (((PendingInterest)pendingInterestTable_.get(i)).getInterest
-          ().matchesName(name)) {
-        entries.add(pendingInterestTable_.get(i));
-        pendingInterestTable_.remove(i);
-      }
-    }
-  }
-
   /**
    * Do the work of registerPrefix once we know we are connected with an ndndId_.
+   * The caller should already have called addRegisteredPrefix.
    * @param registeredPrefixId The RegisteredPrefix.getNextRegisteredPrefixId()
-   * which registerPrefix got so it could return it to the caller. If this
-   * is 0, then don't add to registeredPrefixTable_ (assuming it has already
-   * been done).
+   * which registerPrefix got so it could return it to the caller.
    * @param prefix
    * @param onInterest
    * @param onRegisterFailed
+   * @param onRegisterSuccess
    * @param flags
    * @param wireFormat
    * @param face The face which is passed to the onInterest callback. If
@@ -1155,8 +1535,8 @@ public class Node implements ElementListener {
   private void
   registerPrefixHelper
     (long registeredPrefixId, Name prefix, OnInterestCallback onInterest,
-     OnRegisterFailed onRegisterFailed, ForwardingFlags flags,
-     WireFormat wireFormat, Face face)
+     OnRegisterFailed onRegisterFailed, OnRegisterSuccess onRegisterSuccess,
+     ForwardingFlags flags, WireFormat wireFormat, Face face)
   {
     // Create a ForwardingEntry.
     // Note: ndnd ignores any freshness that is larger than 3600 seconds and
@@ -1188,23 +1568,11 @@ public class Node implements ElementListener {
     interest.setInterestLifetimeMilliseconds(4000.0);
     interest.setScope(1);
 
-    if (registeredPrefixId != 0) {
-      long interestFilterId = 0;
-      if (onInterest != null)
-        // registerPrefix was called with the "combined" form that includes the
-        // callback, so add an InterestFilterEntry.
-        interestFilterId = setInterestFilter
-          (new InterestFilter(prefix), onInterest, face);
-      
-      registeredPrefixTable_.add
-        (new RegisteredPrefix(registeredPrefixId, prefix, interestFilterId));
-    }
-
     // send the registration interest.
     RegisterResponse response = new RegisterResponse
       (new RegisterResponse.Info
-       (this, prefix, onInterest, onRegisterFailed, flags, wireFormat, false,
-        face));
+       (this, registeredPrefixId, prefix, onInterest, onRegisterFailed,
+        onRegisterSuccess, flags, wireFormat, false, face));
     try {
       expressInterest(interest, response, response, wireFormat);
     }
@@ -1216,15 +1584,41 @@ public class Node implements ElementListener {
     }
   }
 
+  /**
+   * Add an entry to registeredPrefixTable_, and if onInterest is not null also
+   * add an interest filter for the prefix.
+   * @param registeredPrefixId The RegisteredPrefix.getNextRegisteredPrefixId()
+   * which registerPrefix got so it could return it to the caller.
+   * @param prefix The prefix to register. This copies the Name.
+   * @param onInterest
+   * @param face The face which is passed to the onInterest callback. If
+   * onInterest is null, this is ignored.
+   */
+  private void
+  addRegisteredPrefix
+    (long registeredPrefixId, Name prefix, OnInterestCallback onInterest,
+     Face face)
+  {
+    long interestFilterId = 0;
+    if (onInterest != null)
+      // registerPrefix was called with the "combined" form that includes the
+      // callback, so add an InterestFilterEntry.
+      interestFilterId = setInterestFilter
+        (new InterestFilter(prefix), onInterest, face);
+
+    registeredPrefixTable_.add
+      (new RegisteredPrefix
+       (registeredPrefixId, new Name(prefix), interestFilterId));
+  }
+
   /**
    * Do the work of registerPrefix to register with NFD.
    * @param registeredPrefixId The RegisteredPrefix.getNextRegisteredPrefixId()
-   * which registerPrefix got so it could return it to the caller. If this
-   * is 0, then don't add to registeredPrefixTable_ (assuming it has already
-   * been done).
+   * which registerPrefix got so it could return it to the caller.
    * @param prefix
    * @param onInterest
    * @param onRegisterFailed
+   * @param onRegisterSuccess
    * @param flags
    * @param commandKeyChain
    * @param commandCertificateName
@@ -1237,9 +1631,10 @@ public class Node implements ElementListener {
   private void
   nfdRegisterPrefix
     (long registeredPrefixId, Name prefix, OnInterestCallback onInterest,
-     OnRegisterFailed onRegisterFailed, ForwardingFlags flags,
-     KeyChain commandKeyChain, Name commandCertificateName,
-     WireFormat wireFormat, Face face) throws SecurityException
+     OnRegisterFailed onRegisterFailed, OnRegisterSuccess onRegisterSuccess,
+     ForwardingFlags flags, KeyChain commandKeyChain,
+     Name commandCertificateName, WireFormat wireFormat, Face face)
+     throws SecurityException
   {
     if (commandKeyChain == null)
       throw new Error
@@ -1281,23 +1676,13 @@ public class Node implements ElementListener {
       (commandInterest, commandKeyChain, commandCertificateName,
        TlvWireFormat.get());
 
-    if (registeredPrefixId != 0) {
-      long interestFilterId = 0;
-      if (onInterest != null)
-        // registerPrefix was called with the "combined" form that includes the
-        // callback, so add an InterestFilterEntry.
-        interestFilterId = setInterestFilter
-          (new InterestFilter(prefix), onInterest, face);
-
-      registeredPrefixTable_.add
-        (new RegisteredPrefix(registeredPrefixId, prefix, interestFilterId));
-    }
+    addRegisteredPrefix(registeredPrefixId, prefix, onInterest, face);
 
     // Send the registration interest.
     RegisterResponse response = new RegisterResponse
       (new RegisterResponse.Info
-       (this, prefix, onInterest, onRegisterFailed, flags, wireFormat, true,
-        face));
+       (this, registeredPrefixId, prefix, onInterest, onRegisterFailed,
+        onRegisterSuccess, flags, wireFormat, true, face));
     try {
       expressInterest(commandInterest, response, response, wireFormat);
     }
@@ -1310,11 +1695,44 @@ public class Node implements ElementListener {
   }
     
   private final Transport transport_;
+  private OnWritable onWritable_ = null;
+  private volatile boolean zeroCopyDecode_ = false;
+  private volatile boolean lazyDecode_ = false;
+  private volatile boolean reusePackets_ = false;
+  private final FaceMetrics metrics_ = new FaceMetrics();
+  private volatile boolean adaptiveInterestLifetime_ = false;
+  // Use LinkedHashMap without generics so it works with older Java compilers.
+  // This is in access order so that the least recently used is removed.
+  private final LinkedHashMap rttEstimators_ = // of Name => RttEstimator
+    new LinkedHashMap(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry eldest) {
+        return size() > MAX_RTT_ESTIMATORS;
+      }
+    };
+  /**
+   * The maximum number of name prefixes for which an RttEstimator is kept.
+   */
+  public static final int MAX_RTT_ESTIMATORS = 1000;
+  // The borrowed packets in reuse-packets mode. Only onReceivedElement uses
+  // these, which is called on one thread at a time.
+  private final Interest reusedInterest_ = new Interest();
+  private final Data reusedData_ = new Data();
+  // The decoder and offsets for decoding the borrowed packets.
+  private final TlvDecoder reusedDecoder_ = new TlvDecoder();
+  private final int[] reusedSignedPortionBeginOffset_ = new int[1];
+  private final int[] reusedSignedPortionEndOffset_ = new int[1];
+  // The lists from takeResultList which are not in use. Only processEvents and
+  //   onReceivedElement use these, which are called on one thread at a time.
+  // Use ArrayList without generics so it works with older Java compilers.
+  private final ArrayList freeResultLists_ = new ArrayList(); // of ArrayList
+  private volatile boolean isOnWritablePending_ = false;
   private final Transport.ConnectionInfo connectionInfo_;
+  private final PendingInterestTable pendingInterestTable_ =
+    new PendingInterestTable();
   // Use ArrayList without generics so it works with older Java compilers.
-  private final ArrayList pendingInterestTable_ = new ArrayList();  // PendingInterest
   private final ArrayList registeredPrefixTable_ = new ArrayList(); // RegisteredPrefix
-  private final ArrayList interestFilterTable_ = new ArrayList(); // InterestFilterEntry
+  private final InterestFilterTable interestFilterTable_ =
+    new InterestFilterTable();
   private final Interest ndndIdFetcherInterest_;
   private Blob ndndId_ = new Blob();
   private static final SecureRandom random_ = new SecureRandom();
@@ -0,0 +1,33 @@
+/**
+ * Copyright (C) 2013-2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn;
+
+/**
+ * A class implements OnWritable if it has onWritable, used to pass a callback
+ * to Face.setOnWritable.
+ */
+public interface OnWritable {
+  /**
+   * When the face was not writable because the outbound buffer of its
+   * transport exceeded the high-water mark, onWritable is called once the
+   * buffer has drained so that a producer can resume sending.
+   */
+  void onWritable();
+}
@@ -0,0 +1,708 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.named_data.jndn.encoding.WireFormat;
+import net.named_data.jndn.impl.PendingInterestTable;
+import net.named_data.jndn.security.KeyChain;
+import net.named_data.jndn.security.SecurityException;
+import net.named_data.jndn.transport.TcpTransport;
+import net.named_data.jndn.transport.Transport;
+import net.named_data.jndn.util.Blob;
+
+/**
+ * A ThreadSafeFace extends Face so that its methods can be called from any
+ * thread. The Face is pinned to one EventLoop whose thread (the I/O thread) is
+ * the only thread that uses the Node tables and the Transport. The EventLoop
+ * can be owned by this face, or shared with other faces through an
+ * EventLoopGroup. Methods such as expressInterest, registerPrefix and putData
+ * return immediately after adding a task to a lock-free queue which the I/O
+ * thread drains before it processes incoming packets. Callbacks such as
+ * onData and onInterest are dispatched to the Executor given to the
+ * constructor, or are called on the I/O thread if the Executor is null.
+ * Because the application does not call processEvents, I/O errors which happen
+ * on the I/O thread are logged instead of being thrown to the caller.
+ */
+public class ThreadSafeFace extends Face {
+  /**
+   * Create a new ThreadSafeFace for communication with an NDN hub with the
+   * given Transport object and connectionInfo, and start its I/O thread.
+   * @param transport A Transport object used for communication.
+   * @param connectionInfo A Transport.ConnectionInfo to be used to connect to
+   * the transport.
+   * @param callbackExecutor The Executor used to call callbacks such as onData
+   * and onInterest. If null, call the callbacks on the I/O thread, in which
+   * case the callbacks should not block.
+   */
+  public ThreadSafeFace
+    (Transport transport, Transport.ConnectionInfo connectionInfo,
+     Executor callbackExecutor)
+  {
+    this(transport, connectionInfo, newEventLoop(), callbackExecutor, true);
+  }
+
+  /**
+   * Create a new ThreadSafeFace for communication with an NDN hub with the
+   * given Transport object and connectionInfo, which uses the given EventLoop.
+   * The EventLoop may be shared with other faces, for example from
+   * EventLoopGroup.next(). This face does not shut down the EventLoop.
+   * @param transport A Transport object used for communication.
+   * @param connectionInfo A Transport.ConnectionInfo to be used to connect to
+   * the transport.
+   * @param eventLoop The EventLoop which runs the requests and processes the
+   * events for this face.
+   * @param callbackExecutor The Executor used to call callbacks such as onData
+   * and onInterest. If null, call the callbacks on the loop thread, in which
+   * case the callbacks should not block since they delay the other faces on
+   * the same loop.
+   */
+  public ThreadSafeFace
+    (Transport transport, Transport.ConnectionInfo connectionInfo,
+     EventLoop eventLoop, Executor callbackExecutor)
+  {
+    this(transport, connectionInfo, eventLoop, callbackExecutor, false);
+  }
+
+  private ThreadSafeFace
+    (Transport transport, Transport.ConnectionInfo connectionInfo,
+     EventLoop eventLoop, Executor callbackExecutor, boolean ownsEventLoop)
+  {
+    super(transport, connectionInfo);
+    eventLoop_ = eventLoop;
+    callbackExecutor_ = callbackExecutor;
+    ownsEventLoop_ = ownsEventLoop;
+
+    eventLoop_.execute(new Runnable() {
+      public void run() {
+        eventLoop_.register(node_);
+      }
+    });
+  }
+
+  /**
+   * Create a new ThreadSafeFace for communication with an NDN hub with the
+   * given Transport object and connectionInfo, and start its I/O thread.
+   * Callbacks are called on the I/O thread.
+   * @param transport A Transport object used for communication.
+   * @param connectionInfo A Transport.ConnectionInfo to be used to connect to
+   * the transport.
+   */
+  public ThreadSafeFace
+    (Transport transport, Transport.ConnectionInfo connectionInfo)
+  {
+    this(transport, connectionInfo, null);
+  }
+
+  /**
+   * Create a new ThreadSafeFace for communication with an NDN hub at host:port
+   * using the default TcpTransport, and start its I/O thread.
+   * @param host The host of the NDN hub.
+   * @param port The port of the NDN hub.
+   * @param callbackExecutor The Executor used to call callbacks such as onData
+   * and onInterest. If null, call the callbacks on the I/O thread.
+   */
+  public ThreadSafeFace(String host, int port, Executor callbackExecutor)
+  {
+    this(new TcpTransport(), new TcpTransport.ConnectionInfo(host, port),
+         callbackExecutor);
+  }
+
+  /**
+   * Create a new ThreadSafeFace for communication with an NDN hub at host using
+   * the default port 6363 and the default TcpTransport, and start its I/O
+   * thread. Callbacks are called on the I/O thread.
+   * @param host The host of the NDN hub.
+   */
+  public ThreadSafeFace(String host)
+  {
+    this(host, 6363, null);
+  }
+
+  /**
+   * Create a new ThreadSafeFace for communication with an NDN hub at
+   * "localhost" using the default port 6363 and the default TcpTransport, and
+   * start its I/O thread. Callbacks are called on the I/O thread.
+   */
+  public ThreadSafeFace()
+  {
+    this("localhost", 6363, null);
+  }
+
+  /**
+   * Send the Interest through the transport from the I/O thread, read the
+   * entire response and call onData(interest, data). This returns immediately.
+   * @param interest The Interest to send.  This copies the Interest.
+   * @param onData  When a matching data packet is received, this calls
+   * onData.onData(interest, data) where interest is the interest given to
+   * expressInterest and data is the received Data object. NOTE: You must not
+   * change the interest object - if you need to change it then make a copy.
+   * @param onTimeout If the interest times out according to the interest
+   * lifetime, this calls onTimeout.onTimeout(interest) where interest is the
+   * interest given to expressInterest. If onTimeout is null, this does not use
+   * it.
+   * @param wireFormat A WireFormat object used to encode the message.
+   * @return The pending interest ID which can be used with
+   * removePendingInterest.
+   */
+  public long
+  expressInterest
+    (Interest interest, final OnData onData, final OnTimeout onTimeout,
+     final WireFormat wireFormat) throws IOException
+  {
+    final long pendingInterestId =
+      PendingInterestTable.Entry.getNextPendingInterestId();
+    final Interest interestCopy = new Interest(interest);
+    final OnData dispatchOnData = dispatchOnData(onData);
+    final OnTimeout dispatchOnTimeout = dispatchOnTimeout(onTimeout);
+
+    submit(new Runnable() {
+      public void run() {
+        try {
+          node_.expressInterest
+            (pendingInterestId, interestCopy, dispatchOnData, dispatchOnTimeout,
+             wireFormat);
+        } catch (IOException ex) {
+          Logger.getLogger(ThreadSafeFace.class.getName()).log
+            (Level.SEVERE, "Error in expressInterest", ex);
+        }
+      }
+    });
+
+    return pendingInterestId;
+  }
+
+  /**
+   * Submit one task to the loop thread which sends all the interests, so that
+   * they are written to the transport together. See
+   * Face.expressInterests for details.
+   */
+  public long[]
+  expressInterests
+    (List interests, OnData onData, OnTimeout onTimeout,
+     final WireFormat wireFormat) throws IOException
+  {
+    final long[] pendingInterestIds = new long[interests.size()];
+    final Interest[] interestCopies = new Interest[interests.size()];
+    for (int i = 0; i < interests.size(); ++i) {
+      pendingInterestIds[i] =
+        PendingInterestTable.Entry.getNextPendingInterestId();
+      interestCopies[i] = new Interest((Interest)interests.get(i));
+    }
+    final OnData dispatchOnData = dispatchOnData(onData);
+    final OnTimeout dispatchOnTimeout = dispatchOnTimeout(onTimeout);
+
+    submit(new Runnable() {
+      public void run() {
+        try {
+          for (int i = 0; i < interestCopies.length; ++i)
+            node_.expressInterest
+              (pendingInterestIds[i], interestCopies[i], dispatchOnData,
+               dispatchOnTimeout, wireFormat);
+        } catch (IOException ex) {
+          Logger.getLogger(ThreadSafeFace.class.getName()).log
+            (Level.SEVERE, "Error in expressInterests", ex);
+        }
+      }
+    });
+
+    return (long[])pendingInterestIds.clone();
+  }
+
+  /**
+   * Remove the pending interest entry with the pendingInterestId from the
+   * pending interest table. This is done on the I/O thread after any
+   * previously submitted requests, so it is safe to call right after
+   * expressInterest.
+   * @param pendingInterestId The ID returned from expressInterest.
+   */
+  public void
+  removePendingInterest(final long pendingInterestId)
+  {
+    submit(new Runnable() {
+      public void run() {
+        node_.removePendingInterest(pendingInterestId);
+      }
+    });
+  }
+
+  /**
+   * Register prefix with the connected NDN hub from the I/O thread and call
+   * onInterest when a matching interest is received. This returns
+   * immediately. If sending the registration request fails, this logs the
+   * error and calls onRegisterFailed.
+   * @param prefix A Name for the prefix to register. This copies the Name.
+   * @param onInterest (optional) If not null, this creates an interest filter
+   * from prefix so that when an Interest is received which matches the filter,
+   * this calls
+   * onInterest.onInterest(prefix, interest, face, interestFilterId, filter).
+   * If onInterest is null, it is ignored and you must call setInterestFilter.
+   * @param onRegisterFailed If register prefix fails for any reason, this
+   * calls onRegisterFailed.onRegisterFailed(prefix).
+   * @param onRegisterSuccess (optional) When the forwarder confirms the
+   * registration, this calls
+   * onRegisterSuccess.onRegisterSuccess(prefix, registeredPrefixId). If null,
+   * this does not use it.
+   * @param flags The flags for finer control of which interests are forwarded
+   * to the application.
+   * @param wireFormat A WireFormat object used to encode the message.
+   * @return The registered prefix ID which can be used with
+   * removeRegisteredPrefix.
+   */
+  public long
+  registerPrefix
+    (Name prefix, OnInterestCallback onInterest,
+     OnRegisterFailed onRegisterFailed, OnRegisterSuccess onRegisterSuccess,
+     final ForwardingFlags flags, final WireFormat wireFormat)
+    throws IOException, SecurityException
+  {
+    final long registeredPrefixId = Node.getNextEntryId();
+    final Name prefixCopy = new Name(prefix);
+    final OnInterestCallback dispatchOnInterest =
+      dispatchOnInterest(onInterest);
+    final OnRegisterFailed dispatchOnRegisterFailed =
+      dispatchOnRegisterFailed(onRegisterFailed);
+    final OnRegisterSuccess dispatchOnRegisterSuccess =
+      dispatchOnRegisterSuccess(onRegisterSuccess);
+    // Get the signing info on this thread in case setCommandSigningInfo is
+    //   called again before the task runs.
+    final KeyChain commandKeyChain = commandKeyChain_;
+    final Name commandCertificateName = commandCertificateName_;
+
+    submit(new Runnable() {
+      public void run() {
+        try {
+          node_.registerPrefix
+            (registeredPrefixId, prefixCopy, dispatchOnInterest,
+             dispatchOnRegisterFailed, dispatchOnRegisterSuccess, flags,
+             wireFormat, commandKeyChain, commandCertificateName,
+             ThreadSafeFace.this);
+        } catch (Exception ex) {
+          Logger.getLogger(ThreadSafeFace.class.getName()).log
+            (Level.SEVERE, "Error in registerPrefix", ex);
+          if (dispatchOnRegisterFailed != null)
+            dispatchOnRegisterFailed.onRegisterFailed(prefixCopy);
+        }
+      }
+    });
+
+    return registeredPrefixId;
+  }
+
+  /**
+   * Remove the registered prefix entry with the registeredPrefixId from the
+   * registered prefix table. This is done on the I/O thread after any
+   * previously submitted requests.
+   * @param registeredPrefixId The ID returned from registerPrefix.
+   */
+  public void
+  removeRegisteredPrefix(final long registeredPrefixId)
+  {
+    submit(new Runnable() {
+      public void run() {
+        node_.removeRegisteredPrefix(registeredPrefixId);
+      }
+    });
+  }
+
+  /**
+   * Add an entry to the local interest filter table to call the onInterest
+   * callback for a matching incoming Interest. The entry is added on the I/O
+   * thread.
+   * @param filter The InterestFilter with a prefix and optional regex filter
+   * used to match the name of an incoming Interest. This makes a copy of filter.
+   * @param onInterest When an Interest is received which matches the filter,
+   * this calls
+   * onInterest.onInterest(prefix, interest, face, interestFilterId, filter).
+   * @return The interest filter ID which can be used with unsetInterestFilter.
+   */
+  public long
+  setInterestFilter(InterestFilter filter, OnInterestCallback onInterest)
+  {
+    final long interestFilterId = Node.getNextEntryId();
+    final InterestFilter filterCopy = new InterestFilter(filter);
+    final OnInterestCallback dispatchOnInterest =
+      dispatchOnInterest(onInterest);
+
+    submit(new Runnable() {
+      public void run() {
+        node_.setInterestFilter
+          (interestFilterId, filterCopy, dispatchOnInterest,
+           ThreadSafeFace.this);
+      }
+    });
+
+    return interestFilterId;
+  }
+
+  /**
+   * Remove the interest filter entry which has the interestFilterId from the
+   * interest filter table. This is done on the I/O thread after any
+   * previously submitted requests.
+   * @param interestFilterId The ID returned from setInterestFilter.
+   */
+  public void
+  unsetInterestFilter(final long interestFilterId)
+  {
+    submit(new Runnable() {
+      public void run() {
+        node_.unsetInterestFilter(interestFilterId);
+      }
+    });
+  }
+
+  /**
+   * Encode the Data packet on the calling thread and send it from the I/O
+   * thread.
+   * @param data The Data packet which satisfies the interest.
+   * @param wireFormat A WireFormat object used to encode the Data packet.
+   * @throws Error If the encoded Data packet size exceeds getMaxNdnPacketSize().
+   */
+  public void
+  putData(Data data, WireFormat wireFormat) throws IOException
+  {
+    final Blob encoding = data.wireEncode(wireFormat);
+    if (encoding.size() > getMaxNdnPacketSize())
+      throw new Error
+        ("The encoded Data packet size exceeds the maximum limit getMaxNdnPacketSize()");
+
+    // The Blob is immutable, so the I/O thread can send its buffer directly.
+    // Node.putData also counts the Data packet in getMetrics().
+    submit(new Runnable() {
+      public void run() {
+        try {
+          node_.putData(encoding);
+        } catch (IOException ex) {
+          Logger.getLogger(ThreadSafeFace.class.getName()).log
+            (Level.SEVERE, "Error in putData", ex);
+        }
+      }
+    });
+  }
+
+  /**
+   * Send the encoded packet out through the face from the I/O thread. The Blob
+   * is immutable, so the I/O thread sends its buffer directly without copying.
+   * @param encoding The blob with the encoded packet to send.
+   * @throws Error If the encoded packet size exceeds getMaxNdnPacketSize().
+   */
+  public void
+  send(Blob encoding) throws IOException
+  {
+    if (encoding.size() > getMaxNdnPacketSize())
+      throw new Error
+        ("The encoded packet size exceeds the maximum limit getMaxNdnPacketSize()");
+
+    submitSend(encoding.buf());
+  }
+
+  /**
+   * Send the encoded packet out through the face from the I/O thread. Face.send
+   * lets the caller change the bytes after it returns, but the I/O thread sends
+   * later, so this must copy the bytes to a new heap buffer. (Passing a
+   * read-only duplicate is not enough since the caller can still change the
+   * bytes, or free them as MemoryContentCache does with a slab chunk.) To
+   * avoid the copy, call send(Blob) with an immutable Blob. See
+   * TestThreadSafeFaceSendBenchmark for the cost of the copy, which for a
+   * 1000-byte content Data packet is an extra 1 KB allocated per packet and
+   * about 20% lower throughput.
+   * @param encoding The array of bytes for the encoded packet to send.  This
+   * copies the bytes from position() to limit(), but does not change the
+   * position.
+   * @throws Error If the encoded packet size exceeds getMaxNdnPacketSize().
+   */
+  public void
+  send(ByteBuffer encoding) throws IOException
+  {
+    if (encoding.remaining() > getMaxNdnPacketSize())
+      throw new Error
+        ("The encoded packet size exceeds the maximum limit getMaxNdnPacketSize()");
+
+    ByteBuffer copy = ByteBuffer.allocate(encoding.remaining());
+    copy.put(encoding.duplicate());
+    copy.flip();
+    submitSend(copy);
+  }
+
+  /**
+   * Set the OnWritable callback on the I/O thread. The callback is called
+   * through the callback Executor. Note that isWritable() does not count the
+   * packets which have been submitted to the I/O thread but not yet sent.
+   * @param onWritable The OnWritable callback, or null for none.
+   */
+  public void
+  setOnWritable(OnWritable onWritable)
+  {
+    final OnWritable dispatchOnWritable = dispatchOnWritable(onWritable);
+    submit(new Runnable() {
+      public void run() {
+        node_.setOnWritable(dispatchOnWritable);
+      }
+    });
+  }
+
+  /**
+   * Do nothing since the I/O thread processes events. This is here so that
+   * code written for Face which calls processEvents in a loop still works.
+   */
+  public void
+  processEvents()
+  {
+  }
+
+  /**
+   * Sleep for timeoutMilliseconds since the I/O thread processes events. This
+   * is here so that code written for Face which calls processEvents in a loop
+   * still works without using 100% of the CPU.
+   * @param timeoutMilliseconds The time to sleep in milliseconds.
+   */
+  public void
+  processEvents(long timeoutMilliseconds)
+  {
+    if (timeoutMilliseconds <= 0)
+      return;
+
+    try {
+      Thread.sleep(timeoutMilliseconds);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Shut down and disconnect this face. If this face owns its EventLoop, stop
+   * the loop. Otherwise unregister this face from the shared loop. Requests
+   * which have not yet been processed are dropped. If this is not called from
+   * the I/O thread, wait until the face is shut down.
+   */
+  public void
+  shutdown()
+  {
+    if (ownsEventLoop_) {
+      // The loop shuts down the Node of each registered face.
+      eventLoop_.shutdown();
+      return;
+    }
+
+    final CountDownLatch done = new CountDownLatch(1);
+    Runnable task = new Runnable() {
+      public void run() {
+        eventLoop_.unregister(node_);
+        node_.shutdown();
+        done.countDown();
+      }
+    };
+    if (eventLoop_.inEventLoop()) {
+      task.run();
+      return;
+    }
+    if (!eventLoop_.isRunning())
+      // The loop already shut down the Node.
+      return;
+
+    eventLoop_.execute(task);
+    try {
+      // Don't wait forever in case the loop is shut down before it runs the
+      //   task.
+      while (eventLoop_.isRunning()) {
+        if (done.await(100, TimeUnit.MILLISECONDS))
+          break;
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Check if the current thread is the I/O thread of this face.
+   * @return True if called from the I/O thread.
+   */
+  public final boolean
+  isIoThread() { return eventLoop_.inEventLoop(); }
+
+  /**
+   * Get the EventLoop which this face uses.
+   * @return The EventLoop.
+   */
+  public final EventLoop
+  getEventLoop() { return eventLoop_; }
+
+  private static EventLoop
+  newEventLoop()
+  {
+    try {
+      return new EventLoop();
+    } catch (IOException ex) {
+      throw new Error("ThreadSafeFace: Cannot open a Selector: " + ex);
+    }
+  }
+
+  /**
+   * Add the task to the queue of the EventLoop, which wakes the I/O thread.
+   * @param task The task to run on the I/O thread.
+   */
+  private void
+  submit(Runnable task)
+  {
+    eventLoop_.execute(node_, task);
+  }
+
+  private void
+  submitSend(final ByteBuffer encoding)
+  {
+    submit(new Runnable() {
+      public void run() {
+        try {
+          node_.send(encoding);
+        } catch (IOException ex) {
+          Logger.getLogger(ThreadSafeFace.class.getName()).log
+            (Level.SEVERE, "Error in send", ex);
+        }
+      }
+    });
+  }
+
+  private void
+  dispatch(Runnable callback)
+  {
+    try {
+      callbackExecutor_.execute(callback);
+    } catch (Throwable ex) {
+      Logger.getLogger(ThreadSafeFace.class.getName()).log
+        (Level.SEVERE, "Error dispatching a callback", ex);
+    }
+  }
+
+  private OnWritable
+  dispatchOnWritable(final OnWritable onWritable)
+  {
+    if (callbackExecutor_ == null || onWritable == null)
+      return onWritable;
+
+    return new OnWritable() {
+      public void onWritable() {
+        dispatch(new Runnable() {
+          public void run() { onWritable.onWritable(); }
+        });
+      }
+    };
+  }
+
+  private OnData
+  dispatchOnData(final OnData onData)
+  {
+    if (callbackExecutor_ == null || onData == null)
+      return onData;
+
+    return new OnData() {
+      public void onData(final Interest interest, Data data) {
+        // A borrowed Data is only valid until this returns, so the callback
+        // running later on the Executor needs a copy.
+        final Data callbackData =
+          (getReusePackets() ? Node.detachData(data) : data);
+        dispatch(new Runnable() {
+          public void run() { onData.onData(interest, callbackData); }
+        });
+      }
+    };
+  }
+
+  private OnTimeout
+  dispatchOnTimeout(final OnTimeout onTimeout)
+  {
+    if (callbackExecutor_ == null || onTimeout == null)
+      return onTimeout;
+
+    return new OnTimeout() {
+      public void onTimeout(final Interest interest) {
+        dispatch(new Runnable() {
+          public void run() { onTimeout.onTimeout(interest); }
+        });
+      }
+    };
+  }
+
+  private OnInterestCallback
+  dispatchOnInterest(final OnInterestCallback onInterest)
+  {
+    if (callbackExecutor_ == null || onInterest == null)
+      return onInterest;
+
+    return new OnInterestCallback() {
+      public void onInterest
+        (final Name prefix, Interest interest, final Face face,
+         final long interestFilterId, final InterestFilter filter) {
+        // A borrowed Interest is only valid until this returns.
+        final Interest callbackInterest =
+          (getReusePackets() ? Node.detachInterest(interest) : interest);
+        dispatch(new Runnable() {
+          public void run() {
+            onInterest.onInterest
+              (prefix, callbackInterest, face, interestFilterId, filter);
+          }
+        });
+      }
+    };
+  }
+
+  private OnRegisterFailed
+  dispatchOnRegisterFailed(final OnRegisterFailed onRegisterFailed)
+  {
+    if (callbackExecutor_ == null || onRegisterFailed == null)
+      return onRegisterFailed;
+
+    return new OnRegisterFailed() {
+      public void onRegisterFailed(final Name prefix) {
+        dispatch(new Runnable() {
+          public void run() { onRegisterFailed.onRegisterFailed(prefix); }
+        });
+      }
+    };
+  }
+
+  private OnRegisterSuccess
+  dispatchOnRegisterSuccess(final OnRegisterSuccess onRegisterSuccess)
+  {
+    if (callbackExecutor_ == null || onRegisterSuccess == null)
+      return onRegisterSuccess;
+
+    return new OnRegisterSuccess() {
+      public void onRegisterSuccess
+        (final Name prefix, final long registeredPrefixId) {
+        dispatch(new Runnable() {
+          public void run() {
+            onRegisterSuccess.onRegisterSuccess(prefix, registeredPrefixId);
+          }
+        });
+      }
+    };
+  }
+
+  private final EventLoop eventLoop_;
+  private final Executor callbackExecutor_;
+  private final boolean ownsEventLoop_;
+}
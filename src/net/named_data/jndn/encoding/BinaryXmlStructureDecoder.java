@@ -152,6 +152,21 @@ public class BinaryXmlStructureDecoder {
     offset_ = offset;
   }
 
+  /**
+   * Reset this to the state of a new BinaryXmlStructureDecoder so that it can
+   * be reused to find the end of the next element without allocating a new
+   * object.
+   */
+  public void
+  reset()
+  {
+    gotElementEnd_ = false;
+    offset_ = 0;
+    level_ = 0;
+    nBytesToRead_ = 0;
+    startHeader();
+  }
+
   /**
    * When findElementEnd returns true, call this to get the element end.
    * @return The position just past the element end.
@@ -0,0 +1,32 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.encoding;
+
+/**
+ * A BorrowedElementListener is an ElementListener which accepts each element
+ * in a ByteBuffer from element.position() to element.limit(), where the
+ * position may not be 0. When an ElementReader has a BorrowedElementListener,
+ * it passes the elements of a received buffer in the same ByteBuffer with a
+ * different position and limit, instead of allocating a slice for each
+ * element. As for any ElementListener, the element is only valid during the
+ * call to onReceivedElement.
+ */
+public interface BorrowedElementListener extends ElementListener {
+}
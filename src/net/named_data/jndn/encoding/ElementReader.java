@@ -41,6 +41,8 @@ public class ElementReader {
   ElementReader(ElementListener elementListener)
   {
     elementListener_ = elementListener;
+    isBorrowedElementListener_ =
+      (elementListener instanceof BorrowedElementListener);
   }
 
   /**
@@ -55,8 +57,11 @@ public class ElementReader {
   public void
   onReceivedData(ByteBuffer data) throws EncodingException
   {
-    // We may repeatedly set data to a slice as we read elements.
-    data = data.slice();
+    // Instead of slicing data for each element, keep the index of the start of
+    //   the next element. For a BorrowedElementListener, pass each element in
+    //   the same view of data so that this does not allocate for each element.
+    int start = data.position();
+    ByteBuffer view = null;
 
     // Process multiple objects in the data.
     while(true) {
@@ -67,14 +72,14 @@ public class ElementReader {
         if (!usePartialData_) {
           // This is the beginning of an element. Check whether it is binaryXML or
           //   TLV.
-          if (data.remaining() <= 0)
+          if (data.limit() - start <= 0)
             // Wait for more data.
             return;
 
           // The type codes for TLV Interest and Data packets are chosen to not
           //   conflict with the first byte of a binary XML packet, so we can
           //   just look at the first byte.
-          int firstByte = (int)data.get(0) & 0xff;
+          int firstByte = (int)data.get(start) & 0xff;
           if (firstByte == Tlv.Interest || firstByte == Tlv.Data ||
               firstByte == Tlv.LocalControlHeader_LocalControlHeader)
             useTlv_ = true;
@@ -85,21 +90,21 @@ public class ElementReader {
 
         if (useTlv_) {
           // Scan the input to check if a whole TLV object has been read.
-          tlvStructureDecoder_.seek(0);
+          tlvStructureDecoder_.seek(start);
           gotElementEnd = tlvStructureDecoder_.findElementEnd(data);
           offset = tlvStructureDecoder_.getOffset();
         }
         else {
           // Scan the input to check if a whole binary XML object has been read.
-          binaryXmlStructureDecoder_.seek(0);
+          binaryXmlStructureDecoder_.seek(start);
           gotElementEnd = binaryXmlStructureDecoder_.findElementEnd(data);
           offset = binaryXmlStructureDecoder_.getOffset();
         }
       } catch (EncodingException ex) {
         // Reset to read a new element on the next call.
         usePartialData_ = false;
-        binaryXmlStructureDecoder_ = new BinaryXmlStructureDecoder();
-        tlvStructureDecoder_ = new TlvStructureDecoder();
+        binaryXmlStructureDecoder_.reset();
+        tlvStructureDecoder_.reset();
 
         throw ex;
       }
@@ -109,7 +114,7 @@ public class ElementReader {
         ByteBuffer element;
         if (usePartialData_) {
           // We have partial data from a previous call, so append this data and point to partialData.
-          partialData_.ensuredPut(data, 0, offset);
+          partialData_.ensuredPut(data, start, offset);
 
           element = partialData_.flippedBuffer();
           // Assume we don't need to use partialData anymore until needed.
@@ -117,19 +122,26 @@ public class ElementReader {
         }
         else {
           // We are not using partialData, so just point to the input data buffer.
-          element = data.duplicate();
-          element.limit(offset);
+          if (view == null)
+            view = data.duplicate();
+          view.clear();
+          view.limit(offset);
+          view.position(start);
+          if (isBorrowedElementListener_)
+            element = view;
+          else
+            // The listener expects the element to start at position 0.
+            element = view.slice();
         }
 
         // Reset to read a new object. Do this before calling onReceivedElement
         // in case it throws an exception.
-        data.position(offset);
-        data = data.slice();
-        binaryXmlStructureDecoder_ = new BinaryXmlStructureDecoder();
-        tlvStructureDecoder_ = new TlvStructureDecoder();
+        start = offset;
+        binaryXmlStructureDecoder_.reset();
+        tlvStructureDecoder_.reset();
 
         elementListener_.onReceivedElement(element);
-        if (data.remaining() <= 0)
+        if (data.limit() - start <= 0)
           // No more data in the packet.
           return;
 
@@ -142,27 +154,30 @@ public class ElementReader {
           partialData_.position(0);
         }
 
-        if (partialData_.buffer().position() + data.remaining() >
+        if (partialData_.buffer().position() + (data.limit() - start) >
             Common.MAX_NDN_PACKET_SIZE) {
           // Reset to read a new element on the next call.
           usePartialData_ = false;
-          binaryXmlStructureDecoder_ = new BinaryXmlStructureDecoder();
-          tlvStructureDecoder_ = new TlvStructureDecoder();
+          binaryXmlStructureDecoder_.reset();
+          tlvStructureDecoder_.reset();
 
           throw new EncodingException
             ("The incoming packet exceeds the maximum limit Face.getMaxNdnPacketSize()");
         }
 
-        partialData_.ensuredPut(data);
+        partialData_.ensuredPut(data, start, data.limit());
         return;
       }
     }
   }
 
   private ElementListener elementListener_;
-  private BinaryXmlStructureDecoder binaryXmlStructureDecoder_ =
+  private final boolean isBorrowedElementListener_;
+  // The structure decoders are reset and reused for each element.
+  private final BinaryXmlStructureDecoder binaryXmlStructureDecoder_ =
     new BinaryXmlStructureDecoder();
-  private TlvStructureDecoder tlvStructureDecoder_ = new TlvStructureDecoder();
+  private final TlvStructureDecoder tlvStructureDecoder_ =
+    new TlvStructureDecoder();
   private boolean usePartialData_;
   private DynamicByteBuffer partialData_ = new DynamicByteBuffer(1000);
   private boolean useTlv_;
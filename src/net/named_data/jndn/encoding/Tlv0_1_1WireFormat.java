@@ -30,6 +30,7 @@ import net.named_data.jndn.ForwardingFlags;
 import net.named_data.jndn.Interest;
 import net.named_data.jndn.KeyLocator;
 import net.named_data.jndn.KeyLocatorType;
+import net.named_data.jndn.KeyNameType;
 import net.named_data.jndn.LocalControlHeader;
 import net.named_data.jndn.MetaInfo;
 import net.named_data.jndn.Name;
@@ -41,6 +42,7 @@ import net.named_data.jndn.encoding.tlv.Tlv;
 import net.named_data.jndn.encoding.tlv.TlvDecoder;
 import net.named_data.jndn.encoding.tlv.TlvEncoder;
 import net.named_data.jndn.util.Blob;
+import net.named_data.jndn.util.BorrowedBlob;
 
 /**
  * A Tlv0_1_1WireFormat implements the WireFormat interface for encoding and
@@ -70,7 +72,7 @@ public class Tlv0_1_1WireFormat extends WireFormat {
   decodeName(Name name, ByteBuffer input) throws EncodingException
   {
     TlvDecoder decoder = new TlvDecoder(input);
-    decodeName(name, new int[1], new int[1], decoder);
+    decodeName(name, new int[1], new int[1], decoder, true);
   }
 
   /**
@@ -170,15 +172,44 @@ public class Tlv0_1_1WireFormat extends WireFormat {
   decodeInterest
     (Interest interest, ByteBuffer input, int[] signedPortionBeginOffset,
      int[] signedPortionEndOffset) throws EncodingException
+  {
+    decodeInterest
+      (interest, input, signedPortionBeginOffset, signedPortionEndOffset, true);
+  }
+
+  /**
+   * Decode input as an interest in  NDN-TLV and set the fields of the interest
+   * object. If copy is false, the Blob fields of the interest such as the name
+   * components and the nonce are slices of the input instead of copies.
+   * @param interest The Interest object whose fields are updated.
+   * @param input The input buffer to decode.  This reads from position() to
+   * limit(), but does not change the position. If copy is false, the bytes of
+   * input must not change after this returns, for example input can be the
+   * buf() of an immutable Blob.
+   * @param signedPortionBeginOffset Return the offset in the encoding of the
+   * beginning of the signed portion.
+   * @param signedPortionEndOffset Return the offset in the encoding of the end
+   * of the signed portion.
+   * @param copy If true, copy the bytes of each decoded field. If false, the
+   * decoded fields share the bytes of input.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  decodeInterest
+    (Interest interest, ByteBuffer input, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset, boolean copy) throws EncodingException
   {
     TlvDecoder decoder = new TlvDecoder(input);
 
     int endOffset = decoder.readNestedTlvsStart(Tlv.Interest);
     decodeName
       (interest.getName(), signedPortionBeginOffset,signedPortionEndOffset,
-       decoder);
+       decoder, copy);
     if (decoder.peekType(Tlv.Selectors, endOffset))
-      decodeSelectors(interest, decoder);
+      decodeSelectors(interest, decoder, copy, false);
+    else
+      // Clear selectors from a previous decode into the same Interest.
+      clearSelectors(interest);
     // Require a Nonce, but don't force it to be 4 bytes.
     ByteBuffer nonce = decoder.readBlobTlv(Tlv.Nonce);
     interest.setScope((int)decoder.readOptionalNonNegativeIntegerTlv
@@ -187,7 +218,7 @@ public class Tlv0_1_1WireFormat extends WireFormat {
       (decoder.readOptionalNonNegativeIntegerTlv(Tlv.InterestLifetime, endOffset));
 
     // Set the nonce last because setting other interest fields clears it.
-    interest.setNonce(new Blob(nonce, true));
+    interest.setNonce(new Blob(nonce, copy));
 
     decoder.finishNestedTlvs(endOffset);
   }
@@ -252,24 +283,253 @@ public class Tlv0_1_1WireFormat extends WireFormat {
   decodeData
     (Data data, ByteBuffer input, int[] signedPortionBeginOffset,
      int[] signedPortionEndOffset) throws EncodingException
+  {
+    decodeData
+      (data, input, signedPortionBeginOffset, signedPortionEndOffset, true);
+  }
+
+  /**
+   * Decode input as a data packet in NDN-TLV and set the fields in the data
+   * object. If copy is false, the Blob fields of the data packet such as the
+   * content, the signature value and the name components are slices of the
+   * input instead of copies.
+   * @param data The Data object whose fields are updated.
+   * @param input The input buffer to decode.  This reads from position() to
+   * limit(), but does not change the position. If copy is false, the bytes of
+   * input must not change after this returns, for example input can be the
+   * buf() of an immutable Blob.
+   * @param signedPortionBeginOffset Return the offset in the input buffer of
+   * the beginning of the signed portion by setting signedPortionBeginOffset[0].
+   * @param signedPortionEndOffset Return the offset in the input buffer of the
+   * end of the signed portion by setting signedPortionEndOffset[0].
+   * @param copy If true, copy the bytes of each decoded field. If false, the
+   * decoded fields share the bytes of input.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  decodeData
+    (Data data, ByteBuffer input, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset, boolean copy) throws EncodingException
   {
     TlvDecoder decoder = new TlvDecoder(input);
 
     int endOffset = decoder.readNestedTlvsStart(Tlv.Data);
     signedPortionBeginOffset[0] = decoder.getOffset();
 
-    decodeName(data.getName(), new int[1], new int[1], decoder);
-    decodeMetaInfo(data.getMetaInfo(), decoder);
-    data.setContent(new Blob(decoder.readBlobTlv(Tlv.Content), true));
-    decodeSignatureInfo(data, decoder);
+    decodeName(data.getName(), new int[1], new int[1], decoder, copy);
+    decodeMetaInfo(data.getMetaInfo(), decoder, copy, false);
+    data.setContent(new Blob(decoder.readBlobTlv(Tlv.Content), copy));
+    decodeSignatureInfo(data, decoder, copy, false);
 
     signedPortionEndOffset[0] = decoder.getOffset();
     data.getSignature().setSignature
-      (new Blob(decoder.readBlobTlv(Tlv.SignatureValue), true));
+      (new Blob(decoder.readBlobTlv(Tlv.SignatureValue), copy));
+
+    decoder.finishNestedTlvs(endOffset);
+  }
+
+  /**
+   * Decode only the name of the interest in NDN-TLV and return the offsets of
+   * the signed portion. This does not check the fields after the name.
+   * @param name The Name object whose fields are set to the interest name.
+   * @param input The input buffer to decode.  This reads from position() to
+   * limit(), but does not change the position.
+   * @param signedPortionBeginOffset Return the offset in the encoding of the
+   * beginning of the signed portion.
+   * @param signedPortionEndOffset Return the offset in the encoding of the end
+   * of the signed portion.
+   * @param copy If true, copy the bytes of each name component. If false, the
+   * name components share the bytes of input.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  decodeInterestName
+    (Name name, ByteBuffer input, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset, boolean copy) throws EncodingException
+  {
+    TlvDecoder decoder = new TlvDecoder(input);
+
+    decoder.readNestedTlvsStart(Tlv.Interest);
+    decodeName
+      (name, signedPortionBeginOffset, signedPortionEndOffset, decoder, copy);
+  }
+
+  /**
+   * Decode only the name of the data packet in NDN-TLV and return the offsets
+   * of the signed portion. This skips over the MetaInfo, Content and
+   * SignatureInfo without decoding them.
+   * @param name The Name object whose fields are set to the data packet name.
+   * @param input The input buffer to decode.  This reads from position() to
+   * limit(), but does not change the position.
+   * @param signedPortionBeginOffset Return the offset in the input buffer of
+   * the beginning of the signed portion by setting signedPortionBeginOffset[0].
+   * @param signedPortionEndOffset Return the offset in the input buffer of the
+   * end of the signed portion by setting signedPortionEndOffset[0].
+   * @param copy If true, copy the bytes of each name component. If false, the
+   * name components share the bytes of input.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  decodeDataName
+    (Name name, ByteBuffer input, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset, boolean copy) throws EncodingException
+  {
+    TlvDecoder decoder = new TlvDecoder(input);
+
+    decoder.readNestedTlvsStart(Tlv.Data);
+    signedPortionBeginOffset[0] = decoder.getOffset();
+
+    decodeName(name, new int[1], new int[1], decoder, copy);
+    skipTlv(Tlv.MetaInfo, decoder);
+    skipTlv(Tlv.Content, decoder);
+    skipTlv(Tlv.SignatureInfo, decoder);
+
+    signedPortionEndOffset[0] = decoder.getOffset();
+  }
+
+  /**
+   * Decode the input of the decoder as an interest in NDN-TLV into an Interest
+   * object which is decoded again for each received packet (see
+   * Face.setReusePackets). Unlike decodeInterest with copy false, this does not
+   * allocate once the Interest has decoded a packet with the same structure:
+   * the name components, the nonce and the other Blob fields which an earlier
+   * call created are BorrowedBlob objects which are pointed to the new input.
+   * So the decoded fields are only valid until the next call with the same
+   * Interest, and while the bytes of the input are valid.
+   * @param interest The Interest object whose fields are updated.
+   * @param decoder The TlvDecoder which was reset to the input. This does not
+   * change the position of the input.
+   * @param signedPortionBeginOffset Return the index in the input of the
+   * beginning of the signed portion.
+   * @param signedPortionEndOffset Return the index in the input of the end of
+   * the signed portion.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  decodeInterestBorrowed
+    (Interest interest, TlvDecoder decoder, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset) throws EncodingException
+  {
+    // Get the nonce before setting the other fields, which clears it.
+    Blob nonce = interest.getNonce();
+
+    int endOffset = decoder.readNestedTlvsStart(Tlv.Interest);
+    decodeName
+      (interest.getName(), signedPortionBeginOffset, signedPortionEndOffset,
+       decoder, false, true);
+    if (decoder.peekType(Tlv.Selectors, endOffset))
+      decodeSelectors(interest, decoder, false, true);
+    else
+      clearSelectors(interest);
+    // Require a Nonce, but don't force it to be 4 bytes.
+    nonce = readBorrowedBlobTlv(Tlv.Nonce, nonce, decoder);
+    interest.setScope((int)decoder.readOptionalNonNegativeIntegerTlv
+      (Tlv.Scope, endOffset));
+    interest.setInterestLifetimeMilliseconds
+      (decoder.readOptionalNonNegativeIntegerTlv(Tlv.InterestLifetime, endOffset));
+
+    // Set the nonce last because setting other interest fields clears it.
+    interest.setNonce(nonce);
+
+    decoder.finishNestedTlvs(endOffset);
+  }
+
+  /**
+   * Decode the input of the decoder as a data packet in NDN-TLV into a Data
+   * object which is decoded again for each received packet. Like
+   * decodeInterestBorrowed, this points the BorrowedBlob fields which an
+   * earlier call created to the new input, and also reuses the signature
+   * object if it has the same type. So this does not allocate once the Data
+   * has decoded a packet with the same structure.
+   * @param data The Data object whose fields are updated.
+   * @param decoder The TlvDecoder which was reset to the input. This does not
+   * change the position of the input.
+   * @param signedPortionBeginOffset Return the index in the input of the
+   * beginning of the signed portion.
+   * @param signedPortionEndOffset Return the index in the input of the end of
+   * the signed portion.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  decodeDataBorrowed
+    (Data data, TlvDecoder decoder, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset) throws EncodingException
+  {
+    int endOffset = decoder.readNestedTlvsStart(Tlv.Data);
+    int beginOffset = decoder.getOffset();
+
+    // Use the offset arrays for the name, then set them below.
+    decodeName
+      (data.getName(), signedPortionBeginOffset, signedPortionEndOffset,
+       decoder, false, true);
+    decodeMetaInfo(data.getMetaInfo(), decoder, false, true);
+    data.setContent(readBorrowedBlobTlv(Tlv.Content, data.getContent(), decoder));
+    decodeSignatureInfo(data, decoder, false, true);
+
+    signedPortionBeginOffset[0] = beginOffset;
+    signedPortionEndOffset[0] = decoder.getOffset();
+    Signature signature = data.getSignature();
+    signature.setSignature
+      (readBorrowedBlobTlv
+       (Tlv.SignatureValue, signature.getSignature(), decoder));
 
     decoder.finishNestedTlvs(endOffset);
   }
 
+  /**
+   * Decode only the name of the interest in the input of the decoder, in the
+   * same way as decodeInterestBorrowed. This is used for lazy decoding of a
+   * reused Interest.
+   * @param name The Name object whose fields are set to the interest name.
+   * @param decoder The TlvDecoder which was reset to the input.
+   * @param signedPortionBeginOffset Return the index in the input of the
+   * beginning of the signed portion.
+   * @param signedPortionEndOffset Return the index in the input of the end of
+   * the signed portion.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  decodeInterestNameBorrowed
+    (Name name, TlvDecoder decoder, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset) throws EncodingException
+  {
+    decoder.readNestedTlvsStart(Tlv.Interest);
+    decodeName
+      (name, signedPortionBeginOffset, signedPortionEndOffset, decoder, false,
+       true);
+  }
+
+  /**
+   * Decode only the name of the data packet in the input of the decoder, in the
+   * same way as decodeDataBorrowed, and skip over the MetaInfo, Content and
+   * SignatureInfo. This is used for lazy decoding of a reused Data.
+   * @param name The Name object whose fields are set to the data packet name.
+   * @param decoder The TlvDecoder which was reset to the input.
+   * @param signedPortionBeginOffset Return the index in the input of the
+   * beginning of the signed portion.
+   * @param signedPortionEndOffset Return the index in the input of the end of
+   * the signed portion.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  decodeDataNameBorrowed
+    (Name name, TlvDecoder decoder, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset) throws EncodingException
+  {
+    decoder.readNestedTlvsStart(Tlv.Data);
+    int beginOffset = decoder.getOffset();
+
+    decodeName
+      (name, signedPortionBeginOffset, signedPortionEndOffset, decoder, false,
+       true);
+    skipTlv(Tlv.MetaInfo, decoder);
+    skipTlv(Tlv.Content, decoder);
+    skipTlv(Tlv.SignatureInfo, decoder);
+
+    signedPortionBeginOffset[0] = beginOffset;
+    signedPortionEndOffset[0] = decoder.getOffset();
+  }
+
   /**
    * Encode controlParameters in NDN-TLV and return the encoding.
    * @param controlParameters The ControlParameters object to encode.
@@ -352,7 +612,7 @@ public class Tlv0_1_1WireFormat extends WireFormat {
     // decode name
     if (decoder.peekType(Tlv.Name, endOffset)) {
       Name name = new Name();
-      decodeName(name, new int[1], new int[1], decoder);
+      decodeName(name, new int[1], new int[1], decoder, true);
       controlParameters.setName(name);
     }
 
@@ -385,7 +645,8 @@ public class Tlv0_1_1WireFormat extends WireFormat {
     // decode strategy
     if (decoder.peekType(Tlv.ControlParameters_Strategy, endOffset)) {
       int strategyEndOffset = decoder.readNestedTlvsStart(Tlv.ControlParameters_Strategy);
-      decodeName(controlParameters.getStrategy(), new int[1], new int[1], decoder);
+      decodeName
+        (controlParameters.getStrategy(), new int[1], new int[1], decoder, true);
       decoder.finishNestedTlvs(strategyEndOffset);
     }
 
@@ -442,7 +703,7 @@ public class Tlv0_1_1WireFormat extends WireFormat {
     // Use a SignatureHolder to imitate a Data object for _decodeSignatureInfo.
     SimpleSignatureHolder signatureHolder = new SimpleSignatureHolder();
     TlvDecoder decoder = new TlvDecoder(signatureInfo);
-    decodeSignatureInfo(signatureHolder, decoder);
+    decodeSignatureInfo(signatureHolder, decoder, true, false);
 
     decoder = new TlvDecoder(signatureValue);
     signatureHolder.getSignature().setSignature
@@ -607,7 +868,22 @@ public class Tlv0_1_1WireFormat extends WireFormat {
   private static void
   decodeName
     (Name name, int[] signedPortionBeginOffset, int[] signedPortionEndOffset,
-     TlvDecoder decoder) throws EncodingException
+     TlvDecoder decoder, boolean copy) throws EncodingException
+  {
+    decodeName
+      (name, signedPortionBeginOffset, signedPortionEndOffset, decoder, copy,
+       false);
+  }
+
+  /**
+   * Decode the name as in decodeName(name, signedPortionBeginOffset,
+   * signedPortionEndOffset, decoder, copy), but if borrow is true, append the
+   * components with name.appendBorrowed so that a reused name doesn't allocate.
+   */
+  private static void
+  decodeName
+    (Name name, int[] signedPortionBeginOffset, int[] signedPortionEndOffset,
+     TlvDecoder decoder, boolean copy, boolean borrow) throws EncodingException
   {
     name.clear();
 
@@ -619,12 +895,48 @@ public class Tlv0_1_1WireFormat extends WireFormat {
 
     while (decoder.getOffset() < endOffset) {
       signedPortionEndOffset[0] = decoder.getOffset();
-      name.append(new Blob(decoder.readBlobTlv(Tlv.NameComponent), true));
+      if (borrow)
+        decoder.readBlobTlv(Tlv.NameComponent, name.appendBorrowed());
+      else
+        name.append(new Blob(decoder.readBlobTlv(Tlv.NameComponent), copy));
     }
 
     decoder.finishNestedTlvs(endOffset);
   }
 
+  /**
+   * Read the value of the next TLV into a BorrowedBlob. If blob is already a
+   * BorrowedBlob from an earlier decode, reuse it instead of allocating.
+   * @param expectedType The expected type.
+   * @param blob The current value of the field.
+   * @param decoder The decoder with the input.
+   * @return The BorrowedBlob with the value.
+   * @throws EncodingException If the type is not the expected type.
+   */
+  private static BorrowedBlob
+  readBorrowedBlobTlv(int expectedType, Blob blob, TlvDecoder decoder)
+    throws EncodingException
+  {
+    BorrowedBlob result = (blob instanceof BorrowedBlob ?
+      (BorrowedBlob)blob : new BorrowedBlob());
+    decoder.readBlobTlv(expectedType, result);
+    return result;
+  }
+
+  /**
+   * Read the type and length of the next TLV and skip over its value.
+   * @param expectedType The expected type.
+   * @param decoder The decoder with the input.
+   * @throws EncodingException If the type is not the expected type or the
+   * length exceeds the input.
+   */
+  private static void
+  skipTlv(int expectedType, TlvDecoder decoder) throws EncodingException
+  {
+    int length = decoder.readTypeAndLength(expectedType);
+    decoder.seek(decoder.getOffset() + length);
+  }
+
   /**
    * Encode the interest selectors.  If no selectors are written, do not output
    * a  Selectors TLV.
@@ -670,7 +982,9 @@ public class Tlv0_1_1WireFormat extends WireFormat {
   }
 
   private static void
-  decodeSelectors(Interest interest, TlvDecoder decoder) throws EncodingException
+  decodeSelectors
+    (Interest interest, TlvDecoder decoder, boolean copy, boolean borrow)
+    throws EncodingException
   {
     int endOffset = decoder.readNestedTlvsStart(Tlv.Selectors);
 
@@ -680,10 +994,11 @@ public class Tlv0_1_1WireFormat extends WireFormat {
       (Tlv.MaxSuffixComponents, endOffset));
 
     // Initially set publisherPublicKeyDigest to none.
-    interest.getPublisherPublicKeyDigest().clear();
+    clearPublisherPublicKeyDigest(interest);
     if (decoder.peekType(Tlv.PublisherPublicKeyLocator, endOffset)) {
       decodeKeyLocator
-        (Tlv.PublisherPublicKeyLocator, interest.getKeyLocator(), decoder);
+        (Tlv.PublisherPublicKeyLocator, interest.getKeyLocator(), decoder,
+         copy, borrow);
       if (interest.getKeyLocator().getType() == KeyLocatorType.KEY_LOCATOR_DIGEST) {
         // For backwards compatibility, also set the publisherPublicKeyDigest.
         interest.getPublisherPublicKeyDigest().setPublisherPublicKeyDigest
@@ -691,10 +1006,10 @@ public class Tlv0_1_1WireFormat extends WireFormat {
       }
     }
     else
-      interest.getKeyLocator().clear();
+      clearKeyLocator(interest);
 
     if (decoder.peekType(Tlv.Exclude, endOffset))
-      decodeExclude(interest.getExclude(), decoder);
+      decodeExclude(interest.getExclude(), decoder, copy);
     else
       interest.getExclude().clear();
 
@@ -705,6 +1020,52 @@ public class Tlv0_1_1WireFormat extends WireFormat {
     decoder.finishNestedTlvs(endOffset);
   }
 
+  /**
+   * Set the selector fields of the interest to their defaults, as if it had
+   * been decoded with no Selectors.
+   * @param interest The Interest whose selectors are cleared.
+   */
+  private static void
+  clearSelectors(Interest interest)
+  {
+    interest.setMinSuffixComponents(-1);
+    interest.setMaxSuffixComponents(-1);
+    clearPublisherPublicKeyDigest(interest);
+    clearKeyLocator(interest);
+    interest.getExclude().clear();
+    interest.setChildSelector(-1);
+    interest.setMustBeFresh(true);
+  }
+
+  /**
+   * Clear the publisherPublicKeyDigest of the interest if it is not already
+   * cleared, to avoid allocating a new empty object for each decoded interest.
+   * @param interest The Interest whose publisherPublicKeyDigest is cleared.
+   */
+  private static void
+  clearPublisherPublicKeyDigest(Interest interest)
+  {
+    if (!interest.getPublisherPublicKeyDigest().getPublisherPublicKeyDigest()
+        .isNull())
+      interest.getPublisherPublicKeyDigest().clear();
+  }
+
+  /**
+   * Clear the keyLocator of the interest if it is not already cleared, to
+   * avoid allocating a new empty object for each decoded interest.
+   * @param interest The Interest whose keyLocator is cleared.
+   */
+  private static void
+  clearKeyLocator(Interest interest)
+  {
+    KeyLocator keyLocator = interest.getKeyLocator();
+    if (keyLocator.getType() != KeyLocatorType.NONE ||
+        !keyLocator.getKeyData().isNull() ||
+        keyLocator.getKeyName().size() != 0 ||
+        keyLocator.getKeyNameType() != KeyNameType.NONE)
+      keyLocator.clear();
+  }
+
   private static void
   encodeExclude(Exclude exclude, TlvEncoder encoder)
   {
@@ -726,7 +1087,8 @@ public class Tlv0_1_1WireFormat extends WireFormat {
   }
 
   private static void
-  decodeExclude(Exclude exclude, TlvDecoder decoder) throws EncodingException
+  decodeExclude(Exclude exclude, TlvDecoder decoder, boolean copy)
+    throws EncodingException
   {
     int endOffset = decoder.readNestedTlvsStart(Tlv.Exclude);
 
@@ -734,7 +1096,7 @@ public class Tlv0_1_1WireFormat extends WireFormat {
     while (true) {
       if (decoder.peekType(Tlv.NameComponent, endOffset))
         exclude.appendComponent(new Name.Component
-          (new Blob(decoder.readBlobTlv(Tlv.NameComponent), true)));
+          (new Blob(decoder.readBlobTlv(Tlv.NameComponent), copy)));
       else if (decoder.readBooleanTlv(Tlv.Any, endOffset))
         exclude.appendAny();
       else
@@ -766,26 +1128,53 @@ public class Tlv0_1_1WireFormat extends WireFormat {
 
   private static void
   decodeKeyLocator
-    (int expectedType, KeyLocator keyLocator, TlvDecoder decoder) throws EncodingException
+    (int expectedType, KeyLocator keyLocator, TlvDecoder decoder, boolean copy,
+     boolean borrow)
+    throws EncodingException
   {
     int endOffset = decoder.readNestedTlvsStart(expectedType);
 
-    keyLocator.clear();
+    Blob keyData = keyLocator.getKeyData();
+    if (borrow) {
+      // Clear the fields without allocating, and keep the key name and key
+      //   data objects to reuse below.
+      keyLocator.setType(KeyLocatorType.NONE);
+      keyLocator.setKeyNameType(KeyNameType.NONE);
+      keyLocator.getKeyName().clear();
+    }
+    else
+      keyLocator.clear();
 
-    if (decoder.getOffset() == endOffset)
+    if (decoder.getOffset() == endOffset) {
       // The KeyLocator is omitted, so leave the fields as none.
+      if (borrow && !keyData.isNull())
+        keyLocator.setKeyData(null);
       return;
+    }
 
     if (decoder.peekType(Tlv.Name, endOffset)) {
       // KeyLocator is a Name.
       keyLocator.setType(KeyLocatorType.KEYNAME);
-      decodeName(keyLocator.getKeyName(), new int[1], new int[1], decoder);
+      if (borrow) {
+        if (!keyData.isNull())
+          keyLocator.setKeyData(null);
+        decodeName
+          (keyLocator.getKeyName(), borrowedOffset_, borrowedOffset_, decoder,
+           false, true);
+      }
+      else
+        decodeName
+          (keyLocator.getKeyName(), new int[1], new int[1], decoder, copy);
     }
     else if (decoder.peekType(Tlv.KeyLocatorDigest, endOffset)) {
       // KeyLocator is a KeyLocatorDigest.
       keyLocator.setType(KeyLocatorType.KEY_LOCATOR_DIGEST);
-      keyLocator.setKeyData
-        (new Blob(decoder.readBlobTlv(Tlv.KeyLocatorDigest), true));
+      if (borrow)
+        keyLocator.setKeyData
+          (readBorrowedBlobTlv(Tlv.KeyLocatorDigest, keyData, decoder));
+      else
+        keyLocator.setKeyData
+          (new Blob(decoder.readBlobTlv(Tlv.KeyLocatorDigest), copy));
     }
     else
       throw new EncodingException
@@ -832,27 +1221,41 @@ public class Tlv0_1_1WireFormat extends WireFormat {
 
   private static void
   decodeSignatureInfo
-    (SignatureHolder signatureHolder, TlvDecoder decoder) throws EncodingException
+    (SignatureHolder signatureHolder, TlvDecoder decoder, boolean copy,
+     boolean borrow)
+    throws EncodingException
   {
     int endOffset = decoder.readNestedTlvsStart(Tlv.SignatureInfo);
 
+    // When borrowing, reuse the signature object if it has the same type
+    //   instead of setting a new object, which the holder copies.
+    Class signatureClass =
+      (borrow ? signatureHolder.getSignature().getClass() : null);
     int signatureType = (int)decoder.readNonNegativeIntegerTlv(Tlv.SignatureType);
     if (signatureType == Tlv.SignatureType_SignatureSha256WithRsa) {
-        signatureHolder.setSignature(new Sha256WithRsaSignature());
+        if (signatureClass != Sha256WithRsaSignature.class)
+          signatureHolder.setSignature(new Sha256WithRsaSignature());
         // Modify data's signature object because if we create an object
         //   and set it, then data will have to copy all the fields.
         Sha256WithRsaSignature signatureInfo =
           (Sha256WithRsaSignature)signatureHolder.getSignature();
-        decodeKeyLocator(Tlv.KeyLocator, signatureInfo.getKeyLocator(), decoder);
+        decodeKeyLocator
+          (Tlv.KeyLocator, signatureInfo.getKeyLocator(), decoder, copy,
+           borrow);
     }
     else if (signatureType == Tlv.SignatureType_SignatureSha256WithEcdsa) {
-        signatureHolder.setSignature(new Sha256WithEcdsaSignature());
+        if (signatureClass != Sha256WithEcdsaSignature.class)
+          signatureHolder.setSignature(new Sha256WithEcdsaSignature());
         Sha256WithEcdsaSignature signatureInfo =
           (Sha256WithEcdsaSignature)signatureHolder.getSignature();
-        decodeKeyLocator(Tlv.KeyLocator, signatureInfo.getKeyLocator(), decoder);
+        decodeKeyLocator
+          (Tlv.KeyLocator, signatureInfo.getKeyLocator(), decoder, copy,
+           borrow);
+    }
+    else if (signatureType == Tlv.SignatureType_DigestSha256) {
+        if (signatureClass != DigestSha256Signature.class)
+          signatureHolder.setSignature(new DigestSha256Signature());
     }
-    else if (signatureType == Tlv.SignatureType_DigestSha256)
-        signatureHolder.setSignature(new DigestSha256Signature());
     else
         throw new EncodingException
          ("decodeSignatureInfo: unrecognized SignatureInfo type" + signatureType);
@@ -894,7 +1297,9 @@ public class Tlv0_1_1WireFormat extends WireFormat {
   }
 
   private static void
-  decodeMetaInfo(MetaInfo metaInfo, TlvDecoder decoder) throws EncodingException
+  decodeMetaInfo
+    (MetaInfo metaInfo, TlvDecoder decoder, boolean copy, boolean borrow)
+    throws EncodingException
   {
     int endOffset = decoder.readNestedTlvsStart(Tlv.MetaInfo);
 
@@ -915,17 +1320,30 @@ public class Tlv0_1_1WireFormat extends WireFormat {
       (decoder.readOptionalNonNegativeIntegerTlv(Tlv.FreshnessPeriod, endOffset));
     if (decoder.peekType(Tlv.FinalBlockId, endOffset)) {
       int finalBlockIdEndOffset = decoder.readNestedTlvsStart(Tlv.FinalBlockId);
-      metaInfo.setFinalBlockId
-        (new Name.Component
-         (new Blob(decoder.readBlobTlv(Tlv.NameComponent), true)));
+      if (borrow) {
+        Name.Component finalBlockId = metaInfo.getFinalBlockId();
+        if (!(finalBlockId.getValue() instanceof BorrowedBlob))
+          finalBlockId = new Name.Component(new BorrowedBlob());
+        decoder.readBlobTlv
+          (Tlv.NameComponent, (BorrowedBlob)finalBlockId.getValue());
+        metaInfo.setFinalBlockId(finalBlockId);
+      }
+      else
+        metaInfo.setFinalBlockId
+          (new Name.Component
+           (new Blob(decoder.readBlobTlv(Tlv.NameComponent), copy)));
       decoder.finishNestedTlvs(finalBlockIdEndOffset);
     }
-    else
+    else if (!borrow || metaInfo.getFinalBlockId().getValue().size() != 0)
+      // When borrowing, don't allocate a new empty component if already empty.
       metaInfo.setFinalBlockId(null);
 
     decoder.finishNestedTlvs(endOffset);
   }
 
   private static final SecureRandom random_ = new SecureRandom();
+  // The ignored signed portion offsets of a borrowed KeyLocator name. This is
+  //   only written, so it can be shared by all threads.
+  private static final int[] borrowedOffset_ = new int[1];
   private static Tlv0_1_1WireFormat instance_ = new Tlv0_1_1WireFormat();
 }
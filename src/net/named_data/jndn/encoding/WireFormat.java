@@ -132,6 +132,35 @@ public class WireFormat {
       ("decodeInterest is not implemented");
   }
 
+  /**
+   * Decode input as an interest and set the fields of the interest object. If
+   * copy is false, the derived class may make the Blob fields of the interest
+   * slices of the input instead of copies. This base class implementation
+   * ignores copy and calls decodeInterest(interest, input,
+   * signedPortionBeginOffset, signedPortionEndOffset).
+   * @param interest The Interest object whose fields are updated.
+   * @param input The input buffer to decode.  This reads from position() to
+   * limit(), but does not change the position. If copy is false, the bytes of
+   * input must not change after this returns.
+   * @param signedPortionBeginOffset Return the offset in the encoding of the
+   * beginning of the signed portion.
+   * @param signedPortionEndOffset Return the offset in the encoding of the end
+   * of the signed portion.
+   * @param copy If true, copy the bytes of each decoded field. If false, the
+   * decoded fields may share the bytes of input.
+   * @throws UnsupportedOperationException for unimplemented if the derived
+   * class does not override.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  decodeInterest
+    (Interest interest, ByteBuffer input, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset, boolean copy) throws EncodingException
+  {
+    decodeInterest
+      (interest, input, signedPortionBeginOffset, signedPortionEndOffset);
+  }
+
   /**
    * Decode input as an interest and set the fields of the interest object.
    * Your derived class should override.
@@ -209,6 +238,34 @@ public class WireFormat {
     throw new UnsupportedOperationException("decodeData is not implemented");
   }
 
+  /**
+   * Decode input as a data packet and set the fields in the data object. If
+   * copy is false, the derived class may make the Blob fields of the data
+   * packet slices of the input instead of copies. This base class
+   * implementation ignores copy and calls decodeData(data, input,
+   * signedPortionBeginOffset, signedPortionEndOffset).
+   * @param data The Data object whose fields are updated.
+   * @param input The input buffer to decode.  This reads from position() to
+   * limit(), but does not change the position. If copy is false, the bytes of
+   * input must not change after this returns.
+   * @param signedPortionBeginOffset Return the offset in the input buffer of
+   * the beginning of the signed portion by setting signedPortionBeginOffset[0].
+   * @param signedPortionEndOffset Return the offset in the input buffer of the
+   * end of the signed portion by setting signedPortionEndOffset[0].
+   * @param copy If true, copy the bytes of each decoded field. If false, the
+   * decoded fields may share the bytes of input.
+   * @throws UnsupportedOperationException for unimplemented if the derived
+   * class does not override.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  decodeData
+    (Data data, ByteBuffer input, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset, boolean copy) throws EncodingException
+  {
+    decodeData(data, input, signedPortionBeginOffset, signedPortionEndOffset);
+  }
+
   /**
    * Decode input as a data packet and set the fields in the data object.  Your
    * derived class should override.
@@ -225,6 +282,60 @@ public class WireFormat {
     decodeData(data, input, new int[1], new int[1]);
   }
 
+  /**
+   * Decode only the name of the interest in input and return the offsets of
+   * the signed portion, so that the other fields can be decoded later. This is
+   * used by Interest.wireDecodeLazy. Your derived class should override.
+   * @param name The Name object whose fields are set to the interest name.
+   * @param input The input buffer to decode.  This reads from position() to
+   * limit(), but does not change the position. If copy is false, the bytes of
+   * input must not change after this returns.
+   * @param signedPortionBeginOffset Return the offset in the encoding of the
+   * beginning of the signed portion.
+   * @param signedPortionEndOffset Return the offset in the encoding of the end
+   * of the signed portion.
+   * @param copy If true, copy the bytes of each name component. If false, the
+   * name components share the bytes of input.
+   * @throws UnsupportedOperationException for unimplemented if the derived
+   * class does not override.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  decodeInterestName
+    (Name name, ByteBuffer input, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset, boolean copy) throws EncodingException
+  {
+    throw new UnsupportedOperationException
+      ("decodeInterestName is not implemented");
+  }
+
+  /**
+   * Decode only the name of the data packet in input and return the offsets of
+   * the signed portion, so that the other fields can be decoded later. This is
+   * used by Data.wireDecodeLazy. Your derived class should override.
+   * @param name The Name object whose fields are set to the data packet name.
+   * @param input The input buffer to decode.  This reads from position() to
+   * limit(), but does not change the position. If copy is false, the bytes of
+   * input must not change after this returns.
+   * @param signedPortionBeginOffset Return the offset in the input buffer of
+   * the beginning of the signed portion by setting signedPortionBeginOffset[0].
+   * @param signedPortionEndOffset Return the offset in the input buffer of the
+   * end of the signed portion by setting signedPortionEndOffset[0].
+   * @param copy If true, copy the bytes of each name component. If false, the
+   * name components share the bytes of input.
+   * @throws UnsupportedOperationException for unimplemented if the derived
+   * class does not override.
+   * @throws EncodingException For invalid encoding.
+   */
+  public void
+  decodeDataName
+    (Name name, ByteBuffer input, int[] signedPortionBeginOffset,
+     int[] signedPortionEndOffset, boolean copy) throws EncodingException
+  {
+    throw new UnsupportedOperationException
+      ("decodeDataName is not implemented");
+  }
+
   /**
    * Encode forwardingEntry and return the encoding. Your derived class should
    * override.
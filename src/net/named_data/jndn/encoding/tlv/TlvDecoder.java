@@ -21,6 +21,7 @@ package net.named_data.jndn.encoding.tlv;
 
 import java.nio.ByteBuffer;
 import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.util.BorrowedBlob;
 
 /**
  * A TlvDecoder has methods to decode an input according to NDN-TLV.
@@ -39,6 +40,39 @@ public class TlvDecoder {
     input_ = input.duplicate();
   }
 
+  /**
+   * Create a new TlvDecoder with no input. You must call reset before
+   * decoding.
+   */
+  public
+  TlvDecoder()
+  {
+    input_ = null;
+  }
+
+  /**
+   * Reset this decoder to decode the input, so that the decoder can be reused
+   * for each received packet. This only calls input.duplicate() if input is not
+   * the same ByteBuffer object as in the previous call, so it does not
+   * allocate when the elements of a received buffer are passed in the same
+   * ByteBuffer with a different position and limit.
+   * @param input The input ByteBuffer whose position and limit are set to the
+   * desired bytes to decode. This does not copy the underlying buffer whose
+   * contents must remain valid while decoding.
+   */
+  public final void
+  reset(ByteBuffer input)
+  {
+    if (input != source_) {
+      source_ = input;
+      input_ = input.duplicate();
+    }
+    else {
+      input_.limit(input.limit());
+      input_.position(input.position());
+    }
+  }
+
   /**
    * Decode a VAR-NUMBER in NDN-TLV and return it. Update the input buffer
    * position.
@@ -284,6 +318,28 @@ public class TlvDecoder {
     return result;
   }
 
+  /**
+   * Decode the type and length from the input starting at the input buffer
+   * position, expecting the type to be expectedType. Then point the blob to
+   * the bytes in the value without copying or allocating a slice. Update the
+   * input buffer position. This is used to decode a reused packet (see
+   * Face.setReusePackets).
+   * @param expectedType The expected type as a 32-bit Java int.
+   * @param blob The BorrowedBlob which is set to the value. Its bytes are only
+   * valid while the bytes of the input buffer are valid.
+   * @throws EncodingException if did not get the expected TLV type.
+   */
+  public final void
+  readBlobTlv(int expectedType, BorrowedBlob blob) throws EncodingException
+  {
+    int length = readTypeAndLength(expectedType);
+    int position = input_.position();
+    blob.borrow(input_, position, position + length);
+
+    // readTypeAndLength already checked if length exceeds the input buffer.
+    input_.position(position + length);
+  }
+
   /**
    * Peek at the next TLV, and if it has the expectedType then call readBlobTlv
    * and return the value.  Otherwise, return null. However, if the input buffer
@@ -350,5 +406,6 @@ public class TlvDecoder {
     input_.position(offset);
   }
 
-  private final ByteBuffer input_;
+  private ByteBuffer input_;
+  private ByteBuffer source_ = null; /**< The input given to reset. */
 }
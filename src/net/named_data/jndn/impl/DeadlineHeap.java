@@ -0,0 +1,189 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.impl;
+
+import java.util.ArrayList;
+
+/**
+ * A DeadlineHeap is an indexed binary min-heap of items ordered by their
+ * deadline. Each item remembers its position in the heap so that it can be
+ * removed in O(log n) without searching, for example when a pending interest
+ * is satisfied before it times out. Finding the earliest deadline is O(1).
+ */
+public class DeadlineHeap {
+  /**
+   * A DeadlineHeap.Item is the base class for an object which can be added to
+   * a DeadlineHeap. An item can be in at most one heap at a time.
+   */
+  public static class Item {
+    /**
+     * Get the deadline given to DeadlineHeap.add.
+     * @return The deadline in milliseconds according to
+     * Common.getNowMilliseconds().
+     */
+    public final double
+    getDeadlineMilliseconds() { return deadlineMilliseconds_; }
+
+    /**
+     * Check if this item is in a heap.
+     * @return True if this item was added to a heap and not yet removed.
+     */
+    public final boolean
+    isInHeap() { return heapIndex_ >= 0; }
+
+    private double deadlineMilliseconds_;
+    private int heapIndex_ = -1;
+  }
+
+  /**
+   * Add the item to the heap with the given deadline.
+   * @param item The item to add, which must not already be in a heap.
+   * @param deadlineMilliseconds The deadline in milliseconds according to
+   * Common.getNowMilliseconds().
+   */
+  public final void
+  add(Item item, double deadlineMilliseconds)
+  {
+    if (item.heapIndex_ >= 0)
+      throw new Error("DeadlineHeap.add: The item is already in a heap");
+
+    item.deadlineMilliseconds_ = deadlineMilliseconds;
+    item.heapIndex_ = items_.size();
+    items_.add(item);
+    siftUp(item.heapIndex_);
+  }
+
+  /**
+   * Remove the item from this heap. If the item is not in the heap, do nothing.
+   * @param item The item to remove.
+   * @return True if the item was removed, false if it was not in the heap.
+   */
+  public final boolean
+  remove(Item item)
+  {
+    int i = item.heapIndex_;
+    if (i < 0 || i >= items_.size() || items_.get(i) != item)
+      return false;
+
+    int last = items_.size() - 1;
+    if (i != last) {
+      set(i, (Item)items_.get(last));
+      items_.remove(last);
+      // The moved item may need to go either up or down.
+      if (!siftUp(i))
+        siftDown(i);
+    }
+    else
+      items_.remove(last);
+
+    item.heapIndex_ = -1;
+    return true;
+  }
+
+  /**
+   * Get the item with the earliest deadline without removing it.
+   * @return The item, or null if the heap is empty.
+   */
+  public final Item
+  peek() { return items_.size() == 0 ? null : (Item)items_.get(0); }
+
+  /**
+   * If the earliest deadline is less than or equal to nowMilliseconds, remove
+   * and return its item.
+   * @param nowMilliseconds The current time in milliseconds according to
+   * Common.getNowMilliseconds().
+   * @return The expired item, or null if no item has expired.
+   */
+  public final Item
+  pollExpired(double nowMilliseconds)
+  {
+    Item item = peek();
+    if (item == null || item.deadlineMilliseconds_ > nowMilliseconds)
+      return null;
+
+    remove(item);
+    return item;
+  }
+
+  /**
+   * Get the number of items in the heap.
+   * @return The number of items.
+   */
+  public final int
+  size() { return items_.size(); }
+
+  private void
+  set(int i, Item item)
+  {
+    items_.set(i, item);
+    item.heapIndex_ = i;
+  }
+
+  /**
+   * Move the item at index i up until its parent is not later.
+   * @return True if the item moved.
+   */
+  private boolean
+  siftUp(int i)
+  {
+    Item item = (Item)items_.get(i);
+    int start = i;
+    while (i > 0) {
+      int parent = (i - 1) / 2;
+      Item parentItem = (Item)items_.get(parent);
+      if (parentItem.deadlineMilliseconds_ <= item.deadlineMilliseconds_)
+        break;
+      set(i, parentItem);
+      i = parent;
+    }
+    set(i, item);
+
+    return i != start;
+  }
+
+  /**
+   * Move the item at index i down until its children are not earlier.
+   */
+  private void
+  siftDown(int i)
+  {
+    Item item = (Item)items_.get(i);
+    int size = items_.size();
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= size)
+        break;
+      if (child + 1 < size &&
+          ((Item)items_.get(child + 1)).deadlineMilliseconds_ <
+          ((Item)items_.get(child)).deadlineMilliseconds_)
+        ++child;
+
+      Item childItem = (Item)items_.get(child);
+      if (item.deadlineMilliseconds_ <= childItem.deadlineMilliseconds_)
+        break;
+      set(i, childItem);
+      i = child;
+    }
+    set(i, item);
+  }
+
+  // Use ArrayList without generics so it works with older Java compilers.
+  private final ArrayList items_ = new ArrayList(); // of Item
+}
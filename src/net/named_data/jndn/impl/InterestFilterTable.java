@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.InterestFilter;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnInterestCallback;
+
+/**
+ * An InterestFilterTable is an internal class to hold the entries added by
+ * Node.setInterestFilter. The entries are indexed by a NameTrie on the filter
+ * prefix so that finding the filters for an incoming Interest only visits the
+ * entries whose prefix is on the path of the Interest name. A filter with a
+ * regex is only evaluated if its prefix is on the path.
+ */
+public class InterestFilterTable {
+  /**
+   * An InterestFilterTable.Entry holds an interestFilterId, an InterestFilter
+   * and the OnInterestCallback with its related Face.
+   */
+  public static class Entry {
+    /**
+     * Create a new Entry with the given values.
+     * @param interestFilterId The unique ID for this entry.
+     * @param filter The InterestFilter for this entry.
+     * @param onInterest The callback to call.
+     * @param face The face on which was called registerPrefix or
+     * setInterestFilter which is passed to the onInterest callback.
+     */
+    public Entry
+      (long interestFilterId, InterestFilter filter,
+       OnInterestCallback onInterest, Face face)
+    {
+      interestFilterId_ = interestFilterId;
+      filter_ = filter;
+      onInterest_ = onInterest;
+      face_ = face;
+    }
+
+    /**
+     * Get the interestFilterId given to the constructor.
+     * @return The interestFilterId.
+     */
+    public final long
+    getInterestFilterId() { return interestFilterId_; }
+
+    /**
+     * Get the InterestFilter given to the constructor.
+     * @return The InterestFilter.
+     */
+    public final InterestFilter
+    getFilter() { return filter_; }
+
+    /**
+     * Get the OnInterestCallback given to the constructor.
+     * @return The OnInterestCallback.
+     */
+    public final OnInterestCallback
+    getOnInterest() { return onInterest_; }
+
+    /**
+     * Get the Face given to the constructor.
+     * @return The Face.
+     */
+    public final Face
+    getFace() { return face_; }
+
+    private final long interestFilterId_; /**< A unique identifier for this entry so it can be deleted */
+    private final InterestFilter filter_;
+    private final OnInterestCallback onInterest_;
+    private final Face face_;
+    private NameTrie.Node trieNode_ = null; /**< The node in nameTrie_ which
+     * holds this entry, or null if not in the table. */
+  }
+
+  /**
+   * Add a new entry to the table.
+   * @param interestFilterId The unique ID for this entry.
+   * @param filter The InterestFilter for this entry. This does not make a copy.
+   * @param onInterest The callback to call.
+   * @param face The face which is passed to the onInterest callback.
+   */
+  public final void
+  setInterestFilter
+    (long interestFilterId, InterestFilter filter,
+     OnInterestCallback onInterest, Face face)
+  {
+    Entry entry = new Entry(interestFilterId, filter, onInterest, face);
+    entry.trieNode_ = nameTrie_.add(filter.getPrefix(), entry);
+    entriesById_.put(interestFilterId, entry);
+  }
+
+  /**
+   * Find all entries whose filter matches the name and add them to the entries
+   * list, in the order that the entries were added to the table. This only
+   * checks the entries whose prefix is a prefix of name.
+   * @param name The name to check (from the incoming Interest).
+   * @param entries Add matching entries from the table. The caller should pass
+   * in an empty ArrayList.
+   */
+  public final void
+  getMatchedFilters(Name name, ArrayList entries)
+  {
+    getMatchedFilters(name, entries, new ArrayList());
+  }
+
+  /**
+   * Do the work of getMatchedFilters(name, entries), using the nodes list as a
+   * scratch list for the name trie so that the caller can reuse it for each
+   * received packet.
+   * @param name The name to check.
+   * @param entries Add matching entries from the table. The caller should pass
+   * in an empty ArrayList.
+   * @param nodes A scratch list. The caller should pass in an empty ArrayList.
+   * This adds to it, and the caller should clear it before reusing it.
+   */
+  public final void
+  getMatchedFilters(Name name, ArrayList entries, ArrayList nodes)
+  {
+    nameTrie_.findAllPrefixesOf(name, nodes);
+    for (int i = 0; i < nodes.size(); ++i) {
+      NameTrie.Node node = (NameTrie.Node)nodes.get(i);
+      for (int j = 0; j < node.getValueCount(); ++j) {
+        Entry entry = (Entry)node.getValue(j);
+        // The node is on the path of name, so a filter without a regex already
+        // matches. Only check a regex filter.
+        if (!entry.getFilter().hasRegexFilter() ||
+            entry.getFilter().doesMatch(name))
+          entries.add(entry);
+      }
+    }
+
+    if (entries.size() > 1)
+      // The IDs are increasing, so this is the order that the entries were added.
+      Collections.sort(entries, increasingIdComparator_);
+  }
+
+  /**
+   * Remove the entry with the interestFilterId from the table. This does not
+   * affect another entry with a different interestFilterId, even if it has the
+   * same prefix name.
+   * @param interestFilterId The ID returned from setInterestFilter.
+   * @return True if the entry was found and removed, otherwise false.
+   */
+  public final boolean
+  unsetInterestFilter(long interestFilterId)
+  {
+    Entry entry = (Entry)entriesById_.remove(interestFilterId);
+    if (entry == null)
+      return false;
+
+    nameTrie_.remove(entry.trieNode_, entry);
+    entry.trieNode_ = null;
+    return true;
+  }
+
+  /**
+   * Get the number of entries in the table.
+   * @return The number of entries.
+   */
+  public final int
+  size() { return entriesById_.size(); }
+
+  private static final Comparator increasingIdComparator_ = new Comparator() {
+    public int compare(Object o1, Object o2) {
+      long id1 = ((Entry)o1).getInterestFilterId();
+      long id2 = ((Entry)o2).getInterestFilterId();
+      return id1 < id2 ? -1 : (id1 > id2 ? 1 : 0);
+    }
+  };
+
+  private final NameTrie nameTrie_ = new NameTrie();
+  // Use HashMap without generics so it works with older Java compilers.
+  private final HashMap entriesById_ = new HashMap(); // of Long => Entry
+}
@@ -0,0 +1,262 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import net.named_data.jndn.Name;
+
+/**
+ * A NameTrie is a tree of name components where each node can hold a list of
+ * values which were added with the node's name. This is used by tables such as
+ * the PendingInterestTable to only visit the entries whose name is a prefix of
+ * a given name, instead of scanning the entire table. An ordered NameTrie keeps
+ * the children of each node in canonical NDN order so that a table such as the
+ * MemoryContentCache can visit the names under a prefix from the leftmost or
+ * rightmost child.
+ */
+public class NameTrie {
+  /**
+   * Create an empty NameTrie whose children are not ordered.
+   */
+  public NameTrie()
+  {
+    this(false);
+  }
+
+  /**
+   * Create an empty NameTrie.
+   * @param isOrdered If true, keep the children of each node in canonical NDN
+   * order so that getChildren can return them in order. Otherwise, use a hash
+   * map which is faster to find a child.
+   */
+  public NameTrie(boolean isOrdered)
+  {
+    isOrdered_ = isOrdered;
+  }
+
+  /**
+   * A NameTrie.Node holds the values added for one name and the child nodes
+   * for the names which are one component longer.
+   */
+  public static class Node {
+    private Node(Node parent, Name.Component component)
+    {
+      parent_ = parent;
+      component_ = component;
+    }
+
+    /**
+     * Get the number of values held by this node.
+     * @return The number of values.
+     */
+    public final int
+    getValueCount() { return values_ == null ? 0 : values_.size(); }
+
+    /**
+     * Get the value at index i, in the order that values were added.
+     * @param i The index of the value, from 0 to getValueCount() - 1.
+     * @return The value.
+     */
+    public final Object
+    getValue(int i) { return values_.get(i); }
+
+    /**
+     * Get the number of components in the name of this node.
+     * @return The depth of this node, where the root node has depth 0.
+     */
+    public final int
+    getDepth() { return depth_; }
+
+    /**
+     * Get the last component of the name of this node.
+     * @return The component, or null for the root node.
+     */
+    public final Name.Component
+    getComponent() { return component_; }
+
+    /**
+     * Get an iterator over the child nodes. If the NameTrie is ordered, the
+     * children are in canonical NDN order of their component.
+     * @param reverse If true and the NameTrie is ordered, iterate from the
+     * greatest component to the least.
+     * @return The iterator of Node. You should not modify the trie while using
+     * it.
+     */
+    public final Iterator
+    getChildren(boolean reverse)
+    {
+      if (children_ == null)
+        return Collections.EMPTY_LIST.iterator();
+      if (reverse && children_ instanceof TreeMap)
+        return ((TreeMap)children_).descendingMap().values().iterator();
+      return children_.values().iterator();
+    }
+
+    private Node
+    getChild(Name.Component component)
+    {
+      if (children_ == null)
+        return null;
+      return (Node)children_.get(component);
+    }
+
+    private final Node parent_;
+    private final Name.Component component_;
+    private int depth_;
+    // Use Map and ArrayList without generics so it works with older Java
+    // compilers. Allocate them on demand since most nodes are leaves.
+    private Map children_ = null; // of Name.Component => Node
+    private ArrayList values_ = null;  // of Object
+  }
+
+  /**
+   * Add the value to the node for the name, creating nodes as needed.
+   * @param name The name for the value. This does not keep a pointer to the
+   * Name object.
+   * @param value The value to add. The same value may be added more than once.
+   * @return The node which holds the value, which can be passed to remove.
+   */
+  public final Node
+  add(Name name, Object value)
+  {
+    Node node = root_;
+    for (int i = 0; i < name.size(); ++i) {
+      Name.Component component = name.get(i);
+      Node child = node.getChild(component);
+      if (child == null) {
+        child = new Node(node, component);
+        child.depth_ = node.depth_ + 1;
+        if (node.children_ == null)
+          node.children_ = isOrdered_ ? (Map)new TreeMap() : new HashMap();
+        node.children_.put(component, child);
+      }
+
+      node = child;
+    }
+
+    if (node.values_ == null)
+      node.values_ = new ArrayList();
+    node.values_.add(value);
+    ++size_;
+
+    return node;
+  }
+
+  /**
+   * Remove the first occurrence of the value from the node returned by add. If
+   * the node and its ancestors no longer hold values or children, remove them
+   * from the trie.
+   * @param node The node returned by add.
+   * @param value The value to remove, compared with ==.
+   * @return True if the value was found and removed, otherwise false.
+   */
+  public final boolean
+  remove(Node node, Object value)
+  {
+    if (node.values_ == null)
+      return false;
+
+    boolean found = false;
+    for (int i = 0; i < node.values_.size(); ++i) {
+      if (node.values_.get(i) == value) {
+        node.values_.remove(i);
+        found = true;
+        break;
+      }
+    }
+    if (!found)
+      return false;
+
+    --size_;
+    prune(node);
+    return true;
+  }
+
+  /**
+   * Find the node for exactly the given name.
+   * @param name The name of the node.
+   * @return The node, or null if there is no node for the name.
+   */
+  public final Node
+  find(Name name)
+  {
+    Node node = root_;
+    for (int i = 0; i < name.size() && node != null; ++i)
+      node = node.getChild(name.get(i));
+
+    return node;
+  }
+
+  /**
+   * Find each node which holds values and whose name is a prefix of the given
+   * name (including the name itself), and add it to the nodes list. This only
+   * visits the nodes along the path for the name.
+   * @param name The name to search for.
+   * @param nodes Append the matching nodes to this list, ordered from the
+   * shortest name to the longest name.
+   */
+  public final void
+  findAllPrefixesOf(Name name, ArrayList nodes)
+  {
+    Node node = root_;
+    int i = 0;
+    while (true) {
+      if (node.getValueCount() > 0)
+        nodes.add(node);
+
+      if (i >= name.size())
+        break;
+      node = node.getChild(name.get(i));
+      if (node == null)
+        break;
+      ++i;
+    }
+  }
+
+  /**
+   * Get the total number of values in all nodes of this trie.
+   * @return The number of values.
+   */
+  public final int
+  size() { return size_; }
+
+  /**
+   * Starting at node, remove each node which has no values and no children.
+   * @param node The node to start at.
+   */
+  private static void
+  prune(Node node)
+  {
+    while (node.parent_ != null && node.getValueCount() == 0 &&
+           (node.children_ == null || node.children_.size() == 0)) {
+      node.parent_.children_.remove(node.component_);
+      node = node.parent_;
+    }
+  }
+
+  private final boolean isOrdered_;
+  private final Node root_ = new Node(null, null);
+  private int size_ = 0;
+}
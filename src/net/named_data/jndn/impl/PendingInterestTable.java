@@ -0,0 +1,411 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.util.Common;
+
+/**
+ * A PendingInterestTable is an internal class to hold the entries for Interests
+ * which were sent by Node.expressInterest and are waiting for a Data packet.
+ * The entries are indexed by a NameTrie on the Interest name so that finding
+ * the entries for an incoming Data packet only visits the entries along the
+ * path of the Data name, and by a map on the pendingInterestId so that
+ * removing an entry does not search the table. Entries with an interest
+ * lifetime are also held in a DeadlineHeap so that checking for timeouts only
+ * visits the entries which have actually timed out.
+ */
+public class PendingInterestTable {
+  /**
+   * A PendingInterestTable.Entry holds the callbacks and other fields for an
+   * entry in the pending interest table.
+   */
+  public static class Entry extends DeadlineHeap.Item {
+    /**
+     * Create a new Entry with the given fields. Note: You should not call this
+     * directly but call PendingInterestTable.add.
+     * @param pendingInterestId The ID from getNextPendingInterestId().
+     * @param interest The Interest which was sent. This does not make a copy.
+     * @param onData The OnData callback.
+     * @param onTimeout The OnTimeout callback. If null, this does not use it.
+     */
+    public Entry
+      (long pendingInterestId, Interest interest, OnData onData,
+       OnTimeout onTimeout)
+    {
+      this(pendingInterestId, interest, onData, onTimeout,
+           interest.getInterestLifetimeMilliseconds());
+    }
+
+    /**
+     * Create a new Entry with the given fields and a local timeout which can
+     * be shorter than the interest lifetime, for example a retransmission
+     * timeout from an RttEstimator. Note: You should not call this directly
+     * but call PendingInterestTable.add.
+     * @param pendingInterestId The ID from getNextPendingInterestId().
+     * @param interest The Interest which was sent. This does not make a copy.
+     * @param onData The OnData callback.
+     * @param onTimeout The OnTimeout callback. If null, this does not use it.
+     * @param timeoutMilliseconds The time from now in milliseconds when the
+     * entry times out, or -1 for no timeout.
+     */
+    public Entry
+      (long pendingInterestId, Interest interest, OnData onData,
+       OnTimeout onTimeout, double timeoutMilliseconds)
+    {
+      pendingInterestId_ = pendingInterestId;
+      interest_ = interest;
+      onData_ = onData;
+      onTimeout_ = onTimeout;
+      expressTimeNanoseconds_ = System.nanoTime();
+
+      // Set up timeoutTime_.
+      if (timeoutMilliseconds >= 0.0)
+        timeoutTimeMilliseconds_ = Common.getNowMilliseconds() +
+          timeoutMilliseconds;
+      else
+        // No timeout.
+        timeoutTimeMilliseconds_ = -1.0;
+    }
+
+    /**
+     * Get the next unique pending interest ID. This is thread-safe.
+     * @return The next ID.
+     */
+    public static long
+    getNextPendingInterestId() { return lastPendingInterestId_.incrementAndGet(); }
+
+    /**
+     * Get the pendingInterestId given to the constructor.
+     * @return The pendingInterestId.
+     */
+    public final long
+    getPendingInterestId() { return pendingInterestId_; }
+
+    /**
+     * Get the interest given to the constructor.
+     * @return The interest. You should not modify this object.
+     */
+    public final Interest
+    getInterest() { return interest_; }
+
+    /**
+     * Get the OnData callback given to the constructor.
+     * @return The OnData callback.
+     */
+    public final OnData
+    getOnData() { return onData_; }
+
+    /**
+     * Check if this interest is timed out.
+     * @param nowMilliseconds The current time in milliseconds from
+     * Common.getNowMilliseconds.
+     * @return True if this interest timed out, otherwise false.
+     */
+    public final boolean
+    isTimedOut(double nowMilliseconds)
+    {
+      return timeoutTimeMilliseconds_ >= 0.0 &&
+             nowMilliseconds >= timeoutTimeMilliseconds_;
+    }
+
+    /**
+     * Get the time when the interest times out.
+     * @return The time in milliseconds according to Common.getNowMilliseconds,
+     * or -1 for no timeout.
+     */
+    public final double
+    getTimeoutTimeMilliseconds() { return timeoutTimeMilliseconds_; }
+
+    /**
+     * Get the time when this entry was created, which is when the interest was
+     * expressed. This is used to measure the round-trip time.
+     * @return The time in nanoseconds according to System.nanoTime.
+     */
+    public final long
+    getExpressTimeNanoseconds() { return expressTimeNanoseconds_; }
+
+    /**
+     * Check if the interest of this entry is ambiguous for measuring the
+     * round-trip time because it re-expresses an interest with the same name
+     * which timed out or is still pending, or because it was re-expressed
+     * while pending. In that case the Data may answer the other transmission,
+     * so to follow Karn's algorithm (RFC 6298 section 3) the caller should not
+     * take a round-trip time sample from this entry.
+     * @return True if the interest was retransmitted.
+     */
+    public final boolean
+    isRetransmission() { return isRetransmission_; }
+
+    /**
+     * Call onTimeout_ (if defined). This ignores exceptions from the
+     * onTimeout_.
+     */
+    public final void
+    callTimeout()
+    {
+      if (onTimeout_ != null) {
+        // Ignore all exceptions.
+        try {
+          onTimeout_.onTimeout(interest_);
+        }
+        catch (Throwable e) { }
+      }
+    }
+
+    private final Interest interest_;
+    private static final AtomicLong lastPendingInterestId_ = new AtomicLong(); /**< A class variable used to get the next unique ID. */
+    private final long pendingInterestId_; /**< A unique identifier for this entry so it can be deleted */
+    private final OnData onData_;
+    private final OnTimeout onTimeout_;
+    private final long expressTimeNanoseconds_;
+    private final double timeoutTimeMilliseconds_; /**< The time when the interest
+     * times out in milliseconds according to Common.getNowMilliseconds, or -1
+     * for no timeout. */
+    private NameTrie.Node trieNode_ = null; /**< The node in nameTrie_ which
+     * holds this entry, or null if not in the table. */
+    private boolean isRetransmission_ = false;
+  }
+
+  /**
+   * Add a new entry to the table.
+   * @param pendingInterestId The ID from Entry.getNextPendingInterestId().
+   * @param interest The Interest which was sent. This does not make a copy, so
+   * the caller should not modify it.
+   * @param onData The OnData callback.
+   * @param onTimeout The OnTimeout callback. If null, this does not use it.
+   * @return The new Entry.
+   */
+  public final Entry
+  add(long pendingInterestId, Interest interest, OnData onData,
+      OnTimeout onTimeout)
+  {
+    return add
+      (pendingInterestId, interest, onData, onTimeout,
+       interest.getInterestLifetimeMilliseconds());
+  }
+
+  /**
+   * Add a new entry to the table which times out after timeoutMilliseconds
+   * instead of the interest lifetime.
+   * @param pendingInterestId The ID from Entry.getNextPendingInterestId().
+   * @param interest The Interest which was sent. This does not make a copy, so
+   * the caller should not modify it.
+   * @param onData The OnData callback.
+   * @param onTimeout The OnTimeout callback. If null, this does not use it.
+   * @param timeoutMilliseconds The time from now in milliseconds when the
+   * entry times out, or -1 for no timeout.
+   * @return The new Entry.
+   */
+  public final Entry
+  add(long pendingInterestId, Interest interest, OnData onData,
+      OnTimeout onTimeout, double timeoutMilliseconds)
+  {
+    Entry entry = new Entry
+      (pendingInterestId, interest, onData, onTimeout, timeoutMilliseconds);
+    entry.trieNode_ = nameTrie_.add(interest.getName(), entry);
+    if (entry.trieNode_.getValueCount() > 1) {
+      // Re-expressed while pending, so the Data for any of the entries with
+      //   this name may answer another.
+      for (int i = 0; i < entry.trieNode_.getValueCount(); ++i)
+        ((Entry)entry.trieNode_.getValue(i)).isRetransmission_ = true;
+    }
+    else if (!recentlyTimedOutNames_.isEmpty() &&
+             recentlyTimedOutNames_.containsKey(interest.getName()))
+      // Re-expressed after a timeout.
+      entry.isRetransmission_ = true;
+    entriesById_.put(pendingInterestId, entry);
+    if (entry.timeoutTimeMilliseconds_ >= 0.0)
+      timeoutHeap_.add(entry, entry.timeoutTimeMilliseconds_);
+
+    return entry;
+  }
+
+  /**
+   * Remove the entry with the pendingInterestId from the table. This does not
+   * affect another entry with a different pendingInterestId, even if it has
+   * the same interest name.
+   * @param pendingInterestId The ID of the entry to remove.
+   * @return The removed entry, or null if there is no entry with the
+   * pendingInterestId.
+   */
+  public final Entry
+  remove(long pendingInterestId)
+  {
+    Entry entry = (Entry)entriesById_.remove(pendingInterestId);
+    if (entry == null)
+      return null;
+
+    removeFromIndexes(entry);
+    return entry;
+  }
+
+  /**
+   * Find all entries where the name conforms to the entry's interest
+   * selectors, remove the entries from the table and add to the entries list.
+   * This only checks the entries whose interest name is a prefix of name. The
+   * entries are added in decreasing order of pendingInterestId (the most
+   * recently expressed interest first).
+   * @param name The name to find the interest for (from the incoming data
+   * packet).
+   * @param entries Add matching entries from the table. The caller should pass
+   * in an empty ArrayList.
+   */
+  public final void
+  extractEntriesForExpressedInterest(Name name, ArrayList entries)
+  {
+    extractEntriesForExpressedInterest(name, entries, new ArrayList());
+  }
+
+  /**
+   * Do the work of extractEntriesForExpressedInterest(name, entries), using the nodes list as a
+   * scratch list for the name trie so that the caller can reuse it for each
+   * received packet.
+   * @param name The name to check.
+   * @param entries Add matching entries from the table. The caller should pass
+   * in an empty ArrayList.
+   * @param nodes A scratch list. The caller should pass in an empty ArrayList.
+   * This adds to it, and the caller should clear it before reusing it.
+   */
+  public final void
+  extractEntriesForExpressedInterest(Name name, ArrayList entries, ArrayList nodes)
+  {
+    nameTrie_.findAllPrefixesOf(name, nodes);
+    for (int i = 0; i < nodes.size(); ++i) {
+      NameTrie.Node node = (NameTrie.Node)nodes.get(i);
+      for (int j = 0; j < node.getValueCount(); ++j) {
+        Entry entry = (Entry)node.getValue(j);
+        if (entry.getInterest().matchesName(name))
+          entries.add(entry);
+      }
+    }
+
+    // Remove after collecting so that we don't modify a node while iterating.
+    for (int i = 0; i < entries.size(); ++i) {
+      Entry entry = (Entry)entries.get(i);
+      entriesById_.remove(entry.getPendingInterestId());
+      removeFromIndexes(entry);
+      if (entry.isRetransmission_)
+        // The exchange is done, so a new interest is not a retransmission.
+        recentlyTimedOutNames_.remove(entry.getInterest().getName());
+    }
+
+    if (entries.size() > 1)
+      // Keep the same order as scanning a table in the order of insertion from
+      // back to front.
+      Collections.sort(entries, decreasingIdComparator_);
+  }
+
+  /**
+   * Remove each entry which is timed out and add it to the entries list. This
+   * only visits the entries which have timed out. The entries are added in
+   * decreasing order of pendingInterestId (the most recently expressed
+   * interest first), the same as scanning a table in the order of insertion
+   * from back to front, so that the order of the onTimeout callbacks does not
+   * depend on the timeout times.
+   * @param nowMilliseconds The current time in milliseconds from
+   * Common.getNowMilliseconds.
+   * @param entries Add the timed-out entries from the table. The caller should
+   * pass in an empty ArrayList.
+   */
+  public final void
+  extractTimedOutEntries(double nowMilliseconds, ArrayList entries)
+  {
+    while (true) {
+      Entry entry = (Entry)timeoutHeap_.pollExpired(nowMilliseconds);
+      if (entry == null)
+        break;
+
+      entriesById_.remove(entry.getPendingInterestId());
+      removeFromIndexes(entry);
+      recentlyTimedOutNames_.put(entry.getInterest().getName(), Boolean.TRUE);
+      entries.add(entry);
+    }
+
+    if (entries.size() > 1)
+      Collections.sort(entries, decreasingIdComparator_);
+  }
+
+  /**
+   * Get the earliest time when an entry in the table times out.
+   * @return The time in milliseconds according to Common.getNowMilliseconds,
+   * or -1 if no entry has a timeout.
+   */
+  public final double
+  getNextTimeoutMilliseconds()
+  {
+    Entry entry = (Entry)timeoutHeap_.peek();
+    return entry == null ? -1.0 : entry.getTimeoutTimeMilliseconds();
+  }
+
+  /**
+   * Get the number of entries in the table.
+   * @return The number of entries.
+   */
+  public final int
+  size() { return entriesById_.size(); }
+
+  private void
+  removeFromIndexes(Entry entry)
+  {
+    if (entry.trieNode_ != null) {
+      nameTrie_.remove(entry.trieNode_, entry);
+      entry.trieNode_ = null;
+    }
+    timeoutHeap_.remove(entry);
+  }
+
+  private static final Comparator decreasingIdComparator_ = new Comparator() {
+    public int compare(Object o1, Object o2) {
+      long id1 = ((Entry)o1).getPendingInterestId();
+      long id2 = ((Entry)o2).getPendingInterestId();
+      return id1 > id2 ? -1 : (id1 < id2 ? 1 : 0);
+    }
+  };
+
+  private final NameTrie nameTrie_ = new NameTrie();
+  private final DeadlineHeap timeoutHeap_ = new DeadlineHeap();
+  // Use HashMap without generics so it works with older Java compilers.
+  private final HashMap entriesById_ = new HashMap(); // of Long => Entry
+  // The names of the entries which timed out, so that add can mark an entry
+  // with the same name as a retransmission. This is in access order so that
+  // the least recently used is removed.
+  private final LinkedHashMap recentlyTimedOutNames_ = // of Name => Boolean
+    new LinkedHashMap(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry eldest) {
+        return size() > MAX_RECENTLY_TIMED_OUT_NAMES;
+      }
+    };
+  /**
+   * The maximum number of timed-out interest names which are kept to detect
+   * retransmissions.
+   */
+  public static final int MAX_RECENTLY_TIMED_OUT_NAMES = 1000;
+}
@@ -20,10 +20,12 @@
 package net.named_data.jndn.transport;
 
 import java.nio.channels.SocketChannel;
+import java.nio.channels.SelectableChannel;
 import java.net.InetSocketAddress;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import net.named_data.jndn.encoding.ElementListener;
 import net.named_data.jndn.encoding.ElementReader;
 import net.named_data.jndn.encoding.EncodingException;
@@ -125,27 +127,182 @@ public class TcpTransport extends Transport {
   }
 
   /**
-   * Set data to the host
+   * Set data to the host. If in a batch (see beginBatch), queue the data so
+   * that endBatch writes all the queued data with one gathering write.
+   * Otherwise write as much as the socket accepts now without blocking, and
+   * leave the rest in the outbound buffer to be written by later calls to
+   * flush (for example from Face.processEvents when the socket is writable).
+   * This never blocks. If the data would make the outbound buffer grow beyond
+   * getMaxOutboundBufferSize() even after writing what the socket accepts now,
+   * this does not queue the data and throws an IOException. To avoid this,
+   * check isWritable() before sending and wait for the OnWritable callback.
+   * The outbound buffer is written when the socket is writable by
+   * processEvents or the EventLoop.
+   * @param data The buffer of data to send.  This reads from position() to
+   * limit(), but does not change the position. You must not modify the bytes
+   * until they are written, so if hasPendingWrites() may be true then you
+   * should pass a buffer which won't change, such as from Blob.buf().
+   * @throws IOException For I/O error, or if the outbound buffer is full.
+   */
+  public void
+  send(ByteBuffer data) throws IOException
+  {
+    if (channel_ == null)
+      throw new IOException
+        ("Cannot send because the socket is not open.  Use connect.");
+
+    if (outboundBytes_ + data.remaining() > maxOutboundBufferSize_) {
+      // Try to make room without waiting.
+      flush();
+      if (outboundBytes_ + data.remaining() > maxOutboundBufferSize_)
+        throw new IOException
+          ("Cannot send because the outbound buffer is full.  Wait until isWritable() is true.");
+    }
+
+    // Use a duplicate so that we don't change the caller's position.
+    outboundQueue_.add(data.duplicate());
+    outboundBytes_ += data.remaining();
+    updateIsWritable();
+
+    if (!isInBatch())
+      flush();
+  }
+
+  /**
+   * Send the data, where the caller may change or reuse the bytes of the
+   * buffer after this returns. If not in a batch and the outbound buffer is
+   * empty, write directly from the buffer without copying it, and only copy
+   * the part which the socket does not accept now into the outbound buffer.
+   * Otherwise, the data must wait behind other data so copy it all.
    * @param data The buffer of data to send.  This reads from position() to
    * limit(), but does not change the position.
    * @throws IOException For I/O error.
    */
   public void
-  send(ByteBuffer data) throws IOException
+  sendTransient(ByteBuffer data) throws IOException
   {
     if (channel_ == null)
       throw new IOException
         ("Cannot send because the socket is not open.  Use connect.");
 
-    // Save and restore the position.
-    int savePosition = data.position();
-    try {
-      while(data.hasRemaining())
-        channel_.write(data);
+    if (isInBatch() || outboundQueue_.size() > 0) {
+      super.sendTransient(data);
+      return;
     }
-    finally {
-      data.position(savePosition);
+
+    // Use a duplicate so that we don't change the caller's position.
+    ByteBuffer buffer = data.duplicate();
+    channel_.write(buffer);
+    if (buffer.hasRemaining())
+      // The socket send buffer is full, so copy the rest to the outbound buffer.
+      super.sendTransient(buffer);
+  }
+
+  /**
+   * Write the data in the outbound buffer with a gathering write, so that the
+   * packets of one batch need as few system calls as possible. This does not
+   * block, so if the socket does not accept all the data, the rest stays in
+   * the outbound buffer and hasPendingWrites() returns true.
+   * @throws IOException For I/O error.
+   */
+  public void
+  flush() throws IOException
+  {
+    if (outboundQueue_.size() == 0)
+      return;
+    if (channel_ == null) {
+      clearOutboundBuffer();
+      throw new IOException
+        ("Cannot send because the socket is not open.  Use connect.");
     }
+
+    ByteBuffer[] buffers = new ByteBuffer[outboundQueue_.size()];
+    outboundQueue_.toArray(buffers);
+
+    int offset = 0;
+    while (offset < buffers.length) {
+      long nBytesWritten = channel_.write
+        (buffers, offset, buffers.length - offset);
+      outboundBytes_ -= nBytesWritten;
+      // Skip the buffers which were completely written.
+      while (offset < buffers.length && !buffers[offset].hasRemaining())
+        ++offset;
+
+      if (nBytesWritten == 0)
+        // The socket send buffer is full.
+        break;
+    }
+
+    outboundQueue_.subList(0, offset).clear();
+    updateIsWritable();
+  }
+
+  /**
+   * Check if there is data in the outbound buffer which the socket has not
+   * accepted yet.
+   * @return True if there is data to write.
+   */
+  public boolean
+  hasPendingWrites() { return outboundQueue_.size() > 0; }
+
+  /**
+   * Check if the outbound buffer is below the high-water mark. This becomes
+   * false when the buffered data exceeds getHighWaterMark(), and becomes true
+   * again when flushing brings it down to half of the high-water mark. This
+   * can be called from any thread.
+   * @return True if the application can send without the outbound buffer
+   * growing beyond the high-water mark.
+   */
+  public boolean
+  isWritable() { return isWritable_; }
+
+  /**
+   * Get the high-water mark of the outbound buffer.
+   * @return The high-water mark in bytes.
+   */
+  public final int
+  getHighWaterMark() { return highWaterMark_; }
+
+  /**
+   * Set the high-water mark of the outbound buffer, used by isWritable(). If
+   * this is larger than getMaxOutboundBufferSize(), this also sets the maximum
+   * size to the high-water mark.
+   * @param highWaterMark The high-water mark in bytes.
+   */
+  public final void
+  setHighWaterMark(int highWaterMark)
+  {
+    if (highWaterMark <= 0)
+      throw new Error("TcpTransport.setHighWaterMark: The value must be positive");
+
+    highWaterMark_ = highWaterMark;
+    if (maxOutboundBufferSize_ < highWaterMark_)
+      maxOutboundBufferSize_ = highWaterMark_;
+    updateIsWritable();
+  }
+
+  /**
+   * Get the maximum size of the outbound buffer, beyond which send throws an
+   * IOException.
+   * @return The maximum size in bytes.
+   */
+  public final int
+  getMaxOutboundBufferSize() { return maxOutboundBufferSize_; }
+
+  /**
+   * Set the maximum size of the outbound buffer, beyond which send throws an
+   * IOException instead of queueing the data.
+   * @param maxOutboundBufferSize The maximum size in bytes. This must not be
+   * less than getHighWaterMark().
+   */
+  public final void
+  setMaxOutboundBufferSize(int maxOutboundBufferSize)
+  {
+    if (maxOutboundBufferSize < highWaterMark_)
+      throw new Error
+        ("TcpTransport.setMaxOutboundBufferSize: The value must not be less than the high-water mark");
+
+    maxOutboundBufferSize_ = maxOutboundBufferSize;
   }
 
   /**
@@ -177,6 +334,14 @@ public class TcpTransport extends Transport {
     }
   }
 
+  /**
+   * Get the channel for the connection so that waitForEvents or an EventLoop
+   * can select on it.
+   * @return The channel, or null if not connected.
+   */
+  public SelectableChannel
+  getSelectableChannel() { return channel_; }
+
   /**
    * Check if the transport is connected.
    * @return True if connected.
@@ -197,15 +362,60 @@ public class TcpTransport extends Transport {
   public void
   close() throws IOException
   {
+    clearOutboundBuffer();
     if (channel_ != null) {
       if (channel_.isConnected())
         channel_.close();
       channel_ = null;
     }
+
+    // Close the Selector used by waitForEvents.
+    super.close();
+  }
+
+  private void
+  clearOutboundBuffer()
+  {
+    outboundQueue_.clear();
+    outboundBytes_ = 0;
+    isWritable_ = true;
   }
 
+  /**
+   * Update isWritable_ from outboundBytes_, using half of the high-water mark
+   * as the low-water mark so that the state doesn't switch for every packet.
+   */
+  private void
+  updateIsWritable()
+  {
+    if (isWritable_) {
+      if (outboundBytes_ > highWaterMark_)
+        isWritable_ = false;
+    }
+    else {
+      if (outboundBytes_ <= highWaterMark_ / 2)
+        isWritable_ = true;
+    }
+  }
+
+  /**
+   * The default high-water mark of the outbound buffer.
+   */
+  public static final int DEFAULT_HIGH_WATER_MARK = 256 * 1024;
+  /**
+   * The default maximum size of the outbound buffer.
+   */
+  public static final int DEFAULT_MAX_OUTBOUND_BUFFER_SIZE =
+    16 * DEFAULT_HIGH_WATER_MARK;
+
   SocketChannel channel_;
   ByteBuffer inputBuffer_ = ByteBuffer.allocate(Common.MAX_NDN_PACKET_SIZE);
+  // Use ArrayList without generics so it works with older Java compilers.
+  private final ArrayList outboundQueue_ = new ArrayList(); // of ByteBuffer
+  private long outboundBytes_ = 0;
+  private volatile boolean isWritable_ = true;
+  private int highWaterMark_ = DEFAULT_HIGH_WATER_MARK;
+  private int maxOutboundBufferSize_ = DEFAULT_MAX_OUTBOUND_BUFFER_SIZE;
   // TODO: This belongs in the socket listener.
   private ElementReader elementReader_;
   private ConnectionInfo connectionInfo_;
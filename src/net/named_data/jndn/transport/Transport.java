@@ -21,6 +21,9 @@ package net.named_data.jndn.transport;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import net.named_data.jndn.encoding.ElementListener;
 import net.named_data.jndn.encoding.EncodingException;
 
@@ -72,6 +75,88 @@ public abstract class Transport {
     throw new UnsupportedOperationException("send is not implemented");
   }
 
+  /**
+   * Send the data, where the caller may change or reuse the bytes of the
+   * buffer after this returns, for example a buffer in a slab of memory which
+   * is reused. This base class implementation copies the data to a new buffer
+   * and calls send. A derived class which can write the data before returning
+   * should override to avoid the copy.
+   * @param data The buffer of data to send.  This reads from position() to
+   * limit(), but does not change the position.
+   * @throws IOException For I/O error.
+   */
+  public void
+  sendTransient(ByteBuffer data) throws IOException
+  {
+    ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+    copy.put(data.duplicate());
+    copy.flip();
+    send(copy);
+  }
+
+  /**
+   * Start a batch of sends. Until the matching endBatch, a transport which
+   * supports batching may queue the data given to send and write it all at
+   * once in endBatch. Batches can be nested, in which case the data is written
+   * at the end of the outermost batch. While in a batch, the caller must not
+   * modify the bytes of a buffer given to send until endBatch.
+   */
+  public final void
+  beginBatch() { ++batchDepth_; }
+
+  /**
+   * End a batch started by beginBatch. If this ends the outermost batch, call
+   * flush() to write the queued data.
+   * @throws IOException For I/O error.
+   */
+  public final void
+  endBatch() throws IOException
+  {
+    if (batchDepth_ > 0 && --batchDepth_ == 0)
+      flush();
+  }
+
+  /**
+   * Check if beginBatch has been called without the matching endBatch.
+   * @return True if in a batch.
+   */
+  public final boolean
+  isInBatch() { return batchDepth_ > 0; }
+
+  /**
+   * Write the data which send has queued. This base class implementation does
+   * nothing since the base class send writes immediately. A derived class
+   * which queues data in send should override.
+   * @throws IOException For I/O error.
+   */
+  public void
+  flush() throws IOException
+  {
+  }
+
+  /**
+   * Check if there is data which send has buffered but not yet written
+   * because the connection could not accept it. When this is true, call
+   * flush() again when the connection is writable. waitForEvents and EventLoop
+   * wait for the channel to be writable in this case.
+   * This base class implementation returns false since the base class send
+   * writes immediately. A derived class which buffers data should override.
+   * @return True if there is data to write.
+   */
+  public boolean
+  hasPendingWrites() { return false; }
+
+  /**
+   * Check if the application can send more data without the transport
+   * buffering more than its limit. When this is false, a producer should hold
+   * off sending until it becomes true again.
+   * This base class implementation returns true. A derived class which
+   * buffers data should override.
+   * @return True if the transport can accept more data.
+   */
+  public boolean
+  isWritable() { return true; }
+
   /**
    * Process any data to receive.  For each element received, call
    * elementListener.onReceivedElement.
@@ -88,6 +173,95 @@ public abstract class Transport {
   public abstract void
   processEvents() throws IOException, EncodingException;
 
+  /**
+   * Get the channel for the connection if the transport uses a
+   * SelectableChannel. This is used by waitForEvents and by EventLoop to wait
+   * until there is data to receive.
+   * This base class implementation returns null. A derived class which uses a
+   * SelectableChannel in non-blocking mode should override.
+   * @return The channel, or null if not connected or not selectable.
+   */
+  public SelectableChannel
+  getSelectableChannel() { return null; }
+
+  /**
+   * Block until there may be data to receive (or buffered data can be
+   * written), until wakeup() is called or until the timeout. After this
+   * returns, call processEvents to read the data. If getSelectableChannel()
+   * returns a channel, this blocks on a Selector until it is readable.
+   * Otherwise this can't detect incoming data, so it waits at most a short
+   * polling interval.
+   * @param timeoutMilliseconds The maximum time to wait in milliseconds. If
+   * this is zero or negative, return immediately.
+   * @throws IOException For I/O error.
+   */
+  public void
+  waitForEvents(long timeoutMilliseconds) throws IOException
+  {
+    if (timeoutMilliseconds <= 0)
+      return;
+
+    SelectableChannel channel = getSelectableChannel();
+    Selector selector;
+    synchronized (wakeupLock_) {
+      if (isWakeupPending_) {
+        isWakeupPending_ = false;
+        return;
+      }
+
+      if (channel == null) {
+        try {
+          wakeupLock_.wait
+            (Math.min(timeoutMilliseconds, POLL_INTERVAL_MILLISECONDS));
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+        }
+        isWakeupPending_ = false;
+        return;
+      }
+
+      if (selector_ == null || selectorChannel_ != channel) {
+        // Open the Selector on demand so that a transport used by an EventLoop
+        //   doesn't need one. Reopen it if the channel changed after connect.
+        if (selector_ != null)
+          selector_.close();
+        selector_ = Selector.open();
+        selectorKey_ = channel.register(selector_, SelectionKey.OP_READ);
+        selectorChannel_ = channel;
+      }
+      // Also wake up when buffered data can be written.
+      selectorKey_.interestOps
+        (hasPendingWrites() ?
+         SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+      selector = selector_;
+    }
+
+    // Select without holding the lock so that wakeup() can interrupt it.
+    selector.select(timeoutMilliseconds);
+    selector.selectedKeys().clear();
+    synchronized (wakeupLock_) {
+      // Selector.wakeup() is remembered by the Selector, so we don't need the
+      //   flag as well.
+      isWakeupPending_ = false;
+    }
+  }
+
+  /**
+   * Make a thread which is blocked in waitForEvents return immediately. If no
+   * thread is blocked, the next call to waitForEvents returns immediately.
+   * This can be called from any thread.
+   */
+  public void
+  wakeup()
+  {
+    synchronized (wakeupLock_) {
+      isWakeupPending_ = true;
+      if (selector_ != null)
+        selector_.wakeup();
+      wakeupLock_.notifyAll();
+    }
+  }
+
   /**
    * Check if the transport is connected.
    * @return True if connected.
@@ -100,12 +274,35 @@ public abstract class Transport {
   }
 
   /**
-   * Close the connection.  This base class implementation does nothing, but
-   * your derived class can override.
+   * Close the connection.  This base class implementation closes the Selector
+   * used by waitForEvents. Your derived class can override, and should call
+   * super.close().
    * @throws IOException For I/O error.
    */
   public void
   close() throws IOException
   {
+    synchronized (wakeupLock_) {
+      if (selector_ != null) {
+        selector_.close();
+        selector_ = null;
+        selectorKey_ = null;
+        selectorChannel_ = null;
+      }
+    }
   }
+
+  /**
+   * The maximum time that the base class waitForEvents waits, since it can't
+   * detect incoming data.
+   */
+  private static final long POLL_INTERVAL_MILLISECONDS = 10;
+
+  private int batchDepth_ = 0;
+  private final Object wakeupLock_ = new Object();
+  private boolean isWakeupPending_ = false;
+  private Selector selector_ = null;
+  private SelectionKey selectorKey_ = null;
+  private SelectableChannel selectorChannel_ = null; /**< The channel registered
+   * with selector_. */
 }
@@ -23,6 +23,7 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectableChannel;
 import net.named_data.jndn.encoding.ElementListener;
 import net.named_data.jndn.encoding.ElementReader;
 import net.named_data.jndn.encoding.EncodingException;
@@ -134,6 +135,19 @@ public class UdpTransport extends Transport {
     }
   }
 
+  /**
+   * Send the data, where the caller may change the bytes after this returns.
+   * Since send writes the data before returning, this does not copy it.
+   * @param data The buffer of data to send.  This reads from position() to
+   * limit(), but does not change the position.
+   * @throws IOException For I/O error.
+   */
+  public void
+  sendTransient(ByteBuffer data) throws IOException
+  {
+    send(data);
+  }
+
   /**
    * Process any data to receive.  For each element received, call
    * elementListener.onReceivedElement.
@@ -163,6 +177,14 @@ public class UdpTransport extends Transport {
     }
   }
 
+  /**
+   * Get the channel for the connection so that waitForEvents or an EventLoop
+   * can select on it.
+   * @return The channel, or null if not connected.
+   */
+  public SelectableChannel
+  getSelectableChannel() { return channel_; }
+
   /**
    * Check if the transport is connected.
    * @return True if connected.
@@ -188,6 +210,9 @@ public class UdpTransport extends Transport {
         channel_.close();
       channel_ = null;
     }
+
+    // Close the Selector used by waitForEvents.
+    super.close();
   }
 
   DatagramChannel channel_;
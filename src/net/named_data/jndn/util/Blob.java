@@ -157,8 +157,8 @@ public class Blob {
   getImmutableArray()
   {
     if (buffer_ != null) {
-      // We can't call array() on a read only ByteBuffer.
-      if (!buffer_.isReadOnly()) {
+      // We can't call array() on a read only or direct ByteBuffer.
+      if (buffer_.hasArray() && buffer_.arrayOffset() == 0) {
         byte[] array =  buffer_.array();
         if (array.length == buffer_.remaining())
           // Assume the buffer_ covers the entire backing array, so just return.
@@ -282,7 +282,9 @@ public class Blob {
       return "";
     else {
       try {
-        return new String(buffer_.array(), "UTF-8");
+        // Use getImmutableArray since the buffer may be a read-only slice,
+        //   for example of a packet decoded without copying.
+        return new String(getImmutableArray(), "UTF-8");
       } catch (UnsupportedEncodingException ex) {
         // We don't expect this to happen.
         throw new Error("UTF-8 decoder not supported: " + ex.getMessage());
@@ -290,7 +292,19 @@ public class Blob {
     }
   }
 
-  private final ByteBuffer buffer_;
+  /**
+   * Replace the buffer. This is only called by BorrowedBlob and
+   * BorrowedSignedBlob which reuse the Blob object for each received packet.
+   * @param buffer The new buffer.
+   */
+  final void
+  reset(ByteBuffer buffer)
+  {
+    buffer_ = buffer;
+    haveHashCode_ = false;
+  }
+
+  private ByteBuffer buffer_;
   private boolean haveHashCode_ = false;
   private int hashCode_;
 }
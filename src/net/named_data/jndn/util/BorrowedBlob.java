@@ -0,0 +1,56 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A BorrowedBlob is a Blob which a decoder can reset to point to a field of
+ * each received packet when reusing packet objects (see
+ * Face.setReusePackets). Unlike a Blob which is a slice of the input, this
+ * does not allocate for each packet. The bytes are borrowed, so they are only
+ * valid until the next call to borrow, which changes the value of this same
+ * object. If you need to keep the value, make a copy with new Blob(buf(), true).
+ */
+public class BorrowedBlob extends Blob {
+  /**
+   * Create a new BorrowedBlob with a null pointer. Call borrow to set it.
+   */
+  public
+  BorrowedBlob()
+  {
+  }
+
+  /**
+   * Point this Blob to the region of input from position to limit, without
+   * copying.
+   * @param input The input buffer. This does not change its position or
+   * limit. The bytes must not change while this Blob is used.
+   * @param position The index in input of the beginning of the value.
+   * @param limit The index in input of the end of the value.
+   */
+  public final void
+  borrow(ByteBuffer input, int position, int limit)
+  {
+    reset(view_.view(input, position, limit));
+  }
+
+  private final BorrowedBuffer view_ = new BorrowedBuffer();
+}
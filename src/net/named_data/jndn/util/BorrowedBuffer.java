@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A BorrowedBuffer keeps a ByteBuffer which views a region of a borrowed input
+ * buffer, for example a packet which is only valid during a receive callback.
+ * To avoid allocating a slice for each packet, the same view is reused while
+ * the input is backed by the same array. This is used by BorrowedBlob and
+ * BorrowedSignedBlob.
+ */
+class BorrowedBuffer {
+  /**
+   * Point the view to the region of input from position to limit.
+   * @param input The input buffer. This does not change its position or limit.
+   * @param position The index in input of the beginning of the region.
+   * @param limit The index in input of the end of the region.
+   * @return The view, whose position and limit are the region. Its indexes
+   * are offset from the indexes in input by view.position() - position.
+   */
+  final ByteBuffer
+  view(ByteBuffer input, int position, int limit)
+  {
+    int offset;
+    if (input.hasArray()) {
+      byte[] array = input.array();
+      if (array != array_) {
+        array_ = array;
+        view_ = ByteBuffer.wrap(array);
+      }
+      offset = input.arrayOffset();
+    }
+    else {
+      // We can't get the array of a direct or read-only buffer, so duplicate.
+      array_ = null;
+      view_ = input.duplicate();
+      offset = 0;
+    }
+
+    view_.clear();
+    view_.position(offset + position);
+    view_.limit(offset + limit);
+    return view_;
+  }
+
+  private ByteBuffer view_;
+  private byte[] array_;
+}
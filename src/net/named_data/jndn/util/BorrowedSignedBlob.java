@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A BorrowedSignedBlob is a SignedBlob which is reset to point to the encoding
+ * of each received packet when reusing packet objects (see
+ * Face.setReusePackets), so that it is the default wire encoding of the reused
+ * packet without allocating. Like BorrowedBlob, the bytes are only valid until
+ * the next call to borrow.
+ */
+public class BorrowedSignedBlob extends SignedBlob {
+  /**
+   * Create a new BorrowedSignedBlob with a null pointer. Call borrow to set it.
+   */
+  public
+  BorrowedSignedBlob()
+  {
+  }
+
+  /**
+   * Point this SignedBlob to the region of input from position to limit,
+   * without copying.
+   * @param input The input buffer. This does not change its position or
+   * limit. The bytes must not change while this SignedBlob is used.
+   * @param position The index in input of the beginning of the encoding.
+   * @param limit The index in input of the end of the encoding.
+   * @param signedPortionBeginOffset The index in input of the beginning of the
+   * signed portion.
+   * @param signedPortionEndOffset The index in input of the end of the signed
+   * portion.
+   */
+  public final void
+  borrow
+    (ByteBuffer input, int position, int limit, int signedPortionBeginOffset,
+     int signedPortionEndOffset)
+  {
+    ByteBuffer buffer = view_.view(input, position, limit);
+    // Convert the indexes in input to indexes in the view.
+    int offset = buffer.position() - position;
+    reset
+      (buffer,
+       signedView_.view
+         (input, signedPortionBeginOffset, signedPortionEndOffset),
+       offset + signedPortionBeginOffset, offset + signedPortionEndOffset);
+  }
+
+  private final BorrowedBuffer view_ = new BorrowedBuffer();
+  private final BorrowedBuffer signedView_ = new BorrowedBuffer();
+}
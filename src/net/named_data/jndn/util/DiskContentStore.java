@@ -0,0 +1,360 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.TreeMap;
+
+/**
+ * A DiskContentStore is an append-only log of byte arrays, such as Data packet
+ * encodings, in segment files in a local directory. MemoryContentCache uses it
+ * as a disk tier for the entries which it evicts from memory. Each segment file
+ * has a fixed size and is memory-mapped with FileChannel.map, so that append
+ * and read do not make a system call and read returns a ByteBuffer which shares
+ * the mapped region without copying. A record is identified by a handle which
+ * is a long. When all the records in a full segment are freed, or the caller
+ * removes the oldest segment with removeOldestSegment (which returns the owner
+ * of each record so that the caller can drop it), the segment file and its
+ * mapping go to a pool of free segments which a new segment reuses. The files
+ * are not deleted while the store is used, because Java can't unmap a region
+ * and deleting a mapped file doesn't free its disk space until the mapping is
+ * garbage collected. So the segment files, including the free ones, never
+ * exceed the maximum size. The store does not survive a restart: the
+ * constructor deletes the old segment files in the directory. This class is
+ * not thread-safe.
+ */
+public class DiskContentStore {
+  /**
+   * Create a DiskContentStore in the directory.
+   * @param directory The directory for the segment files. This creates it if
+   * it does not exist, and deletes the segment files from a previous store.
+   * @param segmentSize The size in bytes of each segment file. This must be at
+   * least Common.MAX_NDN_PACKET_SIZE.
+   * @param maxBytes The maximum total size of the segment files. This must be
+   * at least two segments. The caller should call removeOldestSegment while
+   * isOverLimit() is true.
+   * @throws IOException If the directory can't be created.
+   * @throws Error if segmentSize is less than Common.MAX_NDN_PACKET_SIZE, or
+   * maxBytes is less than two segments.
+   */
+  public DiskContentStore(File directory, int segmentSize, long maxBytes)
+    throws IOException
+  {
+    if (segmentSize < Common.MAX_NDN_PACKET_SIZE)
+      throw new Error
+        ("DiskContentStore: The segment size must be at least MAX_NDN_PACKET_SIZE");
+    if (maxBytes < 2L * segmentSize)
+      throw new Error
+        ("DiskContentStore: The maximum size must be at least two segments");
+    if (!directory.isDirectory() && !directory.mkdirs())
+      throw new IOException
+        ("DiskContentStore: Can't create the directory " + directory);
+
+    directory_ = directory;
+    segmentSize_ = segmentSize;
+    maxBytes_ = maxBytes;
+    maxSegments_ = (int)Math.min(Integer.MAX_VALUE, maxBytes / segmentSize);
+
+    File[] files = directory.listFiles();
+    if (files != null) {
+      for (int i = 0; i < files.length; ++i) {
+        String fileName = files[i].getName();
+        if (fileName.startsWith(FILE_PREFIX) && fileName.endsWith(FILE_SUFFIX))
+          files[i].delete();
+      }
+    }
+  }
+
+  /**
+   * Create a DiskContentStore in the directory with DEFAULT_SEGMENT_SIZE.
+   * @param directory The directory for the segment files. This creates it if
+   * it does not exist, and deletes the segment files from a previous store.
+   * @param maxBytes The maximum total size of the segment files.
+   * @throws IOException If the directory can't be created.
+   */
+  public DiskContentStore(File directory, long maxBytes) throws IOException
+  {
+    this(directory, DEFAULT_SEGMENT_SIZE, maxBytes);
+  }
+
+  /**
+   * Append the bytes to the current segment. If it is full, start a new segment
+   * with a free segment file, or create a file if there is none.
+   * @param data The bytes to append from position() to limit(). This does not
+   * change the position.
+   * @param owner An object to return from removeOldestSegment if this record
+   * is in the removed segment.
+   * @return The handle for the record.
+   * @throws IOException For I/O error in creating a segment file.
+   * @throws Error if data.remaining() is greater than the segment size.
+   */
+  public final long
+  append(ByteBuffer data, Object owner) throws IOException
+  {
+    int length = data.remaining();
+    if (length > segmentSize_)
+      throw new Error
+        ("DiskContentStore.append: The data is larger than the segment size");
+
+    if (current_ == null || current_.offset_ + length > segmentSize_) {
+      if (current_ != null) {
+        current_.isFull_ = true;
+        if (current_.liveBytes_ == 0)
+          releaseSegment(current_);
+      }
+      current_ = newSegment();
+    }
+
+    Segment segment = current_;
+    ByteBuffer buffer = segment.map_.duplicate();
+    buffer.position(segment.offset_);
+    buffer.put(data.duplicate());
+
+    long handle = ((long)segment.id_ << 32) | segment.offset_;
+    segment.offset_ += length;
+    segment.liveBytes_ += length;
+    segment.owners_.put(segment.offset_ - length, owner);
+    return handle;
+  }
+
+  /**
+   * Get a read-only ByteBuffer for the record, which shares the mapped region
+   * of the segment file without copying. The ByteBuffer is only valid until the
+   * record is freed or its segment is removed.
+   * @param handle The handle from append.
+   * @param length The number of bytes which were given to append.
+   * @return The ByteBuffer with position() at the first byte and limit() after
+   * the last, or null if the segment was removed.
+   */
+  public final ByteBuffer
+  read(long handle, int length)
+  {
+    Segment segment = (Segment)segments_.get(getSegmentId(handle));
+    if (segment == null)
+      return null;
+
+    ByteBuffer buffer = segment.map_.asReadOnlyBuffer();
+    int offset = getOffset(handle);
+    buffer.limit(offset + length);
+    buffer.position(offset);
+    return buffer;
+  }
+
+  /**
+   * Free the record and drop its owner. If its segment is full and this was
+   * the last record in use, return the segment to the pool of free segments. If
+   * the segment was already removed, do nothing.
+   * @param handle The handle from append.
+   * @param length The number of bytes which were given to append.
+   */
+  public final void
+  free(long handle, int length)
+  {
+    Segment segment = (Segment)segments_.get(getSegmentId(handle));
+    if (segment == null)
+      return;
+
+    segment.liveBytes_ -= length;
+    segment.owners_.remove(getOffset(handle));
+    if (segment.isFull_ && segment.liveBytes_ <= 0)
+      releaseSegment(segment);
+  }
+
+  /**
+   * Check if the segments in use are at the limit, so that the next new segment
+   * would make the segment files (including the free ones) more than the
+   * maximum size.
+   * @return True if over the limit.
+   */
+  public final boolean
+  isOverLimit() { return segments_.size() >= maxSegments_; }
+
+  /**
+   * Return the oldest segment to the pool of free segments and return the
+   * owner of each record in it which was not freed. The caller should use
+   * getSegmentId on the handle of the owner's record to check if it is in the
+   * removed segment.
+   * @return A new list of the owner objects, or an empty list if there are no
+   * segments.
+   */
+  public final ArrayList
+  removeOldestSegment()
+  {
+    if (segments_.size() == 0)
+      return new ArrayList();
+
+    Segment segment = (Segment)segments_.get(segments_.firstKey());
+    if (segment == current_)
+      current_ = null;
+    ArrayList owners = new ArrayList(segment.owners_.values());
+    releaseSegment(segment);
+    return owners;
+  }
+
+  /**
+   * Get the ID of the oldest segment, which removeOldestSegment will remove.
+   * @return The segment ID, or -1 if there are no segments.
+   */
+  public final int
+  getOldestSegmentId()
+  {
+    return segments_.size() == 0 ? -1 : (Integer)segments_.firstKey();
+  }
+
+  /**
+   * Get the total size of the segment files, including the free segments
+   * which are still mapped and kept for reuse.
+   * @return The number of bytes.
+   */
+  public final long
+  getByteCount()
+  {
+    return (long)(segments_.size() + freeSegments_.size()) * segmentSize_;
+  }
+
+  /**
+   * Get the number of segments in use, not counting the free segments.
+   * @return The number of segments.
+   */
+  public final int
+  getSegmentCount() { return segments_.size(); }
+
+  public final long
+  getMaxBytes() { return maxBytes_; }
+
+  /**
+   * Remove all the records and return all the segments to the pool of free
+   * segments. The files are kept for reuse. The store can still be used after
+   * this.
+   */
+  public final void
+  clear()
+  {
+    while (segments_.size() > 0)
+      releaseSegment((Segment)segments_.get(segments_.firstKey()));
+    current_ = null;
+  }
+
+  /**
+   * Get the ID of the segment which has the record.
+   * @param handle The handle from append.
+   * @return The segment ID.
+   */
+  public static int
+  getSegmentId(long handle) { return (int)(handle >>> 32); }
+
+  private static int
+  getOffset(long handle) { return (int)handle; }
+
+  /**
+   * A Segment holds the mapped region of a segment file and the owners of its
+   * records. When a free segment is reused, it gets a new ID so that the
+   * handles of the old records are not found.
+   */
+  private static class Segment {
+    public Segment(MappedByteBuffer map)
+    {
+      map_ = map;
+    }
+
+    public int id_ = -1;
+    public final MappedByteBuffer map_;
+    public int offset_ = 0;
+    public long liveBytes_ = 0;
+    public boolean isFull_ = false;
+    // Use HashMap without generics so it works with older Java compilers.
+    public final HashMap owners_ = new HashMap(); // of Integer offset => Object
+  }
+
+  /**
+   * Get a segment from the pool of free segments, or create a segment file if
+   * there is none, and give it the next segment ID.
+   * @return The new current segment.
+   * @throws IOException For I/O error in creating a segment file.
+   */
+  private Segment
+  newSegment() throws IOException
+  {
+    Segment segment;
+    if (freeSegments_.size() > 0)
+      segment = (Segment)freeSegments_.remove(freeSegments_.size() - 1);
+    else {
+      File file = new File(directory_, FILE_PREFIX + nFiles_ + FILE_SUFFIX);
+      RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+      try {
+        // Mapping in read-write mode sets the file size. The mapping stays
+        // valid after the file is closed.
+        segment = new Segment(randomAccessFile.getChannel().map
+          (FileChannel.MapMode.READ_WRITE, 0, segmentSize_));
+      } finally {
+        randomAccessFile.close();
+      }
+      ++nFiles_;
+    }
+
+    segment.id_ = nextSegmentId_++;
+    segment.offset_ = 0;
+    segment.liveBytes_ = 0;
+    segment.isFull_ = false;
+    segments_.put(segment.id_, segment);
+    return segment;
+  }
+
+  /**
+   * Remove the segment from segments_, drop the owners of its records and put
+   * it in the pool of free segments.
+   */
+  private void
+  releaseSegment(Segment segment)
+  {
+    segments_.remove(segment.id_);
+    segment.owners_.clear();
+    freeSegments_.add(segment);
+  }
+
+  /**
+   * The default size of each segment file.
+   */
+  public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+  private static final String FILE_PREFIX = "content-";
+  private static final String FILE_SUFFIX = ".seg";
+
+  private final File directory_;
+  private final int segmentSize_;
+  private final long maxBytes_;
+  private final int maxSegments_;
+  // Use TreeMap without generics so it works with older Java compilers.
+  // The key is the segment ID, so the first is the oldest.
+  private final TreeMap segments_ = new TreeMap(); // of Integer => Segment
+  // The segments which are not in use, whose files and mappings are reused.
+  private final ArrayList freeSegments_ = new ArrayList(); // of Segment
+  private Segment current_ = null;
+  private int nextSegmentId_ = 0;
+  // The number of segment files which were created.
+  private int nFiles_ = 0;
+}
@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.util;
+
+import net.named_data.jndn.Name;
+
+/**
+ * An EvictionPolicy chooses which entry a cache such as MemoryContentCache
+ * should remove when it is over its size limit. The cache tells the policy when
+ * an entry is added, accessed or removed, and calls selectVictim when it needs
+ * to remove an entry. Each method should take constant time so that eviction
+ * is O(1) per insertion. An entry is an opaque object from the cache which is
+ * compared by identity.
+ */
+public interface EvictionPolicy {
+  /**
+   * Start tracking the entry which was just added to the cache.
+   * @param entry The cache entry.
+   * @param name The name of the entry, for example to count the frequency of
+   * the name.
+   */
+  void
+  add(Object entry, Name name);
+
+  /**
+   * Record that the entry was used to answer a request.
+   * @param entry The cache entry given to add.
+   * @param name The name of the entry.
+   */
+  void
+  access(Object entry, Name name);
+
+  /**
+   * Stop tracking the entry because the cache removed it, either because it
+   * was returned by selectVictim or for another reason such as going stale.
+   * @param entry The cache entry given to add.
+   */
+  void
+  remove(Object entry);
+
+  /**
+   * Choose the entry to evict. This does not remove it. The cache calls
+   * remove(entry) when it evicts the entry. The victim may be the entry that
+   * was just added, which means that the policy does not admit it.
+   * @return The entry to evict, or null if no entries are tracked.
+   */
+  Object
+  selectVictim();
+}
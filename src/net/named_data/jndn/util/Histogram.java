@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A Histogram counts recorded values in buckets with fixed upper bounds, for
+ * example to record the round-trip time of interests. record() uses only
+ * atomic operations without a lock, so it can be called on an I/O thread while
+ * another thread reads the counts. (A reader may see a count which does not yet
+ * include a value being recorded at the same time.)
+ */
+public class Histogram {
+  /**
+   * Create a Histogram with the given bucket upper bounds. There is also a
+   * final bucket for values greater than the last upper bound.
+   * @param upperBounds The inclusive upper bound of each bucket in increasing
+   * order. This copies the array.
+   */
+  public Histogram(double[] upperBounds)
+  {
+    for (int i = 1; i < upperBounds.length; ++i) {
+      if (!(upperBounds[i] > upperBounds[i - 1]))
+        throw new Error("Histogram: The upper bounds must be increasing");
+    }
+
+    upperBounds_ = (double[])upperBounds.clone();
+    bucketCounts_ = new AtomicLongArray(upperBounds.length + 1);
+  }
+
+  /**
+   * Create a Histogram with DEFAULT_LATENCY_BOUNDS_MILLISECONDS.
+   */
+  public Histogram()
+  {
+    this(DEFAULT_LATENCY_BOUNDS_MILLISECONDS);
+  }
+
+  /**
+   * Add the value to the count of its bucket and to the sum.
+   * @param value The value to record.
+   */
+  public final void
+  record(double value)
+  {
+    // There are only a few buckets, so a linear search is fast.
+    int i = 0;
+    while (i < upperBounds_.length && value > upperBounds_[i])
+      ++i;
+    bucketCounts_.incrementAndGet(i);
+    count_.incrementAndGet();
+
+    while (true) {
+      long oldBits = sumBits_.get();
+      long newBits = Double.doubleToLongBits
+        (Double.longBitsToDouble(oldBits) + value);
+      if (sumBits_.compareAndSet(oldBits, newBits))
+        break;
+    }
+  }
+
+  /**
+   * Get the number of recorded values.
+   * @return The count.
+   */
+  public final long
+  getCount() { return count_.get(); }
+
+  /**
+   * Get the sum of the recorded values.
+   * @return The sum.
+   */
+  public final double
+  getSum() { return Double.longBitsToDouble(sumBits_.get()); }
+
+  /**
+   * Get the mean of the recorded values.
+   * @return The mean, or 0 if there are no values.
+   */
+  public final double
+  getMean()
+  {
+    long count = getCount();
+    return count == 0 ? 0.0 : getSum() / count;
+  }
+
+  /**
+   * Get the number of buckets, which is one more than the number of upper
+   * bounds.
+   * @return The number of buckets.
+   */
+  public final int
+  getBucketCount() { return bucketCounts_.length(); }
+
+  /**
+   * Get the upper bound of the bucket.
+   * @param i The index of the bucket, from 0 to getBucketCount() - 1.
+   * @return The inclusive upper bound, or Double.POSITIVE_INFINITY for the last
+   * bucket.
+   */
+  public final double
+  getUpperBound(int i)
+  {
+    return i < upperBounds_.length ? upperBounds_[i] : Double.POSITIVE_INFINITY;
+  }
+
+  /**
+   * Get the number of recorded values in the bucket (not including the values
+   * in lower buckets).
+   * @param i The index of the bucket, from 0 to getBucketCount() - 1.
+   * @return The number of values.
+   */
+  public final long
+  getBucketValueCount(int i) { return bucketCounts_.get(i); }
+
+  /**
+   * Estimate the value at the given percentile by interpolating within the
+   * bucket which contains it.
+   * @param percentile The percentile from 0 to 100, for example 99.
+   * @return The estimated value, or 0 if there are no values. If the
+   * percentile is in the last bucket, return the last upper bound.
+   */
+  public final double
+  getPercentile(double percentile)
+  {
+    long[] counts = new long[bucketCounts_.length()];
+    long total = 0;
+    for (int i = 0; i < counts.length; ++i) {
+      counts[i] = bucketCounts_.get(i);
+      total += counts[i];
+    }
+    if (total == 0)
+      return 0.0;
+
+    double rank = percentile / 100.0 * total;
+    long cumulative = 0;
+    for (int i = 0; i < counts.length; ++i) {
+      if (counts[i] > 0 && cumulative + counts[i] >= rank) {
+        if (i >= upperBounds_.length)
+          return upperBounds_.length > 0 ?
+            upperBounds_[upperBounds_.length - 1] : 0.0;
+
+        double lower = (i == 0 ? 0.0 : upperBounds_[i - 1]);
+        return lower + (upperBounds_[i] - lower) *
+          ((rank - cumulative) / counts[i]);
+      }
+      cumulative += counts[i];
+    }
+
+    // We don't expect to get here.
+    return upperBounds_.length > 0 ? upperBounds_[upperBounds_.length - 1] : 0.0;
+  }
+
+  /**
+   * The default bucket upper bounds for latency in milliseconds, from 1 ms to
+   * 10 seconds.
+   */
+  public static final double[] DEFAULT_LATENCY_BOUNDS_MILLISECONDS = new double[]
+    { 1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000 };
+
+  private final double[] upperBounds_;
+  private final AtomicLongArray bucketCounts_;
+  private final AtomicLong count_ = new AtomicLong();
+  // The sum is a double stored as its long bits so it can be updated with
+  // compareAndSet.
+  private final AtomicLong sumBits_ = new AtomicLong(Double.doubleToLongBits(0.0));
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.util;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import net.named_data.jndn.Name;
+
+/**
+ * An LfuEvictionPolicy is an EvictionPolicy which evicts the least frequently
+ * accessed entry, and the oldest of these if there is a tie. The entry which
+ * was just added is not chosen as a victim until the next entry is added
+ * unless it is the only entry, since otherwise a new entry would always evict
+ * itself, even when an add needs several victims to fit a byte budget. This
+ * keeps a list of frequency nodes in increasing order where each node has the
+ * entries with that access count, so that each operation takes constant time.
+ */
+public class LfuEvictionPolicy implements EvictionPolicy {
+  public void
+  add(Object entry, Name name)
+  {
+    FrequencyNode node = head_;
+    if (node == null || node.frequency_ != 1)
+      node = insertAfter(null, 1);
+    node.entries_.add(entry);
+    nodeOfEntry_.put(entry, node);
+    lastAdded_ = entry;
+  }
+
+  public void
+  access(Object entry, Name name)
+  {
+    FrequencyNode node = (FrequencyNode)nodeOfEntry_.get(entry);
+    if (node == null)
+      return;
+
+    FrequencyNode nextNode = node.next_;
+    if (nextNode == null || nextNode.frequency_ != node.frequency_ + 1)
+      nextNode = insertAfter(node, node.frequency_ + 1);
+    node.entries_.remove(entry);
+    nextNode.entries_.add(entry);
+    nodeOfEntry_.put(entry, nextNode);
+    if (node.entries_.isEmpty())
+      unlink(node);
+  }
+
+  public void
+  remove(Object entry)
+  {
+    FrequencyNode node = (FrequencyNode)nodeOfEntry_.remove(entry);
+    if (node == null)
+      return;
+    if (entry == lastAdded_)
+      lastAdded_ = null;
+
+    node.entries_.remove(entry);
+    if (node.entries_.isEmpty())
+      unlink(node);
+  }
+
+  public Object
+  selectVictim()
+  {
+    if (head_ == null)
+      return null;
+
+    Iterator i = head_.entries_.iterator();
+    Object victim = i.next();
+    if (victim == lastAdded_) {
+      // Prefer the next least frequent entry.
+      if (i.hasNext())
+        victim = i.next();
+      else if (head_.next_ != null)
+        victim = head_.next_.entries_.iterator().next();
+    }
+
+    return victim;
+  }
+
+  /**
+   * A FrequencyNode holds the entries which have the same access count, in the
+   * order that they got the count.
+   */
+  private static class FrequencyNode {
+    public FrequencyNode(long frequency)
+    {
+      frequency_ = frequency;
+    }
+
+    public final long frequency_;
+    // Use LinkedHashSet without generics so it works with older Java compilers.
+    public final LinkedHashSet entries_ = new LinkedHashSet(); // of Object
+    public FrequencyNode previous_ = null;
+    public FrequencyNode next_ = null;
+  }
+
+  /**
+   * Create a FrequencyNode and insert it after the given node.
+   * @param previous The node to insert after, or null to insert at the head.
+   * @param frequency The frequency of the new node.
+   * @return The new node.
+   */
+  private FrequencyNode
+  insertAfter(FrequencyNode previous, long frequency)
+  {
+    FrequencyNode node = new FrequencyNode(frequency);
+    node.previous_ = previous;
+    if (previous == null) {
+      node.next_ = head_;
+      head_ = node;
+    }
+    else {
+      node.next_ = previous.next_;
+      previous.next_ = node;
+    }
+    if (node.next_ != null)
+      node.next_.previous_ = node;
+
+    return node;
+  }
+
+  private void
+  unlink(FrequencyNode node)
+  {
+    if (node.previous_ == null)
+      head_ = node.next_;
+    else
+      node.previous_.next_ = node.next_;
+    if (node.next_ != null)
+      node.next_.previous_ = node.previous_;
+  }
+
+  private Object lastAdded_ = null;
+  // The node with the lowest frequency.
+  private FrequencyNode head_ = null;
+  // Use HashMap without generics so it works with older Java compilers.
+  private final HashMap nodeOfEntry_ = new HashMap(); // of Object => FrequencyNode
+}
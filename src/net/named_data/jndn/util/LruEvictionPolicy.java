@@ -0,0 +1,55 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.util;
+
+import java.util.LinkedHashMap;
+import net.named_data.jndn.Name;
+
+/**
+ * An LruEvictionPolicy is an EvictionPolicy which evicts the least recently
+ * added or accessed entry.
+ */
+public class LruEvictionPolicy implements EvictionPolicy {
+  public void
+  add(Object entry, Name name) { entries_.put(entry, entry); }
+
+  public void
+  access(Object entry, Name name)
+  {
+    // Getting the entry moves it to the end of the access order.
+    entries_.get(entry);
+  }
+
+  public void
+  remove(Object entry) { entries_.remove(entry); }
+
+  public Object
+  selectVictim()
+  {
+    if (entries_.isEmpty())
+      return null;
+    return entries_.keySet().iterator().next();
+  }
+
+  // Use LinkedHashMap without generics so it works with older Java compilers.
+  // This is in access order so that the first key is the least recently used.
+  private final LinkedHashMap entries_ =
+    new LinkedHashMap(16, 0.75f, true); // of Object => Object
+}
@@ -20,25 +20,68 @@
 package net.named_data.jndn.util;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import net.named_data.jndn.Data;
+import net.named_data.jndn.Exclude;
 import net.named_data.jndn.Face;
 import net.named_data.jndn.ForwardingFlags;
 import net.named_data.jndn.Interest;
 import net.named_data.jndn.InterestFilter;
 import net.named_data.jndn.Name;
+import net.named_data.jndn.Node;
+import net.named_data.jndn.OnData;
 import net.named_data.jndn.OnInterestCallback;
 import net.named_data.jndn.OnRegisterFailed;
+import net.named_data.jndn.OnTimeout;
 import net.named_data.jndn.encoding.WireFormat;
+import net.named_data.jndn.impl.DeadlineHeap;
+import net.named_data.jndn.impl.NameTrie;
 import net.named_data.jndn.security.SecurityException;
 
 /**
  * A MemoryContentCache holds a set of Data packets and answers an Interest to
  * return the correct Data packet. The cache is periodically cleaned up to
  * remove each stale Data packet based on its FreshnessPeriod (if it has one).
+ * The cleanup runs from a timer on the Face (an interest for /local/timeout),
+ * so you must call processEvents on the Face (or use a ThreadSafeFace). Each
+ * timer tick removes at most MAX_CLEANUP_PER_TICK entries, and add and
+ * onInterest never do cleanup. A stale entry which is not removed yet is not
+ * used to answer an interest.
+ * The Data packets are indexed by name in an ordered name trie, so that
+ * answering an Interest only visits the names under the Interest name and
+ * skips the child components which are excluded. To bound the memory, call
+ * setMaxEntries or setMaxBytes. Then when an added Data packet puts the cache
+ * over a limit, entries are evicted as chosen by the EvictionPolicy (by default
+ * an LruEvictionPolicy). To keep the encodings outside of the Java heap so
+ * that a large cache doesn't make long garbage collection pauses, call
+ * setSlabAllocator. Then only the names and a small record for each entry are
+ * on the heap. To answer an interest, the encoding is copied from the slab to a
+ * direct buffer for the thread, so that it is sent without holding the lock and
+ * without allocating. To keep the entries which are evicted from memory in a larger disk
+ * tier instead of dropping them, call setDiskContentStore. The names of the
+ * entries on disk stay in the index so that a lookup for a name which is not
+ * cached does not read the disk, and a hit is copied from the memory-mapped
+ * segment file to be sent and moved back to memory.
+ * <p>
+ * add, storePendingInterest, onInterest and the get and set methods for the
+ * limits can be called from any thread, for example from many producer threads
+ * which sign Data packets in parallel. add encodes the Data packet on the
+ * calling thread and puts it in a lock-free queue without waiting. The thread
+ * which holds the lock for the index (from another add, onInterest or the
+ * cleanup timer) inserts the queued entries before it unlocks, so a Data packet
+ * is available to answer an interest as soon as add returns. If you call add
+ * from a thread other than the one which processes events for the Face, use a
+ * ThreadSafeFace so that sending a Data packet for a pending interest and
+ * scheduling the cleanup timer are thread-safe. Call registerPrefix and
+ * unregisterAll from the thread which processes events for the Face.
  * @note This class is an experimental feature.  See the API docs for more detail at
  * http://named-data.net/doc/ndn-ccl-api/memory-content-cache.html .
  */
@@ -48,9 +91,9 @@ public class MemoryContentCache implements OnInterestCallback {
    * @param face The Face to use to call registerPrefix and which will call
    * the OnInterest callback.
    * @param cleanupIntervalMilliseconds The interval in milliseconds
-   * between each check to clean up stale content in the cache. If this is a
-   * large number, then effectively the stale content will not be removed from
-   * the cache.
+   * between each timer tick to clean up stale content and timed-out pending
+   * interests in the cache. If this is a large number, then effectively the
+   * stale content will not be removed from the cache.
    */
   public MemoryContentCache(Face face, double cleanupIntervalMilliseconds)
   {
@@ -75,7 +118,21 @@ public class MemoryContentCache implements OnInterestCallback {
   private void
   construct()
   {
-    nextCleanupTime_ = Common.getNowMilliseconds() + cleanupIntervalMilliseconds_;
+    cleanupTimeout_ = new OnTimeout() {
+      public void onTimeout(Interest interest) {
+        lock();
+        try {
+          isCleanupScheduled_ = false;
+          if (doCleanup(Common.getNowMilliseconds(), MAX_CLEANUP_PER_TICK))
+            // There is more to remove, so continue soon.
+            scheduleCleanup(0);
+          else
+            scheduleCleanup(cleanupIntervalMilliseconds_);
+        } finally {
+          unlock();
+        }
+      }
+    };
 
     storePendingInterestCallback_ = new OnInterestCallback() {
       public void onInterest
@@ -229,66 +286,250 @@ public class MemoryContentCache implements OnInterestCallback {
    * answer interests. If data.getMetaInfo().getFreshnessPeriod() is not 
    * negative, set the staleness time to now plus
    * data.getMetaInfo().getFreshnessPeriod(), which is checked during cleanup to
-   * remove stale content. This also checks if cleanupIntervalMilliseconds
-   * milliseconds have passed and removes stale content from the cache. After
-   * removing stale content, remove timed-out pending interests from
-   * storePendingInterest(), then if the added Data packet satisfies any
-   * interest, send it through the face and remove the interest from the pending
-   * interest table.
+   * remove stale content. Then if the added Data packet satisfies any
+   * interest from storePendingInterest() which is not timed out, send it
+   * through the face and remove the interest from the pending interest table.
+   * This can be called from any thread. It does not wait if another thread is
+   * using the cache, unless MAX_QUEUED_ADDS Data packets are already waiting
+   * to be inserted.
+   * @note This may call the Face on the calling thread, to send the Data for a
+   * pending interest and to call expressInterest for the cleanup timer. So if
+   * you call this from a thread other than the one which processes events for
+   * the Face, the Face given to the constructor (and to storePendingInterest)
+   * must be a ThreadSafeFace.
    * @param data The Data packet object to put in the cache. This copies the
    * fields from the object.
    */
   public final void
   add(Data data)
   {
-    doCleanup();
-
-    if (data.getMetaInfo().getFreshnessPeriod() >= 0.0) {
-      // The content will go stale, so use staleTimeCache_.
-      StaleTimeContent content = new StaleTimeContent(data);
-      // Insert into staleTimeCache, sorted on content.staleTimeMilliseconds.
-      // Search from the back since we expect it to go there.
-      int i = staleTimeCache_.size() - 1;
-      while (i >= 0) {
-        if (((StaleTimeContent)staleTimeCache_.get(i)).getStaleTimeMilliseconds() <=
-            content.getStaleTimeMilliseconds())
-          break;
-        --i;
-      }
-      // Element i is the greatest less than or equal to
-      // content.staleTimeMilliseconds, so insert after it.
-      staleTimeCache_.add(i + 1, content);
-    }
+    // Encode on the calling thread, so that producer threads do this in
+    // parallel.
+    Content content;
+    if (data.getMetaInfo().getFreshnessPeriod() >= 0.0)
+      // The content will go stale, so it will also be in staleTimeHeap_.
+      content = new StaleTimeContent(data);
     else
-      // The data does not go stale, so use noStaleTimeCache_.
-      noStaleTimeCache_.add(new Content(data));
+      content = new Content(data);
 
-    // Remove timed-out interests and check if the data packet matches any
-    // pending interest.
-    // Go backwards through the list so we can erase entries.
-    double nowMilliseconds = Common.getNowMilliseconds();
-    for (int i = pendingInterestTable_.size() - 1; i >= 0; --i) {
-      PendingInterest pendingInterest =
-        (PendingInterest)pendingInterestTable_.get(i);
-      if (pendingInterest.isTimedOut(nowMilliseconds)) {
-        pendingInterestTable_.remove(i);
-        continue;
-      }
+    addQueue_.add(content);
+    // If another thread holds the lock, it inserts the content before it
+    // unlocks. But if the producers add faster than it can insert, wait for
+    // the lock so that the queue doesn't grow without limit.
+    if (addQueueSize_.incrementAndGet() > MAX_QUEUED_ADDS) {
+      lock_.lock();
+      unlock();
+    }
+    else if (lock_.tryLock())
+      unlock();
+  }
 
-      if (pendingInterest.getInterest().matchesName(data.getName())) {
-        try {
-          // Send to the same face from the original call to onInterest.
-          // wireEncode returns the cached encoding if available.
-          pendingInterest.getFace().send(data.wireEncode());
-        } catch (IOException ex) {
-          Logger.getLogger(MemoryContentCache.class.getName()).log(Level.SEVERE,
-            ex.getMessage());
-          return;
-        }
+  /**
+   * Set the maximum number of Data packets in the cache. If adding a Data
+   * packet makes the cache exceed this, evict entries chosen by the
+   * EvictionPolicy.
+   * @param maxEntries The maximum number of entries, or -1 for no limit. The
+   * default is -1.
+   */
+  public final void
+  setMaxEntries(int maxEntries)
+  {
+    lock();
+    try {
+      maxEntries_ = maxEntries;
+      evictIfNeeded();
+    } finally {
+      unlock();
+    }
+  }
 
-        // The pending interest is satisfied, so remove it.
-        pendingInterestTable_.remove(i);
-      }
+  public final int
+  getMaxEntries()
+  {
+    lock();
+    try {
+      return maxEntries_;
+    } finally {
+      unlock();
+    }
+  }
+
+  /**
+   * Set the maximum total size of the encoded Data packets in the cache. If
+   * adding a Data packet makes the cache exceed this, evict entries chosen by
+   * the EvictionPolicy.
+   * @param maxBytes The maximum number of bytes, or -1 for no limit. The
+   * default is -1.
+   */
+  public final void
+  setMaxBytes(long maxBytes)
+  {
+    lock();
+    try {
+      maxBytes_ = maxBytes;
+      evictIfNeeded();
+    } finally {
+      unlock();
+    }
+  }
+
+  public final long
+  getMaxBytes()
+  {
+    lock();
+    try {
+      return maxBytes_;
+    } finally {
+      unlock();
+    }
+  }
+
+  /**
+   * Set the policy to choose the entries to evict when the cache is over the
+   * limit of setMaxEntries or setMaxBytes. This must be called before adding
+   * Data packets.
+   * @param evictionPolicy The EvictionPolicy, such as LruEvictionPolicy,
+   * LfuEvictionPolicy or WTinyLfuEvictionPolicy. It should not be used by
+   * another cache.
+   * @throws Error if the cache is not empty.
+   */
+  public final void
+  setEvictionPolicy(EvictionPolicy evictionPolicy)
+  {
+    lock();
+    try {
+      if (entryCount_ > 0)
+        throw new Error
+          ("MemoryContentCache.setEvictionPolicy: The cache must be empty");
+      evictionPolicy_ = evictionPolicy;
+    } finally {
+      unlock();
+    }
+  }
+
+  /**
+   * Set the SlabAllocator to store the Data packet encodings in direct
+   * ByteBuffer slabs outside of the Java heap. If the allocator returns -1
+   * (because its maximum number of slabs is reached), the encoding stays on the
+   * heap. Use setMaxBytes so that the cache frees chunks by evicting entries.
+   * This must be called before adding Data packets.
+   * @param slabAllocator The SlabAllocator. It should not be used by another
+   * cache. If null, store the encodings on the heap (the default).
+   * @throws Error if the cache is not empty.
+   */
+  public final void
+  setSlabAllocator(SlabAllocator slabAllocator)
+  {
+    lock();
+    try {
+      if (entryCount_ > 0)
+        throw new Error
+          ("MemoryContentCache.setSlabAllocator: The cache must be empty");
+      slabAllocator_ = slabAllocator;
+    } finally {
+      unlock();
+    }
+  }
+
+  /**
+   * Set the DiskContentStore for the disk tier. When the cache is over the
+   * limit of setMaxEntries or setMaxBytes, the entries chosen by the
+   * EvictionPolicy are moved to the disk tier instead of being dropped. When
+   * the disk tier is over its maximum size, the entries in its oldest segment
+   * are dropped. This must be called before adding Data packets.
+   * @param diskContentStore The DiskContentStore. It should not be used by
+   * another cache. If null, drop the evicted entries (the default).
+   * @throws Error if the cache is not empty.
+   */
+  public final void
+  setDiskContentStore(DiskContentStore diskContentStore)
+  {
+    lock();
+    try {
+      if (entryCount_ > 0 || diskEntryCount_ > 0)
+        throw new Error
+          ("MemoryContentCache.setDiskContentStore: The cache must be empty");
+      diskContentStore_ = diskContentStore;
+    } finally {
+      unlock();
+    }
+  }
+
+  /**
+   * Get the number of Data packets in the disk tier.
+   * @return The number of entries on disk.
+   */
+  public final int
+  getDiskEntryCount()
+  {
+    lock();
+    try {
+      return diskEntryCount_;
+    } finally {
+      unlock();
+    }
+  }
+
+  /**
+   * Get the total size of the encoded Data packets in the disk tier.
+   * @return The number of bytes.
+   */
+  public final long
+  getDiskByteCount()
+  {
+    lock();
+    try {
+      return diskByteCount_;
+    } finally {
+      unlock();
+    }
+  }
+
+  /**
+   * Get the number of Data packets in memory, not counting the disk tier.
+   * @return The number of entries.
+   */
+  public final int
+  getEntryCount()
+  {
+    lock();
+    try {
+      return entryCount_;
+    } finally {
+      unlock();
+    }
+  }
+
+  /**
+   * Get the total size of the encoded Data packets in memory, not counting the
+   * disk tier.
+   * @return The number of bytes.
+   */
+  public final long
+  getByteCount()
+  {
+    lock();
+    try {
+      return byteCount_;
+    } finally {
+      unlock();
+    }
+  }
+
+  /**
+   * Get the number of entries which were evicted from memory because the cache
+   * was over the limit (not counting the stale entries which were removed),
+   * including the entries which were moved to the disk tier.
+   * @return The number of evicted entries.
+   */
+  public final long
+  getEvictionCount()
+  {
+    lock();
+    try {
+      return evictionCount_;
+    } finally {
+      unlock();
     }
   }
 
@@ -298,14 +539,37 @@ public class MemoryContentCache implements OnInterestCallback {
    * satisfy the interest). add(data) will check if the added Data packet
    * satisfies any pending interest and send it through the face.
    * @param interest The Interest for which we don't have a Data packet yet. You
-   * should not modify the interest after calling this.
+   * should not modify the interest after calling this. If
+   * face.getReusePackets() is true, the interest is borrowed (see
+   * Face.setReusePackets), so this stores a copy.
+   * @note This may call expressInterest on the Face given to the constructor
+   * to schedule the cleanup timer. So if you call this from a thread other than
+   * the one which processes events for the Face, it must be a ThreadSafeFace.
    * @param face The Face with the connection which received the interest. This
    * comes from the OnInterest callback.
    */
   public final void
   storePendingInterest(Interest interest, Face face)
   {
-    pendingInterestTable_.add(new PendingInterest(interest, face));
+    if (face.getReusePackets())
+      // The next received packet resets the borrowed Interest and its name
+      // components in place, but the name is a key in the pending interest
+      // table.
+      interest = Node.detachInterest(interest);
+
+    PendingInterest pendingInterest = new PendingInterest(interest, face);
+    lock();
+    try {
+      pendingInterest.setTrieNode
+        (pendingInterestTable_.add(interest.getName(), pendingInterest));
+      if (pendingInterest.getTimeoutTimeMilliseconds() >= 0.0) {
+        pendingInterestTimeouts_.add
+          (pendingInterest, pendingInterest.getTimeoutTimeMilliseconds());
+        scheduleCleanup(cleanupIntervalMilliseconds_);
+      }
+    } finally {
+      unlock();
+    }
   }
 
   /**
@@ -326,69 +590,44 @@ public class MemoryContentCache implements OnInterestCallback {
     (Name prefix, Interest interest, Face face, long interestFilterId,
      InterestFilter filter)
   {
-    doCleanup();
-
-    Name.Component selectedComponent = null;
-    Blob selectedEncoding = null;
-    // We need to iterate over both arrays.
-    int totalSize = staleTimeCache_.size() + noStaleTimeCache_.size();
-    for (int i = 0; i < totalSize; ++i) {
-      Content content;
-      if (i < staleTimeCache_.size())
-        content = (Content)staleTimeCache_.get(i);
-      else
-        // We have iterated over the first array. Get from the second.
-        content = (Content)noStaleTimeCache_.get(i - staleTimeCache_.size());
-
-      if (interest.matchesName(content.getName())) {
-        if (interest.getChildSelector() < 0) {
-          // No child selector, so send the first match that we have found.
-          try {
-            face.send(content.getDataEncoding());
-          } catch (IOException ex) {
-            Logger.getLogger(MemoryContentCache.class.getName()).log(Level.SEVERE, null, ex);
-          }
-          return;
-        }
-        else {
-          // Update selectedEncoding based on the child selector.
-          Name.Component component;
-          if (content.getName().size() > interest.getName().size())
-            component = content.getName().get(interest.getName().size());
+    // The encoding to send after unlocking, either the immutable Blob on the
+    // heap or a copy of the encoding in a slab or on disk.
+    Blob encoding = null;
+    ByteBuffer copiedEncoding = null;
+    double nowMilliseconds = Common.getNowMilliseconds();
+    lock();
+    try {
+      NameTrie.Node node = index_.find(interest.getName());
+      if (node != null) {
+        Content content = findMatch(interest, node, nowMilliseconds);
+        if (content != null) {
+          // We found the first match or the leftmost or rightmost child.
+          // Don't send while holding the lock. A chunk in a slab or a record on
+          // disk can be reused by another thread after its entry is removed, so
+          // copy it to this thread's buffer before unlocking.
+          encoding = content.getDataEncoding();
+          if (encoding == null)
+            copiedEncoding = content.copyEncoding();
+          if (content.isOnDisk())
+            // The content is used again, so move it back to memory.
+            promoteContent(content);
           else
-            component = emptyComponent_;
-
-          boolean gotBetterMatch = false;
-          if (selectedEncoding == null)
-            // Save the first match.
-            gotBetterMatch = true;
-          else {
-            if (interest.getChildSelector() == 0) {
-              // Leftmost child.
-              if (component.compare(selectedComponent) < 0)
-                gotBetterMatch = true;
-            }
-            else {
-              // Rightmost child.
-              if (component.compare(selectedComponent) > 0)
-                gotBetterMatch = true;
-            }
-          }
-
-          if (gotBetterMatch) {
-            selectedComponent = component;
-            selectedEncoding = content.getDataEncoding();
-          }
+            evictionPolicy_.access(content, content.getName());
         }
       }
+    } finally {
+      unlock();
     }
 
-    if (selectedEncoding != null) {
-      // We found the leftmost or rightmost child.
+    if (encoding != null || copiedEncoding != null) {
       try {
-        face.send(selectedEncoding);
+        if (encoding != null)
+          face.send(encoding);
+        else
+          face.send(copiedEncoding);
       } catch (IOException ex) {
-        Logger.getLogger(MemoryContentCache.class.getName()).log(Level.SEVERE, null, ex);
+        Logger.getLogger(MemoryContentCache.class.getName()).log
+          (Level.SEVERE, null, ex);
       }
     }
     else {
@@ -400,12 +639,106 @@ public class MemoryContentCache implements OnInterestCallback {
     }
   }
 
+  /**
+   * Search the index under the node for the Interest name for a Content which
+   * matches the interest. The nodes are visited in canonical order (or reverse
+   * order for the rightmost child selector) and the first match is returned,
+   * so that it has the leftmost or rightmost child component. The name equal to
+   * the Interest name comes before the children, like an empty component. A
+   * child whose component is excluded is skipped with its subtree.
+   * @param interest The Interest.
+   * @param node The index node for the Interest name.
+   * @param nowMilliseconds The current time for skipping stale content.
+   * @return The matching Content, or null if not found.
+   */
+  private static Content
+  findMatch(Interest interest, NameTrie.Node node, double nowMilliseconds)
+  {
+    boolean reverse = (interest.getChildSelector() == 1);
+
+    if (!reverse) {
+      Content content = findValueMatch(interest, node, nowMilliseconds);
+      if (content != null)
+        return content;
+    }
+
+    Exclude exclude = interest.getExclude();
+    for (Iterator i = node.getChildren(reverse); i.hasNext(); ) {
+      NameTrie.Node child = (NameTrie.Node)i.next();
+      if (exclude.size() > 0 && exclude.matches(child.getComponent()))
+        continue;
+
+      Content content = findSubtreeMatch(interest, child, nowMilliseconds);
+      if (content != null)
+        return content;
+    }
+
+    if (reverse)
+      return findValueMatch(interest, node, nowMilliseconds);
+    return null;
+  }
+
+  /**
+   * Search the node and its descendants for a Content which matches the
+   * interest, without checking the order.
+   * @param interest The Interest.
+   * @param node The index node.
+   * @param nowMilliseconds The current time for skipping stale content.
+   * @return The matching Content, or null if not found.
+   */
+  private static Content
+  findSubtreeMatch
+    (Interest interest, NameTrie.Node node, double nowMilliseconds)
+  {
+    Content content = findValueMatch(interest, node, nowMilliseconds);
+    if (content != null)
+      return content;
+
+    int maxSuffixComponents = interest.getMaxSuffixComponents();
+    // Add 1 for the implicit digest.
+    if (maxSuffixComponents >= 0 &&
+        node.getDepth() + 1 - interest.getName().size() + 1 > maxSuffixComponents)
+      // The names of the children have too many components.
+      return null;
+
+    for (Iterator i = node.getChildren(false); i.hasNext(); ) {
+      content = findSubtreeMatch
+        (interest, (NameTrie.Node)i.next(), nowMilliseconds);
+      if (content != null)
+        return content;
+    }
+
+    return null;
+  }
+
+  /**
+   * Return the first Content held by the node which matches the interest and
+   * is not stale.
+   * @param interest The Interest.
+   * @param node The index node.
+   * @param nowMilliseconds The current time for skipping stale content.
+   * @return The matching Content, or null if not found.
+   */
+  private static Content
+  findValueMatch(Interest interest, NameTrie.Node node, double nowMilliseconds)
+  {
+    for (int i = 0; i < node.getValueCount(); ++i) {
+      Content content = (Content)node.getValue(i);
+      if (!content.isStale(nowMilliseconds) &&
+          interest.matchesName(content.getName()))
+        return content;
+    }
+
+    return null;
+  }
+
   /**
    * Content is a private class to hold the name and encoding for each entry
    * in the cache. This base class is for a Data packet without a
-   * FreshnessPeriod.
+   * FreshnessPeriod. It is a DeadlineHeap.Item so that a StaleTimeContent can
+   * be in staleTimeHeap_.
    */
-  private class Content {
+  private class Content extends DeadlineHeap.Item {
     /**
      * Create a new Content entry to hold data's name and wire encoding.
      * @param data The Data packet whose name and wire encoding are copied.
@@ -415,16 +748,159 @@ public class MemoryContentCache implements OnInterestCallback {
       // wireEncode returns the cached encoding if available.
       name_ = data.getName();
       dataEncoding_ = data.wireEncode();
+      encodingSize_ = dataEncoding_.size();
     }
 
     public final Name
     getName() { return name_; }
 
+    /**
+     * Get the encoding on the heap.
+     * @return The encoding, or null if it was moved to a slab.
+     */
     public final Blob
     getDataEncoding() { return dataEncoding_; }
 
+    public final int
+    getEncodingSize() { return encodingSize_; }
+
+    /**
+     * Copy the encoding to a chunk from the slab allocator and release the
+     * encoding on the heap. If the allocator can't allocate a chunk, keep the
+     * encoding on the heap.
+     * @param slabAllocator The SlabAllocator.
+     */
+    public final void
+    moveToSlab(SlabAllocator slabAllocator)
+    {
+      slabHandle_ = slabAllocator.allocate(dataEncoding_.buf());
+      if (slabHandle_ >= 0)
+        dataEncoding_ = null;
+    }
+
+    /**
+     * If the encoding is in a slab, free its chunk.
+     * @param slabAllocator The SlabAllocator given to moveToSlab.
+     */
+    public final void
+    freeSlab(SlabAllocator slabAllocator)
+    {
+      if (slabHandle_ >= 0) {
+        slabAllocator.free(slabHandle_);
+        slabHandle_ = -1;
+      }
+    }
+
+    /**
+     * Append the encoding to the disk store and release the encoding in memory.
+     * @param diskContentStore The DiskContentStore.
+     * @param slabAllocator The SlabAllocator if the encoding may be in a slab,
+     * otherwise null.
+     * @throws IOException For I/O error in appending to the store. In this
+     * case, the encoding stays in memory.
+     */
+    public final void
+    moveToDisk(DiskContentStore diskContentStore, SlabAllocator slabAllocator)
+      throws IOException
+    {
+      diskHandle_ = diskContentStore.append(getEncodingBuffer(), this);
+      if (slabAllocator != null)
+        freeSlab(slabAllocator);
+      dataEncoding_ = null;
+    }
+
+    /**
+     * Copy the encoding from the disk store to the heap and free the record.
+     * @param diskContentStore The DiskContentStore given to moveToDisk.
+     */
+    public final void
+    moveFromDisk(DiskContentStore diskContentStore)
+    {
+      dataEncoding_ = new Blob(getEncodingBuffer(), true);
+      freeDisk(diskContentStore);
+    }
+
+    /**
+     * If the encoding is on disk, free its record.
+     * @param diskContentStore The DiskContentStore given to moveToDisk.
+     */
+    public final void
+    freeDisk(DiskContentStore diskContentStore)
+    {
+      if (diskHandle_ >= 0) {
+        diskContentStore.free(diskHandle_, encodingSize_);
+        diskHandle_ = -1;
+      }
+    }
+
+    public final boolean
+    isOnDisk() { return diskHandle_ >= 0; }
+
+    public final long
+    getDiskHandle() { return diskHandle_; }
+
+    /**
+     * Copy the encoding from the slab or the disk tier to the buffer of this
+     * thread, so that it can be sent after unlocking. This must be called while
+     * holding lock_.
+     * @return The buffer of this thread with the encoding from position() to
+     * limit(). It is only valid until the next call on this thread.
+     */
+    public final ByteBuffer
+    copyEncoding()
+    {
+      ByteBuffer buffer = (ByteBuffer)copiedEncoding_.get();
+      if (buffer.capacity() < encodingSize_) {
+        buffer = ByteBuffer.allocateDirect(encodingSize_);
+        copiedEncoding_.set(buffer);
+      }
+
+      buffer.clear();
+      buffer.put(getEncodingBuffer());
+      buffer.flip();
+      return buffer;
+    }
+
+    /**
+     * Get the encoding from where it is stored, without copying.
+     */
+    private ByteBuffer
+    getEncodingBuffer()
+    {
+      if (diskHandle_ >= 0)
+        return diskContentStore_.read(diskHandle_, encodingSize_);
+      else if (slabHandle_ >= 0)
+        return slabAllocator_.getBuffer(slabHandle_, encodingSize_);
+      else
+        return dataEncoding_.buf();
+    }
+
+    /**
+     * Get the node in index_ which holds this Content.
+     */
+    public final NameTrie.Node
+    getIndexNode() { return indexNode_; }
+
+    public final void
+    setIndexNode(NameTrie.Node indexNode) { indexNode_ = indexNode; }
+
+    /**
+     * Check if this content is stale.
+     * @param nowMilliseconds The current time in milliseconds from
+     * Common.getNowMilliseconds().
+     * @return True if this content is stale, otherwise false. This base class
+     * returns false.
+     */
+    public boolean
+    isStale(double nowMilliseconds) { return false; }
+
     private final Name name_;
-    private final Blob dataEncoding_;
+    // This is null if the encoding is moved to a slab.
+    private Blob dataEncoding_;
+    private final int encodingSize_;
+    private long slabHandle_ = -1;
+    private long diskHandle_ = -1;
+    private NameTrie.Node indexNode_ = null;
   }
 
   /**
@@ -454,7 +930,7 @@ public class MemoryContentCache implements OnInterestCallback {
      * Common.getNowMilliseconds().
      * @return True if this content is stale, otherwise false.
      */
-    public final boolean
+    public boolean
     isStale(double nowMilliseconds)
     {
       return staleTimeMilliseconds_ <= nowMilliseconds;
@@ -472,7 +948,7 @@ public class MemoryContentCache implements OnInterestCallback {
    * not satisfy. When we add a new data packet to the cache, we will also check
    * if it satisfies a pending interest.
    */
-  private static class PendingInterest {
+  private static class PendingInterest extends DeadlineHeap.Item {
     /**
      * Create a new PendingInterest and set the timeoutTime_ based on the current
      * time and the interest lifetime.
@@ -516,50 +992,414 @@ public class MemoryContentCache implements OnInterestCallback {
     public final boolean
     isTimedOut(double nowMilliseconds)
     {
-      return timeoutTimeMilliseconds_ >= 0.0 && nowMilliseconds >= timeoutTimeMilliseconds_;
+      return timeoutTimeMilliseconds_ >= 0.0 &&
+        nowMilliseconds >= timeoutTimeMilliseconds_;
     }
 
+    /**
+     * Get the time when the interest times out.
+     * @return The time in milliseconds according to Common.getNowMilliseconds,
+     * or -1 for no timeout.
+     */
+    public final double
+    getTimeoutTimeMilliseconds() { return timeoutTimeMilliseconds_; }
+
+    /**
+     * Get the node in pendingInterestTable_ which holds this.
+     */
+    public final NameTrie.Node
+    getTrieNode() { return trieNode_; }
+
+    public final void
+    setTrieNode(NameTrie.Node trieNode) { trieNode_ = trieNode; }
+
     private final Interest interest_;
     private final Face face_;
+    private NameTrie.Node trieNode_ = null;
     private final double timeoutTimeMilliseconds_; /**< The time when the
       * interest times out in milliseconds according to ndn_getNowMilliseconds,
       * or -1 for no timeout. */
   }
 
   /**
-   * Check if now is greater than nextCleanupTime_ and, if so, remove stale
-   * content from staleTimeCache_ and reset nextCleanupTime_ based on
-   * cleanupIntervalMilliseconds_. Since add(Data) does a sorted insert into
-   * staleTimeCache_, the check for stale data is quick and does not require
-   * searching the entire staleTimeCache_.
+   * A Reply holds a Data packet encoding to send to the face of a satisfied
+   * pending interest after unlocking.
+   */
+  private static class Reply {
+    public Reply(Face face, Blob encoding)
+    {
+      face_ = face;
+      encoding_ = encoding;
+    }
+
+    public final Face face_;
+    public final Blob encoding_;
+  }
+
+  /**
+   * Lock lock_ and insert the Content from addQueue_, so that the caller sees
+   * the Content from every add which has returned.
+   */
+  private void
+  lock()
+  {
+    lock_.lock();
+    insertQueuedContent();
+  }
+
+  /**
+   * Insert the Content from addQueue_, unlock lock_ and send the replies for
+   * satisfied pending interests. Then if another thread queued Content after
+   * the last insert and could not get the lock, get the lock again to insert
+   * it so that it is not left in the queue.
+   */
+  private void
+  unlock()
+  {
+    if (lock_.getHoldCount() > 1) {
+      // An outer call holds the lock and will finish when it unlocks.
+      lock_.unlock();
+      return;
+    }
+
+    while (true) {
+      insertQueuedContent();
+      ArrayList replies = null;
+      if (replies_.size() > 0) {
+        replies = new ArrayList(replies_);
+        replies_.clear();
+      }
+      lock_.unlock();
+
+      if (replies != null) {
+        for (int i = 0; i < replies.size(); ++i) {
+          Reply reply = (Reply)replies.get(i);
+          try {
+            reply.face_.send(reply.encoding_);
+          } catch (IOException ex) {
+            Logger.getLogger(MemoryContentCache.class.getName()).log
+              (Level.SEVERE, ex.getMessage());
+          }
+        }
+      }
+
+      if (addQueue_.isEmpty() || !lock_.tryLock())
+        return;
+    }
+  }
+
+  /**
+   * Insert each Content from addQueue_ into the index. For each pending
+   * interest which it satisfies, add a Reply to replies_ and remove the
+   * pending interest. This must be called while holding lock_.
+   */
+  private void
+  insertQueuedContent()
+  {
+    double nowMilliseconds = -1.0;
+    while (true) {
+      Content content = (Content)addQueue_.poll();
+      if (content == null)
+        return;
+      addQueueSize_.decrementAndGet();
+
+      // Get the encoding for pending interests before it is moved to a slab.
+      Blob encoding = content.getDataEncoding();
+      if (content instanceof StaleTimeContent) {
+        staleTimeHeap_.add
+          (content, ((StaleTimeContent)content).getStaleTimeMilliseconds());
+        scheduleCleanup(cleanupIntervalMilliseconds_);
+      }
+      insertContent(content);
+
+      // Check if the data packet matches any pending interest.
+      if (pendingInterestTable_.size() == 0)
+        continue;
+      if (nowMilliseconds < 0.0)
+        nowMilliseconds = Common.getNowMilliseconds();
+
+      // Only visit the pending interests whose name is a prefix of the data
+      // name.
+      ArrayList nodes = new ArrayList();
+      pendingInterestTable_.findAllPrefixesOf(content.getName(), nodes);
+      // Collect the matches first since removing changes the nodes.
+      ArrayList satisfied = new ArrayList();
+      for (int i = 0; i < nodes.size(); ++i) {
+        NameTrie.Node node = (NameTrie.Node)nodes.get(i);
+        for (int j = 0; j < node.getValueCount(); ++j) {
+          PendingInterest pendingInterest = (PendingInterest)node.getValue(j);
+          if (!pendingInterest.isTimedOut(nowMilliseconds) &&
+              pendingInterest.getInterest().matchesName(content.getName()))
+            satisfied.add(pendingInterest);
+        }
+      }
+
+      for (int i = 0; i < satisfied.size(); ++i) {
+        PendingInterest pendingInterest = (PendingInterest)satisfied.get(i);
+        // Send to the same face from the original call to onInterest.
+        replies_.add(new Reply(pendingInterest.getFace(), encoding));
+        // The pending interest is satisfied, so remove it.
+        removePendingInterest(pendingInterest);
+      }
+    }
+  }
+
+  /**
+   * Remove the stale content from staleTimeHeap_ and the timed-out interests
+   * from pendingInterestTimeouts_, in order of their deadline, up to maxCount
+   * of each. Since the heaps are ordered by deadline, this does not search
+   * the entries which are not expired.
+   * @param nowMilliseconds The current time in milliseconds from
+   * Common.getNowMilliseconds().
+   * @param maxCount The maximum number of entries to remove from each heap.
+   * @return True if maxCount was reached and there may be more to remove.
+   */
+  private boolean
+  doCleanup(double nowMilliseconds, int maxCount)
+  {
+    int nRemoved = 0;
+    while (nRemoved < maxCount) {
+      Content content = (Content)staleTimeHeap_.pollExpired(nowMilliseconds);
+      if (content == null)
+        break;
+      removeContent(content);
+      ++nRemoved;
+    }
+    boolean hasMore = (nRemoved >= maxCount);
+
+    nRemoved = 0;
+    while (nRemoved < maxCount) {
+      PendingInterest pendingInterest =
+        (PendingInterest)pendingInterestTimeouts_.pollExpired(nowMilliseconds);
+      if (pendingInterest == null)
+        break;
+      pendingInterestTable_.remove(pendingInterest.getTrieNode(), pendingInterest);
+      ++nRemoved;
+    }
+
+    return hasMore || nRemoved >= maxCount;
+  }
+
+  /**
+   * If a cleanup timer is not already scheduled and there are entries with a
+   * deadline, call expressInterest on face_ for /local/timeout to call
+   * cleanupTimeout_ after the delay. This is called on the thread of add or
+   * storePendingInterest, which is why they need a ThreadSafeFace when called
+   * from a thread other than the Face's.
+   * @param delayMilliseconds The delay in milliseconds.
    */
   private void
-  doCleanup()
+  scheduleCleanup(double delayMilliseconds)
   {
-    double now = Common.getNowMilliseconds();
-    if (now >= nextCleanupTime_) {
-      // staleTimeCache_ is sorted on staleTimeMilliseconds_, so we only need to
-      // erase the stale entries at the front, then quit.
-      while (staleTimeCache_.size() > 0 &&
-             ((StaleTimeContent)staleTimeCache_.get(0)).isStale(now))
-        staleTimeCache_.remove(0);
+    if (isCleanupScheduled_ ||
+        (staleTimeHeap_.size() == 0 && pendingInterestTimeouts_.size() == 0))
+      return;
 
-      nextCleanupTime_ = now + cleanupIntervalMilliseconds_;
+    Interest timeout = new Interest(new Name("/local/timeout"));
+    timeout.setInterestLifetimeMilliseconds(delayMilliseconds);
+    try {
+      face_.expressInterest(timeout, dummyOnData_, cleanupTimeout_);
+      isCleanupScheduled_ = true;
+    } catch (IOException ex) {
+      Logger.getLogger(MemoryContentCache.class.getName()).log
+        (Level.SEVERE, "Error scheduling the cleanup timer", ex);
     }
   }
 
+  /**
+   * Remove the pending interest from pendingInterestTable_ and
+   * pendingInterestTimeouts_.
+   * @param pendingInterest The PendingInterest to remove.
+   */
+  private void
+  removePendingInterest(PendingInterest pendingInterest)
+  {
+    pendingInterestTable_.remove(pendingInterest.getTrieNode(), pendingInterest);
+    pendingInterestTimeouts_.remove(pendingInterest);
+  }
+
+  /**
+   * Add the content to index_ and the eviction policy, then evict if needed.
+   * @param content The new Content.
+   */
+  private void
+  insertContent(Content content)
+  {
+    content.setIndexNode(index_.add(content.getName(), content));
+    evictionPolicy_.add(content, content.getName());
+    ++entryCount_;
+    byteCount_ += content.getEncodingSize();
+    if (slabAllocator_ != null)
+      content.moveToSlab(slabAllocator_);
+
+    evictIfNeeded();
+  }
+
+  /**
+   * Remove the content from index_ and staleTimeHeap_. If it is on disk, free
+   * its record, otherwise remove it from the eviction policy.
+   * @param content The Content to remove.
+   */
+  private void
+  removeContent(Content content)
+  {
+    index_.remove(content.getIndexNode(), content);
+    staleTimeHeap_.remove(content);
+    if (content.isOnDisk()) {
+      content.freeDisk(diskContentStore_);
+      --diskEntryCount_;
+      diskByteCount_ -= content.getEncodingSize();
+    }
+    else {
+      evictionPolicy_.remove(content);
+      --entryCount_;
+      byteCount_ -= content.getEncodingSize();
+      if (slabAllocator_ != null)
+        content.freeSlab(slabAllocator_);
+    }
+  }
+
+  /**
+   * While the cache is over maxEntries_ or maxBytes_, remove the victim chosen
+   * by evictionPolicy_, or move it to the disk tier if there is one.
+   */
+  private void
+  evictIfNeeded()
+  {
+    while ((maxEntries_ >= 0 && entryCount_ > maxEntries_) ||
+           (maxBytes_ >= 0 && byteCount_ > maxBytes_)) {
+      Content victim = (Content)evictionPolicy_.selectVictim();
+      if (victim == null)
+        break;
+      if (diskContentStore_ != null)
+        spillContent(victim);
+      else
+        removeContent(victim);
+      ++evictionCount_;
+    }
+  }
+
+  /**
+   * Move the content from memory to the disk tier, keeping it in index_ and
+   * staleTimeHeap_. Then if the disk tier is over its limit, remove the entries
+   * in its oldest segment. If the content can't be written to disk, remove it.
+   * @param content The Content in memory.
+   */
+  private void
+  spillContent(Content content)
+  {
+    try {
+      content.moveToDisk(diskContentStore_, slabAllocator_);
+    } catch (IOException ex) {
+      Logger.getLogger(MemoryContentCache.class.getName()).log
+        (Level.SEVERE, "Error writing to the disk tier", ex);
+      removeContent(content);
+      return;
+    }
+
+    evictionPolicy_.remove(content);
+    --entryCount_;
+    byteCount_ -= content.getEncodingSize();
+    ++diskEntryCount_;
+    diskByteCount_ += content.getEncodingSize();
+
+    while (diskContentStore_.isOverLimit()) {
+      int segmentId = diskContentStore_.getOldestSegmentId();
+      ArrayList owners = diskContentStore_.removeOldestSegment();
+      for (int i = 0; i < owners.size(); ++i) {
+        Content owner = (Content)owners.get(i);
+        // Skip an owner whose record was freed, or which is now in a newer
+        // segment.
+        if (owner.isOnDisk() &&
+            DiskContentStore.getSegmentId(owner.getDiskHandle()) == segmentId)
+          removeContent(owner);
+      }
+    }
+  }
+
+  /**
+   * Move the content from the disk tier back to memory, then evict if needed.
+   * @param content The Content on disk.
+   */
+  private void
+  promoteContent(Content content)
+  {
+    content.moveFromDisk(diskContentStore_);
+    --diskEntryCount_;
+    diskByteCount_ -= content.getEncodingSize();
+
+    evictionPolicy_.add(content, content.getName());
+    ++entryCount_;
+    byteCount_ += content.getEncodingSize();
+    if (slabAllocator_ != null)
+      content.moveToSlab(slabAllocator_);
+
+    evictIfNeeded();
+  }
+
+  /**
+   * The maximum number of stale entries (and of timed-out pending interests)
+   * which are removed in one timer tick. If there are more, the next tick is
+   * scheduled without waiting for the cleanup interval.
+   */
+  public static final int MAX_CLEANUP_PER_TICK = 1000;
+
+  /**
+   * The maximum number of Data packets from add which wait to be inserted by
+   * the thread which holds the lock. If there are more, add waits for the lock.
+   */
+  public static final int MAX_QUEUED_ADDS = 1000;
+
   private final Face face_;
   private final double cleanupIntervalMilliseconds_;
-  private double nextCleanupTime_;
+  private boolean isCleanupScheduled_ = false;
+  private OnTimeout cleanupTimeout_;
+  private final OnData dummyOnData_ = new OnData() {
+    public void onData(Interest interest, Data data) {}
+  };
   // Use HashMap without generics so it works with older Java compilers.
   private final HashMap onDataNotFoundForPrefix_ =
   new HashMap(); /**< The map key is the prefix.toUri().
                     * The value is the OnInterest callback. */
   // Use ArrayList without generics so it works with older Java compilers.
   private final ArrayList registeredPrefixIdList_ = new ArrayList(); // of long
-  private final ArrayList noStaleTimeCache_ = new ArrayList(); // of Content
-  private final ArrayList staleTimeCache_ = new ArrayList(); // of StaleTimeContent
-  private final Name.Component emptyComponent_ = new Name.Component();
-  ArrayList pendingInterestTable_ = new ArrayList(); // of PendingInterest
+  // The StaleTimeContent ordered by the stale time.
+  private final DeadlineHeap staleTimeHeap_ = new DeadlineHeap();
+  // The index of all Content by name, including the StaleTimeContent.
+  private final NameTrie index_ = new NameTrie(true); // of Content
+  private EvictionPolicy evictionPolicy_ = new LruEvictionPolicy();
+  private SlabAllocator slabAllocator_ = null;
+  private DiskContentStore diskContentStore_ = null;
+  private int diskEntryCount_ = 0;
+  private long diskByteCount_ = 0;
+  private int maxEntries_ = -1;
+  private long maxBytes_ = -1;
+  private int entryCount_ = 0;
+  private long byteCount_ = 0;
+  private long evictionCount_ = 0;
+  // The pending interests indexed by the interest name.
+  private final NameTrie pendingInterestTable_ =
+    new NameTrie(); // of PendingInterest
+  // The pending interests which have a timeout, ordered by the timeout time.
+  private final DeadlineHeap pendingInterestTimeouts_ = new DeadlineHeap();
+  // The Content from add which is not inserted yet. This is lock-free so that
+  // add does not wait for another thread.
+  private final ConcurrentLinkedQueue addQueue_ =
+    new ConcurrentLinkedQueue(); // of Content
+  // ConcurrentLinkedQueue.size() is not constant time, so count separately.
+  private final AtomicInteger addQueueSize_ = new AtomicInteger();
+  // The lock for the index and the other fields above, except the fields for
+  // the registered prefixes which are only used on the Face thread.
+  private final ReentrantLock lock_ = new ReentrantLock();
+  // For each thread which calls onInterest, the direct buffer to copy an
+  // encoding from a slab or the disk tier so that it can be sent after
+  // unlocking.
+  private static final ThreadLocal copiedEncoding_ = new ThreadLocal() {
+    protected Object initialValue() {
+      return ByteBuffer.allocateDirect(Common.MAX_NDN_PACKET_SIZE);
+    }
+  };
+  // Use ArrayList without generics so it works with older Java compilers.
+  private final ArrayList replies_ = new ArrayList(); // of Reply
   OnInterestCallback storePendingInterestCallback_;
 }
@@ -0,0 +1,321 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.util;
+
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A Promise is a Future which is completed explicitly by calling complete or
+ * completeExceptionally, for example from a Face callback. Listeners added
+ * with addListener are called when the Promise is completed, which lets an
+ * application chain asynchronous operations without nesting callbacks, and
+ * Promise.all joins the results of many Promises. This works with older Java
+ * compilers which don't have java.util.concurrent.CompletableFuture. All
+ * methods are thread-safe.
+ */
+public class Promise implements Future {
+  /**
+   * A Promise.Listener is called when a Promise is completed.
+   */
+  public interface Listener {
+    /**
+     * Called once when the promise is completed normally, exceptionally or by
+     * cancel.
+     * @param promise The completed Promise. Call getNow() or getException().
+     */
+    void onComplete(Promise promise);
+  }
+
+  /**
+   * An OnCancel is called by cancel so that the creator of the Promise can
+   * stop the operation, for example to remove a pending interest.
+   */
+  public interface OnCancel {
+    void onCancel();
+  }
+
+  /**
+   * Complete this Promise with the value, if it is not already completed.
+   * @param value The result value, which may be null.
+   * @return True if this call completed the Promise, false if it was already
+   * completed.
+   */
+  public final boolean
+  complete(Object value) { return setResult(value, null); }
+
+  /**
+   * Complete this Promise with an exception, if it is not already completed.
+   * get() will throw an ExecutionException with the exception as its cause.
+   * @param exception The exception.
+   * @return True if this call completed the Promise, false if it was already
+   * completed.
+   */
+  public final boolean
+  completeExceptionally(Throwable exception)
+  {
+    if (exception == null)
+      throw new Error("Promise.completeExceptionally: exception is null");
+    return setResult(null, exception);
+  }
+
+  /**
+   * Cancel this Promise if it is not already completed. This completes it with
+   * a CancellationException and calls the OnCancel given to setOnCancel.
+   * @param mayInterruptIfRunning This is ignored.
+   * @return True if this call cancelled the Promise.
+   */
+  public boolean
+  cancel(boolean mayInterruptIfRunning)
+  {
+    if (!setResult(null, new CancellationException()))
+      return false;
+
+    OnCancel onCancel;
+    synchronized (this) {
+      onCancel = onCancel_;
+      onCancel_ = null;
+    }
+    if (onCancel != null) {
+      try {
+        onCancel.onCancel();
+      } catch (Throwable ex) {
+        Logger.getLogger(Promise.class.getName()).log
+          (Level.SEVERE, "Error in onCancel", ex);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Set the OnCancel which cancel() calls. If this Promise is already
+   * cancelled, call onCancel immediately.
+   * @param onCancel The OnCancel.
+   */
+  public final void
+  setOnCancel(OnCancel onCancel)
+  {
+    synchronized (this) {
+      if (!isDone_) {
+        onCancel_ = onCancel;
+        return;
+      }
+    }
+
+    if (isCancelled())
+      onCancel.onCancel();
+  }
+
+  /**
+   * Add a listener which is called when this Promise is completed. If it is
+   * already completed, call the listener immediately on this thread. Otherwise
+   * the listener is called on the thread which completes the Promise.
+   * Exceptions thrown by the listener are logged.
+   * @param listener The Listener.
+   * @return This Promise so that you can chain calls.
+   */
+  public final Promise
+  addListener(Listener listener)
+  {
+    synchronized (this) {
+      if (!isDone_) {
+        listeners_.add(listener);
+        return this;
+      }
+    }
+
+    callListener(listener);
+    return this;
+  }
+
+  public final synchronized boolean
+  isDone() { return isDone_; }
+
+  public final synchronized boolean
+  isCancelled() { return exception_ instanceof CancellationException; }
+
+  /**
+   * Check if this Promise was completed with an exception (including by
+   * cancel).
+   * @return True if completed exceptionally.
+   */
+  public final synchronized boolean
+  isCompletedExceptionally() { return exception_ != null; }
+
+  /**
+   * Get the value without waiting.
+   * @return The value given to complete, or null if not completed or
+   * completed exceptionally.
+   */
+  public final synchronized Object
+  getNow() { return value_; }
+
+  /**
+   * Get the exception without waiting.
+   * @return The exception given to completeExceptionally (or a
+   * CancellationException), or null if not completed exceptionally.
+   */
+  public final synchronized Throwable
+  getException() { return exception_; }
+
+  /**
+   * Wait until this Promise is completed and return its value.
+   * @return The value given to complete.
+   * @throws InterruptedException If interrupted while waiting.
+   * @throws ExecutionException If completed with completeExceptionally. The
+   * cause is the exception.
+   * @throws CancellationException If cancelled.
+   */
+  public final synchronized Object
+  get() throws InterruptedException, ExecutionException
+  {
+    while (!isDone_)
+      wait();
+
+    return getResult();
+  }
+
+  /**
+   * Wait until this Promise is completed and return its value, but no longer
+   * than the timeout.
+   * @param timeout The maximum time to wait.
+   * @param unit The unit of timeout.
+   * @return The value given to complete.
+   * @throws InterruptedException If interrupted while waiting.
+   * @throws ExecutionException If completed with completeExceptionally. The
+   * cause is the exception.
+   * @throws TimeoutException If not completed before the timeout.
+   * @throws CancellationException If cancelled.
+   */
+  public final synchronized Object
+  get(long timeout, TimeUnit unit)
+    throws InterruptedException, ExecutionException, TimeoutException
+  {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    while (!isDone_) {
+      long remaining = deadline - System.nanoTime();
+      if (remaining <= 0)
+        throw new TimeoutException("Promise.get: Timed out");
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+
+    return getResult();
+  }
+
+  /**
+   * Return a new Promise which is completed when all the given Promises are
+   * completed. If all complete normally, its value is an ArrayList of their
+   * values in the same order. If any completes exceptionally, the new Promise
+   * is completed with the first exception.
+   * @param promises The array of Promise objects.
+   * @return The new Promise.
+   */
+  public static Promise
+  all(final Promise[] promises)
+  {
+    final Promise result = new Promise();
+    if (promises.length == 0) {
+      result.complete(new ArrayList());
+      return result;
+    }
+
+    final int[] nRemaining = new int[] { promises.length };
+    Listener listener = new Listener() {
+      public void onComplete(Promise promise) {
+        if (promise.isCompletedExceptionally()) {
+          result.completeExceptionally(promise.getException());
+          return;
+        }
+
+        synchronized (nRemaining) {
+          if (--nRemaining[0] > 0)
+            return;
+        }
+        ArrayList values = new ArrayList(promises.length);
+        for (int i = 0; i < promises.length; ++i)
+          values.add(promises[i].getNow());
+        result.complete(values);
+      }
+    };
+
+    for (int i = 0; i < promises.length; ++i)
+      promises[i].addListener(listener);
+    return result;
+  }
+
+  private Object
+  getResult() throws ExecutionException
+  {
+    if (exception_ instanceof CancellationException)
+      throw (CancellationException)exception_;
+    if (exception_ != null)
+      throw new ExecutionException(exception_);
+    return value_;
+  }
+
+  private boolean
+  setResult(Object value, Throwable exception)
+  {
+    ArrayList listeners;
+    synchronized (this) {
+      if (isDone_)
+        return false;
+
+      value_ = value;
+      exception_ = exception;
+      isDone_ = true;
+      listeners = listeners_;
+      listeners_ = null;
+      if (!(exception instanceof CancellationException))
+        // Only cancel() uses onCancel_.
+        onCancel_ = null;
+      notifyAll();
+    }
+
+    // Call the listeners outside of the lock.
+    for (int i = 0; i < listeners.size(); ++i)
+      callListener((Listener)listeners.get(i));
+    return true;
+  }
+
+  private void
+  callListener(Listener listener)
+  {
+    try {
+      listener.onComplete(this);
+    } catch (Throwable ex) {
+      Logger.getLogger(Promise.class.getName()).log
+        (Level.SEVERE, "Error in Promise.Listener", ex);
+    }
+  }
+
+  private boolean isDone_ = false;
+  private Object value_ = null;
+  private Throwable exception_ = null;
+  private OnCancel onCancel_ = null;
+  // Use ArrayList without generics so it works with older Java compilers.
+  private ArrayList listeners_ = new ArrayList(); // of Listener
+}
@@ -0,0 +1,157 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.util;
+
+/**
+ * An RttEstimator keeps the smoothed round-trip time (SRTT) and round-trip
+ * time variation (RTTVAR) of the interests for a name prefix and computes the
+ * retransmission timeout (RTO) as in RFC 6298:
+ * RTO = SRTT + max(G, 4 * RTTVAR), limited to the minimum and maximum RTO. The
+ * methods are synchronized so that the estimator can be read from another
+ * thread while the Face updates it.
+ */
+public class RttEstimator {
+  /**
+   * Create an RttEstimator with the given limits.
+   * @param initialRtoMilliseconds The RTO before the first measurement.
+   * @param minRtoMilliseconds The minimum RTO.
+   * @param maxRtoMilliseconds The maximum RTO, which also limits backoff().
+   */
+  public RttEstimator
+    (double initialRtoMilliseconds, double minRtoMilliseconds,
+     double maxRtoMilliseconds)
+  {
+    if (minRtoMilliseconds > maxRtoMilliseconds)
+      throw new Error("RttEstimator: minRto is greater than maxRto");
+
+    initialRto_ = initialRtoMilliseconds;
+    minRto_ = minRtoMilliseconds;
+    maxRto_ = maxRtoMilliseconds;
+    rto_ = clamp(initialRtoMilliseconds);
+  }
+
+  /**
+   * Create an RttEstimator with DEFAULT_INITIAL_RTO_MILLISECONDS,
+   * DEFAULT_MIN_RTO_MILLISECONDS and DEFAULT_MAX_RTO_MILLISECONDS.
+   */
+  public RttEstimator()
+  {
+    this(DEFAULT_INITIAL_RTO_MILLISECONDS, DEFAULT_MIN_RTO_MILLISECONDS,
+         DEFAULT_MAX_RTO_MILLISECONDS);
+  }
+
+  /**
+   * Update the SRTT, RTTVAR and RTO with a new round-trip time measurement.
+   * This also clears the backoff from backoff().
+   * @param rttMilliseconds The time in milliseconds from sending an interest
+   * to receiving its data. To follow Karn's algorithm, don't add the
+   * measurement for an interest which was retransmitted.
+   */
+  public final synchronized void
+  addMeasurement(double rttMilliseconds)
+  {
+    if (nSamples_ == 0) {
+      srtt_ = rttMilliseconds;
+      rttVar_ = rttMilliseconds / 2;
+    }
+    else {
+      rttVar_ = (1 - BETA) * rttVar_ + BETA * Math.abs(srtt_ - rttMilliseconds);
+      srtt_ = (1 - ALPHA) * srtt_ + ALPHA * rttMilliseconds;
+    }
+
+    ++nSamples_;
+    rto_ = clamp(srtt_ + Math.max(CLOCK_GRANULARITY_MILLISECONDS, K * rttVar_));
+  }
+
+  /**
+   * Double the RTO (up to the maximum RTO) after a timeout, as in RFC 6298
+   * section 5.5.
+   */
+  public final synchronized void
+  backoff() { rto_ = clamp(rto_ * 2); }
+
+  /**
+   * Reset to the initial state with no measurements.
+   */
+  public final synchronized void
+  reset()
+  {
+    srtt_ = 0;
+    rttVar_ = 0;
+    nSamples_ = 0;
+    rto_ = clamp(initialRto_);
+  }
+
+  /**
+   * Get the retransmission timeout.
+   * @return The RTO in milliseconds.
+   */
+  public final synchronized double
+  getRetransmissionTimeout() { return rto_; }
+
+  /**
+   * Get the smoothed round-trip time.
+   * @return The SRTT in milliseconds, or 0 if there are no measurements.
+   */
+  public final synchronized double
+  getSmoothedRtt() { return srtt_; }
+
+  /**
+   * Get the round-trip time variation.
+   * @return The RTTVAR in milliseconds, or 0 if there are no measurements.
+   */
+  public final synchronized double
+  getRttVariation() { return rttVar_; }
+
+  /**
+   * Get the number of measurements given to addMeasurement since creation or
+   * reset().
+   * @return The number of measurements.
+   */
+  public final synchronized long
+  getMeasurementCount() { return nSamples_; }
+
+  private double
+  clamp(double rto) { return Math.min(maxRto_, Math.max(minRto_, rto)); }
+
+  /**
+   * The initial RTO is 1 second as in RFC 6298.
+   */
+  public static final double DEFAULT_INITIAL_RTO_MILLISECONDS = 1000.0;
+  /**
+   * The minimum RTO is lower than the 1 second of RFC 6298 because NDN
+   * round-trip times are usually much shorter than TCP's.
+   */
+  public static final double DEFAULT_MIN_RTO_MILLISECONDS = 200.0;
+  public static final double DEFAULT_MAX_RTO_MILLISECONDS = 60000.0;
+
+  private static final double ALPHA = 1.0 / 8;
+  private static final double BETA = 1.0 / 4;
+  private static final double K = 4;
+  private static final double CLOCK_GRANULARITY_MILLISECONDS = 1.0;
+
+  private final double initialRto_;
+  private final double minRto_;
+  private final double maxRto_;
+  private double srtt_ = 0;
+  private double rttVar_ = 0;
+  private double rto_;
+  private long nSamples_ = 0;
+}
@@ -21,8 +21,13 @@
 package net.named_data.jndn.util;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import net.named_data.jndn.Data;
 import net.named_data.jndn.Face;
 import net.named_data.jndn.Interest;
@@ -63,15 +68,54 @@ import net.named_data.jndn.encoding.EncodingException;
  * 6. Call the OnComplete callback with a blob that concatenates the content
  *    from all the segmented objects.
  *
+ * By default, SegmentFetcher sends the Interest for the next segment only after
+ * the previous segment arrives, which limits the throughput to one segment per
+ * round-trip time. To fetch a large object faster, pass an Options object to
+ * fetch with setMaxWindowSize greater than 1. Then SegmentFetcher keeps up to a
+ * window of segment Interests in flight. The window grows additively as
+ * segments arrive (after a slow start) and shrinks multiplicatively when an
+ * Interest times out (AIMD congestion control), and the timed-out segment is
+ * requested again. Segments which arrive out of order are held until the
+ * missing segments arrive. The last segment is learned from the FinalBlockId,
+ * and Interests beyond it are cancelled.
+ *
+ * If an Interest times out, SegmentFetcher requests the segment again with the
+ * InterestLifetime multiplied by Options.setRetryBackoffMultiplier for each
+ * retry, up to Options.setMaxRetries times. If a fetch is interrupted, for
+ * example by an error after the retries, it can continue without fetching the
+ * delivered segments again: the fetch methods which take Options return the
+ * SegmentFetcher, so save getVersionedPrefix() and getNextSegment() and pass
+ * them to Options.setResume in a new fetch.
+ *
+ * Concatenating the content for OnComplete needs memory for all the segments
+ * twice. To fetch a large object, use one of the fetch methods which take a
+ * WritableByteChannel, an OutputStream or an OnSegmentContent callback. These
+ * deliver the content of each verified segment in segment order as soon as it
+ * is available, then call OnStreamComplete. The memory is bounded by the
+ * segments held for reordering, which is limited by
+ * Options.setMaxBufferedSegments.
+ *
+ * SegmentFetcher keeps the content of each received segment, so it should not
+ * be used with a Face where setReusePackets(true) was called.
+ *
+ * With a window greater than 1, a ThreadSafeFace with a multi-threaded
+ * callback Executor can call onData and onTimeout for different segments at
+ * the same time, so these methods are synchronized. The callbacks such as
+ * OnSegmentContent and OnError are called while holding the lock, one at a
+ * time and in segment order, so they should not block on another thread which
+ * uses this SegmentFetcher.
+ *
  * If an error occurs during the fetching process, the OnError callback is called
  * with a proper error code.  The following errors are possible:
  *
- * - `INTEREST_TIMEOUT`: if any of the Interests times out
+ * - `INTEREST_TIMEOUT`: if any of the Interests times out again after being
+ *   requested the maximum number of retries
  * - `DATA_HAS_NO_SEGMENT`: if any of the retrieved Data packets don't have a segment
  *   as the last component of the name (not counting the implicit digest)
  * - `SEGMENT_VERIFICATION_FAILED`: if any retrieved segment fails
  *   the user-provided VerifySegment callback
- * - `IO_ERROR`: for I/O errors when sending an Interest.
+ * - `IO_ERROR`: for I/O errors when sending an Interest or writing to the
+ *   WritableByteChannel or OutputStream.
  *
  * In order to validate individual segments, a VerifySegment callback needs to
  * be specified. If the callback returns false, the fetching process is aborted
@@ -105,6 +149,23 @@ public class SegmentFetcher implements OnData, OnTimeout {
     void onComplete(Blob content);
   }
 
+  public interface OnSegmentContent {
+    /**
+     * This is called for the content of each segment in segment order.
+     * @param segment The segment number, starting from 0.
+     * @param content The content of the segment.
+     */
+    void onSegmentContent(long segment, Blob content);
+  }
+
+  public interface OnStreamComplete {
+    /**
+     * This is called after the content of the last segment is delivered.
+     * @param nBytes The total number of content bytes delivered.
+     */
+    void onStreamComplete(long nBytes);
+  }
+
   public interface VerifySegment {
     boolean verifySegment(Data data);
   }
@@ -113,6 +174,151 @@ public class SegmentFetcher implements OnData, OnTimeout {
     void onError(ErrorCode errorCode, String message);
   }
 
+  /**
+   * An Options object holds the optional settings for fetch. The setters
+   * return this Options so that you can chain calls.
+   */
+  public static class Options {
+    /**
+     * Set the number of segment Interests to send before the window grows.
+     * @param initialWindowSize The initial window size, at least 1. The
+     * default is 1.
+     * @return This Options so that you can chain calls to update values.
+     */
+    public final Options
+    setInitialWindowSize(double initialWindowSize)
+    {
+      if (initialWindowSize < 1)
+        throw new Error("SegmentFetcher.Options: initialWindowSize must be at least 1");
+      initialWindowSize_ = initialWindowSize;
+      return this;
+    }
+
+    /**
+     * Set the maximum number of segment Interests in flight. If this is 1, the
+     * Interest for the next segment is sent after the previous segment
+     * arrives. If greater than 1, use pipelining with congestion control as
+     * described in the SegmentFetcher class.
+     * @param maxWindowSize The maximum window size, at least 1. The default is
+     * 1.
+     * @return This Options so that you can chain calls to update values.
+     */
+    public final Options
+    setMaxWindowSize(double maxWindowSize)
+    {
+      if (maxWindowSize < 1)
+        throw new Error("SegmentFetcher.Options: maxWindowSize must be at least 1");
+      maxWindowSize_ = maxWindowSize;
+      return this;
+    }
+
+    /**
+     * Set the maximum number of received segments to hold while waiting for a
+     * missing segment. SegmentFetcher doesn't request a segment which would be
+     * more than this number past the next segment to deliver, so this also
+     * limits the window size while a segment is retransmitted.
+     * @param maxBufferedSegments The maximum number of buffered segments, at
+     * least 1. The default is DEFAULT_MAX_BUFFERED_SEGMENTS.
+     * @return This Options so that you can chain calls to update values.
+     */
+    public final Options
+    setMaxBufferedSegments(int maxBufferedSegments)
+    {
+      if (maxBufferedSegments < 1)
+        throw new Error("SegmentFetcher.Options: maxBufferedSegments must be at least 1");
+      maxBufferedSegments_ = maxBufferedSegments;
+      return this;
+    }
+
+    /**
+     * Set the number of times to request a segment again after its Interest
+     * times out, before failing with INTEREST_TIMEOUT.
+     * @param maxRetries The maximum number of retries, at least 0. If 0, fail
+     * on the first timeout. The default is DEFAULT_MAX_RETRIES.
+     * @return This Options so that you can chain calls to update values.
+     */
+    public final Options
+    setMaxRetries(int maxRetries)
+    {
+      if (maxRetries < 0)
+        throw new Error("SegmentFetcher.Options: maxRetries must not be negative");
+      maxRetries_ = maxRetries;
+      return this;
+    }
+
+    /**
+     * Set the factor to multiply the InterestLifetime for each retry of a
+     * segment, so that the n-th retry uses the lifetime times
+     * retryBackoffMultiplier to the power n.
+     * @param retryBackoffMultiplier The multiplier, at least 1. The default is
+     * 2.
+     * @return This Options so that you can chain calls to update values.
+     */
+    public final Options
+    setRetryBackoffMultiplier(double retryBackoffMultiplier)
+    {
+      if (retryBackoffMultiplier < 1)
+        throw new Error("SegmentFetcher.Options: retryBackoffMultiplier must be at least 1");
+      retryBackoffMultiplier_ = retryBackoffMultiplier;
+      return this;
+    }
+
+    /**
+     * Continue an interrupted fetch from the given segment instead of
+     * discovering the version. The name of the baseInterest is ignored.
+     * OnComplete, OnSegmentContent and OnStreamComplete only get the content
+     * from startSegment.
+     * @param versionedPrefix The name prefix including the version, from
+     * SegmentFetcher.getVersionedPrefix() of the interrupted fetch. This copies
+     * the Name.
+     * @param startSegment The first segment to fetch, usually from
+     * SegmentFetcher.getNextSegment() of the interrupted fetch.
+     * @return This Options so that you can chain calls to update values.
+     */
+    public final Options
+    setResume(Name versionedPrefix, long startSegment)
+    {
+      if (startSegment < 0)
+        throw new Error("SegmentFetcher.Options: startSegment must not be negative");
+      resumeVersionedPrefix_ = new Name(versionedPrefix);
+      resumeSegment_ = startSegment;
+      return this;
+    }
+
+    public final double
+    getInitialWindowSize() { return initialWindowSize_; }
+
+    public final double
+    getMaxWindowSize() { return maxWindowSize_; }
+
+    public final int
+    getMaxBufferedSegments() { return maxBufferedSegments_; }
+
+    public final int
+    getMaxRetries() { return maxRetries_; }
+
+    public final double
+    getRetryBackoffMultiplier() { return retryBackoffMultiplier_; }
+
+    /**
+     * Get the versioned prefix given to setResume.
+     * @return The versioned prefix, or null if setResume was not called.
+     */
+    public final Name
+    getResumeVersionedPrefix() { return resumeVersionedPrefix_; }
+
+    public final long
+    getResumeSegment() { return resumeSegment_; }
+
+    private double initialWindowSize_ = 1;
+    private double maxWindowSize_ = 1;
+    private int maxBufferedSegments_ = DEFAULT_MAX_BUFFERED_SEGMENTS;
+    private int maxRetries_ = DEFAULT_MAX_RETRIES;
+    private double retryBackoffMultiplier_ = 2;
+    private Name resumeVersionedPrefix_ = null;
+    private long resumeSegment_ = 0;
+  }
+
   /**
    * DontVerifySegment may be used in fetch to skip validation of Data packets.
    */
@@ -121,6 +327,16 @@ public class SegmentFetcher implements OnData, OnTimeout {
      return true;
    }};
 
+  /**
+   * The default for Options.setMaxRetries.
+   */
+  public static final int DEFAULT_MAX_RETRIES = 3;
+
+  /**
+   * The default for Options.setMaxBufferedSegments.
+   */
+  public static final int DEFAULT_MAX_BUFFERED_SEGMENTS = 256;
+
   /**
    * Initiate segment fetching. For more details, see the documentation for
    * the class.
@@ -146,13 +362,15 @@ public class SegmentFetcher implements OnData, OnTimeout {
     (Face face, Interest baseInterest, VerifySegment verifySegment,
      OnComplete onComplete, OnError onError)
   {
-    new SegmentFetcher(face, verifySegment, onComplete, onError)
-      .fetchFirstSegment(baseInterest);
+    fetch(face, baseInterest, verifySegment, onComplete, onError, new Options());
   }
-    
+
   /**
-   * Create a new SegmentFetcher to use the Face.
+   * Initiate segment fetching with the given Options, for example to use
+   * pipelining. For more details, see the documentation for the class.
    * @param face This calls face.expressInterest to fetch more segments.
+   * @param baseInterest An Interest for the initial segment of the requested
+   * data. See fetch(face, baseInterest, verifySegment, onComplete, onError).
    * @param verifySegment When a Data packet is received this calls
    * verifySegment.verifySegment(data). If it returns false then abort fetching
    * and call onError.onError with ErrorCode.SEGMENT_VERIFICATION_FAILED.
@@ -161,126 +379,510 @@ public class SegmentFetcher implements OnData, OnTimeout {
    * content of all the segments.
    * @param onError Call onError.onError(errorCode, message) for timeout or an
    * error processing segments.
+   * @param options The Options. This keeps the values when fetch is called.
+   * @return The SegmentFetcher, for example to call getNextSegment() if the
+   * fetch is interrupted.
+   */
+  public static SegmentFetcher
+  fetch
+    (Face face, Interest baseInterest, VerifySegment verifySegment,
+     OnComplete onComplete, OnError onError, Options options)
+  {
+    SegmentFetcher fetcher = new SegmentFetcher
+      (face, verifySegment, onError, options);
+    fetcher.onComplete_ = onComplete;
+    fetcher.fetchFirstSegment(baseInterest);
+    return fetcher;
+  }
+
+  /**
+   * Initiate segment fetching and call onSegmentContent for the content of each
+   * segment in segment order, without keeping the content of all the segments.
+   * For more details, see the documentation for the class.
+   * @param face This calls face.expressInterest to fetch more segments.
+   * @param baseInterest An Interest for the initial segment of the requested
+   * data. See fetch(face, baseInterest, verifySegment, onComplete, onError).
+   * @param verifySegment When a Data packet is received this calls
+   * verifySegment.verifySegment(data). If it returns false then abort fetching
+   * and call onError.onError with ErrorCode.SEGMENT_VERIFICATION_FAILED.
+   * @param onSegmentContent Call
+   * onSegmentContent.onSegmentContent(segment, content) for each segment in
+   * order. A segment is not delivered until it and all previous segments are
+   * verified.
+   * @param onStreamComplete When all segments are delivered, call
+   * onStreamComplete.onStreamComplete(nBytes).
+   * @param onError Call onError.onError(errorCode, message) for timeout or an
+   * error processing segments. Some segments may already have been delivered.
+   * @param options The Options. This keeps the values when fetch is called.
+   * @return The SegmentFetcher, for example to call getNextSegment() if the
+   * fetch is interrupted.
+   */
+  public static SegmentFetcher
+  fetch
+    (Face face, Interest baseInterest, VerifySegment verifySegment,
+     OnSegmentContent onSegmentContent, OnStreamComplete onStreamComplete,
+     OnError onError, Options options)
+  {
+    SegmentFetcher fetcher = new SegmentFetcher
+      (face, verifySegment, onError, options);
+    fetcher.onSegmentContent_ = onSegmentContent;
+    fetcher.onStreamComplete_ = onStreamComplete;
+    fetcher.fetchFirstSegment(baseInterest);
+    return fetcher;
+  }
+
+  /**
+   * Initiate segment fetching and write the content of each segment in segment
+   * order to the channel. This does not close the channel. For more details,
+   * see fetch(face, baseInterest, verifySegment, onSegmentContent,
+   * onStreamComplete, onError, options).
+   * @param face This calls face.expressInterest to fetch more segments.
+   * @param baseInterest An Interest for the initial segment of the requested
+   * data.
+   * @param verifySegment This calls verifySegment.verifySegment(data) for each
+   * Data packet.
+   * @param channel The channel to write the content. This should be in blocking
+   * mode. If a write throws an IOException, abort fetching and call
+   * onError.onError with ErrorCode.IO_ERROR.
+   * @param onStreamComplete When all segments are written, call
+   * onStreamComplete.onStreamComplete(nBytes).
+   * @param onError Call onError.onError(errorCode, message) for timeout or an
+   * error processing segments.
+   * @param options The Options. This keeps the values when fetch is called.
+   * @return The SegmentFetcher, for example to call getNextSegment() if the
+   * fetch is interrupted.
+   */
+  public static SegmentFetcher
+  fetch
+    (Face face, Interest baseInterest, VerifySegment verifySegment,
+     WritableByteChannel channel, OnStreamComplete onStreamComplete,
+     OnError onError, Options options)
+  {
+    SegmentFetcher fetcher = new SegmentFetcher
+      (face, verifySegment, onError, options);
+    fetcher.channel_ = channel;
+    fetcher.onStreamComplete_ = onStreamComplete;
+    fetcher.fetchFirstSegment(baseInterest);
+    return fetcher;
+  }
+
+  /**
+   * Initiate segment fetching and write the content of each segment in segment
+   * order to the output stream. This does not close the stream. This is the
+   * same as fetch with a WritableByteChannel from Channels.newChannel(stream).
+   * @param face This calls face.expressInterest to fetch more segments.
+   * @param baseInterest An Interest for the initial segment of the requested
+   * data.
+   * @param verifySegment This calls verifySegment.verifySegment(data) for each
+   * Data packet.
+   * @param stream The stream to write the content. If a write throws an
+   * IOException, abort fetching and call onError.onError with
+   * ErrorCode.IO_ERROR.
+   * @param onStreamComplete When all segments are written, call
+   * onStreamComplete.onStreamComplete(nBytes).
+   * @param onError Call onError.onError(errorCode, message) for timeout or an
+   * error processing segments.
+   * @param options The Options. This keeps the values when fetch is called.
+   * @return The SegmentFetcher, for example to call getNextSegment() if the
+   * fetch is interrupted.
+   */
+  public static SegmentFetcher
+  fetch
+    (Face face, Interest baseInterest, VerifySegment verifySegment,
+     OutputStream stream, OnStreamComplete onStreamComplete, OnError onError,
+     Options options)
+  {
+    return fetch
+      (face, baseInterest, verifySegment, Channels.newChannel(stream),
+       onStreamComplete, onError, options);
+  }
+
+  /**
+   * Create a new SegmentFetcher to use the Face.
+   * @param face This calls face.expressInterest to fetch more segments.
+   * @param verifySegment When a Data packet is received this calls
+   * verifySegment.verifySegment(data). If it returns false then abort fetching
+   * and call onError.onError with ErrorCode.SEGMENT_VERIFICATION_FAILED.
+   * @param onError Call onError.onError(errorCode, message) for timeout or an
+   * error processing segments.
+   * @param options The Options whose values are copied.
    */
   private SegmentFetcher
-    (Face face, VerifySegment verifySegment, OnComplete onComplete, OnError onError)
+    (Face face, VerifySegment verifySegment, OnError onError, Options options)
   {
     face_ = face;
     verifySegment_ = verifySegment;
-    onComplete_ = onComplete;
     onError_ = onError;
+    maxBufferedSegments_ = options.getMaxBufferedSegments();
+    maxRetries_ = options.getMaxRetries();
+    retryBackoffMultiplier_ = options.getRetryBackoffMultiplier();
+    if (options.getResumeVersionedPrefix() != null) {
+      versionedPrefix_ = new Name(options.getResumeVersionedPrefix());
+      nextSegmentToRequest_ = options.getResumeSegment();
+      nextSegmentToDeliver_ = options.getResumeSegment();
+    }
+    maxWindowSize_ = options.getMaxWindowSize();
+    windowSize_ = Math.min(options.getInitialWindowSize(), maxWindowSize_);
+    slowStartThreshold_ = maxWindowSize_;
   }
 
-  private void
+  /**
+   * Get the versioned prefix of the fetched segments.
+   * @return The versioned prefix, or null if the version is not discovered
+   * yet. You should not modify the Name.
+   */
+  public final synchronized Name
+  getVersionedPrefix() { return versionedPrefix_; }
+
+  /**
+   * Get the number of the next segment to deliver. All segments before it were
+   * delivered, so to continue an interrupted fetch, pass this to
+   * Options.setResume.
+   * @return The next segment number.
+   */
+  public final synchronized long
+  getNextSegment() { return nextSegmentToDeliver_; }
+
+  private synchronized void
   fetchFirstSegment(Interest baseInterest)
   {
-    Interest interest = new Interest(baseInterest);
+    baseInterest_ = new Interest(baseInterest);
+    if (versionedPrefix_ != null)
+      // Resume. We already know the version.
+      fillWindow();
+    else
+      expressFirstInterest(0);
+  }
+
+  /**
+   * Send the Interest to discover the version.
+   * @param nRetries The number of times the Interest was already sent.
+   */
+  private void
+  expressFirstInterest(int nRetries)
+  {
+    Interest interest = new Interest(baseInterest_);
     interest.setChildSelector(1);
     interest.setMustBeFresh(true);
+    setRetryLifetime(interest, nRetries);
 
     try {
       face_.expressInterest(interest, this, this);
     } catch (IOException ex) {
-      onError_.onError
-        (ErrorCode.IO_ERROR, "I/O error fetching the first segment " + ex);
+      fail(ErrorCode.IO_ERROR, "I/O error fetching the first segment " + ex);
     }
   }
 
+  /**
+   * If nRetries is greater than 0, set the InterestLifetime of the interest to
+   * the lifetime of baseInterest_ times the backoff for nRetries. Changing the
+   * lifetime also clears the nonce so that the library generates a new one.
+   * @param interest The Interest to update.
+   * @param nRetries The number of times the Interest was already sent.
+   */
   private void
-  fetchNextSegment(Interest originalInterest, Name dataName, long segment)
+  setRetryLifetime(Interest interest, int nRetries)
   {
-    // Start with the original Interest to preserve any special selectors.
-    Interest interest = new Interest(originalInterest);
+    if (nRetries <= 0)
+      return;
+
+    double lifetime = baseInterest_.getInterestLifetimeMilliseconds();
+    if (lifetime < 0)
+      lifetime = DEFAULT_INTEREST_LIFETIME_MILLISECONDS;
+    interest.setInterestLifetimeMilliseconds
+      (lifetime * Math.pow(retryBackoffMultiplier_, nRetries));
+  }
+
+  /**
+   * Send the Interest for the segment of versionedPrefix_ and add it to
+   * segmentsInFlight_.
+   * @param segment The segment number.
+   * @param nRetries The number of times the segment was already requested.
+   */
+  private void
+  fetchSegment(long segment, int nRetries)
+  {
+    // Start with the base Interest to preserve any special selectors.
+    Interest interest = new Interest(baseInterest_);
     // Changing a field clears the nonce so that the library will generate a new one.
     interest.setMustBeFresh(false);
-    interest.setName(dataName.getPrefix(-1).appendSegment(segment));
+    interest.setName(new Name(versionedPrefix_).appendSegment(segment));
+    setRetryLifetime(interest, nRetries);
     try {
-      face_.expressInterest(interest, this, this);
+      long pendingInterestId = face_.expressInterest(interest, this, this);
+      segmentsInFlight_.put
+        (new Long(segment), new SegmentInFlight(pendingInterestId, nRetries));
     } catch (IOException ex) {
-      onError_.onError
-        (ErrorCode.IO_ERROR, "I/O error fetching the next segment " + ex);
+      fail(ErrorCode.IO_ERROR, "I/O error fetching the next segment " + ex);
+    }
+  }
+
+  /**
+   * Send Interests for the next segments while the number in flight is less
+   * than the window size, not going beyond the final segment if it is known.
+   */
+  private void
+  fillWindow()
+  {
+    while (!isFinished_ && segmentsInFlight_.size() < (int)windowSize_) {
+      if (finalSegment_ >= 0 && nextSegmentToRequest_ > finalSegment_)
+        break;
+      if (nextSegmentToRequest_ >= nextSegmentToDeliver_ + maxBufferedSegments_)
+        // Don't buffer too many segments while waiting for a missing segment.
+        break;
+
+      long segment = nextSegmentToRequest_++;
+      if (segment < nextSegmentToDeliver_ ||
+          receivedSegments_.containsKey(new Long(segment)))
+        // We already have it, for example the segment of the first Data.
+        continue;
+      fetchSegment(segment, 0);
     }
   }
 
-  public void
+  public synchronized void
   onData(Interest originalInterest, Data data)
   {
+    if (isFinished_)
+      // Ignore a Data packet which arrives after an error.
+      return;
+
     if (!verifySegment_.verifySegment(data)) {
-      onError_.onError
+      fail
         (ErrorCode.SEGMENT_VERIFICATION_FAILED, "Segment verification failed");
       return;
     }
 
-    if (!endsWithSegmentNumber(data.getName()))
+    if (!endsWithSegmentNumber(data.getName())) {
       // We don't expect a name without a segment number.  Treat it as a bad packet.
-      onError_.onError
+      fail
         (ErrorCode.DATA_HAS_NO_SEGMENT,
          "Got an unexpected packet without a segment number: " + data.getName().toUri());
-    else {
-      long currentSegment;
+      return;
+    }
+
+    long currentSegment;
+    try {
+      currentSegment = data.getName().get(-1).toSegment();
+    }
+    catch (EncodingException ex) {
+      fail
+        (ErrorCode.DATA_HAS_NO_SEGMENT,
+         "Error decoding the name segment number " +
+         data.getName().get(-1).toEscapedString() + ": " + ex);
+      return;
+    }
+
+    if (versionedPrefix_ == null)
+      // This is the Data for the first Interest, which has the version.
+      versionedPrefix_ = data.getName().getPrefix(-1);
+
+    if (data.getMetaInfo().getFinalBlockId().getValue().size() > 0) {
+      long finalSegment;
       try {
-        currentSegment = data.getName().get(-1).toSegment();
+        finalSegment = data.getMetaInfo().getFinalBlockId().toSegment();
       }
       catch (EncodingException ex) {
-        onError_.onError
+        fail
           (ErrorCode.DATA_HAS_NO_SEGMENT,
-           "Error decoding the name segment number " +
-           data.getName().get(-1).toEscapedString() + ": " + ex);
+           "Error decoding the FinalBlockId segment number " +
+           data.getMetaInfo().getFinalBlockId().toEscapedString() + ": " + ex);
         return;
       }
 
-      long expectedSegmentNumber = contentParts_.size();
-      if (currentSegment != expectedSegmentNumber) {
-        // Try again to get the expected segment.  This also includes the case
-        //   where the first segment is not segment 0.
-        fetchNextSegment(originalInterest, data.getName(), expectedSegmentNumber);
+      if (finalSegment_ < 0) {
+        finalSegment_ = finalSegment;
+        cancelSegmentsAfterFinal();
       }
-      else {
-        // Save the content and check if we are finished.
-        contentParts_.add(data.getContent());
-
-        if (data.getMetaInfo().getFinalBlockId().getValue().size() > 0) {
-          long finalSegmentNumber;
-          try {
-            finalSegmentNumber = data.getMetaInfo().getFinalBlockId().toSegment();
-          }
-          catch (EncodingException ex) {
-            onError_.onError
-              (ErrorCode.DATA_HAS_NO_SEGMENT,
-               "Error decoding the FinalBlockId segment number " +
-               data.getMetaInfo().getFinalBlockId().toEscapedString() + ": " + ex);
-            return;
-          }
-
-          if (currentSegment == finalSegmentNumber) {
-            // We are finished.
-
-            // Get the total size and concatenate to get content.
-            int totalSize = 0;
-            for (int i = 0; i < contentParts_.size(); ++i)
-              totalSize += ((Blob)contentParts_.get(i)).size();
-            ByteBuffer content = ByteBuffer.allocate(totalSize);
-            for (int i = 0; i < contentParts_.size(); ++i)
-              content.put(((Blob)contentParts_.get(i)).buf());
-            content.flip();
-
-            onComplete_.onComplete(new Blob(content, false));
-            return;
-          }
-        }
-
-        // Fetch the next segment.
-        fetchNextSegment(originalInterest, data.getName(), expectedSegmentNumber + 1);
+    }
+
+    Long segmentKey = new Long(currentSegment);
+    segmentsInFlight_.remove(segmentKey);
+    if (currentSegment >= nextSegmentToDeliver_ &&
+        !receivedSegments_.containsKey(segmentKey) &&
+        !(finalSegment_ >= 0 && currentSegment > finalSegment_)) {
+      receivedSegments_.put(segmentKey, data.getContent());
+      increaseWindow();
+
+      // Deliver the segments which are now in order.
+      while (true) {
+        Blob content = (Blob)receivedSegments_.remove
+          (new Long(nextSegmentToDeliver_));
+        if (content == null)
+          break;
+        if (!deliver(nextSegmentToDeliver_, content))
+          return;
+        ++nextSegmentToDeliver_;
       }
     }
+
+    if (finalSegment_ >= 0 && nextSegmentToDeliver_ > finalSegment_) {
+      // We are finished.
+      isFinished_ = true;
+      if (onStreamComplete_ != null) {
+        onStreamComplete_.onStreamComplete(nBytesDelivered_);
+        return;
+      }
+
+      // Get the total size and concatenate to get content.
+      int totalSize = 0;
+      for (int i = 0; i < contentParts_.size(); ++i)
+        totalSize += ((Blob)contentParts_.get(i)).size();
+      ByteBuffer content = ByteBuffer.allocate(totalSize);
+      for (int i = 0; i < contentParts_.size(); ++i)
+        content.put(((Blob)contentParts_.get(i)).buf());
+      content.flip();
+
+      onComplete_.onComplete(new Blob(content, false));
+      return;
+    }
+
+    fillWindow();
   }
 
-  public void
+  public synchronized void
   onTimeout(Interest interest)
   {
-    onError_.onError
-      (ErrorCode.INTEREST_TIMEOUT,
-       "Time out for interest " + interest.getName().toUri());
+    if (isFinished_)
+      return;
+
+    if (versionedPrefix_ == null) {
+      // The first Interest timed out.
+      if (nFirstSegmentRetries_ < maxRetries_) {
+        ++nFirstSegmentRetries_;
+        expressFirstInterest(nFirstSegmentRetries_);
+      }
+      else
+        fail
+          (ErrorCode.INTEREST_TIMEOUT,
+           "Time out for interest " + interest.getName().toUri());
+      return;
+    }
+
+    long segment;
+    try {
+      segment = interest.getName().get(-1).toSegment();
+    } catch (EncodingException ex) {
+      // We don't expect this since we made the segment name.
+      fail
+        (ErrorCode.INTEREST_TIMEOUT,
+         "Time out for interest " + interest.getName().toUri());
+      return;
+    }
+
+    SegmentInFlight segmentInFlight =
+      (SegmentInFlight)segmentsInFlight_.remove(new Long(segment));
+    if (segmentInFlight == null || (finalSegment_ >= 0 && segment > finalSegment_))
+      // The segment was cancelled or is beyond the end.
+      return;
+
+    if (segmentInFlight.nRetries_ >= maxRetries_) {
+      fail
+        (ErrorCode.INTEREST_TIMEOUT,
+         "Time out for interest " + interest.getName().toUri());
+      return;
+    }
+
+    decreaseWindow(segment);
+    fetchSegment(segment, segmentInFlight.nRetries_ + 1);
+    fillWindow();
+  }
+
+  /**
+   * Deliver the content of the segment to the channel, the OnSegmentContent
+   * callback, or contentParts_ for OnComplete.
+   * @param segment The segment number.
+   * @param content The segment content.
+   * @return True if delivered, or false if this called fail.
+   */
+  private boolean
+  deliver(long segment, Blob content)
+  {
+    if (channel_ != null) {
+      try {
+        ByteBuffer buffer = content.buf();
+        while (buffer.hasRemaining())
+          channel_.write(buffer);
+      } catch (IOException ex) {
+        fail(ErrorCode.IO_ERROR, "I/O error writing segment " + segment + ": " + ex);
+        return false;
+      }
+    }
+    else if (onSegmentContent_ != null)
+      onSegmentContent_.onSegmentContent(segment, content);
+    else
+      contentParts_.add(content);
+
+    nBytesDelivered_ += content.size();
+    return true;
+  }
+
+  /**
+   * Get the current congestion window size. This is for testing.
+   * @return The window size.
+   */
+  final synchronized double
+  getWindowSize() { return windowSize_; }
+
+  /**
+   * Grow the window after receiving a new segment: by 1 in slow start, or by
+   * 1 / windowSize (about 1 per round trip) in congestion avoidance.
+   */
+  private void
+  increaseWindow()
+  {
+    if (windowSize_ < slowStartThreshold_)
+      windowSize_ += 1;
+    else
+      windowSize_ += 1 / windowSize_;
+    windowSize_ = Math.min(windowSize_, maxWindowSize_);
+  }
+
+  /**
+   * Halve the window after a timeout, but only once for the segments which
+   * were in flight at the last decrease so that a burst of losses in one
+   * window doesn't collapse it to 1.
+   * @param segment The segment number which timed out.
+   */
+  private void
+  decreaseWindow(long segment)
+  {
+    if (segment <= recoveryPoint_)
+      return;
+
+    windowSize_ = Math.max(1, windowSize_ / 2);
+    slowStartThreshold_ = Math.max(MIN_SLOW_START_THRESHOLD, windowSize_);
+    recoveryPoint_ = nextSegmentToRequest_ - 1;
+  }
+
+  /**
+   * Remove the pending Interests for segments after finalSegment_.
+   */
+  private void
+  cancelSegmentsAfterFinal()
+  {
+    for (Iterator i = segmentsInFlight_.entrySet().iterator(); i.hasNext(); ) {
+      java.util.Map.Entry entry = (java.util.Map.Entry)i.next();
+      if (((Long)entry.getKey()).longValue() > finalSegment_) {
+        face_.removePendingInterest
+          (((SegmentInFlight)entry.getValue()).pendingInterestId_);
+        i.remove();
+      }
+    }
+  }
+
+  /**
+   * Stop fetching, remove the pending Interests and call onError.
+   */
+  private void
+  fail(ErrorCode errorCode, String message)
+  {
+    isFinished_ = true;
+    for (Iterator i = segmentsInFlight_.values().iterator(); i.hasNext(); )
+      face_.removePendingInterest(((SegmentInFlight)i.next()).pendingInterestId_);
+    segmentsInFlight_.clear();
+
+    onError_.onError(errorCode, message);
   }
 
   /**
@@ -296,10 +898,52 @@ public class SegmentFetcher implements OnData, OnTimeout {
            name.get(-1).getValue().buf().get(0) == 0;
   }
 
+  /**
+   * A SegmentInFlight holds the pending Interest ID of a requested segment and
+   * the number of times it was requested again after a timeout.
+   */
+  private static class SegmentInFlight {
+    public SegmentInFlight(long pendingInterestId, int nRetries)
+    {
+      pendingInterestId_ = pendingInterestId;
+      nRetries_ = nRetries;
+    }
+
+    public final long pendingInterestId_;
+    public final int nRetries_;
+  }
+
+  private static final double MIN_SLOW_START_THRESHOLD = 2;
+  // The InterestLifetime that the Face uses if it is not specified.
+  private static final double DEFAULT_INTEREST_LIFETIME_MILLISECONDS = 4000.0;
+
   // Use a non-template ArrayList so it works with older Java compilers.
   private final ArrayList contentParts_ = new ArrayList(); // of Blob
+  // The segments which arrived before a missing segment.
+  private final HashMap receivedSegments_ = new HashMap(); // of Long => Blob
+  private final HashMap segmentsInFlight_ =
+    new HashMap(); // of Long => SegmentInFlight
   private final Face face_;
   private final VerifySegment verifySegment_;
-  private final OnComplete onComplete_;
+  // Only one of onComplete_, onSegmentContent_ or channel_ is set.
+  private OnComplete onComplete_ = null;
+  private OnSegmentContent onSegmentContent_ = null;
+  private WritableByteChannel channel_ = null;
+  private OnStreamComplete onStreamComplete_ = null;
+  private long nBytesDelivered_ = 0;
+  private final int maxBufferedSegments_;
+  private final int maxRetries_;
+  private final double retryBackoffMultiplier_;
   private final OnError onError_;
+  private final double maxWindowSize_;
+  private double windowSize_;
+  private double slowStartThreshold_;
+  private long recoveryPoint_ = -1;
+  private Interest baseInterest_;
+  private Name versionedPrefix_ = null;
+  private long nextSegmentToRequest_ = 0;
+  private long nextSegmentToDeliver_ = 0;
+  private long finalSegment_ = -1;
+  private int nFirstSegmentRetries_ = 0;
+  private boolean isFinished_ = false;
 }
@@ -0,0 +1,404 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.InterestFilter;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnInterestCallback;
+import net.named_data.jndn.OnRegisterFailed;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.security.KeyChain;
+import net.named_data.jndn.security.SecurityException;
+
+/**
+ * A SegmentPublisher is the producer counterpart of SegmentFetcher. It serves
+ * the content of a ByteBuffer or a file as segmented Data packets named
+ * /<prefix>/<version>/<segment>, where each segment has the FinalBlockId of
+ * the last segment. Instead of creating and signing all the segments in
+ * advance, a segment is read, signed and encoded only when an Interest for it
+ * arrives, and is kept in a cache of recently used segments which is limited
+ * by setMaxCachedSegments. So the memory is proportional to the working set
+ * of segments which consumers are fetching, not the size of the object.
+ *
+ * An Interest for /<prefix> (or /<prefix>/<version>) without a segment gets
+ * segment 0, so that SegmentFetcher can discover the version. A segment is
+ * only sent if its name matches the Interest selectors such as Exclude.
+ *
+ * The cache of signed segments is synchronized, so onInterest can be called
+ * from multiple threads, for example by a ThreadSafeFace with an Executor.
+ *
+ * Example:
+ *     SegmentPublisher publisher = new SegmentPublisher
+ *       (face, keyChain, keyChain.getDefaultCertificateName(),
+ *        new Name("/data/prefix"), content);
+ *     publisher.registerPrefix(onRegisterFailed);
+ */
+public class SegmentPublisher implements OnInterestCallback {
+  /**
+   * Create a SegmentPublisher to serve the content of a buffer. The version is
+   * the current time in milliseconds. Call registerPrefix to start answering
+   * Interests.
+   * @param face The Face to use to call registerPrefix and to send the Data.
+   * @param keyChain The KeyChain to sign each segment.
+   * @param certificateName The certificate name of the key to sign each
+   * segment. If this is null, sign with DigestSha256.
+   * @param prefix The name prefix, without the version. This copies the Name.
+   * @param content The content to serve from position to limit. This does not
+   * copy the buffer, so you should not change it while serving.
+   */
+  public SegmentPublisher
+    (Face face, KeyChain keyChain, Name certificateName, Name prefix,
+     ByteBuffer content)
+  {
+    this(face, keyChain, certificateName, prefix);
+    content_ = content.slice();
+    contentSize_ = content_.remaining();
+  }
+
+  /**
+   * Create a SegmentPublisher to serve the content of a file. The version is
+   * the current time in milliseconds. Call registerPrefix to start answering
+   * Interests. This reads the file only when a segment is needed.
+   * @param face The Face to use to call registerPrefix and to send the Data.
+   * @param keyChain The KeyChain to sign each segment.
+   * @param certificateName The certificate name of the key to sign each
+   * segment. If this is null, sign with DigestSha256.
+   * @param prefix The name prefix, without the version. This copies the Name.
+   * @param file The open file channel with the content to serve from position
+   * 0 to the size at the time of this call. This does not close the channel.
+   * @throws IOException For I/O error getting the file size.
+   */
+  public SegmentPublisher
+    (Face face, KeyChain keyChain, Name certificateName, Name prefix,
+     FileChannel file) throws IOException
+  {
+    this(face, keyChain, certificateName, prefix);
+    file_ = file;
+    contentSize_ = file.size();
+  }
+
+  private SegmentPublisher
+    (Face face, KeyChain keyChain, Name certificateName, Name prefix)
+  {
+    face_ = face;
+    keyChain_ = keyChain;
+    certificateName_ =
+      (certificateName == null ? null : new Name(certificateName));
+    prefix_ = new Name(prefix);
+    versionedPrefix_ = new Name(prefix).appendVersion
+      ((long)Common.getNowMilliseconds());
+  }
+
+  /**
+   * Set the maximum content size of each segment. You should call this before
+   * registerPrefix. The default is DEFAULT_SEGMENT_SIZE.
+   * @param segmentSize The segment size in bytes.
+   */
+  public final void
+  setSegmentSize(int segmentSize)
+  {
+    if (segmentSize <= 0)
+      throw new Error("SegmentPublisher: segmentSize must be positive");
+    synchronized (cache_) {
+      segmentSize_ = segmentSize;
+      cache_.clear();
+    }
+  }
+
+  public final int
+  getSegmentSize() { return segmentSize_; }
+
+  /**
+   * Set the FreshnessPeriod of each segment. You should call this before
+   * registerPrefix.
+   * @param freshnessPeriod The FreshnessPeriod in milliseconds, or -1 to not
+   * set it. The default is -1.
+   */
+  public final void
+  setFreshnessPeriod(double freshnessPeriod)
+  {
+    synchronized (cache_) {
+      freshnessPeriod_ = freshnessPeriod;
+      cache_.clear();
+    }
+  }
+
+  public final double
+  getFreshnessPeriod() { return freshnessPeriod_; }
+
+  /**
+   * Set the maximum number of signed segments to keep. When another segment is
+   * signed, the least recently used segment is removed.
+   * @param maxCachedSegments The maximum number of cached segments. If 0, sign
+   * each segment again for every Interest. The default is
+   * DEFAULT_MAX_CACHED_SEGMENTS.
+   */
+  public final void
+  setMaxCachedSegments(int maxCachedSegments)
+  {
+    if (maxCachedSegments < 0)
+      throw new Error("SegmentPublisher: maxCachedSegments must not be negative");
+    synchronized (cache_) {
+      maxCachedSegments_ = maxCachedSegments;
+      while (cache_.size() > maxCachedSegments_)
+        cache_.remove(cache_.keySet().iterator().next());
+    }
+  }
+
+  public final int
+  getMaxCachedSegments() { return maxCachedSegments_; }
+
+  /**
+   * Get the name prefix with the version, to which the segment number is
+   * appended.
+   * @return The versioned prefix. You should not modify the Name.
+   */
+  public final Name
+  getVersionedPrefix() { return versionedPrefix_; }
+
+  /**
+   * Get the number of segments, which is at least 1 even if the content is
+   * empty.
+   * @return The number of segments.
+   */
+  public final long
+  getSegmentCount()
+  {
+    return Math.max(1, (contentSize_ + segmentSize_ - 1) / segmentSize_);
+  }
+
+  /**
+   * Get the number of segments which were signed, for example to check the
+   * cache.
+   * @return The number of signed segments.
+   */
+  public final long
+  getSignedSegmentCount()
+  {
+    synchronized (cache_) {
+      return signedSegmentCount_;
+    }
+  }
+
+  /**
+   * Call registerPrefix on the Face given to the constructor for the prefix
+   * without the version, so that this answers Interests for the segments and
+   * for version discovery.
+   * @param onRegisterFailed If register prefix fails for any reason, this
+   * calls onRegisterFailed.onRegisterFailed(prefix).
+   * @throws IOException For I/O error in sending the registration request.
+   * @throws SecurityException If signing a command interest for NFD and cannot
+   * find the private key for the certificateName.
+   */
+  public final void
+  registerPrefix(OnRegisterFailed onRegisterFailed)
+    throws IOException, SecurityException
+  {
+    registeredPrefixId_ = face_.registerPrefix(prefix_, this, onRegisterFailed);
+  }
+
+  /**
+   * Call Face.removeRegisteredPrefix for the prefix given to registerPrefix and
+   * clear the cache of signed segments.
+   */
+  public final void
+  unregister()
+  {
+    if (registeredPrefixId_ >= 0) {
+      face_.removeRegisteredPrefix(registeredPrefixId_);
+      registeredPrefixId_ = -1;
+    }
+    synchronized (cache_) {
+      cache_.clear();
+    }
+  }
+
+  public final void
+  onInterest
+    (Name prefix, Interest interest, Face face, long interestFilterId,
+     InterestFilter filter)
+  {
+    Name name = interest.getName();
+    long segment;
+    if (name.size() > versionedPrefix_.size()) {
+      if (!versionedPrefix_.match(name))
+        // A different version.
+        return;
+      Name.Component component = name.get(versionedPrefix_.size());
+      if (!(component.getValue().size() >= 1 &&
+            component.getValue().buf().get(0) == 0))
+        // Not a segment number.
+        return;
+      try {
+        segment = component.toSegment();
+      } catch (EncodingException ex) {
+        return;
+      }
+      if (segment >= getSegmentCount())
+        return;
+    }
+    else {
+      if (!name.match(versionedPrefix_))
+        return;
+      // Version discovery.
+      segment = 0;
+    }
+
+    // Check the selectors, such as an Exclude of this version, before signing.
+    if (!interest.matchesName(new Name(versionedPrefix_).appendSegment(segment)))
+      return;
+
+    Blob encoding = getSegmentEncoding(segment);
+    if (encoding == null)
+      return;
+    try {
+      face.send(encoding);
+    } catch (IOException ex) {
+      Logger.getLogger(SegmentPublisher.class.getName()).log(Level.SEVERE, null, ex);
+    }
+  }
+
+  /**
+   * Get the encoding of the signed segment from the cache, or make it and add
+   * it to the cache. This signs without holding the lock on cache_, so two
+   * threads which miss the cache for the same segment may both sign it.
+   * @param segment The segment number.
+   * @return The Data encoding, or null for an error reading or signing.
+   */
+  private Blob
+  getSegmentEncoding(long segment)
+  {
+    Long key = new Long(segment);
+    double freshnessPeriod;
+    synchronized (cache_) {
+      Blob encoding = (Blob)cache_.get(key);
+      if (encoding != null)
+        return encoding;
+      freshnessPeriod = freshnessPeriod_;
+    }
+
+    Data data = new Data(new Name(versionedPrefix_).appendSegment(segment));
+    try {
+      data.setContent(readSegment(segment));
+    } catch (IOException ex) {
+      Logger.getLogger(SegmentPublisher.class.getName()).log
+        (Level.SEVERE, "Error reading segment " + segment, ex);
+      return null;
+    }
+    data.getMetaInfo().setFinalBlockId
+      (Name.Component.fromNumberWithMarker(getSegmentCount() - 1, 0x00));
+    if (freshnessPeriod >= 0)
+      data.getMetaInfo().setFreshnessPeriod(freshnessPeriod);
+
+    try {
+      if (certificateName_ == null)
+        keyChain_.signWithSha256(data);
+      else
+        keyChain_.sign(data, certificateName_);
+    } catch (SecurityException ex) {
+      Logger.getLogger(SegmentPublisher.class.getName()).log
+        (Level.SEVERE, "Error signing segment " + segment, ex);
+      return null;
+    }
+
+    // wireEncode returns the encoding from signing.
+    Blob encoding = data.wireEncode();
+    synchronized (cache_) {
+      ++signedSegmentCount_;
+      if (maxCachedSegments_ > 0)
+        cache_.put(key, encoding);
+    }
+    return encoding;
+  }
+
+  /**
+   * Read the content of the segment from content_ or file_.
+   * @param segment The segment number.
+   * @return The segment content.
+   * @throws IOException For I/O error reading the file.
+   */
+  private Blob
+  readSegment(long segment) throws IOException
+  {
+    long offset = segment * segmentSize_;
+    int size = (int)Math.min(segmentSize_, contentSize_ - offset);
+
+    if (content_ != null) {
+      ByteBuffer buffer = content_.duplicate();
+      buffer.position((int)offset);
+      buffer.limit((int)offset + size);
+      // The segment is copied into the Data encoding, so don't copy here.
+      return new Blob(buffer, false);
+    }
+    else {
+      ByteBuffer buffer = ByteBuffer.allocate(size);
+      while (buffer.hasRemaining()) {
+        if (file_.read(buffer, offset + buffer.position()) < 0)
+          throw new IOException
+            ("SegmentPublisher: Unexpected end of file reading segment " + segment);
+      }
+      buffer.flip();
+      return new Blob(buffer, false);
+    }
+  }
+
+  /**
+   * The default for setSegmentSize.
+   */
+  public static final int DEFAULT_SEGMENT_SIZE = 8000;
+
+  /**
+   * The default for setMaxCachedSegments.
+   */
+  public static final int DEFAULT_MAX_CACHED_SEGMENTS = 64;
+
+  private final Face face_;
+  private final KeyChain keyChain_;
+  private final Name certificateName_;
+  private final Name prefix_;
+  private final Name versionedPrefix_;
+  private ByteBuffer content_ = null;
+  private FileChannel file_ = null;
+  private long contentSize_;
+  private int segmentSize_ = DEFAULT_SEGMENT_SIZE;
+  private double freshnessPeriod_ = -1;
+  private int maxCachedSegments_ = DEFAULT_MAX_CACHED_SEGMENTS;
+  private long signedSegmentCount_ = 0;
+  private long registeredPrefixId_ = -1;
+  // Use LinkedHashMap without generics so it works with older Java compilers.
+  // This is in access order so that the least recently used is removed. Hold
+  // its lock to use it or to change the fields which its segments depend on.
+  private final LinkedHashMap cache_ = // of Long => Blob
+    new LinkedHashMap(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry eldest) {
+        return size() > maxCachedSegments_;
+      }
+    };
+}
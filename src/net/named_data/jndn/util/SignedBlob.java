@@ -43,8 +43,11 @@ public class SignedBlob extends Blob {
   SignedBlob(SignedBlob signedBlob)
   {
     super(signedBlob.buf(), false);
-    signedPortionBeginOffset_ = signedBlob.signedPortionBeginOffset_;
-    signedPortionEndOffset_ = signedBlob.signedPortionEndOffset_;
+    // The slice starts at 0, so adjust the offsets if the position of the
+    //   other buffer is not 0, as for a BorrowedSignedBlob.
+    int position = (signedBlob.isNull() ? 0 : signedBlob.buf().position());
+    signedPortionBeginOffset_ = signedBlob.signedPortionBeginOffset_ - position;
+    signedPortionEndOffset_ = signedBlob.signedPortionEndOffset_ - position;
     setSignedBuffer();
   }
 
@@ -118,7 +121,7 @@ public class SignedBlob extends Blob {
   signedSize()
   {
     if (signedBuffer_ != null)
-      return signedBuffer_.limit();
+      return signedBuffer_.remaining();
     else
       return 0;
   }
@@ -159,6 +162,27 @@ public class SignedBlob extends Blob {
       signedBuffer_ = null;
   }
 
+  /**
+   * Replace the buffer and the signed portion. This is only called by
+   * BorrowedSignedBlob which reuses the object for each received packet.
+   * @param buffer The new buffer.
+   * @param signedBuffer The view of the signed portion of buffer.
+   * @param signedPortionBeginOffset The index in buffer of the beginning of the
+   * signed portion.
+   * @param signedPortionEndOffset The index in buffer of the end of the signed
+   * portion.
+   */
+  final void
+  reset
+    (ByteBuffer buffer, ByteBuffer signedBuffer, int signedPortionBeginOffset,
+     int signedPortionEndOffset)
+  {
+    reset(buffer);
+    signedBuffer_ = signedBuffer;
+    signedPortionBeginOffset_ = signedPortionBeginOffset;
+    signedPortionEndOffset_ = signedPortionEndOffset;
+  }
+
   private ByteBuffer signedBuffer_;
   private int signedPortionBeginOffset_;
   private int signedPortionEndOffset_;
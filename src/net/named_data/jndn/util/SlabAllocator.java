@@ -0,0 +1,374 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.util;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * A SlabAllocator stores byte arrays, such as Data packet encodings, in large
+ * direct ByteBuffer slabs outside of the Java heap, so that a large cache does
+ * not fill the old generation and make long garbage collection pauses. Each
+ * slab is divided into chunks of one size class, where each size class is
+ * about 1.25 times the previous one, so that an allocation wastes at most
+ * about 20% of its chunk. A freed chunk is reused by the next allocation of
+ * the same size class. When all the chunks of a slab are freed, the slab goes
+ * back to a pool of free slabs which any size class can reuse, so that a
+ * change in the mix of sizes does not leave memory stranded in one size class.
+ * Call releaseFreeSlabs to let the pooled slab memory be reclaimed. An
+ * allocation is identified by a handle which is a long, so that the on-heap
+ * record of an allocation is small. This class is not thread-safe.
+ */
+public class SlabAllocator {
+  /**
+   * Create a SlabAllocator with the given slab size.
+   * @param slabSize The size in bytes of each slab. This must be at least
+   * MAX_CHUNK_SIZE.
+   * @param maxSlabs The maximum number of slabs to allocate, or -1 for no
+   * limit. When all slabs are allocated, allocate returns -1 for a size class
+   * which has no free chunks and there is no free slab.
+   * @throws Error if slabSize is less than MAX_CHUNK_SIZE.
+   */
+  public SlabAllocator(int slabSize, int maxSlabs)
+  {
+    if (slabSize < MAX_CHUNK_SIZE)
+      throw new Error
+        ("SlabAllocator: The slab size must be at least MAX_CHUNK_SIZE");
+    slabSize_ = slabSize;
+    maxSlabs_ = maxSlabs;
+
+    // Make the size classes, rounded up to a multiple of 8.
+    ArrayList chunkSizes = new ArrayList(); // of Integer
+    int chunkSize = MIN_CHUNK_SIZE;
+    while (chunkSize < MAX_CHUNK_SIZE) {
+      chunkSizes.add(chunkSize);
+      chunkSize = Math.max(chunkSize + 8, ((int)(chunkSize * 1.25) + 7) & ~7);
+    }
+    chunkSizes.add(MAX_CHUNK_SIZE);
+
+    chunkSizes_ = new int[chunkSizes.size()];
+    for (int i = 0; i < chunkSizes_.length; ++i)
+      chunkSizes_[i] = (Integer)chunkSizes.get(i);
+    partialSlabs_ = new Slab[chunkSizes_.length];
+  }
+
+  /**
+   * Create a SlabAllocator with DEFAULT_SLAB_SIZE and no limit on the number
+   * of slabs.
+   */
+  public SlabAllocator()
+  {
+    this(DEFAULT_SLAB_SIZE, -1);
+  }
+
+  /**
+   * Copy the bytes to a chunk in a slab.
+   * @param data The bytes to copy from position() to limit(). This does not
+   * change the position.
+   * @return The handle for the chunk, or -1 if data.remaining() is greater
+   * than MAX_CHUNK_SIZE or the maximum number of slabs is reached.
+   */
+  public final long
+  allocate(ByteBuffer data)
+  {
+    int length = data.remaining();
+    if (length > MAX_CHUNK_SIZE)
+      return -1;
+    int sizeClass = getSizeClass(length);
+    int chunkSize = chunkSizes_[sizeClass];
+
+    Slab slab = partialSlabs_[sizeClass];
+    if (slab == null) {
+      slab = takeFreeSlab(sizeClass);
+      if (slab == null)
+        return -1;
+    }
+
+    int offset;
+    if (slab.nFreeOffsets_ > 0)
+      offset = slab.freeOffsets_[--slab.nFreeOffsets_];
+    else {
+      offset = slab.nextOffset_;
+      slab.nextOffset_ += chunkSize;
+    }
+    ++slab.nUsedChunks_;
+    if (slab.nFreeOffsets_ == 0 && slab.nextOffset_ + chunkSize > slabSize_)
+      // The slab is full.
+      unlinkPartial(slab);
+
+    ByteBuffer chunk = slab.buffer_.duplicate();
+    chunk.position(offset);
+    chunk.put(data.duplicate());
+    usedBytes_ += chunkSize;
+    return ((long)slab.index_ << 32) | offset;
+  }
+
+  /**
+   * Free the chunk so that it can be reused by allocate. If this was the last
+   * used chunk in its slab, return the slab to the pool of free slabs.
+   * @param handle The handle from allocate. You must not use the handle after
+   * this.
+   */
+  public final void
+  free(long handle)
+  {
+    Slab slab = (Slab)slabs_.get(getSlabIndex(handle));
+    int chunkSize = chunkSizes_[slab.sizeClass_];
+    usedBytes_ -= chunkSize;
+
+    if (--slab.nUsedChunks_ == 0) {
+      // Return the empty slab to the pool.
+      if (slab.isPartial_)
+        unlinkPartial(slab);
+      slab.sizeClass_ = -1;
+      freeSlabs_.add(slab);
+      return;
+    }
+
+    if (slab.nFreeOffsets_ >= slab.freeOffsets_.length) {
+      int[] newFreeOffsets = new int[Math.max(16, slab.freeOffsets_.length * 2)];
+      System.arraycopy
+        (slab.freeOffsets_, 0, newFreeOffsets, 0, slab.nFreeOffsets_);
+      slab.freeOffsets_ = newFreeOffsets;
+    }
+    slab.freeOffsets_[slab.nFreeOffsets_++] = getOffset(handle);
+    if (!slab.isPartial_)
+      // The slab was full, so it has room again.
+      linkPartial(slab);
+  }
+
+  /**
+   * Get a read-only ByteBuffer for the bytes in the chunk, which shares the
+   * slab memory without copying. The ByteBuffer is only valid until free is
+   * called for the handle.
+   * @param handle The handle from allocate.
+   * @param length The number of bytes which were given to allocate.
+   * @return The ByteBuffer with position() at the first byte and limit()
+   * after the last.
+   */
+  public final ByteBuffer
+  getBuffer(long handle, int length)
+  {
+    ByteBuffer buffer =
+      ((Slab)slabs_.get(getSlabIndex(handle))).buffer_.asReadOnlyBuffer();
+    int offset = getOffset(handle);
+    buffer.limit(offset + length);
+    buffer.position(offset);
+    return buffer;
+  }
+
+  /**
+   * Release the memory of the slabs in the pool of free slabs so that it can be
+   * reclaimed by the garbage collector. A later allocate which needs a new slab
+   * allocates it again.
+   */
+  public final void
+  releaseFreeSlabs()
+  {
+    for (int i = 0; i < freeSlabs_.size(); ++i) {
+      Slab slab = (Slab)freeSlabs_.get(i);
+      slab.buffer_ = null;
+      releasedSlabs_.add(slab);
+    }
+    nSlabBuffers_ -= freeSlabs_.size();
+    freeSlabs_.clear();
+  }
+
+  /**
+   * Get the total size of the slabs which have been allocated and not
+   * released, including the slabs in the pool of free slabs.
+   * @return The number of bytes.
+   */
+  public final long
+  getSlabBytes() { return (long)nSlabBuffers_ * slabSize_; }
+
+  /**
+   * Get the number of slabs in the pool of free slabs, which have no used
+   * chunks and can be reused by any size class.
+   * @return The number of free slabs.
+   */
+  public final int
+  getFreeSlabCount() { return freeSlabs_.size(); }
+
+  /**
+   * Get the total size of the chunks which are allocated and not freed,
+   * including the unused bytes at the end of each chunk.
+   * @return The number of bytes.
+   */
+  public final long
+  getUsedBytes() { return usedBytes_; }
+
+  /**
+   * Get the number of size classes.
+   * @return The number of size classes.
+   */
+  public final int
+  getSizeClassCount() { return chunkSizes_.length; }
+
+  /**
+   * Get the chunk size of the size class.
+   * @param sizeClass The size class from 0 to getSizeClassCount() - 1.
+   * @return The chunk size in bytes.
+   */
+  public final int
+  getChunkSize(int sizeClass) { return chunkSizes_[sizeClass]; }
+
+  /**
+   * A Slab holds the direct ByteBuffer of one slab and its chunks of one size
+   * class. A slab which has unused chunks is in the doubly-linked list of
+   * partial slabs of its size class.
+   */
+  private static class Slab {
+    public Slab(int index)
+    {
+      index_ = index;
+    }
+
+    public final int index_;
+    // This is null if the slab was released.
+    public ByteBuffer buffer_ = null;
+    // This is -1 if the slab is in the pool of free slabs.
+    public int sizeClass_ = -1;
+    // The offset of the first chunk which was never allocated.
+    public int nextOffset_ = 0;
+    public int nUsedChunks_ = 0;
+    // The stack of freed chunk offsets.
+    public int[] freeOffsets_ = new int[0];
+    public int nFreeOffsets_ = 0;
+    public boolean isPartial_ = false;
+    public Slab previousPartial_ = null;
+    public Slab nextPartial_ = null;
+  }
+
+  /**
+   * Get a slab from the pool of free slabs or allocate a new one, and make it
+   * the first partial slab of the size class.
+   * @param sizeClass The size class for the chunks of the slab.
+   * @return The slab, or null if the pool is empty and the maximum number of
+   * slabs is reached.
+   */
+  private Slab
+  takeFreeSlab(int sizeClass)
+  {
+    Slab slab;
+    if (freeSlabs_.size() > 0)
+      slab = (Slab)freeSlabs_.remove(freeSlabs_.size() - 1);
+    else {
+      if (maxSlabs_ >= 0 && nSlabBuffers_ >= maxSlabs_)
+        return null;
+      if (releasedSlabs_.size() > 0)
+        slab = (Slab)releasedSlabs_.remove(releasedSlabs_.size() - 1);
+      else {
+        slab = new Slab(slabs_.size());
+        slabs_.add(slab);
+      }
+      slab.buffer_ = ByteBuffer.allocateDirect(slabSize_);
+      ++nSlabBuffers_;
+    }
+
+    slab.sizeClass_ = sizeClass;
+    slab.nextOffset_ = 0;
+    slab.nFreeOffsets_ = 0;
+    linkPartial(slab);
+    return slab;
+  }
+
+  private void
+  linkPartial(Slab slab)
+  {
+    Slab head = partialSlabs_[slab.sizeClass_];
+    slab.previousPartial_ = null;
+    slab.nextPartial_ = head;
+    if (head != null)
+      head.previousPartial_ = slab;
+    partialSlabs_[slab.sizeClass_] = slab;
+    slab.isPartial_ = true;
+  }
+
+  private void
+  unlinkPartial(Slab slab)
+  {
+    if (slab.previousPartial_ == null)
+      partialSlabs_[slab.sizeClass_] = slab.nextPartial_;
+    else
+      slab.previousPartial_.nextPartial_ = slab.nextPartial_;
+    if (slab.nextPartial_ != null)
+      slab.nextPartial_.previousPartial_ = slab.previousPartial_;
+    slab.previousPartial_ = null;
+    slab.nextPartial_ = null;
+    slab.isPartial_ = false;
+  }
+
+  /**
+   * Find the smallest size class whose chunk size is at least length.
+   */
+  private int
+  getSizeClass(int length)
+  {
+    // Binary search since there are about 25 size classes.
+    int low = 0;
+    int high = chunkSizes_.length - 1;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (chunkSizes_[middle] < length)
+        low = middle + 1;
+      else
+        high = middle;
+    }
+    return low;
+  }
+
+  private static int
+  getSlabIndex(long handle) { return (int)(handle >>> 32); }
+
+  private static int
+  getOffset(long handle) { return (int)handle; }
+
+  /**
+   * The chunk size of the smallest size class.
+   */
+  public static final int MIN_CHUNK_SIZE = 64;
+  /**
+   * The chunk size of the largest size class, which is the maximum NDN packet
+   * size.
+   */
+  public static final int MAX_CHUNK_SIZE = Common.MAX_NDN_PACKET_SIZE;
+  /**
+   * The default size of each slab.
+   */
+  public static final int DEFAULT_SLAB_SIZE = 1024 * 1024;
+
+  private final int slabSize_;
+  private final int maxSlabs_;
+  private final int[] chunkSizes_;
+  // Use ArrayList without generics so it works with older Java compilers.
+  // The index of a Slab in slabs_ is its index in a handle.
+  private final ArrayList slabs_ = new ArrayList(); // of Slab
+  // The empty slabs which any size class can reuse.
+  private final ArrayList freeSlabs_ = new ArrayList(); // of Slab
+  // The slabs whose buffer was released by releaseFreeSlabs, so that their
+  // index can be reused.
+  private final ArrayList releasedSlabs_ = new ArrayList(); // of Slab
+  // For each size class, the first slab in the list of slabs which have unused
+  // chunks, or null if none.
+  private final Slab[] partialSlabs_;
+  private int nSlabBuffers_ = 0;
+  private long usedBytes_ = 0;
+}
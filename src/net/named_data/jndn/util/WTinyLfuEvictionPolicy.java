@@ -0,0 +1,257 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import net.named_data.jndn.Name;
+
+/**
+ * A WTinyLfuEvictionPolicy is an EvictionPolicy which implements Window
+ * TinyLFU. A new entry goes into a small LRU window which is about 1% of the
+ * entries. When an entry leaves the window, it is only admitted to the main
+ * area if its name was requested more often than the main area's eviction
+ * victim, according to a count-min sketch of the name frequencies. This keeps
+ * popular content when a scan of new names passes through the cache. The main
+ * area is a segmented LRU where an entry which is accessed again moves from the
+ * probation segment to the protected segment (about 80% of the main area).
+ * The sketch counters are halved periodically so that old popularity fades.
+ *
+ * While the cache fills up, nothing is evicted so the window keeps all the new
+ * entries. Instead of moving them all to the main area at the first eviction,
+ * each selectVictim moves at most MAX_WINDOW_MOVES of them so that each call
+ * takes constant time, and the window shrinks to its target over the following
+ * evictions. Halving the sketch counters visits the whole sketch, so add and
+ * access take amortized constant time.
+ */
+public class WTinyLfuEvictionPolicy implements EvictionPolicy {
+  public void
+  add(Object entry, Name name)
+  {
+    int hash = name.hashCode();
+    sketch_.ensureCapacity(size() + 1);
+    sketch_.increment(hash);
+    window_.put(entry, new Integer(hash));
+  }
+
+  public void
+  access(Object entry, Name name)
+  {
+    Integer hash = (Integer)window_.get(entry);
+    if (hash == null) {
+      hash = (Integer)protected_.get(entry);
+      if (hash == null) {
+        hash = (Integer)probation_.remove(entry);
+        if (hash == null)
+          // Not tracked.
+          return;
+
+        // Promote to the protected segment.
+        protected_.put(entry, hash);
+        int protectedTarget = (int)((probation_.size() + protected_.size()) *
+          PROTECTED_FRACTION);
+        while (protected_.size() > Math.max(1, protectedTarget)) {
+          // Demote the least recently used protected entry.
+          Map.Entry eldest = eldest(protected_);
+          protected_.remove(eldest.getKey());
+          probation_.put(eldest.getKey(), eldest.getValue());
+        }
+      }
+    }
+
+    sketch_.increment(hash.intValue());
+  }
+
+  public void
+  remove(Object entry)
+  {
+    if (window_.remove(entry) == null) {
+      if (probation_.remove(entry) == null)
+        protected_.remove(entry);
+    }
+  }
+
+  public Object
+  selectVictim()
+  {
+    int size = size();
+    if (size == 0)
+      return null;
+
+    int windowTarget = Math.max(1, (int)(size * WINDOW_FRACTION));
+    // The room in the main area after evicting one entry.
+    int mainTarget = size - 1 - windowTarget;
+    int nMoves = 0;
+    while (window_.size() > windowTarget) {
+      Map.Entry candidate = eldest(window_);
+      int mainSize = probation_.size() + protected_.size();
+      if (mainSize < mainTarget && nMoves < MAX_WINDOW_MOVES) {
+        // There is room, so move the candidate to the main area.
+        window_.remove(candidate.getKey());
+        probation_.put(candidate.getKey(), candidate.getValue());
+        ++nMoves;
+        continue;
+      }
+
+      Map.Entry victim = mainVictim();
+      if (victim == null)
+        return candidate.getKey();
+      if (sketch_.frequency(((Integer)candidate.getValue()).intValue()) >
+          sketch_.frequency(((Integer)victim.getValue()).intValue())) {
+        // Admit the candidate and evict the main victim.
+        window_.remove(candidate.getKey());
+        probation_.put(candidate.getKey(), candidate.getValue());
+        return victim.getKey();
+      }
+      else
+        // Reject the candidate.
+        return candidate.getKey();
+    }
+
+    Map.Entry victim = mainVictim();
+    if (victim != null)
+      return victim.getKey();
+    return eldest(window_).getKey();
+  }
+
+  /**
+   * Get the number of tracked entries.
+   * @return The number of entries.
+   */
+  public final int
+  size() { return window_.size() + probation_.size() + protected_.size(); }
+
+  /**
+   * Get the least recently used entry of the probation segment, or of the
+   * protected segment if probation is empty.
+   * @return The map entry, or null if the main area is empty.
+   */
+  private Map.Entry
+  mainVictim()
+  {
+    if (!probation_.isEmpty())
+      return eldest(probation_);
+    if (!protected_.isEmpty())
+      return eldest(protected_);
+    return null;
+  }
+
+  private static Map.Entry
+  eldest(LinkedHashMap map)
+  {
+    return (Map.Entry)map.entrySet().iterator().next();
+  }
+
+  /**
+   * A FrequencySketch is a count-min sketch with 4 rows of small counters which
+   * estimates how often a hash was incremented.
+   */
+  private static class FrequencySketch {
+    /**
+     * Make sure the width is at least WIDTH_FACTOR times the number of entries,
+     * so that the estimates stay accurate. The width is a power of 2 and a
+     * hash's index in a row is its low bits, so when the width grows, each new
+     * counter starts with the value of the old counter whose index has the same
+     * low bits. This keeps the estimates (which may be more than the true
+     * count, as before).
+     * @param nEntries The number of entries in the cache.
+     */
+    public final void
+    ensureCapacity(int nEntries)
+    {
+      int minWidth = Math.max(nEntries * WIDTH_FACTOR, MIN_WIDTH);
+      if (minWidth <= width_)
+        return;
+
+      int newWidth = Integer.highestOneBit(minWidth - 1) << 1;
+      byte[] newTable = new byte[DEPTH * newWidth];
+      if (width_ > 0) {
+        for (int row = 0; row < DEPTH; ++row) {
+          for (int i = 0; i < newWidth; ++i)
+            newTable[row * newWidth + i] = table_[row * width_ + (i & (width_ - 1))];
+        }
+      }
+
+      width_ = newWidth;
+      table_ = newTable;
+    }
+
+    public final void
+    increment(int hash)
+    {
+      for (int i = 0; i < DEPTH; ++i) {
+        int index = indexOf(hash, i);
+        if (table_[index] < MAX_COUNT)
+          ++table_[index];
+      }
+
+      // The sample size is SAMPLE_SIZE_FACTOR times the number of entries.
+      if (++nIncrements_ >= SAMPLE_SIZE_FACTOR * (width_ / WIDTH_FACTOR)) {
+        // Age the counts so that old popularity fades.
+        for (int i = 0; i < table_.length; ++i)
+          table_[i] >>= 1;
+        nIncrements_ /= 2;
+      }
+    }
+
+    public final int
+    frequency(int hash)
+    {
+      int result = MAX_COUNT;
+      for (int i = 0; i < DEPTH; ++i)
+        result = Math.min(result, table_[indexOf(hash, i)]);
+      return result;
+    }
+
+    private int
+    indexOf(int hash, int row)
+    {
+      int h = hash * SEEDS[row];
+      h ^= h >>> 16;
+      return row * width_ + (h & (width_ - 1));
+    }
+
+    private static final int DEPTH = 4;
+    private static final int MIN_WIDTH = 64;
+    private static final int WIDTH_FACTOR = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int SAMPLE_SIZE_FACTOR = 10;
+    private static final int[] SEEDS = new int[]
+      { 0x9E3779B1, 0x85EBCA77, 0xC2B2AE3D, 0x27D4EB2F };
+
+    private int width_ = 0;
+    private byte[] table_ = new byte[0];
+    private int nIncrements_ = 0;
+  }
+
+  private static final double WINDOW_FRACTION = 0.01;
+  // The maximum number of window entries which selectVictim moves to the main
+  // area without an admission check.
+  private static final int MAX_WINDOW_MOVES = 2;
+  private static final double PROTECTED_FRACTION = 0.8;
+
+  // Use LinkedHashMap without generics so it works with older Java compilers.
+  // Each is in access order so that the first key is the least recently used.
+  // The value is the Integer hash of the entry's name.
+  private final LinkedHashMap window_ = new LinkedHashMap(16, 0.75f, true);
+  private final LinkedHashMap probation_ = new LinkedHashMap(16, 0.75f, true);
+  private final LinkedHashMap protected_ = new LinkedHashMap(16, 0.75f, true);
+  private final FrequencySketch sketch_ = new FrequencySketch();
+}
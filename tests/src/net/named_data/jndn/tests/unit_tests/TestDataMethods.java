@@ -31,6 +31,8 @@ import net.named_data.jndn.KeyLocatorType;
 import net.named_data.jndn.Name;
 import net.named_data.jndn.Sha256WithRsaSignature;
 import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.TlvWireFormat;
+import net.named_data.jndn.encoding.tlv.TlvDecoder;
 import net.named_data.jndn.security.KeyChain;
 import net.named_data.jndn.security.KeyType;
 import net.named_data.jndn.security.OnVerified;
@@ -41,8 +43,10 @@ import net.named_data.jndn.security.identity.MemoryIdentityStorage;
 import net.named_data.jndn.security.identity.MemoryPrivateKeyStorage;
 import net.named_data.jndn.security.policy.SelfVerifyPolicyManager;
 import net.named_data.jndn.util.Blob;
+import net.named_data.jndn.util.SignedBlob;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 import org.junit.Before;
@@ -451,6 +455,124 @@ public class TestDataMethods {
                  dumpData(reDecodedData), initialDump);
   }
 
+  @Test
+  public void
+  testZeroCopyDecode() throws EncodingException
+  {
+    // Use a Blob which does not copy codedData so that we can change its bytes
+    //   to check whether the decoded fields share them.
+    ByteBuffer buffer = ByteBuffer.allocate(codedData.remaining());
+    buffer.put(codedData.duplicate());
+    buffer.flip();
+    Blob input = new Blob(buffer, false);
+
+    Data data = new Data();
+    data.wireDecode(input, TlvWireFormat.get(), false);
+    assertEquals("Zero-copy decode does not match original dump",
+                 dumpData(data), initialDump);
+    assertTrue("The decoded content should be read-only",
+               data.getContent().buf().isReadOnly());
+
+    Data copiedData = new Data();
+    copiedData.wireDecode(input, TlvWireFormat.get(), true);
+
+    // Change the first byte of the content in the input.
+    int contentIndex = indexOf(buffer, data.getContent().buf());
+    buffer.put(contentIndex, (byte)(buffer.get(contentIndex) + 1));
+    assertEquals("The zero-copy content should share the input bytes",
+                 buffer.get(contentIndex), data.getContent().buf().get(0));
+    assertTrue("The copied content should not change",
+               buffer.get(contentIndex) != copiedData.getContent().buf().get(0));
+  }
+
+  @Test
+  public void
+  testLazyDecode() throws EncodingException
+  {
+    Blob input = new Blob(codedData, false);
+    Data data = new Data();
+    data.wireDecodeLazy(input);
+    assertTrue("The data should be lazy", data.isLazy());
+    assertEquals(new Name("/ndn/abc"), data.getName());
+    assertTrue("getName should not decode the other fields", data.isLazy());
+    assertTrue("wireEncode of the unmodified data should return the input",
+               data.wireEncode().equals(input));
+    assertEquals("The signed portion should match a full decode",
+                 reDecodedSignedPortion(input),
+                 data.wireEncode().signedBuf());
+    assertTrue("wireEncode should not decode the other fields", data.isLazy());
+
+    assertEquals("Lazily decoded data does not match original dump",
+                 dumpData(data), initialDump);
+    assertTrue("Getting the fields should decode them", !data.isLazy());
+    assertTrue("wireEncode should still return the input",
+               data.wireEncode().equals(input));
+
+    // Setting the content should re-encode.
+    data.setContent(new Blob("changed"));
+    assertTrue("wireEncode should encode the changed data",
+               !data.wireEncode().equals(input));
+  }
+
+  @Test
+  public void
+  testDecodeBorrowed() throws EncodingException
+  {
+    TlvDecoder decoder = new TlvDecoder();
+    int[] signedPortionBeginOffset = new int[1];
+    int[] signedPortionEndOffset = new int[1];
+    Data data = new Data();
+
+    decoder.reset(codedData);
+    TlvWireFormat.get().decodeDataBorrowed
+      (data, decoder, signedPortionBeginOffset, signedPortionEndOffset);
+    assertEquals("Borrowed decode does not match original dump",
+                 dumpData(data), initialDump);
+    Blob content = data.getContent();
+
+    // Decode a different packet into the same Data.
+    Data freshData = new Data(new Name("/test/borrowed"));
+    freshData.setContent(new Blob("other content"));
+    freshData.getSignature().setSignature(new Blob(new byte[] { 1, 2, 3 }));
+    SignedBlob encoding = freshData.wireEncode();
+    decoder.reset(encoding.buf());
+    TlvWireFormat.get().decodeDataBorrowed
+      (data, decoder, signedPortionBeginOffset, signedPortionEndOffset);
+    assertEquals(new Name("/test/borrowed"), data.getName());
+    assertTrue("The content should be the new content",
+               data.getContent().equals(new Blob("other content")));
+    assertSame("The content Blob should be reused", content, data.getContent());
+    ByteBuffer signedPortion = encoding.buf().duplicate();
+    signedPortion.limit(signedPortionEndOffset[0]);
+    signedPortion.position(signedPortionBeginOffset[0]);
+    assertEquals("The signed portion should match",
+                 encoding.signedBuf(), signedPortion);
+  }
+
+  private static ByteBuffer
+  reDecodedSignedPortion(Blob input) throws EncodingException
+  {
+    Data data = new Data();
+    data.wireDecode(input);
+    return data.wireEncode().signedBuf();
+  }
+
+  /**
+   * Find the index of the bytes of value in buffer.
+   */
+  private static int
+  indexOf(ByteBuffer buffer, ByteBuffer value)
+  {
+    for (int i = 0; i + value.remaining() <= buffer.limit(); ++i) {
+      ByteBuffer slice = buffer.duplicate();
+      slice.position(i);
+      slice.limit(i + value.remaining());
+      if (slice.equals(value))
+        return i;
+    }
+    return -1;
+  }
+
   @Test
   public void
   testEmptySignature()
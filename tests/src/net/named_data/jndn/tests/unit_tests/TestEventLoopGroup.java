@@ -0,0 +1,121 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.EventLoopGroup;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.ThreadSafeFace;
+import net.named_data.jndn.transport.TcpTransport;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TestEventLoopGroup {
+  @Test
+  public void
+  testRoundRobin() throws Exception
+  {
+    EventLoopGroup group = new EventLoopGroup(2);
+    assertEquals(2, group.size());
+    assertSame(group.get(0), group.next());
+    assertSame(group.get(1), group.next());
+    assertSame(group.get(0), group.next());
+    group.shutdown();
+  }
+
+  @Test
+  public void
+  testManyTcpFaces() throws Exception
+  {
+    final int nFaces = 20;
+    EventLoopGroup group = new EventLoopGroup(2);
+    ServerSocketChannel server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+    int port = server.socket().getLocalPort();
+
+    final CountDownLatch done = new CountDownLatch(nFaces);
+    final AtomicInteger nTimeouts = new AtomicInteger();
+    OnData onData = new OnData() {
+      public void onData(Interest interest, Data data) {
+        done.countDown();
+      }
+    };
+    OnTimeout onTimeout = new OnTimeout() {
+      public void onTimeout(Interest interest) {
+        nTimeouts.incrementAndGet();
+      }
+    };
+
+    ThreadSafeFace[] faces = new ThreadSafeFace[nFaces];
+    SocketChannel[] peers = new SocketChannel[nFaces];
+    for (int i = 0; i < nFaces; ++i) {
+      faces[i] = group.newFace
+        (new TcpTransport(), new TcpTransport.ConnectionInfo("127.0.0.1", port),
+         null);
+      Interest interest = new Interest(new Name("/test").append("" + i));
+      interest.setInterestLifetimeMilliseconds(10000.0);
+      faces[i].expressInterest(interest, onData, onTimeout);
+      // The face connects when the loop runs expressInterest.
+      peers[i] = server.accept();
+    }
+
+    // Answer each face with a Data packet that matches its Interest.
+    for (int i = 0; i < nFaces; ++i) {
+      ByteBuffer encoding = new Data
+        (new Name("/test").append("" + i)).wireEncode().buf();
+      while (encoding.hasRemaining())
+        peers[i].write(encoding);
+    }
+
+    assertTrue("Expected onData for every face",
+               done.await(10, TimeUnit.SECONDS));
+    assertEquals("Expected no timeouts", 0, nTimeouts.get());
+
+    // The loop should also wake up for interest timeouts.
+    final CountDownLatch timedOut = new CountDownLatch(1);
+    Interest interest = new Interest(new Name("/timeout"));
+    interest.setInterestLifetimeMilliseconds(50.0);
+    faces[0].expressInterest(interest, onData, new OnTimeout() {
+      public void onTimeout(Interest interest) {
+        timedOut.countDown();
+      }
+    });
+    assertTrue("Expected the interest to time out",
+               timedOut.await(5, TimeUnit.SECONDS));
+
+    faces[0].shutdown();
+    group.shutdown();
+    for (int i = 0; i < nFaces; ++i)
+      peers[i].close();
+    server.close();
+  }
+}
@@ -0,0 +1,185 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import javax.management.ObjectName;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.FaceMetrics;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.ThreadSafeFace;
+import net.named_data.jndn.transport.TcpTransport;
+import net.named_data.jndn.util.Histogram;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TestFaceMetrics {
+  @Test
+  public void
+  testHistogram()
+  {
+    Histogram histogram = new Histogram(new double[] { 10, 20, 30 });
+    for (int i = 1; i <= 10; ++i)
+      histogram.record(i);
+    histogram.record(15);
+    histogram.record(100);
+
+    assertEquals(4, histogram.getBucketCount());
+    assertEquals(10, histogram.getBucketValueCount(0));
+    assertEquals(1, histogram.getBucketValueCount(1));
+    assertEquals(0, histogram.getBucketValueCount(2));
+    assertEquals(1, histogram.getBucketValueCount(3));
+    assertEquals(12, histogram.getCount());
+    assertEquals(170.0, histogram.getSum(), 0.0);
+    assertEquals(Double.POSITIVE_INFINITY, histogram.getUpperBound(3), 0.0);
+    // The median is in the first bucket, interpolated from 0 to 10.
+    assertEquals(6.0, histogram.getPercentile(50), 1e-9);
+    // The maximum is in the last bucket, which returns the last upper bound.
+    assertEquals(30.0, histogram.getPercentile(100), 0.0);
+  }
+
+  @Test
+  public void
+  testCounters() throws Exception
+  {
+    ServerSocketChannel server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+    Face face = new Face
+      (new TcpTransport(), new TcpTransport.ConnectionInfo
+       ("127.0.0.1", server.socket().getLocalPort()));
+    FaceMetrics metrics = face.getMetrics();
+    metrics.setName("test");
+    metrics.addRttPrefix(new Name("/a"));
+    metrics.addRttPrefix(new Name("/a/long"));
+
+    final int[] nCallbacks = new int[] { 0 };
+    OnData onData = new OnData() {
+      public void onData(Interest interest, Data data) { ++nCallbacks[0]; }
+    };
+    OnTimeout onTimeout = new OnTimeout() {
+      public void onTimeout(Interest interest) { ++nCallbacks[0]; }
+    };
+
+    Interest interest = new Interest(new Name("/a/long/1"));
+    interest.setInterestLifetimeMilliseconds(10000.0);
+    face.expressInterest(interest, onData, onTimeout);
+    SocketChannel peer = server.accept();
+    interest = new Interest(new Name("/b"));
+    interest.setInterestLifetimeMilliseconds(50.0);
+    face.expressInterest(interest, onData, onTimeout);
+    assertEquals(2, metrics.getInterestsSent());
+    assertEquals(2, metrics.getPendingInterestCount());
+
+    ByteBuffer encoding = ByteBuffer.allocate(1000);
+    encoding.put(new Data(new Name("/a/long/1")).wireEncode().buf());
+    encoding.put(new Data(new Name("/c")).wireEncode().buf());
+    encoding.flip();
+    int nBytesReceived = encoding.remaining();
+    while (encoding.hasRemaining())
+      peer.write(encoding);
+
+    long start = System.currentTimeMillis();
+    while (nCallbacks[0] < 2 && System.currentTimeMillis() - start < 5000)
+      face.processEvents(100);
+
+    assertEquals(2, metrics.getDataReceived());
+    assertEquals(1, metrics.getUnsolicitedData());
+    assertEquals(1, metrics.getTimeouts());
+    assertEquals(0, metrics.getPendingInterestCount());
+    assertEquals(2, metrics.getPendingInterestHighWaterMark());
+    assertEquals(nBytesReceived, metrics.getBytesReceived());
+    assertTrue(metrics.getBytesSent() > 0);
+    assertEquals(1, metrics.getRttCount());
+    assertEquals("The RTT should be recorded for the longest prefix",
+                 1, metrics.getRttHistogram(new Name("/a/long")).getCount());
+    assertEquals(0, metrics.getRttHistogram(new Name("/a")).getCount());
+    assertNull(metrics.getRttHistogram(new Name("/b")));
+
+    String text = metrics.toPrometheusText();
+    assertTrue(text.indexOf("ndn_face_interests_sent_total{face=\"test\"} 2\n")
+               >= 0);
+    assertTrue(text.indexOf("# TYPE ndn_face_rtt_milliseconds histogram\n")
+               >= 0);
+    assertTrue(text.indexOf
+      ("ndn_face_rtt_milliseconds_bucket{face=\"test\",le=\"+Inf\"} 1\n") >= 0);
+    assertTrue(text.indexOf
+      ("ndn_face_prefix_rtt_milliseconds_count{face=\"test\",prefix=\"/a/long\"} 1\n")
+      >= 0);
+
+    ObjectName name = metrics.registerMBean
+      ("net.named_data.jndn:type=FaceMetrics,name=test");
+    try {
+      assertEquals(new Long(2), ManagementFactory.getPlatformMBeanServer()
+        .getAttribute(name, "InterestsSent"));
+    } finally {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+
+    face.shutdown();
+    peer.close();
+    server.close();
+  }
+
+  @Test
+  public void
+  testThreadSafeFacePutData() throws Exception
+  {
+    ServerSocketChannel server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+    ThreadSafeFace face = new ThreadSafeFace
+      (new TcpTransport(), new TcpTransport.ConnectionInfo
+       ("127.0.0.1", server.socket().getLocalPort()));
+    FaceMetrics metrics = face.getMetrics();
+    metrics.setName("test");
+
+    // Express an interest so that the face connects.
+    Interest interest = new Interest(new Name("/a"));
+    interest.setInterestLifetimeMilliseconds(10000.0);
+    face.expressInterest(interest, (OnData)null, (OnTimeout)null);
+    SocketChannel peer = server.accept();
+
+    face.putData(new Data(new Name("/b")));
+    face.putData(new Data(new Name("/c")));
+
+    // The I/O thread sends the Data packets after putData returns.
+    long start = System.currentTimeMillis();
+    while (metrics.getDataSent() < 2 &&
+           System.currentTimeMillis() - start < 5000)
+      Thread.sleep(10);
+
+    assertEquals(2, metrics.getDataSent());
+    assertTrue(metrics.toPrometheusText().indexOf
+      ("ndn_face_data_sent_total{face=\"test\"} 2\n") >= 0);
+
+    face.shutdown();
+    peer.close();
+    server.close();
+  }
+}
@@ -0,0 +1,180 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.transport.TcpTransport;
+import net.named_data.jndn.util.Blob;
+import net.named_data.jndn.util.Promise;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestFaceProcessEvents {
+  private ServerSocketChannel server_;
+  private Face face_;
+  private int nData_;
+  private int nTimeouts_;
+
+  private final OnData onData_ = new OnData() {
+    public void onData(Interest interest, Data data) { ++nData_; }
+  };
+  private final OnTimeout onTimeout_ = new OnTimeout() {
+    public void onTimeout(Interest interest) { ++nTimeouts_; }
+  };
+
+  @Before
+  public void
+  setUp() throws Exception
+  {
+    server_ = ServerSocketChannel.open();
+    server_.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+    face_ = new Face
+      (new TcpTransport(), new TcpTransport.ConnectionInfo
+       ("127.0.0.1", server_.socket().getLocalPort()));
+    nData_ = 0;
+    nTimeouts_ = 0;
+  }
+
+  @After
+  public void
+  tearDown() throws Exception
+  {
+    face_.shutdown();
+    server_.close();
+  }
+
+  @Test
+  public void
+  testWakeForTimeout() throws Exception
+  {
+    Interest interest = new Interest(new Name("/a"));
+    interest.setInterestLifetimeMilliseconds(100.0);
+    face_.expressInterest(interest, onData_, onTimeout_);
+    SocketChannel peer = server_.accept();
+
+    long start = System.currentTimeMillis();
+    while (nTimeouts_ == 0 && System.currentTimeMillis() - start < 5000)
+      face_.processEvents(5000);
+    long elapsed = System.currentTimeMillis() - start;
+
+    assertEquals("Expected the interest to time out", 1, nTimeouts_);
+    assertTrue("processEvents should return at the interest timeout, not " +
+               elapsed + " ms", elapsed < 2000);
+    peer.close();
+  }
+
+  @Test
+  public void
+  testWakeForData() throws Exception
+  {
+    Interest interest = new Interest(new Name("/a"));
+    interest.setInterestLifetimeMilliseconds(10000.0);
+    face_.expressInterest(interest, onData_, onTimeout_);
+    SocketChannel peer = server_.accept();
+
+    ByteBuffer encoding = new Data(new Name("/a/b")).wireEncode().buf();
+    while (encoding.hasRemaining())
+      peer.write(encoding);
+
+    long start = System.currentTimeMillis();
+    while (nData_ == 0 && System.currentTimeMillis() - start < 5000)
+      face_.processEvents(5000);
+    long elapsed = System.currentTimeMillis() - start;
+
+    assertEquals("Expected onData", 1, nData_);
+    assertEquals("Expected no timeout", 0, nTimeouts_);
+    assertTrue("processEvents should return when data arrives, not " +
+               elapsed + " ms", elapsed < 2000);
+    peer.close();
+  }
+
+  @Test
+  public void
+  testReusePackets() throws Exception
+  {
+    face_.setReusePackets(true);
+    final ArrayList received = new ArrayList();
+    final ArrayList contents = new ArrayList();
+    OnData onData = new OnData() {
+      public void onData(Interest interest, Data data) {
+        received.add(data);
+        // The borrowed data is only valid now, so get the content now.
+        contents.add(data.getContent().toString());
+      }
+    };
+
+    Interest interest = new Interest(new Name("/a"));
+    interest.setInterestLifetimeMilliseconds(10000.0);
+    face_.expressInterest(interest, onData, onTimeout_);
+    SocketChannel peer = server_.accept();
+    interest = new Interest(new Name("/b"));
+    interest.setInterestLifetimeMilliseconds(10000.0);
+    face_.expressInterest(interest, onData, onTimeout_);
+    interest = new Interest(new Name("/c"));
+    interest.setInterestLifetimeMilliseconds(10000.0);
+    Promise promise = face_.expressInterestAsync(interest);
+
+    // Send the packets in one write so that they are in the same buffer.
+    String[] names = new String[] { "/c", "/a", "/b" };
+    ByteBuffer encoding = ByteBuffer.allocate(1000);
+    for (int i = 0; i < names.length; ++i) {
+      Data data = new Data(new Name(names[i]));
+      data.setContent(new Blob("content" + names[i]));
+      encoding.put(data.wireEncode().buf());
+    }
+    encoding.flip();
+    while (encoding.hasRemaining())
+      peer.write(encoding);
+
+    long start = System.currentTimeMillis();
+    while (received.size() < 2 && System.currentTimeMillis() - start < 5000)
+      face_.processEvents(5000);
+
+    assertEquals(2, received.size());
+    assertSame("The Data object should be reused", received.get(0),
+               received.get(1));
+    assertEquals("content/a", contents.get(0));
+    assertEquals("content/b", contents.get(1));
+    assertEquals("The last packet should be decoded into the reused object",
+                 new Name("/b"), ((Data)received.get(1)).getName());
+
+    // The promise should have a copy which is still valid.
+    Data promiseData = (Data)promise.get();
+    assertNotSame(received.get(0), promiseData);
+    assertEquals(new Name("/c"), promiseData.getName());
+    assertEquals("content/c", promiseData.getContent().toString());
+    peer.close();
+  }
+}
@@ -0,0 +1,99 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.util.ArrayList;
+import net.named_data.jndn.InterestFilter;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.impl.InterestFilterTable;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TestInterestFilterTable {
+  private static long
+  getId(ArrayList entries, int i)
+  {
+    return ((InterestFilterTable.Entry)entries.get(i)).getInterestFilterId();
+  }
+
+  @Test
+  public void
+  testMatchOrder()
+  {
+    InterestFilterTable table = new InterestFilterTable();
+    table.setInterestFilter(1, new InterestFilter("/a/b"), null, null);
+    table.setInterestFilter(2, new InterestFilter("/a"), null, null);
+    table.setInterestFilter(3, new InterestFilter("/c"), null, null);
+    table.setInterestFilter(4, new InterestFilter("/a/b/c"), null, null);
+    table.setInterestFilter(5, new InterestFilter("/"), null, null);
+
+    ArrayList entries = new ArrayList();
+    table.getMatchedFilters(new Name("/a/b/c"), entries);
+    assertEquals("Expected 4 matching filters", 4, entries.size());
+    // The filters are in the order that they were added.
+    assertEquals(1, getId(entries, 0));
+    assertEquals(2, getId(entries, 1));
+    assertEquals(4, getId(entries, 2));
+    assertEquals(5, getId(entries, 3));
+
+    entries.clear();
+    table.getMatchedFilters(new Name("/a"), entries);
+    assertEquals("Expected 2 matching filters", 2, entries.size());
+  }
+
+  @Test
+  public void
+  testRegexFilter()
+  {
+    InterestFilterTable table = new InterestFilterTable();
+    table.setInterestFilter
+      (1, new InterestFilter("/hello", "<world><>+"), null, null);
+
+    ArrayList entries = new ArrayList();
+    table.getMatchedFilters(new Name("/hello/world/x/y"), entries);
+    assertEquals("Expected the regex filter to match", 1, entries.size());
+
+    entries.clear();
+    table.getMatchedFilters(new Name("/hello/world"), entries);
+    assertEquals("Expected the regex filter not to match", 0, entries.size());
+    table.getMatchedFilters(new Name("/other/world/x"), entries);
+    assertEquals("Expected the prefix not to match", 0, entries.size());
+  }
+
+  @Test
+  public void
+  testUnset()
+  {
+    InterestFilterTable table = new InterestFilterTable();
+    table.setInterestFilter(1, new InterestFilter("/a"), null, null);
+    table.setInterestFilter(2, new InterestFilter("/a"), null, null);
+
+    assertTrue(table.unsetInterestFilter(1));
+    assertFalse("Filter 1 is already removed", table.unsetInterestFilter(1));
+
+    ArrayList entries = new ArrayList();
+    table.getMatchedFilters(new Name("/a/b"), entries);
+    assertEquals(1, entries.size());
+    assertEquals(2, getId(entries, 0));
+  }
+}
@@ -238,6 +238,58 @@ public class TestInterestMethods {
                       initialDump.toArray(), redecodedDump.toArray());
   }
 
+  @Test
+  public void
+  testLazyDecode() throws EncodingException
+  {
+    Blob input = new Blob(codedInterest, false);
+    Interest interest = new Interest();
+    interest.wireDecodeLazy(input);
+    assertTrue("The interest should be lazy", interest.isLazy());
+    assertEquals(referenceInterest.getName(), interest.getName());
+    assertTrue("getName should not decode the other fields", interest.isLazy());
+    assertTrue("wireEncode of the unmodified interest should return the input",
+               interest.wireEncode().equals(input));
+    assertTrue("wireEncode should not decode the other fields",
+               interest.isLazy());
+
+    ArrayList lazyDump = dumpInterest(interest);
+    assertFalse("Getting the fields should decode them", interest.isLazy());
+    assertArrayEquals("Lazily decoded interest does not match original",
+                      initialDump.toArray(), lazyDump.toArray());
+    assertTrue("wireEncode should still return the input",
+               interest.wireEncode().equals(input));
+
+    // Changing the name before decoding the other fields should keep the name.
+    interest = new Interest();
+    interest.wireDecodeLazy(input);
+    interest.getName().append("extra");
+    assertEquals(referenceInterest.getMinSuffixComponents(),
+                 interest.getMinSuffixComponents());
+    assertEquals(referenceInterest.getName().size() + 1,
+                 interest.getName().size());
+  }
+
+  @Test
+  public void
+  testDecodeIntoUsedInterest() throws EncodingException
+  {
+    // Decoding an interest with no selectors into an Interest object which was
+    // already used should clear the selectors, as when reusing packet objects.
+    Interest interest = new Interest();
+    interest.wireDecode(new Blob(codedInterest, false));
+    Interest plainInterest = new Interest(new Name("/plain"));
+    interest.wireDecode(plainInterest.wireEncode());
+
+    assertEquals(new Name("/plain"), interest.getName());
+    assertEquals(-1, interest.getMinSuffixComponents());
+    assertEquals(-1, interest.getMaxSuffixComponents());
+    assertEquals(-1, interest.getChildSelector());
+    assertEquals(0, interest.getExclude().size());
+    assertEquals(KeyLocatorType.NONE, interest.getKeyLocator().getType());
+    assertTrue(interest.getMustBeFresh());
+  }
+
   @Test
   public void
   testCreateFresh()
@@ -0,0 +1,720 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashSet;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.encoding.ElementReader;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.transport.TcpTransport;
+import net.named_data.jndn.util.Blob;
+import net.named_data.jndn.util.DiskContentStore;
+import net.named_data.jndn.util.EvictionPolicy;
+import net.named_data.jndn.util.LfuEvictionPolicy;
+import net.named_data.jndn.util.LruEvictionPolicy;
+import net.named_data.jndn.util.MemoryContentCache;
+import net.named_data.jndn.util.SlabAllocator;
+import net.named_data.jndn.util.WTinyLfuEvictionPolicy;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestMemoryContentCache {
+  ServerSocketChannel server_;
+  SocketChannel peer_;
+  Face face_;
+  ElementReader reader_;
+  final ArrayList received_ = new ArrayList(); // of Data
+
+  @Before
+  public void
+  setUp() throws Exception
+  {
+    server_ = ServerSocketChannel.open();
+    server_.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+    face_ = new Face
+      (new TcpTransport(), new TcpTransport.ConnectionInfo
+       ("127.0.0.1", server_.socket().getLocalPort()));
+    // Send an Interest so that the Face connects.
+    face_.expressInterest
+      (new Interest(new Name("/connect"), 10), (OnData)null, (OnTimeout)null);
+    peer_ = server_.accept();
+    peer_.configureBlocking(false);
+
+    reader_ = new ElementReader(new ElementListener() {
+      public void onReceivedElement(ByteBuffer element) {
+        if (element.get(0) != 6)
+          // Skip the Interest.
+          return;
+        Data data = new Data();
+        try {
+          data.wireDecode(element);
+        } catch (EncodingException ex) {
+          fail("Error decoding the Data: " + ex);
+        }
+        received_.add(data);
+      }
+    });
+  }
+
+  @After
+  public void
+  tearDown() throws Exception
+  {
+    face_.shutdown();
+    peer_.close();
+    server_.close();
+  }
+
+  /**
+   * Call cache.onInterest for the interest and return the name of the Data
+   * which it sends, or null if none.
+   */
+  private Name
+  request(MemoryContentCache cache, Interest interest) throws Exception
+  {
+    received_.clear();
+    cache.onInterest(new Name("/"), interest, face_, 0, null);
+
+    ByteBuffer buffer = ByteBuffer.allocate(8000);
+    long start = System.currentTimeMillis();
+    while (received_.size() == 0 && System.currentTimeMillis() - start < 200) {
+      buffer.clear();
+      if (peer_.read(buffer) > 0) {
+        buffer.flip();
+        reader_.onReceivedData(buffer);
+      }
+      else
+        Thread.sleep(5);
+    }
+
+    return received_.size() == 0 ? null : ((Data)received_.get(0)).getName();
+  }
+
+  /**
+   * Read the Data packets which the face sent during the given time.
+   * @return The list of Data names.
+   */
+  private ArrayList
+  receiveAll(long milliseconds) throws Exception
+  {
+    received_.clear();
+    ByteBuffer buffer = ByteBuffer.allocate(8000);
+    long start = System.currentTimeMillis();
+    while (System.currentTimeMillis() - start < milliseconds) {
+      buffer.clear();
+      if (peer_.read(buffer) > 0) {
+        buffer.flip();
+        reader_.onReceivedData(buffer);
+      }
+      else
+        Thread.sleep(5);
+    }
+
+    ArrayList names = new ArrayList();
+    for (int i = 0; i < received_.size(); ++i)
+      names.add(((Data)received_.get(i)).getName());
+    return names;
+  }
+
+  private static Data
+  makeData(String uri, double freshnessPeriod)
+  {
+    Data data = new Data(new Name(uri));
+    data.getMetaInfo().setFreshnessPeriod(freshnessPeriod);
+    return data;
+  }
+
+  @Test
+  public void
+  testChildSelector() throws Exception
+  {
+    MemoryContentCache cache = new MemoryContentCache(face_);
+    cache.add(makeData("/a/2", -1));
+    cache.add(makeData("/a/3/x", 10000));
+    cache.add(makeData("/a/1", -1));
+    cache.add(makeData("/b/1", -1));
+
+    Interest interest = new Interest(new Name("/a"));
+    interest.setChildSelector(0);
+    assertEquals(new Name("/a/1"), request(cache, interest));
+
+    interest.setChildSelector(1);
+    assertEquals(new Name("/a/3/x"), request(cache, interest));
+
+    interest.setMaxSuffixComponents(2);
+    assertEquals
+      ("MaxSuffixComponents should skip the longer name",
+       new Name("/a/2"), request(cache, interest));
+
+    interest = new Interest(new Name("/a"));
+    interest.setChildSelector(0);
+    interest.getExclude().appendComponent(new Name.Component("1"));
+    assertEquals
+      ("The excluded child should be skipped",
+       new Name("/a/2"), request(cache, interest));
+
+    assertEquals
+      (new Name("/a/3/x"), request(cache, new Interest(new Name("/a/3"))));
+    assertTrue
+      ("A name which is not cached should not be answered",
+       request(cache, new Interest(new Name("/c"))) == null);
+  }
+
+  @Test
+  public void
+  testStaleContent() throws Exception
+  {
+    MemoryContentCache cache = new MemoryContentCache(face_, 50);
+    cache.add(makeData("/a/1", 0));
+    cache.add(makeData("/a/2", 10000));
+
+    Interest interest = new Interest(new Name("/a"));
+    interest.setChildSelector(0);
+    Thread.sleep(10);
+    assertEquals
+      ("Stale content should not be used to answer an interest",
+       new Name("/a/2"), request(cache, interest));
+    assertEquals
+      ("Stale content should not be removed before the timer",
+       2, cache.getEntryCount());
+
+    long start = System.currentTimeMillis();
+    while (cache.getEntryCount() > 1 &&
+           System.currentTimeMillis() - start < 1000) {
+      face_.processEvents();
+      Thread.sleep(5);
+    }
+    assertEquals
+      ("The cleanup timer should remove the stale content",
+       1, cache.getEntryCount());
+  }
+
+  @Test
+  public void
+  testEntryAndByteBudget() throws Exception
+  {
+    MemoryContentCache cache = new MemoryContentCache(face_);
+    cache.setMaxEntries(2);
+    cache.add(makeData("/a/1", -1));
+    cache.add(makeData("/a/2", -1));
+    // Access /a/1 so that /a/2 is the least recently used.
+    assertEquals(new Name("/a/1"), request(cache, new Interest(new Name("/a/1"))));
+    cache.add(makeData("/a/3", -1));
+
+    assertEquals(2, cache.getEntryCount());
+    assertEquals(1, cache.getEvictionCount());
+    assertTrue
+      ("The least recently used entry should be evicted",
+       request(cache, new Interest(new Name("/a/2"))) == null);
+    assertEquals(new Name("/a/1"), request(cache, new Interest(new Name("/a/1"))));
+
+    long entrySize = makeData("/a/1", -1).wireEncode().size();
+    assertEquals(2 * entrySize, cache.getByteCount());
+    cache.setMaxBytes(entrySize);
+    assertEquals
+      ("Lowering the byte budget should evict", 1, cache.getEntryCount());
+    assertEquals(entrySize, cache.getByteCount());
+  }
+
+  /**
+   * Simulate a cache with the policy: for each name, access it if it is cached,
+   * otherwise add it and evict down to capacity.
+   * @return The number of hits.
+   */
+  private static int
+  simulate(EvictionPolicy policy, HashSet cached, int capacity, String[] names)
+  {
+    int nHits = 0;
+    for (int i = 0; i < names.length; ++i) {
+      Name name = new Name(names[i]);
+      if (cached.contains(names[i])) {
+        policy.access(names[i], name);
+        ++nHits;
+        continue;
+      }
+
+      policy.add(names[i], name);
+      cached.add(names[i]);
+      while (cached.size() > capacity) {
+        Object victim = policy.selectVictim();
+        policy.remove(victim);
+        cached.remove(victim);
+      }
+    }
+
+    return nHits;
+  }
+
+  @Test
+  public void
+  testLfuEvictionPolicy()
+  {
+    LfuEvictionPolicy policy = new LfuEvictionPolicy();
+    HashSet cached = new HashSet();
+    simulate(policy, cached, 2, new String[] { "/a", "/a", "/b", "/b", "/b", "/c" });
+
+    assertTrue("The most frequent entry should stay", cached.contains("/b"));
+    assertTrue("The new entry should replace the less frequent", cached.contains("/c"));
+    assertTrue(!cached.contains("/a"));
+
+    // The new entry is protected until the next entry is added.
+    policy = new LfuEvictionPolicy();
+    policy.add("/a", new Name("/a"));
+    policy.access("/a", new Name("/a"));
+    policy.add("/b", new Name("/b"));
+    policy.add("/c", new Name("/c"));
+    assertEquals("/b", policy.selectVictim());
+    policy.remove("/b");
+    assertEquals
+      ("The new entry should stay protected after another eviction",
+       "/a", policy.selectVictim());
+    policy.add("/d", new Name("/d"));
+    assertEquals
+      ("After the next add, the previous new entry should not be protected",
+       "/c", policy.selectVictim());
+  }
+
+  @Test
+  public void
+  testLfuMultipleVictims() throws Exception
+  {
+    MemoryContentCache cache = new MemoryContentCache(face_);
+    cache.setEvictionPolicy(new LfuEvictionPolicy());
+    long entrySize = makeData("/s/1", -1).wireEncode().size();
+    cache.setMaxBytes(3 * entrySize);
+    for (int i = 1; i <= 3; ++i) {
+      cache.add(makeData("/s/" + i, -1));
+      assertEquals
+        (new Name("/s/" + i), request(cache, new Interest(new Name("/s/" + i))));
+    }
+
+    // A large entry which needs two victims to fit the byte budget.
+    Data large = makeData("/large", -1);
+    large.setContent(new Blob(new byte[(int)entrySize / 2]));
+    long largeSize = large.wireEncode().size();
+    assertTrue(largeSize > entrySize && largeSize <= 2 * entrySize);
+    cache.add(large);
+
+    assertEquals(2, cache.getEvictionCount());
+    assertEquals
+      ("The new entry should not be evicted by its own add",
+       new Name("/large"), request(cache, new Interest(new Name("/large"))));
+    assertEquals(new Name("/s/3"), request(cache, new Interest(new Name("/s/3"))));
+  }
+
+  @Test
+  public void
+  testWTinyLfuScanResistance()
+  {
+    final int capacity = 100;
+    // Build a workload of 50 hot names which are requested often, then a scan
+    // of 2000 names which are requested once, where 5 hot names are requested
+    // after every 10 scan names.
+    ArrayList names = new ArrayList();
+    for (int round = 0; round < 5; ++round) {
+      for (int i = 0; i < 50; ++i)
+        names.add("/hot/" + i);
+    }
+    int nextHot = 0;
+    for (int i = 0; i < 2000; ++i) {
+      names.add("/scan/" + i);
+      if (i % 10 == 9) {
+        for (int j = 0; j < 5; ++j)
+          names.add("/hot/" + (nextHot++ % 50));
+      }
+    }
+    String[] workload = (String[])names.toArray(new String[names.size()]);
+
+    HashSet lruCached = new HashSet();
+    int nLruHits = simulate
+      (new LruEvictionPolicy(), lruCached, capacity, workload);
+    HashSet tinyLfuCached = new HashSet();
+    int nTinyLfuHits = simulate
+      (new WTinyLfuEvictionPolicy(), tinyLfuCached, capacity, workload);
+
+    int nTinyLfuHot = 0;
+    for (int i = 0; i < 50; ++i) {
+      if (tinyLfuCached.contains("/hot/" + i))
+        ++nTinyLfuHot;
+    }
+    assertEquals(capacity, tinyLfuCached.size());
+    assertTrue
+      ("W-TinyLFU should keep the hot names through the scan", nTinyLfuHot >= 45);
+    assertTrue
+      ("W-TinyLFU should have many more hits than LRU",
+       nTinyLfuHits > 2 * nLruHits);
+  }
+
+  @Test
+  public void
+  testWTinyLfuFillUp()
+  {
+    // Nothing is evicted while the cache fills, so the window has every entry.
+    WTinyLfuEvictionPolicy policy = new WTinyLfuEvictionPolicy();
+    final int capacity = 1000;
+    HashSet cached = new HashSet();
+    String[] names = new String[2 * capacity];
+    for (int i = 0; i < names.length; ++i)
+      names[i] = "/fill/" + i;
+    simulate(policy, cached, capacity, names);
+
+    // Each eviction moves a bounded number of entries from the window, but the
+    // evictions should still keep the cache at capacity.
+    assertEquals(capacity, cached.size());
+    assertEquals(capacity, policy.size());
+  }
+
+  @Test
+  public void
+  testPendingInterests() throws Exception
+  {
+    MemoryContentCache cache = new MemoryContentCache(face_);
+    cache.storePendingInterest(new Interest(new Name("/a"), 10000), face_);
+    cache.storePendingInterest(new Interest(new Name("/a/b/c"), 10000), face_);
+    cache.storePendingInterest(new Interest(new Name("/a/x"), 10000), face_);
+    cache.storePendingInterest(new Interest(new Name("/a/b"), 10), face_);
+    Thread.sleep(20);
+
+    cache.add(makeData("/a/b/c", -1));
+    ArrayList names = receiveAll(200);
+    assertEquals
+      ("Only /a and /a/b/c should be satisfied, not the timed-out /a/b",
+       2, names.size());
+    assertEquals(new Name("/a/b/c"), names.get(0));
+
+    cache.add(makeData("/a/b/d", -1));
+    assertEquals
+      ("The satisfied interests should be removed", 0, receiveAll(100).size());
+    cache.add(makeData("/a/x", -1));
+    assertEquals(1, receiveAll(200).size());
+  }
+
+  @Test
+  public void
+  testConcurrentAdd() throws Exception
+  {
+    final MemoryContentCache cache = new MemoryContentCache(face_);
+    final int nThreads = 8;
+    final int nPerThread = 2000;
+    Thread[] threads = new Thread[nThreads];
+    for (int t = 0; t < nThreads; ++t) {
+      final int threadIndex = t;
+      threads[t] = new Thread(new Runnable() {
+        public void run() {
+          for (int i = 0; i < nPerThread; ++i)
+            cache.add(makeData("/p/" + threadIndex + "/" + i, -1));
+        }
+      });
+    }
+    for (int t = 0; t < nThreads; ++t)
+      threads[t].start();
+
+    // Answer interests on this thread while the producers add.
+    for (int i = 0; i < 20; ++i)
+      request(cache, new Interest(new Name("/p")));
+    for (int t = 0; t < nThreads; ++t)
+      threads[t].join();
+
+    assertEquals
+      ("Every added Data packet should be in the cache",
+       nThreads * nPerThread, cache.getEntryCount());
+    assertEquals
+      (new Name("/p/3/1999"),
+       request(cache, new Interest(new Name("/p/3/1999"))));
+  }
+
+  @Test
+  public void
+  testSlabStorage() throws Exception
+  {
+    SlabAllocator slabAllocator = new SlabAllocator(64 * 1024, -1);
+    MemoryContentCache cache = new MemoryContentCache(face_);
+    cache.setSlabAllocator(slabAllocator);
+    cache.setMaxEntries(3);
+    for (int i = 0; i < 5; ++i) {
+      Data data = makeData("/s/" + i, -1);
+      byte[] content = new byte[100 * (i + 1)];
+      content[0] = (byte)i;
+      data.setContent(new Blob(content));
+      cache.add(data);
+    }
+
+    assertEquals(3, cache.getEntryCount());
+    assertTrue
+      ("The chunks of the evicted entries should be freed",
+       slabAllocator.getUsedBytes() < 1500 * 1.25 + 3 * 64);
+    assertTrue
+      ("An evicted entry should not be answered",
+       request(cache, new Interest(new Name("/s/0"))) == null);
+    assertEquals
+      (new Name("/s/4"), request(cache, new Interest(new Name("/s/4"))));
+    Data data = (Data)received_.get(0);
+    assertEquals
+      ("The Data packet sent from the slab should have the content",
+       500, data.getContent().size());
+    assertEquals(4, data.getContent().buf().get(0));
+
+    // A new entry reuses a freed chunk.
+    long slabBytes = slabAllocator.getSlabBytes();
+    Data newData = makeData("/s/5", -1);
+    newData.setContent(new Blob(new byte[100]));
+    cache.add(newData);
+    assertEquals(slabBytes, slabAllocator.getSlabBytes());
+    assertEquals
+      (new Name("/s/5"), request(cache, new Interest(new Name("/s/5"))));
+  }
+
+  @Test
+  public void
+  testSendWithoutLock() throws Exception
+  {
+    final MemoryContentCache[] cache = new MemoryContentCache[1];
+    final boolean[] wasLocked = new boolean[] { false };
+    final ArrayList sent = new ArrayList(); // of Blob
+    // A Face which checks in send if another thread can use the cache.
+    Face face = new Face("localhost") {
+      public void
+      send(ByteBuffer encoding)
+      {
+        Thread other = new Thread(new Runnable() {
+          public void run() { cache[0].getEntryCount(); }
+        });
+        other.start();
+        try {
+          other.join(2000);
+        } catch (InterruptedException ex) {}
+        if (other.isAlive())
+          wasLocked[0] = true;
+        sent.add(new Blob(encoding, true));
+      }
+    };
+
+    for (int i = 0; i < 2; ++i) {
+      cache[0] = new MemoryContentCache(face);
+      if (i == 1)
+        cache[0].setSlabAllocator(new SlabAllocator(64 * 1024, -1));
+      Data data = makeData("/w/1", -1);
+      cache[0].add(data);
+      sent.clear();
+      cache[0].onInterest
+        (new Name("/"), new Interest(new Name("/w/1")), face, 0, null);
+      assertEquals(1, sent.size());
+      assertTrue
+        ("onInterest should not hold the lock while sending", !wasLocked[0]);
+      assertTrue
+        ("The sent encoding should match",
+         ((Blob)sent.get(0)).equals(data.wireEncode()));
+    }
+  }
+
+  @Test
+  public void
+  testStoreBorrowedPendingInterest() throws Exception
+  {
+    MemoryContentCache cache = new MemoryContentCache(face_);
+    face_.setReusePackets(true);
+    face_.setInterestFilter(new Name("/"), cache.getStorePendingInterest());
+
+    // The face decodes both Interests into the same borrowed Interest.
+    ByteBuffer encoding = ByteBuffer.allocate(1000);
+    encoding.put(new Interest(new Name("/p/1"), 10000).wireEncode().buf());
+    encoding.put(new Interest(new Name("/q/2"), 10000).wireEncode().buf());
+    encoding.flip();
+    peer_.configureBlocking(true);
+    while (encoding.hasRemaining())
+      peer_.write(encoding);
+    peer_.configureBlocking(false);
+    long start = System.currentTimeMillis();
+    while (System.currentTimeMillis() - start < 200)
+      face_.processEvents(10);
+
+    cache.add(makeData("/p/1", -1));
+    cache.add(makeData("/q/2", -1));
+    ArrayList names = receiveAll(200);
+    assertEquals
+      ("The stored pending interests should not change with the next packet",
+       2, names.size());
+    assertTrue(names.contains(new Name("/p/1")));
+    assertTrue(names.contains(new Name("/q/2")));
+  }
+
+  @Test
+  public void
+  testSlabFreePool()
+  {
+    SlabAllocator slabAllocator = new SlabAllocator(64 * 1024, 2);
+    ByteBuffer small = ByteBuffer.allocate(100);
+    ArrayList handles = new ArrayList(); // of Long
+    while (true) {
+      long handle = slabAllocator.allocate(small);
+      if (handle < 0)
+        break;
+      handles.add(handle);
+    }
+    assertEquals(2 * 64 * 1024, slabAllocator.getSlabBytes());
+    assertTrue
+      ("A large chunk should not fit while the slabs are used",
+       slabAllocator.allocate(ByteBuffer.allocate(8000)) < 0);
+
+    for (int i = 0; i < handles.size(); ++i)
+      slabAllocator.free((Long)handles.get(i));
+    assertEquals(0, slabAllocator.getUsedBytes());
+    assertEquals
+      ("The empty slabs should be in the free pool",
+       2, slabAllocator.getFreeSlabCount());
+    ByteBuffer large = ByteBuffer.allocate(8000);
+    large.put(0, (byte)7);
+    long handle = slabAllocator.allocate(large);
+    assertTrue
+      ("Another size class should reuse a free slab", handle >= 0);
+    assertEquals(7, slabAllocator.getBuffer(handle, 8000).get());
+    assertEquals(1, slabAllocator.getFreeSlabCount());
+
+    slabAllocator.releaseFreeSlabs();
+    assertEquals(0, slabAllocator.getFreeSlabCount());
+    assertEquals(64 * 1024, slabAllocator.getSlabBytes());
+    assertTrue
+      ("A released slab can be allocated again",
+       slabAllocator.allocate(small) >= 0);
+    assertEquals(2 * 64 * 1024, slabAllocator.getSlabBytes());
+  }
+
+  @Test
+  public void
+  testDiskTier() throws Exception
+  {
+    File directory = Files.createTempDirectory("jndn-disk-tier").toFile();
+    try {
+      // Each segment file holds 16 Data packets of about 1000 bytes.
+      DiskContentStore diskContentStore =
+        new DiskContentStore(directory, 16 * 1024, 2 * 16 * 1024);
+      MemoryContentCache cache = new MemoryContentCache(face_);
+      cache.setDiskContentStore(diskContentStore);
+      cache.setMaxEntries(2);
+      for (int i = 0; i < 5; ++i) {
+        Data data = makeData("/d/" + i, -1);
+        byte[] content = new byte[1000];
+        content[0] = (byte)i;
+        data.setContent(new Blob(content));
+        cache.add(data);
+      }
+
+      assertEquals(2, cache.getEntryCount());
+      assertEquals
+        ("The evicted entries should be moved to disk",
+         3, cache.getDiskEntryCount());
+      assertEquals
+        (new Name("/d/1"), request(cache, new Interest(new Name("/d/1"))));
+      Data data = (Data)received_.get(0);
+      assertEquals
+        ("The Data packet sent from disk should have the content",
+         1, data.getContent().buf().get(0));
+      assertTrue
+        ("A name which is not cached should not be answered",
+         request(cache, new Interest(new Name("/d/9"))) == null);
+
+      // The hit moves /d/1 back to memory, which evicts another entry to disk.
+      assertEquals(2, cache.getEntryCount());
+      assertEquals(3, cache.getDiskEntryCount());
+
+      // Fill more than two segment files so that the oldest is dropped.
+      for (int i = 5; i < 45; ++i) {
+        Data moreData = makeData("/d/" + i, -1);
+        moreData.setContent(new Blob(new byte[1000]));
+        cache.add(moreData);
+      }
+      assertTrue
+        ("The disk tier should stay within its maximum size",
+         diskContentStore.getByteCount() <= 2 * 16 * 1024);
+      assertTrue
+        ("The entries in the dropped segment should be removed",
+         request(cache, new Interest(new Name("/d/0"))) == null);
+      assertEquals
+        (new Name("/d/40"), request(cache, new Interest(new Name("/d/40"))));
+    } finally {
+      File[] files = directory.listFiles();
+      for (int i = 0; i < files.length; ++i)
+        files[i].delete();
+      directory.delete();
+    }
+  }
+
+  @Test
+  public void
+  testDiskSegmentReuse() throws Exception
+  {
+    File directory = Files.createTempDirectory("jndn-disk-segments").toFile();
+    try {
+      DiskContentStore store =
+        new DiskContentStore(directory, 16 * 1024, 2 * 16 * 1024);
+      ByteBuffer record = ByteBuffer.allocate(1000);
+      ArrayList handles = new ArrayList(); // of Long
+      for (int i = 0; i < 100; ++i) {
+        handles.add(store.append(record, "owner" + i));
+        if (i == 1)
+          // Free a record so that its owner is dropped.
+          store.free((Long)handles.get(0), 1000);
+
+        while (store.isOverLimit()) {
+          ArrayList owners = store.removeOldestSegment();
+          assertTrue
+            ("A freed record's owner should not be returned",
+             !owners.contains("owner0"));
+        }
+
+        assertTrue
+          ("The segment files, including free ones, should stay within the maximum",
+           store.getByteCount() <= 2 * 16 * 1024);
+        assertTrue
+          ("Segment files should be reused, not created or deleted",
+           directory.listFiles().length <= 2);
+      }
+
+      assertTrue
+        ("A record in a removed segment should not be found",
+         store.read((Long)handles.get(1), 1000) == null);
+      assertTrue
+        ("The last record should still be found",
+         store.read((Long)handles.get(99), 1000) != null);
+    } finally {
+      File[] files = directory.listFiles();
+      for (int i = 0; i < files.length; ++i)
+        files[i].delete();
+      directory.delete();
+    }
+  }
+}
@@ -0,0 +1,172 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.util.ArrayList;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.impl.PendingInterestTable;
+import net.named_data.jndn.util.Common;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TestPendingInterestTable {
+  private static Interest
+  makeInterest(String uri)
+  {
+    Interest interest = new Interest(new Name(uri));
+    interest.setInterestLifetimeMilliseconds(4000.0);
+    return interest;
+  }
+
+  @Test
+  public void
+  testExtractPrefixes()
+  {
+    PendingInterestTable table = new PendingInterestTable();
+    table.add(1, makeInterest("/a"), null, null);
+    table.add(2, makeInterest("/a/b"), null, null);
+    table.add(3, makeInterest("/a/c"), null, null);
+    table.add(4, makeInterest("/a/b/c/d"), null, null);
+    table.add(5, makeInterest("/"), null, null);
+    assertEquals("Expected 5 entries", 5, table.size());
+
+    ArrayList entries = new ArrayList();
+    table.extractEntriesForExpressedInterest(new Name("/a/b/c"), entries);
+    assertEquals("Expected 3 matching entries", 3, entries.size());
+    // The most recently expressed interest is first.
+    assertEquals(5, ((PendingInterestTable.Entry)entries.get(0)).getPendingInterestId());
+    assertEquals(2, ((PendingInterestTable.Entry)entries.get(1)).getPendingInterestId());
+    assertEquals(1, ((PendingInterestTable.Entry)entries.get(2)).getPendingInterestId());
+
+    assertEquals("Matched entries should be removed", 2, table.size());
+    entries.clear();
+    table.extractEntriesForExpressedInterest(new Name("/a/b/c"), entries);
+    assertEquals("Expected no more matching entries", 0, entries.size());
+  }
+
+  @Test
+  public void
+  testSelectors()
+  {
+    PendingInterestTable table = new PendingInterestTable();
+    Interest interest = makeInterest("/a");
+    interest.setMaxSuffixComponents(1);
+    table.add(1, interest, null, null);
+
+    ArrayList entries = new ArrayList();
+    table.extractEntriesForExpressedInterest(new Name("/a/b/c"), entries);
+    assertEquals("MaxSuffixComponents should prevent a match", 0, entries.size());
+    table.extractEntriesForExpressedInterest(new Name("/a"), entries);
+    assertEquals("Expected a match for the exact name", 1, entries.size());
+  }
+
+  @Test
+  public void
+  testRemove()
+  {
+    PendingInterestTable table = new PendingInterestTable();
+    table.add(1, makeInterest("/a/b"), null, null);
+    table.add(2, makeInterest("/a/b"), null, null);
+
+    assertNotNull("Expected to remove entry 1", table.remove(1));
+    assertNull("Entry 1 is already removed", table.remove(1));
+    assertEquals(1, table.size());
+
+    ArrayList entries = new ArrayList();
+    table.extractEntriesForExpressedInterest(new Name("/a/b"), entries);
+    assertEquals("Only entry 2 should remain", 1, entries.size());
+    assertEquals(2, ((PendingInterestTable.Entry)entries.get(0)).getPendingInterestId());
+    assertEquals(0, table.size());
+  }
+
+  @Test
+  public void
+  testTimeouts()
+  {
+    PendingInterestTable table = new PendingInterestTable();
+    double now = Common.getNowMilliseconds();
+    table.add(1, makeInterest("/a").setInterestLifetimeMilliseconds(1000.0),
+              null, null);
+    table.add(2, makeInterest("/b").setInterestLifetimeMilliseconds(3000.0),
+              null, null);
+    table.add(3, makeInterest("/c").setInterestLifetimeMilliseconds(2000.0),
+              null, null);
+    // An interest with no lifetime never times out.
+    table.add(4, new Interest(new Name("/d")), null, null);
+    table.remove(3);
+
+    ArrayList entries = new ArrayList();
+    table.extractTimedOutEntries(now - 1.0, entries);
+    assertEquals("Expected no timed-out entries yet", 0, entries.size());
+
+    table.extractTimedOutEntries(now + 1000000.0, entries);
+    assertEquals("Expected 2 timed-out entries", 2, entries.size());
+    // The entries are in decreasing order of ID, not in order of their
+    // timeout time.
+    assertEquals(2, ((PendingInterestTable.Entry)entries.get(0)).getPendingInterestId());
+    assertEquals(1, ((PendingInterestTable.Entry)entries.get(1)).getPendingInterestId());
+    assertEquals(1, table.size());
+    assertEquals(-1.0, table.getNextTimeoutMilliseconds(), 0.0);
+  }
+
+  @Test
+  public void
+  testRetransmission()
+  {
+    PendingInterestTable table = new PendingInterestTable();
+    double now = Common.getNowMilliseconds();
+    PendingInterestTable.Entry first = table.add
+      (1, makeInterest("/a/1"), null, null);
+    assertFalse("A new name is not a retransmission", first.isRetransmission());
+
+    // Re-expressing a pending name makes both entries ambiguous.
+    PendingInterestTable.Entry second = table.add
+      (2, makeInterest("/a/1"), null, null);
+    assertTrue(first.isRetransmission());
+    assertTrue(second.isRetransmission());
+    ArrayList entries = new ArrayList();
+    table.extractEntriesForExpressedInterest(new Name("/a/1"), entries);
+    assertEquals(2, entries.size());
+
+    // Re-expressing a timed-out name is a retransmission.
+    table.add(3, makeInterest("/a/2"), null, null);
+    entries.clear();
+    table.extractTimedOutEntries(now + 1000000.0, entries);
+    assertEquals(1, entries.size());
+    PendingInterestTable.Entry retransmission = table.add
+      (4, makeInterest("/a/2"), null, null);
+    assertTrue("Expected a retransmission after a timeout",
+               retransmission.isRetransmission());
+    assertFalse("Other names are not affected",
+                table.add(5, makeInterest("/a/3"), null, null).isRetransmission());
+
+    // After the Data arrives, the name starts a new exchange.
+    entries.clear();
+    table.extractEntriesForExpressedInterest(new Name("/a/2"), entries);
+    assertEquals(1, entries.size());
+    assertFalse("Expected no retransmission after the Data",
+                table.add(6, makeInterest("/a/2"), null, null).isRetransmission());
+  }
+}
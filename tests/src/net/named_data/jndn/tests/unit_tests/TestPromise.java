@@ -0,0 +1,221 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.InterestFilter;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnInterestCallback;
+import net.named_data.jndn.transport.TcpTransport;
+import net.named_data.jndn.util.Blob;
+import net.named_data.jndn.util.Promise;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.Test;
+
+public class TestPromise {
+  @Test
+  public void
+  testComplete() throws Exception
+  {
+    Promise promise = new Promise();
+    final ArrayList completed = new ArrayList();
+    promise.addListener(new Promise.Listener() {
+      public void onComplete(Promise promise) {
+        completed.add(promise.getNow());
+      }
+    });
+
+    assertFalse(promise.isDone());
+    assertTrue("complete should succeed", promise.complete("a"));
+    assertFalse("A second complete should fail", promise.complete("b"));
+    assertEquals("a", promise.get());
+    assertEquals("The listener should be called once", 1, completed.size());
+    assertEquals("a", completed.get(0));
+  }
+
+  @Test
+  public void
+  testCompleteExceptionally() throws Exception
+  {
+    Promise promise = new Promise();
+    promise.completeExceptionally(new TimeoutException("timeout"));
+    try {
+      promise.get();
+      fail("get should throw ExecutionException");
+    } catch (ExecutionException ex) {
+      assertTrue(ex.getCause() instanceof TimeoutException);
+    }
+  }
+
+  @Test
+  public void
+  testCancel() throws Exception
+  {
+    Promise promise = new Promise();
+    final int[] nCancels = new int[] { 0 };
+    promise.setOnCancel(new Promise.OnCancel() {
+      public void onCancel() { ++nCancels[0]; }
+    });
+
+    assertTrue(promise.cancel(false));
+    assertFalse("A second cancel should fail", promise.cancel(false));
+    assertTrue(promise.isCancelled());
+    assertEquals("OnCancel should be called once", 1, nCancels[0]);
+    try {
+      promise.get();
+      fail("get should throw CancellationException");
+    } catch (CancellationException ex) {
+    }
+  }
+
+  @Test
+  public void
+  testAll() throws Exception
+  {
+    Promise[] promises = new Promise[] { new Promise(), new Promise() };
+    Promise all = Promise.all(promises);
+
+    promises[1].complete("b");
+    assertFalse(all.isDone());
+    promises[0].complete("a");
+    assertTrue(all.isDone());
+    ArrayList values = (ArrayList)all.get();
+    assertEquals("a", values.get(0));
+    assertEquals("b", values.get(1));
+
+    promises = new Promise[] { new Promise(), new Promise() };
+    all = Promise.all(promises);
+    promises[0].completeExceptionally(new TimeoutException());
+    assertTrue("all should fail when one fails", all.isCompletedExceptionally());
+  }
+
+  @Test
+  public void
+  testExpressInterestAsync() throws Exception
+  {
+    ServerSocketChannel server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+    Face face = new Face
+      (new TcpTransport(), new TcpTransport.ConnectionInfo
+       ("127.0.0.1", server.socket().getLocalPort()));
+
+    Interest interest = new Interest(new Name("/a"));
+    interest.setInterestLifetimeMilliseconds(10000.0);
+    Promise dataPromise = face.expressInterestAsync(interest);
+    SocketChannel peer = server.accept();
+
+    interest = new Interest(new Name("/b"));
+    interest.setInterestLifetimeMilliseconds(50.0);
+    Promise timeoutPromise = face.expressInterestAsync(interest);
+
+    interest = new Interest(new Name("/c"));
+    interest.setInterestLifetimeMilliseconds(50.0);
+    Promise cancelledPromise = face.expressInterestAsync(interest);
+    cancelledPromise.cancel(true);
+
+    ByteBuffer encoding = new Data(new Name("/a/1")).wireEncode().buf();
+    while (encoding.hasRemaining())
+      peer.write(encoding);
+
+    long start = System.currentTimeMillis();
+    while (!(dataPromise.isDone() && timeoutPromise.isDone()) &&
+           System.currentTimeMillis() - start < 5000)
+      face.processEvents(100);
+
+    assertEquals(new Name("/a/1"), ((Data)dataPromise.get()).getName());
+    try {
+      timeoutPromise.get();
+      fail("The interest should time out");
+    } catch (ExecutionException ex) {
+      assertTrue(ex.getCause() instanceof TimeoutException);
+    }
+    assertTrue(cancelledPromise.isCancelled());
+
+    face.shutdown();
+    peer.close();
+    server.close();
+  }
+
+  @Test
+  public void
+  testRegisterPrefixAsyncFailure() throws Exception
+  {
+    ServerSocketChannel server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+    Face face = new Face
+      (new TcpTransport(), new TcpTransport.ConnectionInfo
+       ("127.0.0.1", server.socket().getLocalPort()));
+
+    // Without a command KeyChain, this first fetches the legacy NDNx ID.
+    final int[] nInterests = new int[] { 0 };
+    Promise promise = face.registerPrefixAsync
+      (new Name("/p"), new OnInterestCallback() {
+        public void onInterest
+          (Name prefix, Interest interest, Face face, long interestFilterId,
+           InterestFilter filter) { ++nInterests[0]; }
+      });
+    SocketChannel peer = server.accept();
+
+    // Answer with content which is not a public key, so that it fails.
+    Data ndndIdData = new Data
+      (new Name("/%C1.M.S.localhost/%C1.M.SRV/ndnd/KEY"));
+    ndndIdData.setContent(new Blob(new byte[] { 1 }));
+    ByteBuffer encoding = ndndIdData.wireEncode().buf();
+    while (encoding.hasRemaining())
+      peer.write(encoding);
+
+    long start = System.currentTimeMillis();
+    while (!promise.isDone() && System.currentTimeMillis() - start < 5000)
+      face.processEvents(100);
+    try {
+      promise.get();
+      fail("The registration should fail");
+    } catch (ExecutionException ex) {
+      assertTrue(ex.getCause() instanceof IOException);
+    }
+
+    // The failed registration should not leave an interest filter.
+    encoding = new Interest(new Name("/p/1"), 4000).wireEncode().buf();
+    while (encoding.hasRemaining())
+      peer.write(encoding);
+    start = System.currentTimeMillis();
+    while (System.currentTimeMillis() - start < 200)
+      face.processEvents(20);
+    assertEquals(0, nInterests[0]);
+
+    face.shutdown();
+    peer.close();
+    server.close();
+  }
+}
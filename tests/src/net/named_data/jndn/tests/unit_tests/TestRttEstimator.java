@@ -0,0 +1,155 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.transport.TcpTransport;
+import net.named_data.jndn.util.RttEstimator;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TestRttEstimator {
+  @Test
+  public void
+  testEstimate()
+  {
+    RttEstimator estimator = new RttEstimator(1000, 10, 4000);
+    assertEquals(1000.0, estimator.getRetransmissionTimeout(), 0.0);
+
+    // The first measurement sets SRTT = R and RTTVAR = R / 2.
+    estimator.addMeasurement(100);
+    assertEquals(100.0, estimator.getSmoothedRtt(), 1e-9);
+    assertEquals(50.0, estimator.getRttVariation(), 1e-9);
+    assertEquals(300.0, estimator.getRetransmissionTimeout(), 1e-9);
+
+    // RTTVAR = 3/4 * 50 + 1/4 * |100 - 200|, SRTT = 7/8 * 100 + 1/8 * 200.
+    estimator.addMeasurement(200);
+    assertEquals(62.5, estimator.getRttVariation(), 1e-9);
+    assertEquals(112.5, estimator.getSmoothedRtt(), 1e-9);
+    assertEquals(362.5, estimator.getRetransmissionTimeout(), 1e-9);
+    assertEquals(2, estimator.getMeasurementCount());
+
+    estimator.backoff();
+    assertEquals(725.0, estimator.getRetransmissionTimeout(), 1e-9);
+    for (int i = 0; i < 10; ++i)
+      estimator.backoff();
+    assertEquals("backoff should stop at the maximum RTO",
+                 4000.0, estimator.getRetransmissionTimeout(), 0.0);
+
+    // Small measurements are limited by the minimum RTO.
+    for (int i = 0; i < 50; ++i)
+      estimator.addMeasurement(1);
+    assertEquals(10.0, estimator.getRetransmissionTimeout(), 0.0);
+
+    estimator.reset();
+    assertEquals(0, estimator.getMeasurementCount());
+    assertEquals(1000.0, estimator.getRetransmissionTimeout(), 0.0);
+  }
+
+  @Test
+  public void
+  testAdaptiveInterestLifetime() throws Exception
+  {
+    ServerSocketChannel server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+    Face face = new Face
+      (new TcpTransport(), new TcpTransport.ConnectionInfo
+       ("127.0.0.1", server.socket().getLocalPort()));
+    face.setAdaptiveInterestLifetime(true);
+
+    final int[] nData = new int[] { 0 };
+    final int[] nTimeouts = new int[] { 0 };
+    OnData onData = new OnData() {
+      public void onData(Interest interest, Data data) { ++nData[0]; }
+    };
+    OnTimeout onTimeout = new OnTimeout() {
+      public void onTimeout(Interest interest) { ++nTimeouts[0]; }
+    };
+
+    assertNull(face.getRttEstimator(new Name("/a/1")));
+    face.expressInterest(new Name("/a/1"), onData, onTimeout);
+    SocketChannel peer = server.accept();
+    ByteBuffer encoding = new Data(new Name("/a/1")).wireEncode().buf();
+    while (encoding.hasRemaining())
+      peer.write(encoding);
+
+    long start = System.currentTimeMillis();
+    while (nData[0] == 0 && System.currentTimeMillis() - start < 5000)
+      face.processEvents(100);
+    assertEquals(1, nData[0]);
+    RttEstimator estimator = face.getRttEstimator(new Name("/a/2"));
+    assertNotNull("The segments of /a should share an estimator", estimator);
+    assertEquals(1, estimator.getMeasurementCount());
+    double rto = estimator.getRetransmissionTimeout();
+
+    // An unanswered interest should time out at the RTO, not the default
+    // 4 second lifetime, and back off the RTO.
+    start = System.currentTimeMillis();
+    face.expressInterest(new Name("/a/2"), onData, onTimeout);
+    while (nTimeouts[0] == 0 && System.currentTimeMillis() - start < 5000)
+      face.processEvents(100);
+    long elapsed = System.currentTimeMillis() - start;
+    assertEquals(1, nTimeouts[0]);
+    assertTrue("The interest should time out at the RTO, not after " +
+               elapsed + " ms", elapsed < rto + 1000);
+    assertEquals(rto * 2, estimator.getRetransmissionTimeout(), 1e-9);
+
+    // Karn's algorithm: The Data for a retransmitted interest doesn't give a
+    // sample and keeps the backed-off RTO.
+    face.expressInterest(new Name("/a/2"), onData, onTimeout);
+    encoding = new Data(new Name("/a/2")).wireEncode().buf();
+    while (encoding.hasRemaining())
+      peer.write(encoding);
+    start = System.currentTimeMillis();
+    while (nData[0] == 1 && System.currentTimeMillis() - start < 5000)
+      face.processEvents(100);
+    assertEquals(2, nData[0]);
+    assertEquals("A retransmitted interest should not give an RTT sample",
+                 1, estimator.getMeasurementCount());
+    assertEquals(rto * 2, estimator.getRetransmissionTimeout(), 1e-9);
+
+    // A new interest gives a sample again.
+    face.expressInterest(new Name("/a/3"), onData, onTimeout);
+    encoding = new Data(new Name("/a/3")).wireEncode().buf();
+    while (encoding.hasRemaining())
+      peer.write(encoding);
+    start = System.currentTimeMillis();
+    while (nData[0] == 2 && System.currentTimeMillis() - start < 5000)
+      face.processEvents(100);
+    assertEquals(3, nData[0]);
+    assertEquals(2, estimator.getMeasurementCount());
+
+    face.shutdown();
+    peer.close();
+    server.close();
+  }
+}
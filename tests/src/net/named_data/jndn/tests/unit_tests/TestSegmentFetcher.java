@@ -0,0 +1,491 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.encoding.ElementReader;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.WireFormat;
+import net.named_data.jndn.transport.TcpTransport;
+import net.named_data.jndn.util.Blob;
+import net.named_data.jndn.util.SegmentFetcher;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSegmentFetcher {
+  /**
+   * A Producer answers the Interests from the Face on the peer socket with
+   * segments of /a/%FD%01 which have SEGMENT_SIZE bytes of content.
+   */
+  class Producer {
+    public Producer(SocketChannel peer, int nSegments) throws Exception
+    {
+      peer_ = peer;
+      peer_.configureBlocking(false);
+      nSegments_ = nSegments;
+      reader_ = new ElementReader(new ElementListener() {
+        public void onReceivedElement(ByteBuffer element) {
+          Interest interest = new Interest();
+          try {
+            interest.wireDecode(element);
+          } catch (EncodingException ex) {
+            fail("Error decoding the Interest: " + ex);
+          }
+          received_.add(interest);
+        }
+      });
+    }
+
+    /**
+     * Read the Interests which the Face sent and return them.
+     * @return The list of Interest.
+     */
+    public final ArrayList
+    receive() throws Exception
+    {
+      received_.clear();
+      ByteBuffer buffer = ByteBuffer.allocate(8000);
+      while (true) {
+        buffer.clear();
+        int nBytesRead = peer_.read(buffer);
+        if (nBytesRead <= 0)
+          break;
+        buffer.flip();
+        reader_.onReceivedData(buffer);
+      }
+
+      return new ArrayList(received_);
+    }
+
+    public final void
+    send(long segment) throws Exception
+    {
+      ByteBuffer encoding = makeSegment(segment, nSegments_).wireEncode().buf();
+      while (encoding.hasRemaining())
+        peer_.write(encoding);
+    }
+
+    private final SocketChannel peer_;
+    private final int nSegments_;
+    private final ElementReader reader_;
+    private final ArrayList received_ = new ArrayList(); // of Interest
+  }
+
+  private static final int SEGMENT_SIZE = 10;
+
+  ServerSocketChannel server_;
+  Face face_;
+
+  @Before
+  public void
+  setUp() throws Exception
+  {
+    server_ = ServerSocketChannel.open();
+    server_.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+    face_ = new Face
+      (new TcpTransport(), new TcpTransport.ConnectionInfo
+       ("127.0.0.1", server_.socket().getLocalPort()));
+  }
+
+  @After
+  public void
+  tearDown() throws Exception
+  {
+    face_.shutdown();
+    server_.close();
+  }
+
+  /**
+   * Make the Data packet for the segment of /a/%FD%01 which has SEGMENT_SIZE
+   * bytes of content.
+   */
+  private static Data
+  makeSegment(long segment, int nSegments)
+  {
+    Data data = new Data(new Name("/a/%FD%01").appendSegment(segment));
+    byte[] content = new byte[SEGMENT_SIZE];
+    for (int i = 0; i < content.length; ++i)
+      content[i] = (byte)segment;
+    data.setContent(new Blob(content));
+    data.getMetaInfo().setFinalBlockId
+      (new Name().appendSegment(nSegments - 1).get(0));
+    return data;
+  }
+
+  private static long
+  getSegment(Interest interest) throws EncodingException
+  {
+    Name.Component component = interest.getName().get(-1);
+    if (component.getValue().size() > 0 && component.getValue().buf().get(0) == 0)
+      return component.toSegment();
+    else
+      // The first Interest for /a.
+      return 0;
+  }
+
+  /**
+   * Process events and answer the Interests in reverse order until result[0]
+   * or error[0] is set.
+   * @param producer The Producer.
+   * @param result Wait until result[0] is not null.
+   * @param error Wait until error[0] is not null.
+   * @param dropSegment Don't answer the first Interest for this segment.
+   * @param droppedSegment Set droppedSegment[0] true when dropped.
+   * @return The maximum number of Interests received at once.
+   */
+  private int
+  serve
+    (Producer producer, Object[] result, String[] error, long dropSegment,
+     boolean[] droppedSegment) throws Exception
+  {
+    int maxOutstanding = 0;
+    long start = System.currentTimeMillis();
+    while (result[0] == null && error[0] == null &&
+           System.currentTimeMillis() - start < 5000) {
+      face_.processEvents(20);
+
+      ArrayList interests = producer.receive();
+      maxOutstanding = Math.max(maxOutstanding, interests.size());
+      // Answer in reverse order so that the fetcher has to reorder.
+      for (int i = interests.size() - 1; i >= 0; --i) {
+        long segment = getSegment((Interest)interests.get(i));
+        if (segment == dropSegment && !droppedSegment[0]) {
+          // Drop the first Interest so that it is retransmitted.
+          droppedSegment[0] = true;
+          continue;
+        }
+        producer.send(segment);
+      }
+    }
+
+    return maxOutstanding;
+  }
+
+  @Test
+  public void
+  testPipelinedFetch() throws Exception
+  {
+    final int nSegments = 40;
+    final Blob[] result = new Blob[] { null };
+    final String[] error = new String[] { null };
+
+    Interest baseInterest = new Interest(new Name("/a"));
+    baseInterest.setInterestLifetimeMilliseconds(300.0);
+    SegmentFetcher.fetch
+      (face_, baseInterest, SegmentFetcher.DontVerifySegment,
+       new SegmentFetcher.OnComplete() {
+         public void onComplete(Blob content) { result[0] = content; }
+       },
+       new SegmentFetcher.OnError() {
+         public void onError(SegmentFetcher.ErrorCode errorCode, String message) {
+           error[0] = message;
+         }
+       },
+       new SegmentFetcher.Options().setInitialWindowSize(2).setMaxWindowSize(8));
+    SocketChannel peer = server_.accept();
+    Producer producer = new Producer(peer, nSegments);
+
+    boolean[] droppedSegment = new boolean[] { false };
+    int maxOutstanding = serve(producer, result, error, 5, droppedSegment);
+
+    assertNull("The fetch should not fail", error[0]);
+    assertTrue("The fetch should complete", result[0] != null);
+    assertTrue
+      ("The fetcher should send more than one Interest at a time",
+       maxOutstanding > 1);
+    assertTrue("The producer should have dropped a segment", droppedSegment[0]);
+
+    assertEquals(nSegments * SEGMENT_SIZE, result[0].size());
+    for (int i = 0; i < result[0].size(); ++i)
+      assertEquals
+        ("Content must be in segment order",
+         (byte)(i / SEGMENT_SIZE), result[0].buf().get(i));
+
+    peer.close();
+  }
+
+  @Test
+  public void
+  testStreamingFetch() throws Exception
+  {
+    final int nSegments = 40;
+    final Long[] result = new Long[] { null };
+    final String[] error = new String[] { null };
+    final ArrayList segments = new ArrayList(); // of Long
+    final ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+    Interest baseInterest = new Interest(new Name("/a"));
+    baseInterest.setInterestLifetimeMilliseconds(300.0);
+    SegmentFetcher.fetch
+      (face_, baseInterest, SegmentFetcher.DontVerifySegment,
+       new SegmentFetcher.OnSegmentContent() {
+         public void onSegmentContent(long segment, Blob content) {
+           segments.add(new Long(segment));
+           output.write(content.getImmutableArray(), 0, content.size());
+         }
+       },
+       new SegmentFetcher.OnStreamComplete() {
+         public void onStreamComplete(long nBytes) { result[0] = new Long(nBytes); }
+       },
+       new SegmentFetcher.OnError() {
+         public void onError(SegmentFetcher.ErrorCode errorCode, String message) {
+           error[0] = message;
+         }
+       },
+       new SegmentFetcher.Options().setInitialWindowSize(2).setMaxWindowSize(8)
+         .setMaxBufferedSegments(4));
+    SocketChannel peer = server_.accept();
+    Producer producer = new Producer(peer, nSegments);
+
+    boolean[] droppedSegment = new boolean[] { false };
+    int maxOutstanding = serve(producer, result, error, 5, droppedSegment);
+
+    assertNull("The fetch should not fail", error[0]);
+    assertTrue("The fetch should complete", result[0] != null);
+    assertEquals(nSegments * SEGMENT_SIZE, result[0].longValue());
+    assertTrue
+      ("The buffered segments should limit the Interests in flight",
+       maxOutstanding <= 4);
+
+    assertEquals(nSegments, segments.size());
+    for (int i = 0; i < segments.size(); ++i)
+      assertEquals
+        ("Segments must be delivered in order", (long)i,
+         ((Long)segments.get(i)).longValue());
+    byte[] content = output.toByteArray();
+    assertEquals(nSegments * SEGMENT_SIZE, content.length);
+    for (int i = 0; i < content.length; ++i)
+      assertEquals((byte)(i / SEGMENT_SIZE), content[i]);
+
+    peer.close();
+  }
+
+  @Test
+  public void
+  testConcurrentCallbacks() throws Exception
+  {
+    final int nSegments = 200;
+    final ExecutorService callbackExecutor = Executors.newFixedThreadPool(8);
+    // Like a ThreadSafeFace with a multi-threaded callback Executor, this Face
+    // calls onData for the segments in flight from different threads.
+    Face face = new Face("localhost") {
+      public long
+      expressInterest
+        (final Interest interest, final OnData onData, OnTimeout onTimeout,
+         WireFormat wireFormat)
+      {
+        callbackExecutor.execute(new Runnable() {
+          public void run() {
+            try {
+              onData.onData
+                (interest, makeSegment(getSegment(interest), nSegments));
+            } catch (EncodingException ex) {
+              fail("Error decoding the segment: " + ex);
+            }
+          }
+        });
+        return 0;
+      }
+
+      public void
+      removePendingInterest(long pendingInterestId) {}
+    };
+
+    // Check that the fetcher processes one segment at a time.
+    final AtomicInteger nProcessing = new AtomicInteger();
+    final boolean[] wasConcurrent = new boolean[] { false };
+    SegmentFetcher.VerifySegment verifySegment =
+      new SegmentFetcher.VerifySegment() {
+        public boolean verifySegment(Data data) {
+          if (nProcessing.incrementAndGet() > 1)
+            wasConcurrent[0] = true;
+          try {
+            Thread.sleep(1);
+          } catch (InterruptedException ex) {}
+          nProcessing.decrementAndGet();
+          return true;
+        }
+      };
+
+    final CountDownLatch done = new CountDownLatch(1);
+    final Long[] result = new Long[] { null };
+    final String[] error = new String[] { null };
+    final ArrayList segments = new ArrayList(); // of Long
+    SegmentFetcher.fetch
+      (face, new Interest(new Name("/a")), verifySegment,
+       new SegmentFetcher.OnSegmentContent() {
+         public void onSegmentContent(long segment, Blob content) {
+           segments.add(new Long(segment));
+         }
+       },
+       new SegmentFetcher.OnStreamComplete() {
+         public void onStreamComplete(long nBytes) {
+           result[0] = new Long(nBytes);
+           done.countDown();
+         }
+       },
+       new SegmentFetcher.OnError() {
+         public void onError(SegmentFetcher.ErrorCode errorCode, String message) {
+           error[0] = message;
+           done.countDown();
+         }
+       },
+       new SegmentFetcher.Options().setInitialWindowSize(16)
+         .setMaxWindowSize(32));
+
+    assertTrue("The fetch should finish", done.await(10, TimeUnit.SECONDS));
+    callbackExecutor.shutdown();
+    assertTrue
+      ("onData should not be processed concurrently", !wasConcurrent[0]);
+    assertNull("The fetch should not fail", error[0]);
+    assertEquals(nSegments * SEGMENT_SIZE, result[0].longValue());
+    assertEquals(nSegments, segments.size());
+    for (int i = 0; i < segments.size(); ++i)
+      assertEquals
+        ("Segments must be delivered in order", (long)i,
+         ((Long)segments.get(i)).longValue());
+  }
+
+  @Test
+  public void
+  testRetryBackoff() throws Exception
+  {
+    final String[] error = new String[] { null };
+
+    Interest baseInterest = new Interest(new Name("/a"));
+    baseInterest.setInterestLifetimeMilliseconds(50.0);
+    SegmentFetcher.fetch
+      (face_, baseInterest, SegmentFetcher.DontVerifySegment,
+       new SegmentFetcher.OnComplete() {
+         public void onComplete(Blob content) {}
+       },
+       new SegmentFetcher.OnError() {
+         public void onError(SegmentFetcher.ErrorCode errorCode, String message) {
+           error[0] = errorCode.toString();
+         }
+       });
+    SocketChannel peer = server_.accept();
+    Producer producer = new Producer(peer, 2);
+
+    int maxOutstanding = 0;
+    ArrayList lifetimes = new ArrayList(); // of Double
+    long start = System.currentTimeMillis();
+    while (error[0] == null && System.currentTimeMillis() - start < 5000) {
+      face_.processEvents(20);
+      ArrayList interests = producer.receive();
+      maxOutstanding = Math.max(maxOutstanding, interests.size());
+      // Only answer the first Interest.
+      for (int i = 0; i < interests.size(); ++i) {
+        Interest interest = (Interest)interests.get(i);
+        if (getSegment(interest) == 0)
+          producer.send(0);
+        else
+          lifetimes.add(new Double(interest.getInterestLifetimeMilliseconds()));
+      }
+    }
+
+    assertEquals
+      ("The fetcher should fail after the retries", "INTEREST_TIMEOUT", error[0]);
+    assertEquals
+      ("Without Options the fetcher should send one Interest at a time",
+       1, maxOutstanding);
+    assertEquals
+      ("Segment 1 should be requested once and then retried",
+       1 + SegmentFetcher.DEFAULT_MAX_RETRIES, lifetimes.size());
+    for (int i = 0; i < lifetimes.size(); ++i)
+      assertEquals
+        ("Each retry should double the lifetime", 50.0 * Math.pow(2, i),
+         ((Double)lifetimes.get(i)).doubleValue(), 1e-9);
+
+    peer.close();
+  }
+
+  @Test
+  public void
+  testResume() throws Exception
+  {
+    final int nSegments = 20;
+    final Blob[] result = new Blob[] { null };
+    final String[] error = new String[] { null };
+
+    Interest baseInterest = new Interest(new Name("/a"));
+    baseInterest.setInterestLifetimeMilliseconds(300.0);
+    SegmentFetcher fetcher = SegmentFetcher.fetch
+      (face_, baseInterest, SegmentFetcher.DontVerifySegment,
+       new SegmentFetcher.OnComplete() {
+         public void onComplete(Blob content) { result[0] = content; }
+       },
+       new SegmentFetcher.OnError() {
+         public void onError(SegmentFetcher.ErrorCode errorCode, String message) {
+           error[0] = message;
+         }
+       },
+       new SegmentFetcher.Options().setResume(new Name("/a/%FD%01"), 15));
+    SocketChannel peer = server_.accept();
+    Producer producer = new Producer(peer, nSegments);
+
+    // Check that the first Interest is for the resume segment, not discovery.
+    ArrayList interests = new ArrayList();
+    long start = System.currentTimeMillis();
+    while (interests.size() == 0 && System.currentTimeMillis() - start < 5000) {
+      face_.processEvents(20);
+      interests = producer.receive();
+    }
+    assertEquals
+      (new Name("/a/%FD%01").appendSegment(15),
+       ((Interest)interests.get(0)).getName());
+    for (int i = 0; i < interests.size(); ++i)
+      producer.send(getSegment((Interest)interests.get(i)));
+
+    serve(producer, result, error, 17, new boolean[] { false });
+
+    assertNull("The fetch should not fail", error[0]);
+    assertTrue("The fetch should complete", result[0] != null);
+    assertEquals((nSegments - 15) * SEGMENT_SIZE, result[0].size());
+    for (int i = 0; i < result[0].size(); ++i)
+      assertEquals((byte)(15 + i / SEGMENT_SIZE), result[0].buf().get(i));
+    assertEquals(new Name("/a/%FD%01"), fetcher.getVersionedPrefix());
+    assertEquals(nSegments, fetcher.getNextSegment());
+
+    peer.close();
+  }
+}
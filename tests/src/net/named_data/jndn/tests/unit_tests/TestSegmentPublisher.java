@@ -0,0 +1,271 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.encoding.ElementReader;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.security.KeyChain;
+import net.named_data.jndn.security.identity.IdentityManager;
+import net.named_data.jndn.security.identity.MemoryIdentityStorage;
+import net.named_data.jndn.security.identity.MemoryPrivateKeyStorage;
+import net.named_data.jndn.security.policy.SelfVerifyPolicyManager;
+import net.named_data.jndn.transport.TcpTransport;
+import net.named_data.jndn.util.SegmentPublisher;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestSegmentPublisher {
+  ServerSocketChannel server_;
+  SocketChannel peer_;
+  Face face_;
+  KeyChain keyChain_;
+  ElementReader reader_;
+  final ArrayList received_ = new ArrayList(); // of Data
+
+  @Before
+  public void
+  setUp() throws Exception
+  {
+    server_ = ServerSocketChannel.open();
+    server_.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+    face_ = new Face
+      (new TcpTransport(), new TcpTransport.ConnectionInfo
+       ("127.0.0.1", server_.socket().getLocalPort()));
+    // Send an Interest so that the Face connects.
+    face_.expressInterest
+      (new Interest(new Name("/connect"), 10), (OnData)null, (OnTimeout)null);
+    peer_ = server_.accept();
+    peer_.configureBlocking(false);
+
+    MemoryIdentityStorage identityStorage = new MemoryIdentityStorage();
+    keyChain_ = new KeyChain
+      (new IdentityManager(identityStorage, new MemoryPrivateKeyStorage()),
+       new SelfVerifyPolicyManager(identityStorage));
+
+    reader_ = new ElementReader(new ElementListener() {
+      public void onReceivedElement(ByteBuffer element) {
+        if (element.get(0) != 6)
+          // Skip the Interest.
+          return;
+        Data data = new Data();
+        try {
+          data.wireDecode(element);
+        } catch (EncodingException ex) {
+          fail("Error decoding the Data: " + ex);
+        }
+        received_.add(data);
+      }
+    });
+  }
+
+  @After
+  public void
+  tearDown() throws Exception
+  {
+    face_.shutdown();
+    peer_.close();
+    server_.close();
+  }
+
+  /**
+   * Call publisher.onInterest for an Interest with the name and return the Data
+   * which it sends, or null if none.
+   */
+  private Data
+  request(SegmentPublisher publisher, Name name) throws Exception
+  {
+    return request(publisher, new Interest(name));
+  }
+
+  /**
+   * Call publisher.onInterest for the Interest and return the Data which it
+   * sends, or null if none.
+   */
+  private Data
+  request(SegmentPublisher publisher, Interest interest) throws Exception
+  {
+    received_.clear();
+    publisher.onInterest(new Name("/a"), interest, face_, 0, null);
+
+    ByteBuffer buffer = ByteBuffer.allocate(20000);
+    long start = System.currentTimeMillis();
+    while (received_.size() == 0 && System.currentTimeMillis() - start < 200) {
+      buffer.clear();
+      if (peer_.read(buffer) > 0) {
+        buffer.flip();
+        reader_.onReceivedData(buffer);
+      }
+      else
+        Thread.sleep(5);
+    }
+
+    return received_.size() == 0 ? null : (Data)received_.get(0);
+  }
+
+  private static ByteBuffer
+  makeContent(int size)
+  {
+    ByteBuffer content = ByteBuffer.allocate(size);
+    for (int i = 0; i < size; ++i)
+      content.put((byte)i);
+    content.flip();
+    return content;
+  }
+
+  @Test
+  public void
+  testServeSegments() throws Exception
+  {
+    ByteBuffer content = makeContent(2500);
+    SegmentPublisher publisher = new SegmentPublisher
+      (face_, keyChain_, null, new Name("/a"), content);
+    publisher.setSegmentSize(1000);
+    Name versionedPrefix = publisher.getVersionedPrefix();
+    assertEquals(3, publisher.getSegmentCount());
+    assertEquals
+      ("Nothing should be signed before an Interest arrives",
+       0, publisher.getSignedSegmentCount());
+
+    Data data = request(publisher, new Name("/a"));
+    assertEquals
+      ("Version discovery should get segment 0",
+       new Name(versionedPrefix).appendSegment(0), data.getName());
+
+    data = request(publisher, new Name(versionedPrefix).appendSegment(2));
+    assertEquals(new Name(versionedPrefix).appendSegment(2), data.getName());
+    assertEquals(2, data.getMetaInfo().getFinalBlockId().toSegment());
+    assertEquals(500, data.getContent().size());
+    assertEquals((byte)2000, data.getContent().buf().get(0));
+
+    assertTrue
+      ("A segment past the end should not be answered",
+       request(publisher, new Name(versionedPrefix).appendSegment(3)) == null);
+    assertTrue
+      ("A different version should not be answered",
+       request(publisher, new Name("/a").appendVersion(1).appendSegment(0)) == null);
+
+    assertEquals(2, publisher.getSignedSegmentCount());
+    request(publisher, new Name(versionedPrefix).appendSegment(0));
+    assertEquals
+      ("A cached segment should not be signed again",
+       2, publisher.getSignedSegmentCount());
+  }
+
+  @Test
+  public void
+  testSelectors() throws Exception
+  {
+    SegmentPublisher publisher = new SegmentPublisher
+      (face_, keyChain_, null, new Name("/a"), makeContent(2500));
+    publisher.setSegmentSize(1000);
+    Name versionedPrefix = publisher.getVersionedPrefix();
+
+    Interest interest = new Interest(new Name("/a"));
+    interest.getExclude().appendComponent(versionedPrefix.get(-1));
+    assertTrue
+      ("Version discovery should not answer an excluded version",
+       request(publisher, interest) == null);
+    assertEquals
+      ("An excluded version should not be signed",
+       0, publisher.getSignedSegmentCount());
+
+    interest = new Interest(new Name("/a"));
+    interest.getExclude().appendComponent(new Name("/a").appendVersion(1).get(-1));
+    assertEquals
+      ("Version discovery should answer if the version is not excluded",
+       new Name(versionedPrefix).appendSegment(0),
+       request(publisher, interest).getName());
+  }
+
+  @Test
+  public void
+  testBoundedCache() throws Exception
+  {
+    SegmentPublisher publisher = new SegmentPublisher
+      (face_, keyChain_, null, new Name("/a"), makeContent(5000));
+    publisher.setSegmentSize(1000);
+    publisher.setMaxCachedSegments(2);
+    Name versionedPrefix = publisher.getVersionedPrefix();
+
+    for (int i = 0; i < 5; ++i)
+      request(publisher, new Name(versionedPrefix).appendSegment(i));
+    assertEquals(5, publisher.getSignedSegmentCount());
+
+    // Segment 4 is still cached, but segment 0 was removed.
+    request(publisher, new Name(versionedPrefix).appendSegment(4));
+    assertEquals(5, publisher.getSignedSegmentCount());
+    request(publisher, new Name(versionedPrefix).appendSegment(0));
+    assertEquals(6, publisher.getSignedSegmentCount());
+  }
+
+  @Test
+  public void
+  testServeFile() throws Exception
+  {
+    ByteBuffer content = makeContent(2500);
+    File file = File.createTempFile("TestSegmentPublisher", ".dat");
+    file.deleteOnExit();
+    FileOutputStream output = new FileOutputStream(file);
+    output.write(content.array());
+    output.close();
+
+    RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+    FileChannel channel = randomAccessFile.getChannel();
+    try {
+      SegmentPublisher publisher = new SegmentPublisher
+        (face_, keyChain_, null, new Name("/a"), channel);
+      publisher.setSegmentSize(1000);
+      assertEquals(3, publisher.getSegmentCount());
+
+      for (int i = 0; i < 3; ++i) {
+        Data data = request
+          (publisher, new Name(publisher.getVersionedPrefix()).appendSegment(i));
+        ByteBuffer expected = content.duplicate();
+        expected.position(i * 1000);
+        expected.limit(Math.min(2500, (i + 1) * 1000));
+        assertTrue
+          ("The segment content should match the file",
+           data.getContent().buf().equals(expected));
+      }
+    } finally {
+      randomAccessFile.close();
+    }
+  }
+}
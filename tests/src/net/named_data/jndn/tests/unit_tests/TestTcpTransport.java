@@ -0,0 +1,281 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import net.named_data.jndn.Face;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnWritable;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.transport.TcpTransport;
+import net.named_data.jndn.util.Blob;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TestTcpTransport {
+  /**
+   * Read from the channel until it has the expected number of bytes or until
+   * the timeout.
+   */
+  private static ByteBuffer
+  readBytes(SocketChannel channel, int nBytes) throws Exception
+  {
+    ByteBuffer result = ByteBuffer.allocate(nBytes);
+    long start = System.currentTimeMillis();
+    while (result.hasRemaining() && System.currentTimeMillis() - start < 5000) {
+      if (channel.read(result) == 0)
+        Thread.sleep(1);
+    }
+    result.flip();
+    return result;
+  }
+
+  @Test
+  public void
+  testBatchedSend() throws Exception
+  {
+    ServerSocketChannel server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+    TcpTransport transport = new TcpTransport();
+    transport.connect
+      (new TcpTransport.ConnectionInfo
+       ("127.0.0.1", server.socket().getLocalPort()), null);
+    SocketChannel peer = server.accept();
+    peer.configureBlocking(false);
+
+    Blob[] encodings = new Blob[3];
+    int totalSize = 0;
+    transport.beginBatch();
+    for (int i = 0; i < encodings.length; ++i) {
+      encodings[i] = new Interest(new Name("/a").append("" + i)).wireEncode();
+      totalSize += encodings[i].size();
+      ByteBuffer buffer = encodings[i].buf();
+      transport.send(buffer);
+      assertEquals("send should not change the position", 0, buffer.position());
+    }
+
+    Thread.sleep(50);
+    assertEquals("Nothing should be written before endBatch",
+                 0, peer.read(ByteBuffer.allocate(totalSize)));
+
+    transport.endBatch();
+    ByteBuffer received = readBytes(peer, totalSize);
+    assertEquals(totalSize, received.remaining());
+    for (int i = 0; i < encodings.length; ++i) {
+      ByteBuffer expected = encodings[i].buf();
+      ByteBuffer actual = received.duplicate();
+      actual.limit(actual.position() + expected.remaining());
+      assertEquals("The packets should be written in order", expected, actual);
+      received.position(actual.limit());
+    }
+
+    transport.close();
+    peer.close();
+    server.close();
+  }
+
+  @Test
+  public void
+  testExpressInterests() throws Exception
+  {
+    ServerSocketChannel server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+    Face face = new Face
+      (new TcpTransport(), new TcpTransport.ConnectionInfo
+       ("127.0.0.1", server.socket().getLocalPort()));
+
+    ArrayList interests = new ArrayList();
+    for (int i = 0; i < 5; ++i) {
+      Interest interest = new Interest(new Name("/b").append("" + i));
+      interest.setInterestLifetimeMilliseconds(10000.0);
+      interests.add(interest);
+    }
+    final ArrayList received = new ArrayList();
+    long[] pendingInterestIds = face.expressInterests
+      (interests, new OnData() {
+        public void onData(Interest interest, Data data) {
+          received.add(data.getName());
+        }
+      }, null);
+    assertEquals(interests.size(), pendingInterestIds.length);
+    for (int i = 1; i < pendingInterestIds.length; ++i)
+      assertEquals("The IDs should be increasing",
+                   true, pendingInterestIds[i] > pendingInterestIds[i - 1]);
+
+    SocketChannel peer = server.accept();
+    peer.configureBlocking(false);
+    // Each interest gets a random nonce, so count the complete TLV elements
+    //   instead of comparing bytes. The interests are short, so each has a
+    //   one-byte length.
+    ByteBuffer all = ByteBuffer.allocate(8800);
+    long start = System.currentTimeMillis();
+    int nInterests = 0;
+    while (nInterests < interests.size() &&
+           System.currentTimeMillis() - start < 5000) {
+      if (peer.read(all) == 0)
+        Thread.sleep(1);
+      nInterests = 0;
+      int offset = 0;
+      while (offset + 2 <= all.position()) {
+        int length = all.get(offset + 1) & 0xff;
+        if (offset + 2 + length > all.position())
+          break;
+        offset += 2 + length;
+        ++nInterests;
+      }
+    }
+    assertEquals("All the interests should be sent",
+                 interests.size(), nInterests);
+
+    // Answer the last interest.
+    ByteBuffer encoding = new Data(new Name("/b/4")).wireEncode().buf();
+    while (encoding.hasRemaining())
+      peer.write(encoding);
+    start = System.currentTimeMillis();
+    while (received.size() == 0 && System.currentTimeMillis() - start < 5000)
+      face.processEvents(100);
+    assertEquals(1, received.size());
+    assertEquals(new Name("/b/4"), received.get(0));
+
+    face.shutdown();
+    peer.close();
+    server.close();
+  }
+
+  @Test
+  public void
+  testBackpressure() throws Exception
+  {
+    ServerSocketChannel server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+    TcpTransport transport = new TcpTransport();
+    transport.setHighWaterMark(64 * 1024);
+    Face face = new Face
+      (transport, new TcpTransport.ConnectionInfo
+       ("127.0.0.1", server.socket().getLocalPort()));
+    final int[] nOnWritable = new int[] { 0 };
+    face.setOnWritable(new OnWritable() {
+      public void onWritable() { ++nOnWritable[0]; }
+    });
+
+    // Connect by sending an interest.
+    face.expressInterest(new Interest(new Name("/c")), (OnData)null);
+    final SocketChannel peer = server.accept();
+    long nBytesSent = new Interest(new Name("/c")).wireEncode().size();
+
+    // The peer doesn't read, so the socket send buffer fills up. send should
+    //   buffer instead of blocking until the face is not writable.
+    Blob packet = new Blob(new byte[8000]);
+    int nPackets = 0;
+    while (face.isWritable() && nPackets < 10000) {
+      face.send(packet);
+      nBytesSent += packet.size();
+      ++nPackets;
+    }
+    assertEquals("The face should stop being writable", false,
+                 face.isWritable());
+    assertEquals(true, transport.hasPendingWrites());
+    assertEquals("onWritable should not be called yet", 0, nOnWritable[0]);
+
+    // Now let the peer read everything.
+    final long[] nBytesReceived = new long[] { 0 };
+    final long expectedBytes = nBytesSent;
+    Thread reader = new Thread(new Runnable() {
+      public void run() {
+        try {
+          ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+          long start = System.currentTimeMillis();
+          while (nBytesReceived[0] < expectedBytes &&
+                 System.currentTimeMillis() - start < 10000) {
+            buffer.clear();
+            int n = peer.read(buffer);
+            if (n < 0)
+              break;
+            nBytesReceived[0] += n;
+          }
+        } catch (Exception ex) {
+        }
+      }
+    });
+    reader.start();
+
+    long start = System.currentTimeMillis();
+    while ((nOnWritable[0] == 0 || transport.hasPendingWrites()) &&
+           System.currentTimeMillis() - start < 10000)
+      face.processEvents(100);
+    reader.join(10000);
+
+    assertEquals("onWritable should be called once", 1, nOnWritable[0]);
+    assertEquals(true, face.isWritable());
+    assertEquals("All the buffered bytes should be written",
+                 nBytesSent, nBytesReceived[0]);
+
+    face.shutdown();
+    peer.close();
+    server.close();
+  }
+
+  @Test
+  public void
+  testOutboundBufferFull() throws Exception
+  {
+    ServerSocketChannel server = ServerSocketChannel.open();
+    server.socket().bind(new InetSocketAddress("127.0.0.1", 0));
+    TcpTransport transport = new TcpTransport();
+    transport.setHighWaterMark(64 * 1024);
+    transport.setMaxOutboundBufferSize(128 * 1024);
+    Face face = new Face
+      (transport, new TcpTransport.ConnectionInfo
+       ("127.0.0.1", server.socket().getLocalPort()));
+
+    // Connect by sending an interest.
+    face.expressInterest(new Interest(new Name("/c")), (OnData)null);
+    SocketChannel peer = server.accept();
+
+    // The peer doesn't read. send should throw when the outbound buffer is
+    //   full instead of blocking.
+    Blob packet = new Blob(new byte[8000]);
+    boolean isFull = false;
+    long start = System.currentTimeMillis();
+    for (int i = 0; i < 10000 && !isFull; ++i) {
+      try {
+        face.send(packet);
+      } catch (IOException ex) {
+        isFull = true;
+      }
+    }
+    assertEquals("send should throw when the buffer is full", true, isFull);
+    assertTrue("send should not block",
+               System.currentTimeMillis() - start < 5000);
+    assertEquals(false, face.isWritable());
+
+    face.shutdown();
+    peer.close();
+    server.close();
+  }
+}
@@ -0,0 +1,187 @@
+/**
+ * Copyright (C) 2015 Regents of the University of California.
+ * @author: Jeff Thompson <jefft0@remap.ucla.edu>
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * A copy of the GNU Lesser General Public License is in the file COPYING.
+ */
+
+package net.named_data.jndn.tests.unit_tests;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.named_data.jndn.Data;
+import net.named_data.jndn.Interest;
+import net.named_data.jndn.Name;
+import net.named_data.jndn.OnData;
+import net.named_data.jndn.OnTimeout;
+import net.named_data.jndn.ThreadSafeFace;
+import net.named_data.jndn.encoding.ElementListener;
+import net.named_data.jndn.encoding.EncodingException;
+import net.named_data.jndn.encoding.tlv.Tlv;
+import net.named_data.jndn.transport.Transport;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import org.junit.Test;
+
+public class TestThreadSafeFace {
+  /**
+   * A LoopbackTransport answers each Interest it sends with a Data packet
+   * which has the Interest name, except for names under /silent.
+   */
+  private static class LoopbackTransport extends Transport {
+    public boolean
+    isLocal(Transport.ConnectionInfo connectionInfo) { return true; }
+
+    public void
+    connect
+      (Transport.ConnectionInfo connectionInfo, ElementListener elementListener)
+    {
+      elementListener_ = elementListener;
+    }
+
+    public void
+    send(ByteBuffer data) throws IOException
+    {
+      // The Interest type code fits in the first byte.
+      if (data.get(data.position()) != Tlv.Interest)
+        return;
+
+      Interest interest = new Interest();
+      try {
+        interest.wireDecode(data.duplicate());
+      } catch (EncodingException ex) {
+        throw new IOException(ex.getMessage());
+      }
+      if (!new Name("/silent").match(interest.getName()))
+        responses_.add(new Data(interest.getName()).wireEncode().buf());
+    }
+
+    public void
+    processEvents() throws IOException, EncodingException
+    {
+      while (true) {
+        ByteBuffer response = (ByteBuffer)responses_.poll();
+        if (response == null)
+          break;
+        elementListener_.onReceivedElement(response);
+      }
+    }
+
+    public boolean
+    getIsConnected() { return elementListener_ != null; }
+
+    private ElementListener elementListener_ = null;
+    private final ConcurrentLinkedQueue responses_ = new ConcurrentLinkedQueue();
+  }
+
+  @Test
+  public void
+  testConcurrentExpressInterest() throws Exception
+  {
+    final int nThreads = 4;
+    final int nInterestsPerThread = 50;
+    ExecutorService callbackExecutor = Executors.newFixedThreadPool(2);
+    final ThreadSafeFace face = new ThreadSafeFace
+      (new LoopbackTransport(), new Transport.ConnectionInfo(),
+       callbackExecutor);
+
+    final CountDownLatch done = new CountDownLatch(nThreads * nInterestsPerThread);
+    final AtomicInteger nTimeouts = new AtomicInteger();
+    final OnData onData = new OnData() {
+      public void onData(Interest interest, Data data) {
+        if (interest.getName().equals(data.getName()))
+          done.countDown();
+      }
+    };
+    final OnTimeout onTimeout = new OnTimeout() {
+      public void onTimeout(Interest interest) {
+        nTimeouts.incrementAndGet();
+      }
+    };
+
+    Thread[] threads = new Thread[nThreads];
+    for (int i = 0; i < nThreads; ++i) {
+      final int threadIndex = i;
+      threads[i] = new Thread(new Runnable() {
+        public void run() {
+          for (int j = 0; j < nInterestsPerThread; ++j) {
+            Interest interest = new Interest
+              (new Name("/test").append("" + threadIndex).append("" + j));
+            interest.setInterestLifetimeMilliseconds(10000.0);
+            try {
+              face.expressInterest(interest, onData, onTimeout);
+            } catch (IOException ex) {
+              throw new Error(ex.getMessage());
+            }
+          }
+        }
+      });
+      threads[i].start();
+    }
+    for (int i = 0; i < nThreads; ++i)
+      threads[i].join();
+
+    assertTrue("Expected onData for every interest",
+               done.await(10, TimeUnit.SECONDS));
+    assertEquals("Expected no timeouts", 0, nTimeouts.get());
+
+    face.shutdown();
+    callbackExecutor.shutdown();
+  }
+
+  @Test
+  public void
+  testRemovePendingInterest() throws Exception
+  {
+    final ThreadSafeFace face = new ThreadSafeFace
+      (new LoopbackTransport(), new Transport.ConnectionInfo());
+
+    final AtomicInteger nTimeouts = new AtomicInteger();
+    final CountDownLatch done = new CountDownLatch(1);
+    OnData onData = new OnData() {
+      public void onData(Interest interest, Data data) {
+        done.countDown();
+      }
+    };
+    OnTimeout onTimeout = new OnTimeout() {
+      public void onTimeout(Interest interest) {
+        nTimeouts.incrementAndGet();
+      }
+    };
+
+    // The loopback doesn't answer /silent, so the interest would time out.
+    Interest interest = new Interest(new Name("/silent/a"));
+    interest.setInterestLifetimeMilliseconds(50.0);
+    long pendingInterestId = face.expressInterest(interest, onData, onTimeout);
+    face.removePendingInterest(pendingInterestId);
+
+    // Wait past the interest lifetime, then use another interest to make sure
+    // that the I/O thread has processed events.
+    Thread.sleep(200);
+    face.expressInterest(new Name("/b"), onData);
+
+    assertTrue("Expected onData for /b", done.await(10, TimeUnit.SECONDS));
+    assertEquals("Expected no timeout for the removed interest", 0,
+                 nTimeouts.get());
+
+    face.shutdown();
+  }
+}